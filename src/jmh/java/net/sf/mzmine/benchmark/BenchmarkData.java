@@ -0,0 +1,259 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.PeakListRow;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimplePeakList;
+import net.sf.mzmine.datamodel.impl.SimplePeakListRow;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.Chromatogram;
+import net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.HighestDataPointConnector;
+import net.sf.mzmine.modules.peaklistmethods.alignment.join.JoinAlignerModule;
+import net.sf.mzmine.modules.peaklistmethods.alignment.join.JoinAlignerParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler.ShapeModel;
+import net.sf.mzmine.modules.rawdatamethods.syntheticdata.SyntheticDataGenerator;
+import net.sf.mzmine.modules.rawdatamethods.syntheticdata.SyntheticDataParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.selectors.PeakListsSelectionType;
+import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import net.sf.mzmine.parameters.parametertypes.tolerances.RTTolerance;
+import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Shared test data of the benchmarks. The synthetic data files are created by the synthetic data
+ * generator with a fixed seed, so every run of the benchmarks processes the same data.
+ */
+public class BenchmarkData {
+
+  /**
+   * Sizes of the synthetic data files
+   */
+  public enum DataSize {
+
+    SMALL(500, 100, 1000, 10000), //
+    MEDIUM(2000, 1000, 5000, 20000), //
+    LARGE(6000, 5000, 20000, 50000);
+
+    private final int numOfScans, numOfFeatures, centroidPointsPerScan, profilePointsPerScan;
+
+    DataSize(int numOfScans, int numOfFeatures, int centroidPointsPerScan,
+        int profilePointsPerScan) {
+      this.numOfScans = numOfScans;
+      this.numOfFeatures = numOfFeatures;
+      this.centroidPointsPerScan = centroidPointsPerScan;
+      this.profilePointsPerScan = profilePointsPerScan;
+    }
+
+    public int getNumOfScans() {
+      return numOfScans;
+    }
+
+    public int getNumOfFeatures() {
+      return numOfFeatures;
+    }
+
+    public int getPointsPerScan(boolean profile) {
+      return profile ? profilePointsPerScan : centroidPointsPerScan;
+    }
+
+  }
+
+  public static final int SEED = 20180101;
+
+  // Maximum number of synthetic samples used by the benchmarks
+  public static final int MAX_SAMPLES = 10;
+
+  // Chromatographic peak width (FWHM) in minutes
+  public static final double PEAK_WIDTH = 0.1;
+
+  // Maximum intensity of the noise and the noise level used by the mass detectors
+  public static final double NOISE_INTENSITY = 500.0;
+  public static final double NOISE_LEVEL = 1000.0;
+
+  public static final MZTolerance MZ_TOLERANCE = new MZTolerance(0.005, 10.0);
+  public static final RTTolerance RT_TOLERANCE = new RTTolerance(true, 0.2);
+
+  /**
+   * Directory with the test data files, by default the test resources of the project
+   */
+  public static final File FIXTURES_DIR =
+      new File(System.getProperty("benchmark.fixtures", "src/test/resources"));
+
+  private BenchmarkData() {}
+
+  /**
+   * Initializes the MZmine core without GUI. The modules are loaded on first use.
+   */
+  public static void init() {
+    MZmineCore.initHeadless();
+  }
+
+  public static ParameterSet createSyntheticDataParameters(DataSize size, boolean profile) {
+    ParameterSet parameters = new SyntheticDataParameters();
+    parameters.getParameter(SyntheticDataParameters.fileName)
+        .setValue("synthetic_" + size.name().toLowerCase() + (profile ? "_profile" : ""));
+    parameters.getParameter(SyntheticDataParameters.numberOfSamples).setValue(MAX_SAMPLES);
+    parameters.getParameter(SyntheticDataParameters.numberOfScans).setValue(size.getNumOfScans());
+    parameters.getParameter(SyntheticDataParameters.pointsPerScan)
+        .setValue(size.getPointsPerScan(profile));
+    parameters.getParameter(SyntheticDataParameters.spectrumType)
+        .setValue(profile ? MassSpectrumType.PROFILE : MassSpectrumType.CENTROIDED);
+    parameters.getParameter(SyntheticDataParameters.mzRange).setValue(Range.closed(100.0, 1000.0));
+    parameters.getParameter(SyntheticDataParameters.rtRange).setValue(Range.closed(0.0, 30.0));
+    parameters.getParameter(SyntheticDataParameters.numberOfFeatures)
+        .setValue(size.getNumOfFeatures());
+    parameters.getParameter(SyntheticDataParameters.peakModel).setValue(ShapeModel.Gaussian);
+    parameters.getParameter(SyntheticDataParameters.peakWidth).setValue(PEAK_WIDTH);
+    parameters.getParameter(SyntheticDataParameters.noiseLevel).setValue(NOISE_INTENSITY);
+    parameters.getParameter(SyntheticDataParameters.rtDrift).setValue(0.05);
+    parameters.getParameter(SyntheticDataParameters.generateMSMS).setValue(false);
+    parameters.getParameter(SyntheticDataParameters.seed).setValue(SEED);
+    parameters.getParameter(SyntheticDataParameters.exportFolder).setValue(false);
+    return parameters;
+  }
+
+  /**
+   * Creates a synthetic data file. Files with different indexes contain the same features with
+   * slightly shifted retention times.
+   */
+  public static RawDataFile createSyntheticFile(DataSize size, boolean profile, int fileIndex)
+      throws IOException {
+    return new SyntheticDataGenerator(createSyntheticDataParameters(size, profile))
+        .createFile(fileIndex);
+  }
+
+  /**
+   * Builds the chromatograms of a centroided data file, in the same way as the chromatogram
+   * builder module does with a mass list of all data points above the noise level
+   */
+  public static Chromatogram[] buildChromatograms(RawDataFile dataFile) {
+    final int scanNumbers[] = dataFile.getScanNumbers(1);
+    HighestDataPointConnector connector = new HighestDataPointConnector(dataFile, scanNumbers,
+        PEAK_WIDTH, NOISE_LEVEL, MZ_TOLERANCE);
+    for (int scanNumber : scanNumbers) {
+      connector.addScan(scanNumber, getDataPointsAboveNoise(dataFile.getScan(scanNumber)));
+    }
+    return connector.finishChromatograms();
+  }
+
+  /**
+   * Returns the data points of the scan above the noise level, which is what the centroid mass
+   * detector produces
+   */
+  public static DataPoint[] getDataPointsAboveNoise(Scan scan) {
+    return Arrays.stream(scan.getDataPoints()).filter(dp -> dp.getIntensity() >= NOISE_LEVEL)
+        .toArray(DataPoint[]::new);
+  }
+
+  /**
+   * Creates a peak list with one row for each chromatogram of the data file
+   */
+  public static PeakList buildPeakList(RawDataFile dataFile) {
+    SimplePeakList peakList = new SimplePeakList(dataFile.getName() + " chromatograms", dataFile);
+    int rowID = 1;
+    for (Chromatogram chromatogram : buildChromatograms(dataFile)) {
+      SimplePeakListRow row = new SimplePeakListRow(rowID++);
+      row.addPeak(dataFile, chromatogram);
+      peakList.addRow(row);
+    }
+    return peakList;
+  }
+
+  /**
+   * Aligns the peak lists with the join aligner and returns the aligned peak list
+   */
+  public static PeakList alignPeakLists(MZmineProject project, PeakList peakLists[]) {
+    ParameterSet parameters = createJoinAlignerParameters(peakLists);
+    List<Task> tasks = new ArrayList<>();
+    new JoinAlignerModule().runModule(project, parameters, tasks);
+    runTasks(tasks);
+    PeakList projectPeakLists[] = project.getPeakLists();
+    return projectPeakLists[projectPeakLists.length - 1];
+  }
+
+  public static ParameterSet createJoinAlignerParameters(PeakList peakLists[]) {
+    ParameterSet parameters = new JoinAlignerParameters();
+    parameters.getParameter(JoinAlignerParameters.peakLists)
+        .setValue(PeakListsSelectionType.SPECIFIC_PEAKLISTS, peakLists);
+    parameters.getParameter(JoinAlignerParameters.peakListName).setValue("Aligned peak list");
+    parameters.getParameter(JoinAlignerParameters.MZTolerance).setValue(MZ_TOLERANCE);
+    parameters.getParameter(JoinAlignerParameters.MZWeight).setValue(3.0);
+    parameters.getParameter(JoinAlignerParameters.RTTolerance).setValue(RT_TOLERANCE);
+    parameters.getParameter(JoinAlignerParameters.RTWeight).setValue(1.0);
+    parameters.getParameter(JoinAlignerParameters.SameChargeRequired).setValue(false);
+    parameters.getParameter(JoinAlignerParameters.SameIDRequired).setValue(false);
+    parameters.getParameter(JoinAlignerParameters.compareIsotopePattern).setValue(false);
+    return parameters;
+  }
+
+  /**
+   * Removes the given fraction of peaks from the peak list at random, keeping at least one peak in
+   * each row, so the gap filling has gaps to fill
+   */
+  public static void createGaps(PeakList peakList, double fraction) {
+    final Random random = new Random(SEED);
+    for (PeakListRow row : peakList.getRows()) {
+      for (RawDataFile dataFile : peakList.getRawDataFiles()) {
+        if ((row.getNumberOfPeaks() > 1) && (row.getPeak(dataFile) != null)
+            && (random.nextDouble() < fraction))
+          row.removePeak(dataFile);
+      }
+    }
+  }
+
+  /**
+   * Runs the tasks in the current thread and checks that they finished
+   */
+  public static void runTasks(Collection<Task> tasks) {
+    for (Task task : tasks) {
+      task.run();
+      if (task.getStatus() != TaskStatus.FINISHED)
+        throw new IllegalStateException(
+            task.getTaskDescription() + " did not finish: " + task.getErrorMessage());
+    }
+  }
+
+  /**
+   * Closes the data files and removes their temporary files
+   */
+  public static void close(RawDataFile... dataFiles) {
+    for (RawDataFile dataFile : dataFiles) {
+      if (dataFile != null)
+        dataFile.close();
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.benchmark.BenchmarkData.DataSize;
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.Chromatogram;
+import net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.HighestDataPointConnector;
+
+/**
+ * Connecting the mass lists of a synthetic data file into chromatograms, as done by the
+ * chromatogram builder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChromatogramBuilderBenchmark {
+
+  @Param({"SMALL", "MEDIUM", "LARGE"})
+  public DataSize size;
+
+  private RawDataFile dataFile;
+  private int scanNumbers[];
+  private DataPoint massLists[][];
+
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData.init();
+    dataFile = BenchmarkData.createSyntheticFile(size, false, 0);
+    scanNumbers = dataFile.getScanNumbers(1);
+    massLists = new DataPoint[scanNumbers.length][];
+    for (int i = 0; i < scanNumbers.length; i++)
+      massLists[i] = BenchmarkData.getDataPointsAboveNoise(dataFile.getScan(scanNumbers[i]));
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkData.close(dataFile);
+  }
+
+  @Benchmark
+  public Chromatogram[] buildChromatograms() {
+    HighestDataPointConnector connector = new HighestDataPointConnector(dataFile, scanNumbers,
+        BenchmarkData.PEAK_WIDTH, BenchmarkData.NOISE_LEVEL, BenchmarkData.MZ_TOLERANCE);
+    for (int i = 0; i < scanNumbers.length; i++)
+      connector.addScan(scanNumbers[i], massLists[i]);
+    return connector.finishChromatograms();
+  }
+
+}
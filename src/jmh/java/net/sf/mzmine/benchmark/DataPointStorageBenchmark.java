@@ -0,0 +1,104 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+/**
+ * Storing and reading the data points of scans in the temporary file of RawDataFileImpl
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataPointStorageBenchmark {
+
+  // Number of stored scans read in a round robin fashion by readDataPoints()
+  private static final int NUM_OF_STORED_SCANS = 200;
+
+  @Param({"100", "1000", "10000", "100000"})
+  public int dataPointsPerScan;
+
+  private DataPoint dataPoints[];
+  private RawDataFileImpl dataFile;
+  private int storageIDs[];
+  private int nextScan;
+
+  @Setup(Level.Trial)
+  public void createDataPoints() {
+    BenchmarkData.init();
+    Random random = new Random(BenchmarkData.SEED);
+    dataPoints = new DataPoint[dataPointsPerScan];
+    double mz = 100.0;
+    for (int i = 0; i < dataPointsPerScan; i++) {
+      mz += random.nextDouble() * 900.0 / dataPointsPerScan;
+      dataPoints[i] = new SimpleDataPoint(mz, random.nextDouble() * 1E6);
+    }
+  }
+
+  // A new file for each iteration, so the file does not grow during the whole trial
+  @Setup(Level.Iteration)
+  public void createFile() throws IOException {
+    dataFile = new RawDataFileImpl("storage benchmark");
+    storageIDs = new int[NUM_OF_STORED_SCANS];
+    for (int i = 0; i < NUM_OF_STORED_SCANS; i++)
+      storageIDs[i] = dataFile.storeDataPoints(dataPoints);
+    nextScan = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeFile() {
+    dataFile.close();
+  }
+
+  @Benchmark
+  public int storeDataPoints() throws IOException {
+    return dataFile.storeDataPoints(dataPoints);
+  }
+
+  @Benchmark
+  public DataPoint[] readDataPoints() throws IOException {
+    final int storageID = storageIDs[nextScan];
+    nextScan = (nextScan + 1) % NUM_OF_STORED_SCANS;
+    return dataFile.readDataPoints(storageID);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.benchmark.BenchmarkData.DataSize;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+
+/**
+ * Join alignment of the chromatogram peak lists of several synthetic data files
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoinAlignerBenchmark {
+
+  @Param({"SMALL", "MEDIUM"})
+  public DataSize size;
+
+  @Param({"2", "10"})
+  public int numOfFiles;
+
+  private RawDataFile dataFiles[];
+  private PeakList peakLists[];
+
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData.init();
+    dataFiles = new RawDataFile[numOfFiles];
+    peakLists = new PeakList[numOfFiles];
+    for (int i = 0; i < numOfFiles; i++) {
+      dataFiles[i] = BenchmarkData.createSyntheticFile(size, false, i);
+      peakLists[i] = BenchmarkData.buildPeakList(dataFiles[i]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkData.close(dataFiles);
+  }
+
+  @Benchmark
+  public PeakList alignPeakLists() {
+    return BenchmarkData.alignPeakLists(new MZmineProjectImpl(), peakLists);
+  }
+
+}
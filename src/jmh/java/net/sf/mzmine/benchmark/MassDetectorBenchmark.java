@@ -0,0 +1,136 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.benchmark.BenchmarkData.DataSize;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.MassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.centroid.CentroidMassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.centroid.CentroidMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.exactmass.ExactMassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.exactmass.ExactMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.localmaxima.LocalMaxMassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.localmaxima.LocalMaxMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.recursive.RecursiveMassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.recursive.RecursiveMassDetectorParameters;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.wavelet.WaveletMassDetector;
+import net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.wavelet.WaveletMassDetectorParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+
+/**
+ * Mass detection of all scans of a synthetic profile data file with each mass detector. The scans
+ * are kept in memory, so only the mass detection itself is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MassDetectorBenchmark {
+
+  @Param({"centroid", "exactmass", "localmaxima", "recursive", "wavelet"})
+  public String detector;
+
+  @Param({"SMALL", "MEDIUM"})
+  public DataSize size;
+
+  private MassDetector massDetector;
+  private ParameterSet parameters;
+  private Scan scans[];
+
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData.init();
+
+    switch (detector) {
+      case "centroid":
+        massDetector = new CentroidMassDetector();
+        parameters = new CentroidMassDetectorParameters();
+        parameters.getParameter(CentroidMassDetectorParameters.noiseLevel)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        break;
+      case "exactmass":
+        massDetector = new ExactMassDetector();
+        parameters = new ExactMassDetectorParameters();
+        parameters.getParameter(ExactMassDetectorParameters.noiseLevel)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        break;
+      case "localmaxima":
+        massDetector = new LocalMaxMassDetector();
+        parameters = new LocalMaxMassDetectorParameters();
+        parameters.getParameter(LocalMaxMassDetectorParameters.noiseLevel)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        break;
+      case "recursive":
+        massDetector = new RecursiveMassDetector();
+        parameters = new RecursiveMassDetectorParameters();
+        parameters.getParameter(RecursiveMassDetectorParameters.noiseLevel)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        parameters.getParameter(RecursiveMassDetectorParameters.minimumMZPeakWidth)
+            .setValue(0.001);
+        parameters.getParameter(RecursiveMassDetectorParameters.maximumMZPeakWidth)
+            .setValue(0.05);
+        break;
+      case "wavelet":
+        massDetector = new WaveletMassDetector();
+        parameters = new WaveletMassDetectorParameters();
+        parameters.getParameter(WaveletMassDetectorParameters.noiseLevel)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        parameters.getParameter(WaveletMassDetectorParameters.scaleLevel).setValue(7);
+        parameters.getParameter(WaveletMassDetectorParameters.waveletWindow).setValue(0.3);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown mass detector " + detector);
+    }
+
+    RawDataFile dataFile = BenchmarkData.createSyntheticFile(size, true, 0);
+    int scanNumbers[] = dataFile.getScanNumbers(1);
+    scans = new Scan[scanNumbers.length];
+    for (int i = 0; i < scanNumbers.length; i++)
+      scans[i] = new SimpleScan(dataFile.getScan(scanNumbers[i]));
+    BenchmarkData.close(dataFile);
+  }
+
+  @Benchmark
+  public int detectMasses() {
+    int detectedMasses = 0;
+    for (Scan scan : scans)
+      detectedMasses += massDetector.getMassValues(scan, parameters).length;
+    return detectedMasses;
+  }
+
+}
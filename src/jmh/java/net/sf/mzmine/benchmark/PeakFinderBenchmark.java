@@ -0,0 +1,115 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.benchmark.BenchmarkData.DataSize;
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.modules.peaklistmethods.gapfilling.peakfinder.PeakFinderModule;
+import net.sf.mzmine.modules.peaklistmethods.gapfilling.peakfinder.PeakFinderParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.selectors.PeakListsSelectionType;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.taskcontrol.Task;
+
+/**
+ * Gap filling (peak finder) of an aligned peak list of several synthetic data files, in which a
+ * part of the peaks was removed
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeakFinderBenchmark {
+
+  // Fraction of the aligned peaks which are removed to create gaps
+  private static final double GAP_FRACTION = 0.3;
+
+  @Param({"SMALL", "MEDIUM"})
+  public DataSize size;
+
+  @Param({"2", "10"})
+  public int numOfFiles;
+
+  @Param({"false", "true"})
+  public boolean parallel;
+
+  private RawDataFile dataFiles[];
+  private PeakList alignedPeakList;
+
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData.init();
+    dataFiles = new RawDataFile[numOfFiles];
+    PeakList peakLists[] = new PeakList[numOfFiles];
+    for (int i = 0; i < numOfFiles; i++) {
+      dataFiles[i] = BenchmarkData.createSyntheticFile(size, false, i);
+      peakLists[i] = BenchmarkData.buildPeakList(dataFiles[i]);
+    }
+    alignedPeakList = BenchmarkData.alignPeakLists(new MZmineProjectImpl(), peakLists);
+    BenchmarkData.createGaps(alignedPeakList, GAP_FRACTION);
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkData.close(dataFiles);
+  }
+
+  @Benchmark
+  public PeakList fillGaps() {
+    ParameterSet parameters = new PeakFinderParameters();
+    parameters.getParameter(PeakFinderParameters.peakLists)
+        .setValue(PeakListsSelectionType.SPECIFIC_PEAKLISTS, new PeakList[] {alignedPeakList});
+    parameters.getParameter(PeakFinderParameters.suffix).setValue("gap-filled");
+    parameters.getParameter(PeakFinderParameters.intTolerance).setValue(0.2);
+    parameters.getParameter(PeakFinderParameters.MZTolerance).setValue(BenchmarkData.MZ_TOLERANCE);
+    parameters.getParameter(PeakFinderParameters.RTTolerance).setValue(BenchmarkData.RT_TOLERANCE);
+    parameters.getParameter(PeakFinderParameters.RTCorrection).setValue(false);
+    parameters.getParameter(PeakFinderParameters.useParallel).setValue(parallel);
+    parameters.getParameter(PeakFinderParameters.autoRemove).setValue(false);
+
+    MZmineProject project = new MZmineProjectImpl();
+    List<Task> tasks = new ArrayList<>();
+    new PeakFinderModule().runModule(project, parameters, tasks);
+    BenchmarkData.runTasks(tasks);
+    return project.getPeakLists()[0];
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.benchmark.BenchmarkData.DataSize;
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.PeakResolver;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.baseline.BaselinePeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.baseline.BaselinePeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.minimumsearch.MinimumSearchPeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.minimumsearch.MinimumSearchPeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.noiseamplitude.NoiseAmplitudePeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.noiseamplitude.NoiseAmplitudePeakDetectorParameters;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SavitzkyGolayPeakDetector;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SavitzkyGolayPeakDetectorParameters;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.util.maths.CenterFunction;
+import net.sf.mzmine.util.maths.CenterMeasure;
+
+/**
+ * Chromatogram deconvolution of all chromatograms of a synthetic data file with each peak resolver.
+ * The CentWave resolver requires R and the ADAP resolver an S/N estimator setup, so they are not
+ * included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeakResolverBenchmark {
+
+  private static final double MIN_PEAK_HEIGHT = 10.0 * BenchmarkData.NOISE_LEVEL;
+  private static final Range<Double> PEAK_DURATION = Range.closed(0.0, 1.0);
+
+  @Param({"baseline", "minimumsearch", "noiseamplitude", "savitzkygolay"})
+  public String resolver;
+
+  @Param({"SMALL", "MEDIUM"})
+  public DataSize size;
+
+  private PeakResolver peakResolver;
+  private ParameterSet parameters;
+  private RawDataFile dataFile;
+  private Feature chromatograms[];
+  private final CenterFunction mzCenterFunction = new CenterFunction(CenterMeasure.MEDIAN);
+
+  @Setup
+  public void setup() throws IOException {
+    BenchmarkData.init();
+
+    switch (resolver) {
+      case "baseline":
+        peakResolver = new BaselinePeakDetector();
+        parameters = new BaselinePeakDetectorParameters();
+        parameters.getParameter(BaselinePeakDetectorParameters.MIN_PEAK_HEIGHT)
+            .setValue(MIN_PEAK_HEIGHT);
+        parameters.getParameter(BaselinePeakDetectorParameters.PEAK_DURATION)
+            .setValue(PEAK_DURATION);
+        parameters.getParameter(BaselinePeakDetectorParameters.BASELINE_LEVEL)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        break;
+      case "minimumsearch":
+        peakResolver = new MinimumSearchPeakDetector();
+        parameters = new MinimumSearchPeakDetectorParameters();
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.CHROMATOGRAPHIC_THRESHOLD_LEVEL)
+            .setValue(0.05);
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.SEARCH_RT_RANGE)
+            .setValue(0.1);
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.MIN_RELATIVE_HEIGHT)
+            .setValue(0.05);
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.MIN_ABSOLUTE_HEIGHT)
+            .setValue(MIN_PEAK_HEIGHT);
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.MIN_RATIO).setValue(1.5);
+        parameters.getParameter(MinimumSearchPeakDetectorParameters.PEAK_DURATION)
+            .setValue(PEAK_DURATION);
+        break;
+      case "noiseamplitude":
+        peakResolver = new NoiseAmplitudePeakDetector();
+        parameters = new NoiseAmplitudePeakDetectorParameters();
+        parameters.getParameter(NoiseAmplitudePeakDetectorParameters.MIN_PEAK_HEIGHT)
+            .setValue(MIN_PEAK_HEIGHT);
+        parameters.getParameter(NoiseAmplitudePeakDetectorParameters.PEAK_DURATION)
+            .setValue(PEAK_DURATION);
+        parameters.getParameter(NoiseAmplitudePeakDetectorParameters.NOISE_AMPLITUDE)
+            .setValue(BenchmarkData.NOISE_LEVEL);
+        break;
+      case "savitzkygolay":
+        peakResolver = new SavitzkyGolayPeakDetector();
+        parameters = new SavitzkyGolayPeakDetectorParameters();
+        parameters.getParameter(SavitzkyGolayPeakDetectorParameters.MIN_PEAK_HEIGHT)
+            .setValue(MIN_PEAK_HEIGHT);
+        parameters.getParameter(SavitzkyGolayPeakDetectorParameters.PEAK_DURATION)
+            .setValue(PEAK_DURATION);
+        parameters
+            .getParameter(SavitzkyGolayPeakDetectorParameters.DERIVATIVE_THRESHOLD_LEVEL)
+            .setValue(0.1);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown peak resolver " + resolver);
+    }
+
+    dataFile = BenchmarkData.createSyntheticFile(size, false, 0);
+    chromatograms = BenchmarkData.buildChromatograms(dataFile);
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkData.close(dataFile);
+  }
+
+  @Benchmark
+  public int resolvePeaks() throws Exception {
+    int resolvedPeaks = 0;
+    for (Feature chromatogram : chromatograms)
+      resolvedPeaks += peakResolver
+          .resolvePeaks(chromatogram, parameters, null, mzCenterFunction, 0.0, 0.0).length;
+    return resolvedPeaks;
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.modules.rawdatamethods.rawdataimport.fileformats.MzMLReadTask;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Import of the mzML test files, from the smallest to the largest
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RawDataImportBenchmark {
+
+  @Param({"centroided10.mzML", "profile9.mzML", "centroided13.mzML", "centroided1.mzML",
+      "centroided5.mzML"})
+  public String fileName;
+
+  private File file;
+
+  @Setup
+  public void setup() {
+    BenchmarkData.init();
+    file = new File(BenchmarkData.FIXTURES_DIR, fileName);
+    if (!file.canRead())
+      throw new IllegalStateException("Cannot read test file " + file.getAbsolutePath());
+  }
+
+  @Benchmark
+  public int importMzML() throws IOException {
+    MZmineProject project = new MZmineProjectImpl();
+    RawDataFileImpl newFile = new RawDataFileImpl(fileName);
+    MzMLReadTask task = new MzMLReadTask(project, file, newFile);
+    task.run();
+    try {
+      if (task.getStatus() != TaskStatus.FINISHED)
+        throw new IllegalStateException("Could not import " + file + ": " + task.getErrorMessage());
+      return newFile.getNumOfScans();
+    } finally {
+      BenchmarkData.close(newFile);
+    }
+  }
+
+}
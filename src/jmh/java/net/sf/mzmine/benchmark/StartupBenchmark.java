@@ -0,0 +1,83 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.benchmark;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.batchmode.BatchQueue;
+
+/**
+ * Cold startup of the headless MZmine core. Each measurement runs in a new JVM, so the time
+ * includes class loading. loadAllModules is the startup cost when all modules are loaded, as in the
+ * GUI, loadBatchModules the cost of loading only the modules of a typical batch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+  // The module classes are named by strings, so they are not loaded before the measurement
+  private static final String BATCH_MODULES[] =
+      {"net.sf.mzmine.modules.rawdatamethods.rawdataimport.RawDataImportModule",
+          "net.sf.mzmine.modules.rawdatamethods.peakpicking.massdetection.MassDetectionModule",
+          "net.sf.mzmine.modules.masslistmethods.chromatogrambuilder.ChromatogramBuilderModule",
+          "net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.DeconvolutionModule",
+          "net.sf.mzmine.modules.peaklistmethods.isotopes.deisotoper.IsotopeGrouperModule",
+          "net.sf.mzmine.modules.peaklistmethods.alignment.join.JoinAlignerModule",
+          "net.sf.mzmine.modules.peaklistmethods.gapfilling.peakfinder.PeakFinderModule",
+          "net.sf.mzmine.modules.peaklistmethods.io.csvexport.CSVExportModule"};
+
+  @Benchmark
+  public int loadAllModules() {
+    BenchmarkData.init();
+    return MZmineCore.getAllModules().size();
+  }
+
+  @Benchmark
+  public int loadBatchModules() throws Exception {
+    BenchmarkData.init();
+    StringBuilder batchXML = new StringBuilder("<batch>");
+    for (String moduleClassName : BATCH_MODULES)
+      batchXML.append("<batchstep method=\"" + moduleClassName + "\"/>");
+    batchXML.append("</batch>");
+    Document batchDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new InputSource(new StringReader(batchXML.toString())));
+    BatchQueue queue = BatchQueue.loadFromXml(batchDocument.getDocumentElement());
+    if (queue.size() != BATCH_MODULES.length)
+      throw new IllegalStateException("Could not load all batch steps");
+    return queue.size();
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.datamodel;
+
+/**
+ * Immutable snapshot of the peak values of a peak list, as a matrix of rows x raw data files. Rows
+ * and raw data files are indexed by their position in the peak list at the time the matrix was
+ * created.
+ */
+public interface FeatureMatrix {
+
+  /**
+   * Returns number of peak list rows in the matrix
+   */
+  public int getNumberOfRows();
+
+  /**
+   * Returns number of raw data files in the matrix
+   */
+  public int getNumberOfRawDataFiles();
+
+  public PeakListRow getRow(int row);
+
+  public RawDataFile getRawDataFile(int file);
+
+  /**
+   * Returns the index of given row, or -1 if the row is not in the matrix
+   */
+  public int getRowIndex(PeakListRow row);
+
+  /**
+   * Returns the index of given raw data file, or -1 if the file is not in the matrix
+   */
+  public int getRawDataFileIndex(RawDataFile file);
+
+  /**
+   * Returns true if the row has a peak in given raw data file
+   */
+  public boolean hasPeak(int row, int file);
+
+  /**
+   * Returns the peak height, or 0 if there is no peak
+   */
+  public double getHeight(int row, int file);
+
+  /**
+   * Returns the peak area, or 0 if there is no peak
+   */
+  public double getArea(int row, int file);
+
+  /**
+   * Returns the retention time of the peak, or 0 if there is no peak
+   */
+  public double getRT(int row, int file);
+
+}
@@ -199,6 +199,13 @@ public interface PeakList {
    */
   public PeakListRow getPeakRow(Feature peak);
 
+  /**
+   * Returns the heights, areas and retention times of all peaks as an immutable matrix of rows x
+   * raw data files. The matrix is cached and only rebuilt after rows or their peaks have changed.
+   * The matrix is a snapshot, so callers should call this method again instead of keeping it.
+   */
+  public @Nonnull FeatureMatrix getFeatureMatrix();
+
   public void addDescriptionOfAppliedTask(PeakListAppliedMethod appliedMethod);
 
   /**
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.datamodel.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
+import net.sf.mzmine.datamodel.PeakListRow;
+import net.sf.mzmine.datamodel.RawDataFile;
+
+/**
+ * Implementation of FeatureMatrix. The values are stored column by column (one column per raw data
+ * file) in dense arrays, and the present peaks in a bitmask, so the whole matrix takes a few
+ * arrays instead of one map lookup per cell.
+ */
+public class SimpleFeatureMatrix implements FeatureMatrix {
+
+  private final PeakListRow rows[];
+  private final RawDataFile files[];
+  private final Map<PeakListRow, Integer> rowIndexes;
+  private final Map<RawDataFile, Integer> fileIndexes;
+
+  // Value of row r in file f at index f * rows.length + r
+  private final double heights[], areas[], rts[];
+
+  // Bit r of column f is set if the row r has a peak in file f. Each column starts with a new
+  // word, so the columns can be filled in parallel.
+  private final long present[];
+  private final int wordsPerColumn;
+
+  // Modification counts of the rows at the time the matrix was created
+  private final int rowModifications[];
+
+  // False if some rows cannot report their changes
+  private final boolean changesDetectable;
+
+  public SimpleFeatureMatrix(PeakListRow rows[], RawDataFile files[]) {
+
+    this.rows = rows.clone();
+    this.files = files.clone();
+
+    rowIndexes = new HashMap<>(rows.length * 2);
+    for (int r = 0; r < rows.length; r++)
+      rowIndexes.put(rows[r], r);
+    fileIndexes = new HashMap<>(files.length * 2);
+    for (int f = 0; f < files.length; f++)
+      fileIndexes.put(files[f], f);
+
+    rowModifications = new int[rows.length];
+    boolean detectable = true;
+    for (int r = 0; r < rows.length; r++) {
+      rowModifications[r] = getModificationCount(rows[r]);
+      if (rowModifications[r] < 0)
+        detectable = false;
+    }
+    changesDetectable = detectable;
+
+    final int size = rows.length * files.length;
+    heights = new double[size];
+    areas = new double[size];
+    rts = new double[size];
+    wordsPerColumn = (rows.length + 63) >>> 6;
+    present = new long[wordsPerColumn * files.length];
+
+    IntStream.range(0, files.length).parallel().forEach(f -> {
+      final RawDataFile file = this.files[f];
+      final int offset = f * this.rows.length;
+      for (int r = 0; r < this.rows.length; r++) {
+        Feature peak = this.rows[r].getPeak(file);
+        if (peak == null)
+          continue;
+        heights[offset + r] = peak.getHeight();
+        areas[offset + r] = peak.getArea();
+        rts[offset + r] = peak.getRT();
+        present[f * wordsPerColumn + (r >>> 6)] |= 1L << r;
+      }
+    });
+  }
+
+  /**
+   * Returns true if the matrix still matches given rows, i.e. no row was added, removed or had its
+   * peaks changed since the matrix was created. Rows whose changes cannot be detected make the
+   * matrix always stale.
+   */
+  boolean isUpToDate(List<PeakListRow> currentRows) {
+    if (currentRows.size() != rows.length)
+      return false;
+    for (int r = 0; r < rows.length; r++) {
+      final PeakListRow row = currentRows.get(r);
+      if ((row != rows[r]) || (rowModifications[r] < 0)
+          || (getModificationCount(row) != rowModifications[r]))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns false if the matrix contains rows whose changes cannot be detected, so the matrix is
+   * always stale
+   */
+  boolean areChangesDetectable() {
+    return changesDetectable;
+  }
+
+  private static int getModificationCount(PeakListRow row) {
+    if (row instanceof SimplePeakListRow)
+      return ((SimplePeakListRow) row).getModificationCount();
+    // Changes of other row implementations cannot be detected
+    return -1;
+  }
+
+  @Override
+  public int getNumberOfRows() {
+    return rows.length;
+  }
+
+  @Override
+  public int getNumberOfRawDataFiles() {
+    return files.length;
+  }
+
+  @Override
+  public PeakListRow getRow(int row) {
+    return rows[row];
+  }
+
+  @Override
+  public RawDataFile getRawDataFile(int file) {
+    return files[file];
+  }
+
+  @Override
+  public int getRowIndex(PeakListRow row) {
+    Integer index = rowIndexes.get(row);
+    return (index == null) ? -1 : index;
+  }
+
+  @Override
+  public int getRawDataFileIndex(RawDataFile file) {
+    Integer index = fileIndexes.get(file);
+    return (index == null) ? -1 : index;
+  }
+
+  @Override
+  public boolean hasPeak(int row, int file) {
+    return (present[file * wordsPerColumn + (row >>> 6)] & (1L << row)) != 0;
+  }
+
+  @Override
+  public double getHeight(int row, int file) {
+    return heights[file * rows.length + row];
+  }
+
+  @Override
+  public double getArea(int row, int file) {
+    return areas[file * rows.length + row];
+  }
+
+  @Override
+  public double getRT(int row, int file) {
+    return rts[file * rows.length + row];
+  }
+
+}
@@ -28,6 +28,7 @@ import java.util.Vector;
 import java.util.stream.Stream;
 import com.google.common.collect.Range;
 import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
 import net.sf.mzmine.datamodel.RawDataFile;
@@ -47,6 +48,13 @@ public class SimplePeakList implements PeakList {
   private Vector<PeakListAppliedMethod> descriptionOfAppliedTasks;
   private String dateCreated;
   private Range<Double> mzRange, rtRange;
+  private SimpleFeatureMatrix featureMatrix;
+
+  // Incremented whenever rows are added or removed. Together with the peak change count of the
+  // rows, it lets getFeatureMatrix() skip checking all rows when nothing changed.
+  private volatile int rowListModifications = 0;
+  private int matrixRowListModifications;
+  private long matrixPeakChanges;
 
   public static DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
 
@@ -173,6 +181,7 @@ public class SimplePeakList implements PeakList {
     }
 
     peakListRows.add(row);
+    rowListModifications++;
     if (row.getDataPointMaxIntensity() > maxDataPointIntensity) {
       maxDataPointIntensity = row.getDataPointMaxIntensity();
     }
@@ -228,6 +237,7 @@ public class SimplePeakList implements PeakList {
    */
   public void removeRow(PeakListRow row) {
     peakListRows.remove(row);
+    rowListModifications++;
 
     // We have to update the project tree model
     MZmineProjectImpl project =
@@ -310,6 +320,28 @@ public class SimplePeakList implements PeakList {
     return null;
   }
 
+  /**
+   * @see net.sf.mzmine.datamodel.PeakList#getFeatureMatrix()
+   */
+  public synchronized FeatureMatrix getFeatureMatrix() {
+
+    // The counts are read before the rows are checked, so changes made meanwhile are checked in
+    // the next call
+    final int rowListCount = rowListModifications;
+    final long peakChanges = SimplePeakListRow.getPeakChangeCount();
+    if ((featureMatrix != null) && featureMatrix.areChangesDetectable()
+        && (rowListCount == matrixRowListModifications) && (peakChanges == matrixPeakChanges))
+      return featureMatrix;
+
+    if ((featureMatrix == null) || !featureMatrix.isUpToDate(peakListRows)) {
+      featureMatrix =
+          new SimpleFeatureMatrix(peakListRows.toArray(new PeakListRow[0]), dataFiles);
+    }
+    matrixRowListModifications = rowListCount;
+    matrixPeakChanges = peakChanges;
+    return featureMatrix;
+  }
+
   public void setName(String name) {
     this.name = name;
   }
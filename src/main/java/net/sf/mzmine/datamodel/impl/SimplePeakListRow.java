@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.IsotopePattern;
 import net.sf.mzmine.datamodel.PeakIdentity;
@@ -59,6 +60,14 @@ public class SimplePeakListRow implements PeakListRow {
   private double averageRT, averageMZ, averageHeight, averageArea;
   private int rowCharge;
 
+  // Incremented whenever the peaks of this row change, so that cached feature matrices of the
+  // peak list can detect the change
+  private volatile int modificationCount = 0;
+
+  // Incremented whenever the peaks of any row change, so that a peak list can check in constant
+  // time that none of its rows changed
+  private static final AtomicLong peakChangeCount = new AtomicLong();
+
   public SimplePeakListRow(int myID) {
     this.myID = myID;
     peaks = new ConcurrentHashMap<RawDataFile, Feature>();
@@ -83,6 +92,8 @@ public class SimplePeakListRow implements PeakListRow {
 
   public void removePeak(RawDataFile file) {
     this.peaks.remove(file);
+    modificationCount++;
+    peakChangeCount.incrementAndGet();
     calculateAverageValues();
   }
 
@@ -106,6 +117,8 @@ public class SimplePeakListRow implements PeakListRow {
 
     // ConcurrentHashMap is already synchronized
     peaks.put(rawData, peak);
+    modificationCount++;
+    peakChangeCount.incrementAndGet();
 
     if (peak.getRawDataPointsIntensityRange().upperEndpoint() > maxDataPointIntensity)
       maxDataPointIntensity = peak.getRawDataPointsIntensityRange().upperEndpoint();
@@ -357,6 +370,14 @@ public class SimplePeakListRow implements PeakListRow {
   }
   // End DorresteinLab edit
 
+  int getModificationCount() {
+    return modificationCount;
+  }
+
+  static long getPeakChangeCount() {
+    return peakChangeCount.get();
+  }
+
   // Gauthier edit
   /**
    * Update average values
@@ -98,7 +98,7 @@ public class TaskProgressTable extends JPanel implements ActionListener {
     // Set the width for first column (task description)
     taskTable.getColumnModel().getColumn(0).setPreferredWidth(350);
 
-    jJobScroll.setPreferredSize(new Dimension(600, 120));
+    jJobScroll.setPreferredSize(new Dimension(800, 120));
 
   }
 
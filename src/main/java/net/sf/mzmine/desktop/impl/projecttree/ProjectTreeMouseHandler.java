@@ -24,6 +24,8 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.swing.JPopupMenu;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -40,6 +42,7 @@ import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.peaklistmethods.orderpeaklists.OrderPeakListsModule;
 import net.sf.mzmine.modules.peaklistmethods.orderpeaklists.OrderPeakListsParameters;
+import net.sf.mzmine.modules.projectmethods.tempfilecompaction.TempFileCompactionModule;
 import net.sf.mzmine.modules.rawdatamethods.orderdatafiles.OrderDataFilesModule;
 import net.sf.mzmine.modules.rawdatamethods.orderdatafiles.OrderDataFilesParameters;
 import net.sf.mzmine.modules.rawdatamethods.rawdataexport.RawDataExportModule;
@@ -239,10 +242,14 @@ public class ProjectTreeMouseHandler extends MouseAdapter implements ActionListe
 
     if (command.equals("REMOVE_MASSLIST")) {
       MassList selectedMassLists[] = tree.getSelectedObjects(MassList.class);
+      Set<RawDataFile> changedFiles = new HashSet<>();
       for (MassList massList : selectedMassLists) {
         Scan scan = massList.getScan();
         scan.removeMassList(massList);
+        changedFiles.add(scan.getDataFile());
       }
+      for (RawDataFile dataFile : changedFiles)
+        TempFileCompactionModule.compactIfNeeded(dataFile);
     }
 
     if (command.equals("REMOVE_ALL_MASSLISTS")) {
@@ -258,6 +265,7 @@ public class ProjectTreeMouseHandler extends MouseAdapter implements ActionListe
             if (ml != null)
               scan.removeMassList(ml);
           }
+          TempFileCompactionModule.compactIfNeeded(dataFile);
         }
       }
     }
@@ -26,6 +26,7 @@ import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
 import net.sf.mzmine.parameters.parametertypes.BooleanParameter;
+import net.sf.mzmine.parameters.parametertypes.PercentParameter;
 import net.sf.mzmine.parameters.parametertypes.WindowSettingsParameter;
 import net.sf.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import net.sf.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
@@ -45,9 +46,25 @@ public class MZminePreferences extends SimpleParameterSet {
 
   public static final NumOfThreadsParameter numOfThreads = new NumOfThreadsParameter();
 
+  public static final PercentParameter taskMemoryLimit = new PercentParameter(
+      "Memory available to tasks",
+      "Tasks which declare their memory requirements are only started while their estimated memory"
+          + " fits in this ratio of the maximum heap size",
+      0.8, 0.0, 1.0);
+
   public static final OptionalModuleParameter proxySettings = new OptionalModuleParameter(
       "Use proxy", "Use proxy for internet connection?", new ProxySettings());
 
+  public static final OptionalModuleParameter onlineDBCache = new OptionalModuleParameter(
+      "Cache online database results",
+      "Store the results of online database searches on disk and reuse them in later searches",
+      new OnlineDBCacheSettings(), true);
+
+  public static final OptionalModuleParameter tempFileCompaction = new OptionalModuleParameter(
+      "Compact temporary files",
+      "Automatically reclaim the disk space of removed scans and mass lists in the temporary files",
+      new TempFileCompactionSettings(), true);
+
   public static final FileNameParameter rExecPath = new FileNameParameter("R executable path",
       "Full R executable file path (If left blank, MZmine will try to find out automatically). On Windows, this should point to your R.exe file.");
 
@@ -62,8 +79,9 @@ public class MZminePreferences extends SimpleParameterSet {
   public static final WindowSettingsParameter windowSetttings = new WindowSettingsParameter();
 
   public MZminePreferences() {
-    super(new Parameter[] {mzFormat, rtFormat, intensityFormat, numOfThreads, proxySettings,
-        rExecPath, sendStatistics, windowSetttings, sendErrorEMail});
+    super(new Parameter[] {mzFormat, rtFormat, intensityFormat, numOfThreads, taskMemoryLimit,
+        proxySettings, onlineDBCache, tempFileCompaction, rExecPath, sendStatistics,
+        windowSetttings, sendErrorEMail});
   }
 
   @Override
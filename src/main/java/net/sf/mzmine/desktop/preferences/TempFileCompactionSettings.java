@@ -0,0 +1,44 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.desktop.preferences;
+
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+import net.sf.mzmine.parameters.parametertypes.PercentParameter;
+
+/**
+ * Settings of the automatic compaction of the temporary files of raw data files
+ */
+public class TempFileCompactionSettings extends SimpleParameterSet {
+
+  public static final PercentParameter deadSpaceRatio = new PercentParameter("Removed data ratio",
+      "A temporary file is compacted when this ratio of its size is occupied by removed scans or mass lists",
+      0.5);
+
+  public static final IntegerParameter minDeadSpace = new IntegerParameter(
+      "Minimum removed data (MB)",
+      "A temporary file is only compacted if its removed scans or mass lists occupy at least this size",
+      100, 0, null);
+
+  public TempFileCompactionSettings() {
+    super(new Parameter[] {deadSpaceRatio, minDeadSpace});
+  }
+
+}
@@ -21,7 +21,9 @@ package net.sf.mzmine.main;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Map;
@@ -40,7 +42,9 @@ import net.sf.mzmine.main.NewVersionCheck.CheckType;
 import net.sf.mzmine.main.impl.MZmineConfigurationImpl;
 import net.sf.mzmine.modules.MZmineModule;
 import net.sf.mzmine.modules.MZmineRunnableModule;
+import net.sf.mzmine.modules.batchmode.BatchCoordinator;
 import net.sf.mzmine.modules.batchmode.BatchModeModule;
+import net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch.OnlineDBCache;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.WindowSettingsParameter;
 import net.sf.mzmine.project.ProjectManager;
@@ -66,10 +70,13 @@ public final class MZmineCore {
   private static Map<Class<?>, MZmineModule> initializedModules =
       new Hashtable<Class<?>, MZmineModule>();
 
+  // Modules which are being loaded, only accessed in loadModule()
+  private static final Map<Class<?>, MZmineModule> loadingModules =
+      new HashMap<Class<?>, MZmineModule>();
+
   /**
    * Main method
    */
-  @SuppressWarnings("unchecked")
   public static void main(String args[]) {
 
     // In the beginning, set the default locale to English, to avoid
@@ -91,7 +98,7 @@ public final class MZmineCore {
     logger.info("Starting MZmine " + getMZmineVersion());
 
     // Remove old temporary files, if we find any
-    TmpFileCleanup.removeOldTemporaryFiles();
+    TmpFileCleanup.removeOldTemporaryFilesInBackground();
 
     logger.fine("Loading core classes..");
 
@@ -107,38 +114,14 @@ public final class MZmineCore {
     projectManager.initModule();
     taskController.initModule();
 
-    logger.fine("Loading modules");
-
-    for (Class<?> moduleClass : MZmineModulesList.MODULES) {
-
-      try {
-
-        logger.finest("Loading module " + moduleClass.getName());
-
-        // Create instance and init module
-        MZmineModule moduleInstance = (MZmineModule) moduleClass.newInstance();
-
-        // Add to the module list
-        initializedModules.put(moduleClass, moduleInstance);
-
-        // Create an instance of parameter set
-        Class<? extends ParameterSet> parameterSetClass = moduleInstance.getParameterSetClass();
-        ParameterSet parameterSetInstance = parameterSetClass.newInstance();
-
-        // Add the parameter set to the configuration
-        configuration.setModuleParameters((Class<MZmineModule>) moduleClass, parameterSetInstance);
-
-      } catch (Throwable e) {
-        logger.log(Level.SEVERE, "Could not load module " + moduleClass, e);
-        e.printStackTrace();
-        continue;
-      }
-
-    }
-
     // If we have no arguments, run in GUI mode, otherwise run in batch mode
     if (args.length == 0) {
 
+      // The GUI needs all modules for the menus. In batch mode, the modules are loaded on first
+      // use, e.g. when they are named in the batch file.
+      logger.fine("Loading modules");
+      getAllModules();
+
       // Create the Swing GUI in the event-dispatching thread, as is
       // generally recommended
       Runnable desktopInit = new Runnable() {
@@ -155,7 +138,7 @@ public final class MZmineCore {
 
           // add desktop menu icon
           for (Class<?> moduleClass : MZmineModulesList.MODULES) {
-            MZmineModule module = initializedModules.get(moduleClass);
+            Object module = getModuleInstance(moduleClass);
             if (module instanceof MZmineRunnableModule) {
 
               mainWindow.getMainMenu().addMenuItemForModule((MZmineRunnableModule) module);
@@ -187,6 +170,9 @@ public final class MZmineCore {
       }
     }
 
+    // Remove expired online database responses, the expiration time is set in the preferences
+    OnlineDBCache.removeExpiredEntriesInBackground();
+
     // if we have GUI, show it now
     if (desktop.getMainWindow() != null && !(desktop instanceof HeadLessDesktop)) {
       // update the size and position of the main window
@@ -231,12 +217,40 @@ public final class MZmineCore {
       gatThread.setPriority(Thread.MIN_PRIORITY);
       gatThread.start();
 
-      File batchFile = new File(args[0]);
-      if ((!batchFile.exists()) || (!batchFile.canRead())) {
-        logger.severe("Cannot read batch file " + batchFile);
-        System.exit(1);
+      ExitCode exitCode;
+      if (args[0].equals(BatchModeModule.RESUME_OPTION)) {
+        // Resume a batch from a checkpoint
+        if (args.length != 2) {
+          logger.severe("Usage: " + BatchModeModule.RESUME_OPTION + " <checkpoint>");
+          System.exit(1);
+        }
+        exitCode = BatchModeModule.resumeBatch(new File(args[1]));
+      } else {
+        File batchFile = new File(args[0]);
+        if ((!batchFile.exists()) || (!batchFile.canRead())) {
+          logger.severe("Cannot read batch file " + batchFile);
+          System.exit(1);
+        }
+
+        if (BatchCoordinator.isCoordinatorMode(args)) {
+          // Run the batch in several worker processes
+          try {
+            exitCode =
+                BatchCoordinator.fromArguments(args).run(projectManager.getCurrentProject());
+          } catch (IllegalArgumentException e) {
+            logger.severe(e.getMessage());
+            exitCode = ExitCode.ERROR;
+          }
+        } else if ((args.length == 3)
+            && args[1].equals(BatchCoordinator.WORKER_OUTPUT_OPTION)) {
+          // Worker process started by the coordinator
+          exitCode = BatchModeModule.runBatchWorker(projectManager.getCurrentProject(), batchFile,
+              new File(args[2]));
+        } else {
+          exitCode = BatchModeModule.runBatch(projectManager.getCurrentProject(), batchFile);
+        }
       }
-      ExitCode exitCode = BatchModeModule.runBatch(projectManager.getCurrentProject(), batchFile);
+
       if (exitCode == ExitCode.OK)
         System.exit(0);
       else
@@ -245,6 +259,28 @@ public final class MZmineCore {
 
   }
 
+  /**
+   * Initializes the configuration, project manager and task controller with a headless desktop,
+   * without loading the configuration file. The modules are loaded on first use. This allows MZmine
+   * methods to be called outside of the application, e.g. by the benchmarks.
+   */
+  public static synchronized void initHeadless() {
+
+    if (configuration != null)
+      return;
+
+    Locale.setDefault(new Locale("en", "US"));
+
+    configuration = new MZmineConfigurationImpl();
+    projectManager = new ProjectManagerImpl();
+    taskController = new TaskControllerImpl();
+
+    projectManager.initModule();
+    taskController.initModule();
+
+    desktop = new HeadLessDesktop();
+  }
+
   @Nonnull
   public static TaskController getTaskController() {
     return taskController;
@@ -269,17 +305,79 @@ public final class MZmineCore {
   }
 
   /**
-   * Returns the instance of a module of given class
+   * Returns the instance of a module of given class, loading the module on first use. Returns null
+   * if the class is not listed in MZmineModulesList or the module could not be loaded.
    */
   @SuppressWarnings("unchecked")
   public static <ModuleType> ModuleType getModuleInstance(Class<ModuleType> moduleClass) {
-    return (ModuleType) initializedModules.get(moduleClass);
+    MZmineModule module = initializedModules.get(moduleClass);
+    if (module == null)
+      module = loadModule(moduleClass);
+    return (ModuleType) module;
   }
 
+  /**
+   * Returns the instances of all modules, loading the modules which have not been used yet
+   */
   public static Collection<MZmineModule> getAllModules() {
+    for (Class<?> moduleClass : MZmineModulesList.MODULES) {
+      if (!initializedModules.containsKey(moduleClass))
+        loadModule(moduleClass);
+    }
     return initializedModules.values();
   }
 
+  /**
+   * Creates the instance of a module and its parameter set. The module is only published after its
+   * parameter set is registered, so other threads wait in this method until the module is
+   * complete.
+   */
+  @SuppressWarnings("unchecked")
+  private static synchronized MZmineModule loadModule(Class<?> moduleClass) {
+
+    MZmineModule module = initializedModules.get(moduleClass);
+    if (module != null)
+      return module;
+
+    // The configuration asks for the module while its parameter set is being registered
+    module = loadingModules.get(moduleClass);
+    if (module != null)
+      return module;
+
+    if (!Arrays.asList(MZmineModulesList.MODULES).contains(moduleClass))
+      return null;
+
+    try {
+
+      logger.finest("Loading module " + moduleClass.getName());
+
+      // Create instance and init module
+      MZmineModule moduleInstance = (MZmineModule) moduleClass.newInstance();
+
+      // Create an instance of parameter set
+      Class<? extends ParameterSet> parameterSetClass = moduleInstance.getParameterSetClass();
+      ParameterSet parameterSetInstance = parameterSetClass.newInstance();
+
+      // Add the parameter set to the configuration and the module to the module list
+      loadingModules.put(moduleClass, moduleInstance);
+      try {
+        configuration.setModuleParameters((Class<MZmineModule>) moduleClass,
+            parameterSetInstance);
+      } finally {
+        loadingModules.remove(moduleClass);
+      }
+      initializedModules.put(moduleClass, moduleInstance);
+
+      return moduleInstance;
+
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Could not load module " + moduleClass, e);
+      e.printStackTrace();
+      return null;
+    }
+
+  }
+
   public static RawDataFileWriter createNewFile(String name) throws IOException {
     return new RawDataFileImpl(name);
   }
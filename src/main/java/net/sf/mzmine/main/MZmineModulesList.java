@@ -82,6 +82,7 @@ import net.sf.mzmine.modules.projectmethods.projectclose.ProjectCloseModule;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoadModule;
 import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSaveAsModule;
 import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSaveModule;
+import net.sf.mzmine.modules.projectmethods.tempfilecompaction.TempFileCompactionModule;
 import net.sf.mzmine.modules.rawdatamethods.exportscans.ExtractScansModule;
 import net.sf.mzmine.modules.rawdatamethods.filtering.alignscans.AlignScansModule;
 import net.sf.mzmine.modules.rawdatamethods.filtering.baselinecorrection.BaselineCorrectionModule;
@@ -97,6 +98,7 @@ import net.sf.mzmine.modules.rawdatamethods.peakpicking.msms.MsMsPeakPickerModul
 import net.sf.mzmine.modules.rawdatamethods.peakpicking.targetedpeakdetection.TargetedPeakDetectionModule;
 import net.sf.mzmine.modules.rawdatamethods.rawdataexport.RawDataExportModule;
 import net.sf.mzmine.modules.rawdatamethods.rawdataimport.RawDataImportModule;
+import net.sf.mzmine.modules.rawdatamethods.syntheticdata.SyntheticDataModule;
 import net.sf.mzmine.modules.tools.isotopepatternpreview.IsotopePatternPreviewModule;
 import net.sf.mzmine.modules.tools.mzrangecalculator.MzRangeFormulaCalculatorModule;
 import net.sf.mzmine.modules.tools.mzrangecalculator.MzRangeMassCalculatorModule;
@@ -128,7 +130,7 @@ public class MZmineModulesList {
       // Project methods
 
       ProjectLoadModule.class, ProjectSaveModule.class, ProjectSaveAsModule.class,
-      ProjectCloseModule.class,
+      ProjectCloseModule.class, TempFileCompactionModule.class,
 
       // Batch mode
       BatchModeModule.class,
@@ -141,6 +143,7 @@ public class MZmineModulesList {
       GridMassModule.class, ManualPeakPickerModule.class, MsMsPeakPickerModule.class,
       ScanFiltersModule.class, CropFilterModule.class, BaselineCorrectionModule.class,
       AlignScansModule.class, ScanSmoothingModule.class, OrderDataFilesModule.class,
+      SyntheticDataModule.class,
 
       // Alignment
       OrderPeakListsModule.class, JoinAlignerModule.class, HierarAlignerGcModule.class,
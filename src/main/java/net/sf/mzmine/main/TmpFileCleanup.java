@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
 import java.nio.channels.FileLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,16 +31,34 @@ class TmpFileCleanup {
 
   private static Logger logger = Logger.getLogger(TmpFileCleanup.class.getName());
 
+  /**
+   * Removes the old temporary files in a background thread, so scanning the temporary directory
+   * does not delay the startup
+   */
+  static void removeOldTemporaryFilesInBackground() {
+    Thread cleanupThread =
+        new Thread(TmpFileCleanup::removeOldTemporaryFiles, "Temporary files cleanup");
+    cleanupThread.setDaemon(true);
+    cleanupThread.setPriority(Thread.MIN_PRIORITY);
+    cleanupThread.start();
+  }
+
   static void removeOldTemporaryFiles() {
 
     logger.fine("Checking for old temporary files...");
+
+    // Files created by this MZmine instance may be found while they are being created, before they
+    // are locked. Only files modified before the start of the JVM are removed, with a margin for
+    // the time resolution of the file system.
+    final long startTime = ManagementFactory.getRuntimeMXBean().getStartTime() - 2000;
+
     try {
 
-      // Find all temporary files with the mask mzmine*.scans
+      // Find all temporary files with the mask mzmine*.scans or mzmine*.pyramid
       File tempDir = new File(System.getProperty("java.io.tmpdir"));
       File remainingTmpFiles[] = tempDir.listFiles(new FilenameFilter() {
         public boolean accept(File dir, String name) {
-          return name.matches("mzmine.*\\.scans");
+          return name.matches("mzmine.*\\.(scans|pyramid)");
         }
       });
 
@@ -50,6 +69,10 @@ class TmpFileCleanup {
           if (!remainingTmpFile.canWrite())
             continue;
 
+          // Skip files created after this MZmine instance was started
+          if (remainingTmpFile.lastModified() >= startTime)
+            continue;
+
           // Try to obtain a lock on the file
           RandomAccessFile rac = new RandomAccessFile(remainingTmpFile, "rw");
 
@@ -41,6 +41,7 @@ import javax.xml.xpath.XPathFactory;
 import net.sf.mzmine.desktop.preferences.MZminePreferences;
 import net.sf.mzmine.main.MZmineConfiguration;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.main.MZmineModulesList;
 import net.sf.mzmine.modules.MZmineModule;
 import net.sf.mzmine.parameters.ParameterSet;
 
@@ -59,14 +60,24 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
 
   private final Map<Class<? extends MZmineModule>, ParameterSet> moduleParameters;
 
+  // Parameters of modules which were not loaded yet when the configuration file was loaded, by the
+  // module class name. The values are set when the module is loaded.
+  private final Map<String, Element> pendingModuleParameters;
+
   public MZmineConfigurationImpl() {
     moduleParameters = new Hashtable<Class<? extends MZmineModule>, ParameterSet>();
+    pendingModuleParameters = new Hashtable<String, Element>();
     preferences = new MZminePreferences();
   }
 
   @Override
   public ParameterSet getModuleParameters(Class<? extends MZmineModule> moduleClass) {
     ParameterSet parameters = moduleParameters.get(moduleClass);
+    if (parameters == null) {
+      // Modules are loaded on first use
+      MZmineCore.getModuleInstance(moduleClass);
+      parameters = moduleParameters.get(moduleClass);
+    }
     if (parameters == null) {
       throw new IllegalArgumentException(
           "Module " + moduleClass + " does not have any parameter set instance");
@@ -75,7 +86,7 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
   }
 
   @Override
-  public void setModuleParameters(Class<? extends MZmineModule> moduleClass,
+  public synchronized void setModuleParameters(Class<? extends MZmineModule> moduleClass,
       ParameterSet parameters) {
     assert moduleClass != null;
     assert parameters != null;
@@ -85,6 +96,9 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
       throw new IllegalArgumentException("Given parameter set is an instance of "
           + parameters.getClass() + " instead of " + parametersClass);
     }
+    Element pendingElement = pendingModuleParameters.remove(moduleClass.getName());
+    if (pendingElement != null)
+      parameters.loadValuesFromXML(pendingElement);
     moduleParameters.put(moduleClass, parameters);
 
   }
@@ -120,7 +134,7 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
   }
 
   @Override
-  public void loadConfiguration(File file) throws IOException {
+  public synchronized void loadConfiguration(File file) throws IOException {
 
     try {
       DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
@@ -142,19 +156,32 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
 
       logger.finest("Loading modules configuration");
 
-      for (MZmineModule module : MZmineCore.getAllModules()) {
+      // The module elements are read in one pass. Parameters of modules which are not loaded yet
+      // are kept until the modules are loaded.
+      expr = xpath.compile("//configuration/modules/module");
+      nodes = (NodeList) expr.evaluate(configuration, XPathConstants.NODESET);
+      for (int i = 0; i < nodes.getLength(); i++) {
 
-        String className = module.getClass().getName();
-        expr =
-            xpath.compile("//configuration/modules/module[@class='" + className + "']/parameters");
-        nodes = (NodeList) expr.evaluate(configuration, XPathConstants.NODESET);
-        if (nodes.getLength() != 1)
+        Element moduleElement = (Element) nodes.item(i);
+        String className = moduleElement.getAttribute("class");
+        NodeList parameterNodes = moduleElement.getElementsByTagName("parameters");
+        if (parameterNodes.getLength() != 1)
           continue;
-
-        Element moduleElement = (Element) nodes.item(0);
-
-        ParameterSet moduleParameters = getModuleParameters(module.getClass());
-        moduleParameters.loadValuesFromXML(moduleElement);
+        Element parametersElement = (Element) parameterNodes.item(0);
+
+        ParameterSet loadedParameters = null;
+        for (Map.Entry<Class<? extends MZmineModule>, ParameterSet> entry : moduleParameters
+            .entrySet()) {
+          if (entry.getKey().getName().equals(className)) {
+            loadedParameters = entry.getValue();
+            break;
+          }
+        }
+
+        if (loadedParameters != null)
+          loadedParameters.loadValuesFromXML(parametersElement);
+        else
+          pendingModuleParameters.put(className, parametersElement);
       }
 
       logger.info("Loaded configuration from file " + file);
@@ -180,20 +207,27 @@ public class MZmineConfigurationImpl implements MZmineConfiguration {
       Element modulesElement = configuration.createElement("modules");
       configRoot.appendChild(modulesElement);
 
-      // traverse modules
-      for (MZmineModule module : MZmineCore.getAllModules()) {
+      // traverse modules, without loading the modules which were not used
+      for (Class<?> moduleClass : MZmineModulesList.MODULES) {
 
-        String className = module.getClass().getName();
+        String className = moduleClass.getName();
+        ParameterSet moduleParameters = this.moduleParameters.get(moduleClass);
+        Element pendingElement = pendingModuleParameters.get(className);
+        if ((moduleParameters == null) && (pendingElement == null))
+          continue;
 
         Element moduleElement = configuration.createElement("module");
         moduleElement.setAttribute("class", className);
         modulesElement.appendChild(moduleElement);
 
-        Element paramElement = configuration.createElement("parameters");
-        moduleElement.appendChild(paramElement);
-
-        ParameterSet moduleParameters = getModuleParameters(module.getClass());
-        moduleParameters.saveValuesToXML(paramElement);
+        if (moduleParameters != null) {
+          Element paramElement = configuration.createElement("parameters");
+          moduleElement.appendChild(paramElement);
+          moduleParameters.saveValuesToXML(paramElement);
+        } else {
+          // Keep the values loaded from the previous configuration file
+          moduleElement.appendChild(configuration.importNode(pendingElement, true));
+        }
 
       }
 
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.batchmode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectOpeningTask;
+import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSaveParameters;
+import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSavingTask;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Checkpoint of a running batch. The checkpoint consists of the project, saved as a regular MZmine
+ * project file, and an XML file describing the state of the batch: the batch queue, the next step
+ * to run, the performance report file of the batch, and the data files and peak lists created by
+ * the last steps, which are used by the following step. The data files and peak lists are
+ * identified by their names and their order in the project.
+ */
+class BatchCheckpoint {
+
+  private static final Logger logger = Logger.getLogger(BatchCheckpoint.class.getName());
+
+  public static final String CHECKPOINT_FILENAME = "checkpoint.xml";
+
+  private static final String CHECKPOINT_ELEMENT = "checkpoint";
+  private static final String NEXT_STEP_ELEMENT = "nextstep";
+  private static final String INTERVAL_ELEMENT = "interval";
+  private static final String REPORT_ELEMENT = "report";
+  private static final String PROJECT_ELEMENT = "project";
+  private static final String LAST_FILE_ELEMENT = "lastfile";
+  private static final String LAST_PEAKLIST_ELEMENT = "lastpeaklist";
+  private static final String BATCH_ELEMENT = "batch";
+
+  private final File directory;
+  private final BatchQueue queue;
+  private final int nextStep, interval;
+  private final File projectFile, reportFile;
+  private final List<String> lastFileNames, lastPeakListNames;
+
+  private BatchCheckpoint(File directory, BatchQueue queue, int nextStep, int interval,
+      File projectFile, File reportFile, List<String> lastFileNames,
+      List<String> lastPeakListNames) {
+    this.directory = directory;
+    this.queue = queue;
+    this.nextStep = nextStep;
+    this.interval = interval;
+    this.projectFile = projectFile;
+    this.reportFile = reportFile;
+    this.lastFileNames = lastFileNames;
+    this.lastPeakListNames = lastPeakListNames;
+  }
+
+  /**
+   * Saves a checkpoint to the given directory, replacing the previous checkpoint. The previous
+   * checkpoint remains valid until the new one is completely saved.
+   *
+   * @param nextStep Index of the first batch step which has not been processed yet
+   * @param reportFile Performance report file of the batch, null if disabled
+   */
+  static void save(File directory, int interval, BatchQueue queue, int nextStep,
+      File reportFile, MZmineProject project, List<RawDataFile> lastFiles,
+      List<PeakList> lastPeakLists) throws Exception {
+
+    if (!directory.exists() && !directory.mkdirs())
+      throw new IOException("Cannot create checkpoint directory " + directory);
+
+    final File checkpointFile = new File(directory, CHECKPOINT_FILENAME);
+    final File previousProjectFile =
+        checkpointFile.exists() ? load(checkpointFile).projectFile : null;
+    final File projectFile =
+        new File(directory, String.format("checkpoint-step-%04d.mzmine", nextStep));
+
+    logger.info("Saving checkpoint of the batch before step # " + (nextStep + 1) + " to "
+        + directory);
+
+    // Save the project, keeping its location
+    final File originalProjectFile = project.getProjectFile();
+    ParameterSet saveParameters = new ProjectSaveParameters();
+    saveParameters.getParameter(ProjectSaveParameters.projectFile).setValue(projectFile);
+    ProjectSavingTask savingTask = new ProjectSavingTask(project, saveParameters);
+    savingTask.run();
+    ((MZmineProjectImpl) project).setProjectFile(originalProjectFile);
+    if (savingTask.getStatus() != TaskStatus.FINISHED)
+      throw new IOException("Could not save the project: " + savingTask.getErrorMessage());
+
+    // Describe the state of the batch
+    final Document document =
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    final Element checkpointElement = document.createElement(CHECKPOINT_ELEMENT);
+    document.appendChild(checkpointElement);
+    appendElement(checkpointElement, NEXT_STEP_ELEMENT, String.valueOf(nextStep));
+    appendElement(checkpointElement, INTERVAL_ELEMENT, String.valueOf(interval));
+    appendElement(checkpointElement, PROJECT_ELEMENT, projectFile.getName());
+    if (reportFile != null)
+      appendElement(checkpointElement, REPORT_ELEMENT, reportFile.getAbsolutePath());
+    for (RawDataFile dataFile : lastFiles)
+      appendElement(checkpointElement, LAST_FILE_ELEMENT, dataFile.getName());
+    for (PeakList peakList : lastPeakLists)
+      appendElement(checkpointElement, LAST_PEAKLIST_ELEMENT, peakList.getName());
+    final Element batchElement = document.createElement(BATCH_ELEMENT);
+    checkpointElement.appendChild(batchElement);
+    queue.saveToXml(batchElement);
+
+    // Write to a temporary file first, so an interrupted write does not damage the checkpoint
+    final File tempFile = new File(directory, CHECKPOINT_FILENAME + ".tmp");
+    final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.transform(new DOMSource(document), new StreamResult(tempFile));
+    Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+
+    if ((previousProjectFile != null) && !previousProjectFile.equals(projectFile))
+      previousProjectFile.delete();
+
+  }
+
+  private static void appendElement(Element parent, String name, String value) {
+    Element element = parent.getOwnerDocument().createElement(name);
+    element.setTextContent(value);
+    parent.appendChild(element);
+  }
+
+  /**
+   * Loads the description of a checkpoint
+   *
+   * @param checkpointFile Checkpoint XML file, or the checkpoint directory
+   */
+  static BatchCheckpoint load(File checkpointFile) throws Exception {
+
+    if (checkpointFile.isDirectory())
+      checkpointFile = new File(checkpointFile, CHECKPOINT_FILENAME);
+    final File directory = checkpointFile.getAbsoluteFile().getParentFile();
+
+    final Element checkpointElement = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(checkpointFile).getDocumentElement();
+    if (!CHECKPOINT_ELEMENT.equals(checkpointElement.getTagName()))
+      throw new IOException(checkpointFile + " is not a batch checkpoint");
+
+    final int nextStep =
+        Integer.parseInt(getElementValues(checkpointElement, NEXT_STEP_ELEMENT).get(0));
+    final int interval =
+        Integer.parseInt(getElementValues(checkpointElement, INTERVAL_ELEMENT).get(0));
+    final File projectFile =
+        new File(directory, getElementValues(checkpointElement, PROJECT_ELEMENT).get(0));
+    final List<String> reportFileNames = getElementValues(checkpointElement, REPORT_ELEMENT);
+    final File reportFile = reportFileNames.isEmpty() ? null : new File(reportFileNames.get(0));
+    final List<String> lastFileNames = getElementValues(checkpointElement, LAST_FILE_ELEMENT);
+    final List<String> lastPeakListNames =
+        getElementValues(checkpointElement, LAST_PEAKLIST_ELEMENT);
+    final Element batchElement =
+        (Element) checkpointElement.getElementsByTagName(BATCH_ELEMENT).item(0);
+    final BatchQueue queue = BatchQueue.loadFromXml(batchElement);
+
+    return new BatchCheckpoint(directory, queue, nextStep, interval, projectFile, reportFile,
+        lastFileNames, lastPeakListNames);
+  }
+
+  private static List<String> getElementValues(Element parent, String name) throws IOException {
+    final NodeList nodes = parent.getElementsByTagName(name);
+    final List<String> values = new ArrayList<>();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      // Skip the elements of the batch queue
+      if (nodes.item(i).getParentNode() == parent)
+        values.add(nodes.item(i).getTextContent());
+    }
+    final boolean optional = name.equals(LAST_FILE_ELEMENT) || name.equals(LAST_PEAKLIST_ELEMENT)
+        || name.equals(REPORT_ELEMENT);
+    if (values.isEmpty() && !optional)
+      throw new IOException("Missing element " + name + " in the batch checkpoint");
+    return values;
+  }
+
+  /**
+   * Opens the project of the checkpoint, which becomes the current project
+   */
+  MZmineProject openProject() throws IOException {
+
+    logger.info("Opening checkpoint project " + projectFile);
+
+    ParameterSet loadParameters = new ProjectLoaderParameters();
+    loadParameters.getParameter(ProjectLoaderParameters.projectFile).setValue(projectFile);
+    ProjectOpeningTask openingTask = new ProjectOpeningTask(loadParameters);
+    openingTask.run();
+    if (openingTask.getStatus() != TaskStatus.FINISHED)
+      throw new IOException("Could not open checkpoint project " + projectFile + ": "
+          + openingTask.getErrorMessage());
+
+    return MZmineCore.getProjectManager().getCurrentProject();
+  }
+
+  /**
+   * @return Data files created by the last steps before the checkpoint
+   */
+  List<RawDataFile> getLastDataFiles(MZmineProject project) throws IOException {
+    List<RawDataFile> remainingFiles = new ArrayList<>();
+    for (RawDataFile dataFile : project.getDataFiles())
+      remainingFiles.add(dataFile);
+    List<RawDataFile> lastFiles = new ArrayList<>();
+    for (String name : lastFileNames) {
+      RawDataFile found = null;
+      for (RawDataFile dataFile : remainingFiles) {
+        if (dataFile.getName().equals(name)) {
+          found = dataFile;
+          break;
+        }
+      }
+      if (found == null)
+        throw new IOException("Data file " + name + " not found in the checkpoint project");
+      // Items with the same name are matched in the order of the project
+      remainingFiles.remove(found);
+      lastFiles.add(found);
+    }
+    return lastFiles;
+  }
+
+  /**
+   * @return Peak lists created by the last steps before the checkpoint
+   */
+  List<PeakList> getLastPeakLists(MZmineProject project) throws IOException {
+    List<PeakList> remainingPeakLists = new ArrayList<>();
+    for (PeakList peakList : project.getPeakLists())
+      remainingPeakLists.add(peakList);
+    List<PeakList> lastPeakLists = new ArrayList<>();
+    for (String name : lastPeakListNames) {
+      PeakList found = null;
+      for (PeakList peakList : remainingPeakLists) {
+        if (peakList.getName().equals(name)) {
+          found = peakList;
+          break;
+        }
+      }
+      if (found == null)
+        throw new IOException("Peak list " + name + " not found in the checkpoint project");
+      remainingPeakLists.remove(found);
+      lastPeakLists.add(found);
+    }
+    return lastPeakLists;
+  }
+
+  File getDirectory() {
+    return directory;
+  }
+
+  BatchQueue getBatchQueue() {
+    return queue;
+  }
+
+  int getNextStep() {
+    return nextStep;
+  }
+
+  int getInterval() {
+    return interval;
+  }
+
+  /**
+   * @return Performance report file of the batch, or null if the report was disabled
+   */
+  File getReportFile() {
+    return reportFile;
+  }
+
+}
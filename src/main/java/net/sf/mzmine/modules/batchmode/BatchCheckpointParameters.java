@@ -0,0 +1,43 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.batchmode;
+
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+import net.sf.mzmine.parameters.parametertypes.filenames.DirectoryParameter;
+
+/**
+ * Settings of the checkpoints saved during a batch
+ */
+public class BatchCheckpointParameters extends SimpleParameterSet {
+
+  public static final DirectoryParameter checkpointDirectory = new DirectoryParameter(
+      "Checkpoint directory",
+      "Directory where the checkpoints are saved. Only the last checkpoint is kept.");
+
+  public static final IntegerParameter checkpointInterval = new IntegerParameter(
+      "Checkpoint interval (steps)",
+      "A checkpoint is saved after every given number of batch steps", 1, 1, null);
+
+  public BatchCheckpointParameters() {
+    super(new Parameter[] {checkpointDirectory, checkpointInterval});
+  }
+
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.batchmode;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.MZmineModuleCategory;
+import net.sf.mzmine.modules.MZmineProcessingModule;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
+import net.sf.mzmine.modules.projectmethods.projectload.ProjectOpeningTask;
+import net.sf.mzmine.modules.rawdatamethods.merge.RawFileMergeModule;
+import net.sf.mzmine.modules.rawdatamethods.orderdatafiles.OrderDataFilesModule;
+import net.sf.mzmine.modules.rawdatamethods.rawdataimport.RawDataImportModule;
+import net.sf.mzmine.modules.rawdatamethods.rawdataimport.RawDataImportParameters;
+import net.sf.mzmine.modules.rawdatamethods.syntheticdata.SyntheticDataModule;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.project.impl.MZmineProjectImpl;
+import net.sf.mzmine.project.impl.ProjectManagerImpl;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExitCode;
+
+/**
+ * Runs a batch in several local processes. The batch is split at the first step which combines
+ * several raw data files or peak lists, e.g. the alignment. The steps before this point are run by
+ * worker JVMs, each processing a shard of the raw data files imported by the first step, and the
+ * results of each worker are saved as an MZmine project. The coordinator then merges the projects
+ * and runs the remaining steps.
+ *
+ * The progress is recorded in the work directory. Running the same command again after a failure
+ * only processes the shards which have not been finished yet.
+ */
+public class BatchCoordinator {
+
+  private static final Logger logger = Logger.getLogger(BatchCoordinator.class.getName());
+
+  public static final String WORKERS_OPTION = "--workers";
+  public static final String FILES_PER_WORKER_OPTION = "--files-per-worker";
+  public static final String RETRIES_OPTION = "--retries";
+  public static final String WORKER_HEAP_OPTION = "--worker-heap";
+  public static final String WORK_DIR_OPTION = "--work-dir";
+  public static final String SKIP_FAILED_OPTION = "--skip-failed";
+
+  /**
+   * Internal option of the worker processes, followed by the output project file
+   */
+  public static final String WORKER_OUTPUT_OPTION = "--worker-output";
+
+  // Categories of modules which process each raw data file or peak list on its own
+  private static final Set<MZmineModuleCategory> perFileCategories =
+      EnumSet.of(MZmineModuleCategory.RAWDATA, MZmineModuleCategory.RAWDATAFILTERING,
+          MZmineModuleCategory.PEAKPICKING, MZmineModuleCategory.PEAKLISTPICKING,
+          MZmineModuleCategory.SPECTRALDECONVOLUTION, MZmineModuleCategory.ISOTOPES,
+          MZmineModuleCategory.PEAKLISTFILTERING);
+
+  // Modules of the above categories which combine or create raw data files
+  private static final Set<Class<?>> crossFileModules = ImmutableSet.<Class<?>>of(
+      RawFileMergeModule.class, OrderDataFilesModule.class, SyntheticDataModule.class);
+
+  private final File batchFile;
+  private int numOfWorkers = 1, filesPerWorker = 1, retries = 2;
+  private String workerHeap;
+  private File workDir;
+  private boolean skipFailed = false;
+
+  /**
+   * Shard of the raw data files, processed by one worker
+   */
+  private static class Shard {
+
+    private final int number;
+    private final File files[];
+    private final File batchFile, projectFile, doneFile, logFile;
+
+    Shard(int number, File files[], File workDir) {
+      this.number = number;
+      this.files = files;
+      String name = String.format("shard-%04d", number);
+      batchFile = new File(workDir, name + ".xml");
+      projectFile = new File(workDir, name + ".mzmine");
+      doneFile = new File(workDir, name + ".done");
+      logFile = new File(workDir, name + ".log");
+    }
+
+    /**
+     * The done marker lists the processed files and the hash of the batch of the shard, so the
+     * shard is processed again if the files or the steps of the batch were changed. The batch of
+     * the shard must have been written before.
+     */
+    private List<String> getDoneMarker() throws IOException {
+      List<String> lines = new ArrayList<>();
+      for (File file : files)
+        lines.add(file.getAbsolutePath());
+      lines.add("batch " + Hashing.sha256().hashBytes(Files.readAllBytes(batchFile.toPath())));
+      return lines;
+    }
+
+    boolean isDone() {
+      if (!doneFile.exists() || !projectFile.exists())
+        return false;
+      try {
+        return Files.readAllLines(doneFile.toPath(), StandardCharsets.UTF_8)
+            .equals(getDoneMarker());
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    void markDone() throws IOException {
+      Files.write(doneFile.toPath(), getDoneMarker(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+      return "shard " + number + " (" + files.length + " files)";
+    }
+
+  }
+
+  BatchCoordinator(File batchFile) {
+    this.batchFile = batchFile;
+    String batchName = batchFile.getName().replaceFirst("\\.[^.]*$", "");
+    this.workDir = new File(batchFile.getAbsoluteFile().getParentFile(), batchName + "_work");
+  }
+
+  /**
+   * @return True if the command line arguments request the coordinator mode
+   */
+  public static boolean isCoordinatorMode(String args[]) {
+    return Arrays.asList(args).contains(WORKERS_OPTION);
+  }
+
+  /**
+   * Creates a coordinator from the command line arguments: the batch file, followed by the options
+   *
+   * @throws IllegalArgumentException if the options are not valid
+   */
+  public static BatchCoordinator fromArguments(String args[]) {
+
+    BatchCoordinator coordinator = new BatchCoordinator(new File(args[0]));
+
+    for (int i = 1; i < args.length; i++) {
+      final String option = args[i];
+      if (option.equals(SKIP_FAILED_OPTION)) {
+        coordinator.skipFailed = true;
+        continue;
+      }
+      if (i + 1 >= args.length)
+        throw new IllegalArgumentException("Missing value of option " + option);
+      final String value = args[++i];
+      switch (option) {
+        case WORKERS_OPTION:
+          coordinator.numOfWorkers = parseNumber(option, value, 1);
+          break;
+        case FILES_PER_WORKER_OPTION:
+          coordinator.filesPerWorker = parseNumber(option, value, 1);
+          break;
+        case RETRIES_OPTION:
+          coordinator.retries = parseNumber(option, value, 0);
+          break;
+        case WORKER_HEAP_OPTION:
+          coordinator.workerHeap = value;
+          break;
+        case WORK_DIR_OPTION:
+          coordinator.workDir = new File(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + option);
+      }
+    }
+
+    return coordinator;
+  }
+
+  private static int parseNumber(String option, String value, int minValue) {
+    try {
+      int number = Integer.parseInt(value);
+      if (number >= minValue)
+        return number;
+    } catch (NumberFormatException e) {
+      // handled below
+    }
+    throw new IllegalArgumentException("Invalid value of option " + option + ": " + value);
+  }
+
+  /**
+   * Returns the index of the first batch step which cannot be run separately for each raw data
+   * file, or the size of the queue if all steps can be run separately
+   */
+  static int findSplitIndex(BatchQueue queue) {
+    for (int i = 0; i < queue.size(); i++) {
+      MZmineProcessingModule module = queue.get(i).getModule();
+      if (!perFileCategories.contains(module.getModuleCategory())
+          || crossFileModules.contains(module.getClass()))
+        return i;
+    }
+    return queue.size();
+  }
+
+  /**
+   * Runs the batch
+   */
+  public ExitCode run(MZmineProject project) {
+
+    logger.info("Running batch " + batchFile + " with " + numOfWorkers + " worker processes");
+
+    try {
+
+      Document parsedBatchXML =
+          DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(batchFile);
+      BatchQueue queue = BatchQueue.loadFromXml(parsedBatchXML.getDocumentElement());
+
+      if (queue.isEmpty() || !(queue.get(0).getModule() instanceof RawDataImportModule)) {
+        logger.severe("The first step of the batch must be the raw data import");
+        return ExitCode.ERROR;
+      }
+
+      final int splitIndex = findSplitIndex(queue);
+      logger.info("Running " + splitIndex + " steps in the workers and "
+          + (queue.size() - splitIndex) + " steps in the coordinator");
+
+      // Split the imported files into shards
+      File files[] = queue.get(0).getParameterSet()
+          .getParameter(RawDataImportParameters.fileNames).getValue();
+      if (!workDir.exists() && !workDir.mkdirs()) {
+        logger.severe("Cannot create work directory " + workDir);
+        return ExitCode.ERROR;
+      }
+      List<Shard> shards = new ArrayList<>();
+      for (int i = 0; i < files.length; i += filesPerWorker) {
+        File shardFiles[] =
+            Arrays.copyOfRange(files, i, Math.min(files.length, i + filesPerWorker));
+        shards.add(new Shard(shards.size() + 1, shardFiles, workDir));
+      }
+
+      // Run the shards which have not been finished in a previous run. The batch of each shard is
+      // written first, so a shard with changed steps is not considered finished.
+      List<Shard> pendingShards = new ArrayList<>();
+      for (Shard shard : shards) {
+        writeShardBatch(queue, splitIndex, shard);
+        if (shard.isDone()) {
+          logger.info("Skipping " + shard + ", finished in a previous run");
+          continue;
+        }
+        pendingShards.add(shard);
+      }
+
+      List<Shard> failedShards = runShards(pendingShards);
+      if (!failedShards.isEmpty()) {
+        if (!skipFailed) {
+          logger.severe("Processing of " + failedShards.size() + " shards failed: " + failedShards
+              + ". Run the batch again to retry them, or use " + SKIP_FAILED_OPTION
+              + " to continue without them. See the log files in " + workDir);
+          return ExitCode.ERROR;
+        }
+        logger.warning("Continuing without " + failedShards.size() + " failed shards: "
+            + failedShards);
+        shards.removeAll(failedShards);
+      }
+
+      // Merge the results of the workers
+      List<RawDataFile> mergedDataFiles = new ArrayList<>();
+      List<PeakList> mergedPeakLists = new ArrayList<>();
+      if (!mergeShards(shards, mergedDataFiles, mergedPeakLists))
+        return ExitCode.ERROR;
+
+      if (splitIndex == queue.size())
+        return ExitCode.OK;
+
+      // Run the remaining steps on the merged project
+      BatchQueue remainingQueue = new BatchQueue();
+      remainingQueue.addAll(queue.subList(splitIndex, queue.size()));
+      ParameterSet parameters = new BatchModeParameters();
+      parameters.getParameter(BatchModeParameters.batchQueue).setValue(remainingQueue);
+      parameters.getParameter(BatchModeParameters.performanceReport).setValue(true);
+      parameters.getParameter(BatchModeParameters.performanceReport).getEmbeddedParameter()
+          .setValue(new File(workDir, "coordinator_report.csv"));
+      BatchTask batchTask =
+          new BatchTask(MZmineCore.getProjectManager().getCurrentProject(), parameters);
+      batchTask.setInitialItems(mergedDataFiles, mergedPeakLists);
+      batchTask.run();
+      if (batchTask.getStatus() == TaskStatus.FINISHED)
+        return ExitCode.OK;
+      else
+        return ExitCode.ERROR;
+
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Error while running batch", e);
+      return ExitCode.ERROR;
+    }
+
+  }
+
+  /**
+   * Writes the batch of a worker: the steps before the split index, importing only the files of
+   * the shard
+   */
+  private void writeShardBatch(BatchQueue queue, int splitIndex, Shard shard) throws Exception {
+
+    BatchQueue shardQueue = new BatchQueue();
+    shardQueue.addAll(queue.subList(0, splitIndex));
+    shardQueue = shardQueue.clone();
+    shardQueue.get(0).getParameterSet().getParameter(RawDataImportParameters.fileNames)
+        .setValue(shard.files);
+
+    final Document document =
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    final Element element = document.createElement("batch");
+    document.appendChild(element);
+    shardQueue.saveToXml(element);
+
+    final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+    transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+    transformer.transform(new DOMSource(document), new StreamResult(shard.batchFile));
+
+  }
+
+  /**
+   * Runs the shards in parallel worker processes
+   *
+   * @return Shards which failed after all retries
+   */
+  private List<Shard> runShards(List<Shard> pendingShards) throws InterruptedException {
+
+    List<Shard> failedShards = new ArrayList<>();
+    if (pendingShards.isEmpty())
+      return failedShards;
+
+    ExecutorService executor = Executors.newFixedThreadPool(numOfWorkers);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (Shard shard : pendingShards)
+        results.add(executor.submit(() -> runShard(shard)));
+      for (int i = 0; i < pendingShards.size(); i++) {
+        try {
+          if (!results.get(i).get())
+            failedShards.add(pendingShards.get(i));
+        } catch (ExecutionException e) {
+          logger.log(Level.SEVERE, "Error while running " + pendingShards.get(i), e.getCause());
+          failedShards.add(pendingShards.get(i));
+        }
+      }
+    } finally {
+      // Interrupting the workers destroys their processes
+      executor.shutdownNow();
+    }
+
+    return failedShards;
+  }
+
+  /**
+   * Runs one shard in a worker process, retrying it if the process fails
+   *
+   * @return True if the shard was processed
+   */
+  private boolean runShard(Shard shard) throws IOException {
+
+    for (int attempt = 0; attempt <= retries; attempt++) {
+
+      if (attempt > 0)
+        logger.info("Retrying " + shard + ", attempt " + (attempt + 1) + " of " + (retries + 1));
+      else
+        logger.info("Starting " + shard);
+
+      // Remove the results of a failed attempt
+      shard.projectFile.delete();
+
+      ProcessBuilder processBuilder = new ProcessBuilder(getWorkerCommand(shard));
+      processBuilder.redirectErrorStream(true);
+      processBuilder.redirectOutput(ProcessBuilder.Redirect.appendTo(shard.logFile));
+
+      Process process = processBuilder.start();
+      int exitCode;
+      try {
+        exitCode = process.waitFor();
+      } catch (InterruptedException e) {
+        process.destroy();
+        Thread.currentThread().interrupt();
+        return false;
+      }
+
+      if ((exitCode == 0) && shard.projectFile.exists()) {
+        shard.markDone();
+        logger.info("Finished " + shard);
+        return true;
+      }
+
+      logger.warning("Worker of " + shard + " failed with exit code " + exitCode + ", see "
+          + shard.logFile);
+    }
+
+    return false;
+  }
+
+  private List<String> getWorkerCommand(Shard shard) {
+
+    List<String> command = new ArrayList<>();
+    command.add(
+        new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+
+    // Pass the system properties and the heap size of the coordinator to the workers
+    if (workerHeap != null)
+      command.add("-Xmx" + workerHeap);
+    for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      if (argument.startsWith("-D") || ((workerHeap == null) && argument.startsWith("-Xmx")))
+        command.add(argument);
+    }
+
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(MZmineCore.class.getName());
+    command.add(shard.batchFile.getAbsolutePath());
+    command.add(WORKER_OUTPUT_OPTION);
+    command.add(shard.projectFile.getAbsolutePath());
+
+    return command;
+  }
+
+  /**
+   * Loads the projects saved by the workers and moves their data files and peak lists into one
+   * project, which becomes the current project
+   */
+  private boolean mergeShards(List<Shard> shards, List<RawDataFile> mergedDataFiles,
+      List<PeakList> mergedPeakLists) {
+
+    ProjectManagerImpl projectManager = (ProjectManagerImpl) MZmineCore.getProjectManager();
+    MZmineProjectImpl mergedProject = new MZmineProjectImpl();
+
+    for (Shard shard : shards) {
+
+      logger.info("Merging results of " + shard);
+
+      // Switch to an empty project without closing the data files, because the opening task
+      // closes the data files of the current project, which were already moved to the merged
+      // project
+      projectManager.setCurrentProject(new MZmineProjectImpl(), false);
+
+      ParameterSet loadParameters = new ProjectLoaderParameters();
+      loadParameters.getParameter(ProjectLoaderParameters.projectFile).setValue(shard.projectFile);
+      ProjectOpeningTask openingTask = new ProjectOpeningTask(loadParameters);
+      openingTask.run();
+      if (openingTask.getStatus() != TaskStatus.FINISHED) {
+        logger.severe("Could not load the results of " + shard + " from " + shard.projectFile
+            + ": " + openingTask.getErrorMessage());
+        return false;
+      }
+
+      MZmineProject shardProject = projectManager.getCurrentProject();
+      for (RawDataFile dataFile : shardProject.getDataFiles()) {
+        mergedProject.addFile(dataFile);
+        mergedDataFiles.add(dataFile);
+      }
+      for (PeakList peakList : shardProject.getPeakLists()) {
+        mergedProject.addPeakList(peakList);
+        mergedPeakLists.add(peakList);
+      }
+    }
+
+    projectManager.setCurrentProject(mergedProject, false);
+
+    logger.info("Merged " + mergedDataFiles.size() + " data files and " + mergedPeakLists.size()
+        + " peak lists of " + shards.size() + " shards");
+
+    return true;
+  }
+
+}
@@ -20,6 +20,9 @@ package net.sf.mzmine.modules.batchmode;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
@@ -27,9 +30,16 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
 import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.PeakList;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.MZmineModuleCategory;
 import net.sf.mzmine.modules.MZmineProcessingModule;
+import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSaveParameters;
+import net.sf.mzmine.modules.projectmethods.projectsave.ProjectSavingTask;
 import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.filenames.FileNameParameter;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExitCode;
@@ -45,6 +55,11 @@ public class BatchModeModule implements MZmineProcessingModule {
   private static final String MODULE_DESCRIPTION =
       "This module allows execution of multiple processing tasks in a batch.";
 
+  /**
+   * Command line option to resume a batch from a checkpoint
+   */
+  public static final String RESUME_OPTION = "--resume";
+
   @Override
   public @Nonnull String getName() {
     return MODULE_NAME;
@@ -87,6 +102,18 @@ public class BatchModeModule implements MZmineProcessingModule {
       BatchQueue newQueue = BatchQueue.loadFromXml(parsedBatchXML.getDocumentElement());
       ParameterSet parameters = new BatchModeParameters();
       parameters.getParameter(BatchModeParameters.batchQueue).setValue(newQueue);
+
+      // Save the performance report as set in the batch mode parameters of the configuration
+      OptionalParameter<FileNameParameter> configuredReport = MZmineCore.getConfiguration()
+          .getModuleParameters(BatchModeModule.class)
+          .getParameter(BatchModeParameters.performanceReport);
+      File reportFile = configuredReport.getEmbeddedParameter().getValue();
+      boolean saveReport = Boolean.TRUE.equals(configuredReport.getValue()) && (reportFile != null);
+      parameters.getParameter(BatchModeParameters.performanceReport).setValue(saveReport);
+      if (saveReport)
+        parameters.getParameter(BatchModeParameters.performanceReport).getEmbeddedParameter()
+            .setValue(reportFile);
+
       Task batchTask = new BatchTask(project, parameters);
       batchTask.run();
       if (batchTask.getStatus() == TaskStatus.FINISHED)
@@ -101,6 +128,109 @@ public class BatchModeModule implements MZmineProcessingModule {
 
   }
 
+  /**
+   * Resumes a batch from a checkpoint saved by a previous run. The project of the checkpoint is
+   * opened and the batch continues with the next step, saving further checkpoints to the same
+   * directory.
+   *
+   * @param checkpointFile Checkpoint XML file, or the checkpoint directory
+   */
+  public static ExitCode resumeBatch(File checkpointFile) {
+
+    logger.info("Resuming batch from checkpoint " + checkpointFile);
+
+    try {
+      BatchCheckpoint checkpoint = BatchCheckpoint.load(checkpointFile);
+      MZmineProject project = checkpoint.openProject();
+
+      ParameterSet parameters = new BatchModeParameters();
+      parameters.getParameter(BatchModeParameters.batchQueue).setValue(checkpoint.getBatchQueue());
+      parameters.getParameter(BatchModeParameters.performanceReport)
+          .setValue(checkpoint.getReportFile() != null);
+      if (checkpoint.getReportFile() != null)
+        parameters.getParameter(BatchModeParameters.performanceReport).getEmbeddedParameter()
+            .setValue(checkpoint.getReportFile());
+      parameters.getParameter(BatchModeParameters.checkpoint).setValue(true);
+      ParameterSet checkpointParameters =
+          parameters.getParameter(BatchModeParameters.checkpoint).getEmbeddedParameters();
+      checkpointParameters.getParameter(BatchCheckpointParameters.checkpointDirectory)
+          .setValue(checkpoint.getDirectory());
+      checkpointParameters.getParameter(BatchCheckpointParameters.checkpointInterval)
+          .setValue(checkpoint.getInterval());
+
+      BatchTask batchTask = new BatchTask(project, parameters);
+      batchTask.setFirstStep(checkpoint.getNextStep());
+      batchTask.setInitialItems(checkpoint.getLastDataFiles(project),
+          checkpoint.getLastPeakLists(project));
+      batchTask.run();
+      if (batchTask.getStatus() == TaskStatus.FINISHED)
+        return ExitCode.OK;
+      else
+        return ExitCode.ERROR;
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Error while resuming batch", e);
+      return ExitCode.ERROR;
+    }
+
+  }
+
+  /**
+   * Runs the batch as a worker of the BatchCoordinator. When the batch is finished, only the data
+   * files and peak lists created by the last steps are kept in the project, together with the data
+   * files they refer to, and the project is saved to the output file.
+   */
+  public static ExitCode runBatchWorker(@Nonnull MZmineProject project, File batchFile,
+      File outputFile) {
+
+    logger.info(
+        "Running batch worker from file " + batchFile + ", saving results to " + outputFile);
+
+    try {
+      DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+      Document parsedBatchXML = docBuilder.parse(batchFile);
+      BatchQueue newQueue = BatchQueue.loadFromXml(parsedBatchXML.getDocumentElement());
+      ParameterSet parameters = new BatchModeParameters();
+      parameters.getParameter(BatchModeParameters.batchQueue).setValue(newQueue);
+      parameters.getParameter(BatchModeParameters.performanceReport).setValue(false);
+      BatchTask batchTask = new BatchTask(project, parameters);
+      batchTask.run();
+      if (batchTask.getStatus() != TaskStatus.FINISHED)
+        return ExitCode.ERROR;
+
+      // The batch may have loaded another project
+      project = MZmineCore.getProjectManager().getCurrentProject();
+
+      // Keep only the results of the last steps
+      List<PeakList> lastPeakLists = batchTask.getLastCreatedPeakLists();
+      Set<RawDataFile> keptDataFiles = new HashSet<>(batchTask.getLastCreatedDataFiles());
+      for (PeakList peakList : lastPeakLists) {
+        for (RawDataFile dataFile : peakList.getRawDataFiles())
+          keptDataFiles.add(dataFile);
+      }
+      for (PeakList peakList : project.getPeakLists()) {
+        if (!lastPeakLists.contains(peakList))
+          project.removePeakList(peakList);
+      }
+      for (RawDataFile dataFile : project.getDataFiles()) {
+        if (!keptDataFiles.contains(dataFile))
+          project.removeFile(dataFile);
+      }
+
+      ParameterSet saveParameters = new ProjectSaveParameters();
+      saveParameters.getParameter(ProjectSaveParameters.projectFile).setValue(outputFile);
+      ProjectSavingTask saveTask = new ProjectSavingTask(project, saveParameters);
+      saveTask.run();
+      if (saveTask.getStatus() == TaskStatus.FINISHED)
+        return ExitCode.OK;
+      else
+        return ExitCode.ERROR;
+    } catch (Throwable e) {
+      logger.log(Level.SEVERE, "Error while running batch worker", e);
+      return ExitCode.ERROR;
+    }
+
+  }
+
   @Override
   public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
     return BatchModeParameters.class;
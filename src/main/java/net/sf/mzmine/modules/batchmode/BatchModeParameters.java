@@ -20,13 +20,28 @@ package net.sf.mzmine.modules.batchmode;
 
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.filenames.FileNameParameter;
+import net.sf.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
 
 public class BatchModeParameters extends SimpleParameterSet {
 
   public static final BatchQueueParameter batchQueue = new BatchQueueParameter();
 
+  public static final OptionalParameter<FileNameParameter> performanceReport =
+      new OptionalParameter<>(new FileNameParameter("Performance report",
+          "If checked, the time, memory and data read by each task of the batch are saved to this file."
+              + " The report is saved in JSON format if the file name ends with .json, otherwise in CSV format.",
+          "csv"));
+
+  public static final OptionalModuleParameter<BatchCheckpointParameters> checkpoint =
+      new OptionalModuleParameter<>("Save checkpoints",
+          "If checked, the state of the batch is saved after the given steps. A failed batch can be"
+              + " resumed from the last checkpoint by running MZmine with --resume <checkpoint>.",
+          new BatchCheckpointParameters(), false);
+
   public BatchModeParameters() {
-    super(new Parameter[] {batchQueue});
+    super(new Parameter[] {batchQueue, performanceReport, checkpoint});
   }
 
 }
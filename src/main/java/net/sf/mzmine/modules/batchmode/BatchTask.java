@@ -18,10 +18,18 @@
 
 package net.sf.mzmine.modules.batchmode;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.MZmineProjectListener;
 import net.sf.mzmine.datamodel.PeakList;
@@ -35,8 +43,10 @@ import net.sf.mzmine.parameters.parametertypes.selectors.PeakListsParameter;
 import net.sf.mzmine.parameters.parametertypes.selectors.RawDataFilesParameter;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.taskcontrol.TaskStatusListener;
 import net.sf.mzmine.util.ExitCode;
 
 /**
@@ -54,9 +64,35 @@ public class BatchTask extends AbstractTask {
   private final List<RawDataFile> createdDataFiles, previousCreatedDataFiles;
   private final List<PeakList> createdPeakLists, previousCreatedPeakLists;
 
+  // Performance report of the batch, null if disabled
+  private final File reportFile;
+  private final List<ReportEntry> reportEntries = new ArrayList<>();
+
+  // Directory of the checkpoints, null if disabled
+  private final File checkpointDirectory;
+  private final int checkpointInterval;
+
+  private int firstStep = 0;
+
   BatchTask(MZmineProject project, ParameterSet parameters) {
     this.project = project;
     this.queue = parameters.getParameter(BatchModeParameters.batchQueue).getValue();
+    if (parameters.getParameter(BatchModeParameters.performanceReport).getValue())
+      reportFile = parameters.getParameter(BatchModeParameters.performanceReport)
+          .getEmbeddedParameter().getValue();
+    else
+      reportFile = null;
+    if (parameters.getParameter(BatchModeParameters.checkpoint).getValue()) {
+      ParameterSet checkpointParameters =
+          parameters.getParameter(BatchModeParameters.checkpoint).getEmbeddedParameters();
+      checkpointDirectory = checkpointParameters
+          .getParameter(BatchCheckpointParameters.checkpointDirectory).getValue();
+      checkpointInterval = checkpointParameters
+          .getParameter(BatchCheckpointParameters.checkpointInterval).getValue();
+    } else {
+      checkpointDirectory = null;
+      checkpointInterval = 0;
+    }
     totalSteps = queue.size();
     createdDataFiles = new ArrayList<>();
     createdPeakLists = new ArrayList<>();
@@ -64,6 +100,37 @@ public class BatchTask extends AbstractTask {
     previousCreatedPeakLists = new ArrayList<>();
   }
 
+  /**
+   * Sets the data files and peak lists which are used by the first step of the batch as the last
+   * processed items, e.g. when the batch continues the processing of a previous batch
+   */
+  void setInitialItems(Collection<RawDataFile> dataFiles, Collection<PeakList> peakLists) {
+    previousCreatedDataFiles.addAll(dataFiles);
+    previousCreatedPeakLists.addAll(peakLists);
+  }
+
+  /**
+   * Starts the batch at the given step, e.g. when the batch is resumed from a checkpoint
+   */
+  void setFirstStep(int firstStep) {
+    this.firstStep = firstStep;
+    this.processedSteps = firstStep;
+  }
+
+  /**
+   * @return Data files created by the last step of the batch which created any data files
+   */
+  List<RawDataFile> getLastCreatedDataFiles() {
+    return createdDataFiles.isEmpty() ? previousCreatedDataFiles : createdDataFiles;
+  }
+
+  /**
+   * @return Peak lists created by the last step of the batch which created any peak lists
+   */
+  List<PeakList> getLastCreatedPeakLists() {
+    return createdPeakLists.isEmpty() ? previousCreatedPeakLists : createdPeakLists;
+  }
+
   @Override
   public void run() {
 
@@ -85,7 +152,7 @@ public class BatchTask extends AbstractTask {
     project.addProjectListener(listener);
 
     // Process individual batch steps
-    for (int i = 0; i < totalSteps; i++) {
+    for (int i = firstStep; i < totalSteps; i++) {
 
       processQueueStep(i);
       processedSteps++;
@@ -99,13 +166,24 @@ public class BatchTask extends AbstractTask {
 
       // If we are canceled or ran into error, stop here
       if (isCanceled() || (getStatus() == TaskStatus.ERROR)) {
-        return;
+        break;
       }
 
+      if ((checkpointDirectory != null) && ((i + 1) % checkpointInterval == 0)
+          && (i + 1 < totalSteps))
+        saveCheckpoint(i + 1);
+
     }
 
     project.removeProjectListener(listener);
 
+    // The report is also useful when the batch failed, so save it in any case
+    if (reportFile != null)
+      savePerformanceReport();
+
+    if (isCanceled())
+      return;
+
     logger.info("Finished a batch of " + totalSteps + " steps");
     setStatus(TaskStatus.FINISHED);
 
@@ -178,10 +256,71 @@ public class BatchTask extends AbstractTask {
     if (currentStepTasks.isEmpty())
       return;
 
-    boolean allTasksFinished = false;
+    try {
+      runStepTasks(currentStepTasks);
+    } finally {
+      // Keep only the metrics, so the tasks can be garbage collected
+      for (Task stepTask : currentStepTasks) {
+        TaskMetrics metrics = TaskMetrics.getMetrics(stepTask);
+        if (metrics != null)
+          reportEntries.add(new ReportEntry(stepNumber + 1, method.getName(),
+              stepTask.getStatus(), metrics));
+      }
+    }
+
+  }
+
+  private void saveCheckpoint(int nextStep) {
+    try {
+      BatchCheckpoint.save(checkpointDirectory, checkpointInterval, queue, nextStep, reportFile,
+          project, getLastCreatedDataFiles(), getLastCreatedPeakLists());
+    } catch (Exception e) {
+      // The batch can continue without the checkpoint
+      logger.log(Level.WARNING, "Could not save checkpoint of the batch to " + checkpointDirectory,
+          e);
+    }
+  }
+
+  /**
+   * Submits the tasks of the current step to the task controller and waits until they are
+   * processed. The tasks notify the batch when their status changes, so the next step starts
+   * immediately. Tasks which do not support status listeners are checked every second.
+   */
+  private void runStepTasks(List<Task> currentStepTasks) {
+
+    final TaskStatusListener statusListener = (task, newStatus, oldStatus) -> {
+      synchronized (this) {
+        this.notifyAll();
+      }
+    };
+
+    // Also wake up when the batch itself is canceled
+    addTaskStatusListener(statusListener);
+    boolean allTasksNotify = true;
+    for (Task stepTask : currentStepTasks) {
+      if (stepTask instanceof AbstractTask)
+        ((AbstractTask) stepTask).addTaskStatusListener(statusListener);
+      else
+        allTasksNotify = false;
+    }
+
+    try {
+      // Submit the tasks to the task controller for processing
+      MZmineCore.getTaskController().addTasks(currentStepTasks.toArray(new Task[0]));
+      waitForTasks(currentStepTasks, allTasksNotify);
+    } finally {
+      removeTaskStatusListener(statusListener);
+      for (Task stepTask : currentStepTasks) {
+        if (stepTask instanceof AbstractTask)
+          ((AbstractTask) stepTask).removeTaskStatusListener(statusListener);
+      }
+    }
 
-    // Submit the tasks to the task controller for processing
-    MZmineCore.getTaskController().addTasks(currentStepTasks.toArray(new Task[0]));
+  }
+
+  private synchronized void waitForTasks(List<Task> currentStepTasks, boolean allTasksNotify) {
+
+    boolean allTasksFinished = false;
 
     while (!allTasksFinished) {
 
@@ -221,14 +360,16 @@ public class BatchTask extends AbstractTask {
 
       }
 
-      // Wait 1s before checking the tasks again
+      // Wait for a status change of the tasks, or 1s before checking the tasks again if some of
+      // them do not notify us
       if (!allTasksFinished) {
-        synchronized (this) {
-          try {
+        try {
+          if (allTasksNotify)
+            this.wait();
+          else
             this.wait(1000);
-          } catch (InterruptedException e) {
-            // ignore
-          }
+        } catch (InterruptedException e) {
+          // ignore
         }
       }
 
@@ -236,6 +377,100 @@ public class BatchTask extends AbstractTask {
 
   }
 
+  /**
+   * Saves the metrics of all tasks of the batch to the report file, in JSON format if the file name
+   * ends with .json, otherwise in CSV format
+   */
+  private void savePerformanceReport() {
+
+    logger.info("Saving performance report of the batch to " + reportFile);
+
+    try (Writer writer = new FileWriter(reportFile)) {
+      if (reportFile.getName().toLowerCase().endsWith(".json"))
+        writeJsonReport(writer);
+      else
+        writeCsvReport(writer);
+    } catch (IOException e) {
+      // A missing report should not fail the batch
+      logger.log(Level.WARNING, "Could not save performance report to " + reportFile, e);
+    }
+
+  }
+
+  private void writeCsvReport(Writer writer) throws IOException {
+    writer.write("Step,Module,Task,Status,Wall time (ms),CPU time (ms),Allocated bytes,"
+        + "Scans read,Data points read,Bytes read,Rows produced,Memory wait (ms)\n");
+    for (ReportEntry entry : reportEntries) {
+      TaskMetrics metrics = entry.metrics;
+      writer.write(entry.step + "," + csvEscape(entry.module) + ","
+          + csvEscape(metrics.getTaskDescription()) + "," + entry.status + ","
+          + toMillis(metrics.getWallTime()) + "," + toMillis(metrics.getCpuTime()) + ","
+          + metrics.getAllocatedBytes() + "," + metrics.getScansRead() + ","
+          + metrics.getDataPointsRead() + "," + metrics.getBytesRead() + ","
+          + metrics.getRowsProduced() + "," + toMillis(metrics.getMemoryWaitTime()) + "\n");
+    }
+  }
+
+  private void writeJsonReport(Writer writer) throws IOException {
+    JSONArray tasks = new JSONArray();
+    for (ReportEntry entry : reportEntries) {
+      TaskMetrics metrics = entry.metrics;
+      JSONObject task = new JSONObject();
+      task.put("step", entry.step);
+      task.put("module", entry.module);
+      task.put("task", metrics.getTaskDescription());
+      task.put("status", entry.status.toString());
+      task.put("wallTimeMs", toMillis(metrics.getWallTime()));
+      task.put("cpuTimeMs", toMillis(metrics.getCpuTime()));
+      task.put("allocatedBytes", metrics.getAllocatedBytes());
+      task.put("scansRead", metrics.getScansRead());
+      task.put("dataPointsRead", metrics.getDataPointsRead());
+      task.put("bytesRead", metrics.getBytesRead());
+      task.put("rowsProduced", metrics.getRowsProduced());
+      task.put("memoryWaitMs", toMillis(metrics.getMemoryWaitTime()));
+      tasks.put(task);
+    }
+    JSONObject report = new JSONObject();
+    report.put("steps", totalSteps);
+    report.put("processedSteps", processedSteps);
+    report.put("status", getStatus().toString());
+    report.put("tasks", tasks);
+    writer.write(report.toString(2));
+  }
+
+  private static long toMillis(long nanoseconds) {
+    if (nanoseconds < 0)
+      return -1;
+    return nanoseconds / 1000000L;
+  }
+
+  private static String csvEscape(String value) {
+    if (value == null)
+      return "";
+    if (value.contains(",") || value.contains("\"") || value.contains("\n"))
+      return "\"" + value.replace("\"", "\"\"") + "\"";
+    return value;
+  }
+
+  /**
+   * Metrics of one task of the batch
+   */
+  private static class ReportEntry {
+
+    private final int step;
+    private final String module;
+    private final TaskStatus status;
+    private final TaskMetrics metrics;
+
+    ReportEntry(int step, String module, TaskStatus status, TaskMetrics metrics) {
+      this.step = step;
+      this.module = module;
+      this.status = status;
+      this.metrics = metrics;
+    }
+
+  }
+
   @Override
   public TaskPriority getTaskPriority() {
     // to not block mzmine when run with single thread
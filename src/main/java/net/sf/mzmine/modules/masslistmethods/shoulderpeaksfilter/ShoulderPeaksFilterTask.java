@@ -25,6 +25,7 @@ import net.sf.mzmine.datamodel.MassList;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleMassList;
+import net.sf.mzmine.modules.projectmethods.tempfilecompaction.TempFileCompactionModule;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
@@ -143,6 +144,9 @@ public class ShoulderPeaksFilterTask extends AbstractTask {
       processedScans++;
     }
 
+    // Reclaim the space of the removed mass lists
+    TempFileCompactionModule.compactIfNeeded(dataFile);
+
     setStatus(TaskStatus.FINISHED);
 
     logger.info("Finished shoulder peaks filter on " + dataFile);
@@ -116,6 +116,10 @@ public class HierarAlignerGCTask extends AbstractTask {
   private static final boolean DEBUG_2 = false;
   List<PeakListRow> full_rows_list;
 
+  // Estimated bytes per input row besides the distance matrices: the clustering node, the row
+  // order and cluster lists, and the aligned row with its peak map and backup info maps
+  private static final long BYTES_PER_ROW = 512;
+
   private ClustererType CLUSTERER_TYPE;
 
   public static final boolean USE_DOUBLE_PRECISION_FOR_DIST = false;
@@ -239,6 +243,27 @@ public class HierarAlignerGCTask extends AbstractTask {
     return progress;
   }
 
+  /**
+   * The memory is dominated by the triangular matrix of the distances between all rows, stored as
+   * floats. Unless RAM is saved rather than CPU, the cached clusterer also keeps a backup copy of
+   * the matrix, because the clustering overwrites the original.
+   */
+  @Override
+  public long getEstimatedMemory() {
+    long numOfRows = 0;
+    for (PeakList peakList : peakLists)
+      numOfRows += peakList.getNumberOfRows();
+
+    int numOfMatrices = 0;
+    if (CLUSTERER_TYPE == ClustererType.HYBRID || !saveRAMratherThanCPU_1)
+      numOfMatrices++;
+    if (CLUSTERER_TYPE == ClustererType.CACHED && !saveRAMratherThanCPU_2)
+      numOfMatrices++;
+
+    return numOfMatrices * DistanceMatrixTriangular1D2D.sumFormula(numOfRows) * Float.BYTES
+        + numOfRows * BYTES_PER_ROW;
+  }
+
   /**
    * @see Runnable#run()
    */
@@ -20,10 +20,9 @@ package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering;
 
 import net.sf.mzmine.modules.MZmineModule;
 import net.sf.mzmine.parameters.ParameterSet;
-import weka.core.Instances;
 
 public interface ClusteringAlgorithm extends MZmineModule {
 
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters);
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters);
 
 }
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering;
+
+import java.util.stream.IntStream;
+
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+/**
+ * Data to be clustered: one row of values and one name for each clustered item (sample or
+ * variable). The in-house algorithms use the primitive values directly, the Weka data set is only
+ * created for the algorithms which need it.
+ */
+public class ClusteringData {
+
+  private final double values[][];
+  private final String names[];
+
+  public ClusteringData(double values[][], String names[]) {
+    this.values = values;
+    this.names = names;
+  }
+
+  /**
+   * Values indexed as [item][attribute]
+   */
+  public double[][] getValues() {
+    return values;
+  }
+
+  public String[] getNames() {
+    return names;
+  }
+
+  public int getNumberOfItems() {
+    return values.length;
+  }
+
+  public int getNumberOfAttributes() {
+    return values.length == 0 ? 0 : values[0].length;
+  }
+
+  /**
+   * Returns a copy of the values with each attribute scaled to the range [0, 1], the same way as
+   * the Weka distance functions normalize the attributes. Constant attributes are set to 0.
+   */
+  public double[][] getNormalizedValues() {
+    final int items = getNumberOfItems(), attributes = getNumberOfAttributes();
+    final double normalized[][] = new double[items][attributes];
+    IntStream.range(0, attributes).parallel().forEach(a -> {
+      double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < items; i++) {
+        min = Math.min(min, values[i][a]);
+        max = Math.max(max, values[i][a]);
+      }
+      final double range = max - min;
+      for (int i = 0; i < items; i++)
+        normalized[i][a] = (range > 0) ? (values[i][a] - min) / range : 0.0;
+    });
+    return normalized;
+  }
+
+  /**
+   * Creates the Weka data set with one numeric attribute per value and, optionally, a string
+   * attribute with the item names
+   */
+  public Instances createWekaDataset(boolean includeNames) {
+    FastVector attributes = new FastVector();
+
+    final int numOfValues = getNumberOfAttributes();
+    for (int i = 0; i < numOfValues; i++) {
+      String varName = "Var" + i;
+      Attribute var = new Attribute(varName);
+      attributes.addElement(var);
+    }
+
+    if (includeNames) {
+      Attribute name = new Attribute("name", (FastVector) null);
+      attributes.addElement(name);
+    }
+    Instances data = new Instances("Dataset", attributes, 0);
+
+    for (int i = 0; i < values.length; i++) {
+      double[] instanceValues = new double[data.numAttributes()];
+      System.arraycopy(values[i], 0, instanceValues, 0, numOfValues);
+      if (includeNames) {
+        instanceValues[data.numAttributes() - 1] =
+            data.attribute("name").addStringValue(names[i]);
+      }
+      Instance inst = new SparseInstance(1.0, instanceValues);
+      data.add(inst);
+    }
+    return data;
+  }
+
+}
@@ -25,29 +25,20 @@ import java.util.regex.Pattern;
 import javax.swing.JFrame;
 import javax.swing.JTextField;
 import org.jfree.data.xy.AbstractXYDataset;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
-import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.desktop.Desktop;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.MZmineProcessingStep;
-import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.HierarClusterer;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots.ProjectionEngine;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots.ProjectionPlotDataset;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots.ProjectionPlotWindow;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.PeakMeasurementType;
-import weka.core.Attribute;
-import weka.core.FastVector;
-import weka.core.Instance;
-import weka.core.Instances;
-import weka.core.SparseInstance;
 import weka.gui.hierarchyvisualizer.HierarchyVisualizer;
 
 public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotDataset {
@@ -69,10 +60,10 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
   private int yAxisDimension = 2;
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
-  private ProjectionStatus projectionStatus;
+  private ProjectionEngine projectionEngine;
   private MZmineProcessingStep<ClusteringAlgorithm> clusteringStep;
   private ClusteringDataType typeOfData;
-  private Instances dataset;
+  private ClusteringData dataset;
   private int progress;
   private PeakList peakList;
 
@@ -186,14 +177,14 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
     double[][] rawData;
 
-    // Creating weka dataset using samples or metabolites (variables)
+    // Creating the data set using samples or metabolites (variables)
 
     if (typeOfData == ClusteringDataType.VARIABLES) {
       rawData = createMatrix(false);
-      dataset = createVariableWekaDataset(rawData);
+      dataset = new ClusteringData(rawData, createVariableNames());
     } else {
       rawData = createMatrix(true);
-      dataset = createSampleWekaDataset(rawData);
+      dataset = new ClusteringData(rawData, createSampleNames());
     }
 
     // Run the clustering algorithm
@@ -201,8 +192,14 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
     ParameterSet clusteringParameters = clusteringStep.getParameterSet();
     ClusteringResult result = clusteringAlgorithm.performClustering(dataset, clusteringParameters);
 
+    if (result == null) {
+      status = TaskStatus.ERROR;
+      errorMessage = "Error while running " + clusteringAlgorithm.getName();
+      return;
+    }
+
     String cluster = "";
-    if (clusteringAlgorithm.getName().toString().equals("Hierarchical clusterer")) {
+    if (result.getHiearchicalCluster() != null) {
       progress = 0;
       // Getting the result of the clustering in Newick format
       cluster = result.getHiearchicalCluster();
@@ -307,13 +304,12 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
       if (result.getVisualizationType() == VisualizationType.PCA) {
         // Scale data and do PCA
-        Preprocess.scaleToUnityVariance(rawData);
-        PCA pcaProj = new PCA(rawData, numComponents);
-        projectionStatus = pcaProj.getProjectionStatus();
+        projectionEngine = ProjectionEngine.createEngine(rawData);
+        projectionEngine.scaleToUnityVariance();
 
-        double[][] pcaResult = pcaProj.getState();
+        double[][] pcaResult = projectionEngine.computePCA(numComponents);
 
-        if (status == TaskStatus.CANCELED) {
+        if ((pcaResult == null) || (status == TaskStatus.CANCELED)) {
           return;
         }
 
@@ -321,15 +317,12 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
         component2Coords = pcaResult[yAxisDimension - 1];
       } else if (result.getVisualizationType() == VisualizationType.SAMMONS) {
         // Scale data and do Sammon's mapping
-        Preprocess.scaleToUnityVariance(rawData);
-        Sammons sammonsProj = new Sammons(rawData);
-        projectionStatus = sammonsProj.getProjectionStatus();
+        projectionEngine = ProjectionEngine.createEngine(rawData);
+        projectionEngine.scaleToUnityVariance();
 
-        sammonsProj.iterate(100);
+        double[][] sammonsResult = projectionEngine.computeSammon(numComponents, 100);
 
-        double[][] sammonsResult = sammonsProj.getState();
-
-        if (status == TaskStatus.CANCELED) {
+        if ((sammonsResult == null) || (status == TaskStatus.CANCELED)) {
           return;
         }
 
@@ -362,37 +355,29 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
         .getValue() == PeakMeasurementType.HEIGHT) {
       useArea = false;
     }
+    final FeatureMatrix matrix = peakList.getFeatureMatrix();
+    final int fileIndexes[] = new int[selectedRawDataFiles.length];
+    for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
+      fileIndexes[fileIndex] = matrix.getRawDataFileIndex(selectedRawDataFiles[fileIndex]);
+    }
+
     double[][] rawData;
     if (isForSamples) {
       rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-      for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-        PeakListRow peakListRow = selectedRows[rowIndex];
-        for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-          RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-          Feature p = peakListRow.getPeak(rawDataFile);
-          if (p != null) {
-            if (useArea) {
-              rawData[fileIndex][rowIndex] = p.getArea();
-            } else {
-              rawData[fileIndex][rowIndex] = p.getHeight();
-            }
-          }
-        }
-      }
     } else {
       rawData = new double[selectedRows.length][selectedRawDataFiles.length];
-      for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-        PeakListRow peakListRow = selectedRows[rowIndex];
-        for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-          RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-          Feature p = peakListRow.getPeak(rawDataFile);
-          if (p != null) {
-            if (useArea) {
-              rawData[rowIndex][fileIndex] = p.getArea();
-            } else {
-              rawData[rowIndex][fileIndex] = p.getHeight();
-            }
-          }
+    }
+    for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
+      final int row = matrix.getRowIndex(selectedRows[rowIndex]);
+      for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
+        final int file = fileIndexes[fileIndex];
+        if ((row < 0) || (file < 0) || !matrix.hasPeak(row, file))
+          continue;
+        final double value = useArea ? matrix.getArea(row, file) : matrix.getHeight(row, file);
+        if (isForSamples) {
+          rawData[fileIndex][rowIndex] = value;
+        } else {
+          rawData[rowIndex][fileIndex] = value;
         }
       }
     }
@@ -401,81 +386,34 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
   }
 
   /**
-   * Creates the weka data set for clustering of samples
-   *
-   * @param rawData Data extracted from selected Raw data files and rows.
-   * @return Weka library data set
+   * Creates the names of the samples, shown in the hierarchical clustering result
    */
-  private Instances createSampleWekaDataset(double[][] rawData) {
-    FastVector attributes = new FastVector();
-
-    for (int i = 0; i < rawData[0].length; i++) {
-      String varName = "Var" + i;
-      Attribute var = new Attribute(varName);
-      attributes.addElement(var);
+  private String[] createSampleNames() {
+    String names[] = new String[selectedRawDataFiles.length];
+    for (int i = 0; i < selectedRawDataFiles.length; i++) {
+      names[i] = selectedRawDataFiles[i].getName();
     }
-
-    if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-      Attribute name = new Attribute("name", (FastVector) null);
-      attributes.addElement(name);
-    }
-    Instances data = new Instances("Dataset", attributes, 0);
-
-    for (int i = 0; i < rawData.length; i++) {
-      double[] values = new double[data.numAttributes()];
-      System.arraycopy(rawData[i], 0, values, 0, rawData[0].length);
-      if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-        values[data.numAttributes() - 1] =
-            data.attribute("name").addStringValue(this.selectedRawDataFiles[i].getName());
-      }
-      Instance inst = new SparseInstance(1.0, values);
-      data.add(inst);
-    }
-    return data;
+    return names;
   }
 
   /**
-   * Creates the weka data set for clustering of variables (metabolites)
-   *
-   * @param rawData Data extracted from selected Raw data files and rows.
-   * @return Weka library data set
+   * Creates the names of the variables (metabolites), shown in the hierarchical clustering result
    */
-  private Instances createVariableWekaDataset(double[][] rawData) {
-    FastVector attributes = new FastVector();
-
-    for (int i = 0; i < this.selectedRawDataFiles.length; i++) {
-      String varName = "Var" + i;
-      Attribute var = new Attribute(varName);
-      attributes.addElement(var);
-    }
-
-    if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-      Attribute name = new Attribute("name", (FastVector) null);
-      attributes.addElement(name);
-    }
-    Instances data = new Instances("Dataset", attributes, 0);
-
+  private String[] createVariableNames() {
+    String names[] = new String[selectedRows.length];
+    DecimalFormat twoDForm = new DecimalFormat("#.##");
     for (int i = 0; i < selectedRows.length; i++) {
-      double[] values = new double[data.numAttributes()];
-      System.arraycopy(rawData[i], 0, values, 0, rawData[0].length);
-
-      if (clusteringStep.getModule().getClass().equals(HierarClusterer.class)) {
-        DecimalFormat twoDForm = new DecimalFormat("#.##");
-        double MZ = Double.valueOf(twoDForm.format(selectedRows[i].getAverageMZ()));
-        double RT = Double.valueOf(twoDForm.format(selectedRows[i].getAverageRT()));
-        String rowName = "MZ->" + MZ + "/RT->" + RT;
-        values[data.numAttributes() - 1] = data.attribute("name").addStringValue(rowName);
-      }
-      Instance inst = new SparseInstance(1.0, values);
-      data.add(inst);
+      double MZ = Double.valueOf(twoDForm.format(selectedRows[i].getAverageMZ()));
+      double RT = Double.valueOf(twoDForm.format(selectedRows[i].getAverageRT()));
+      names[i] = "MZ->" + MZ + "/RT->" + RT;
     }
-    return data;
+    return names;
   }
 
   @Override
   public void cancel() {
-    if (projectionStatus != null) {
-      projectionStatus.cancel();
+    if (projectionEngine != null) {
+      projectionEngine.cancel();
     }
 
     status = TaskStatus.CANCELED;
@@ -513,11 +451,8 @@ public class ClusteringTask extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (this.projectionStatus != null) {
-      if (projectionStatus.getFinishedPercentage() > 1.0) {
-        return 1.0;
-      }
-      return projectionStatus.getFinishedPercentage();
+    if (this.projectionEngine != null) {
+      return projectionEngine.getFinishedPercentage();
     } else {
       if (progress > 100) {
         return 1.0;
@@ -26,6 +26,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringAlgorithm;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringResult;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.em.EMClustererParameters;
 import net.sf.mzmine.parameters.ParameterSet;
@@ -45,8 +46,9 @@ public class FarthestFirstClusterer implements ClusteringAlgorithm {
   }
 
   @Override
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters) {
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters) {
 
+    Instances dataset = data.createWekaDataset(false);
     List<Integer> clusters = new ArrayList<Integer>();
     String[] options = new String[2];
     FarthestFirst clusterer = new FarthestFirst();
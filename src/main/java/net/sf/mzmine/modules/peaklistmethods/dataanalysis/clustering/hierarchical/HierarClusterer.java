@@ -24,6 +24,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringAlgorithm;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringResult;
 import net.sf.mzmine.parameters.ParameterSet;
 import weka.clusterers.HierarchicalClusterer;
@@ -41,7 +42,9 @@ public class HierarClusterer implements ClusteringAlgorithm {
   }
 
   @Override
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters) {
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters) {
+
+    Instances dataset = data.createWekaDataset(true);
     HierarchicalClusterer clusterer = new HierarchicalClusterer();
     String[] options = new String[5];
     LinkType link = parameters.getParameter(HierarClustererParameters.linkType).getValue();
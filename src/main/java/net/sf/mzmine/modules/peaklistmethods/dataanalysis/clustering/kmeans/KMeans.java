@@ -0,0 +1,193 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.kmeans;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * K-means clustering of the rows of a double[][] matrix, with k-means++ seeding (Arthur &
+ * Vassilvitskii, 2007). The assignment of the points to the nearest centers, which is the
+ * expensive part, runs in parallel. Besides the standard Lloyd iterations, the centers can be
+ * computed by mini-batch k-means (Sculley, 2010), which only looks at a random sample of the points
+ * in each iteration.
+ */
+public class KMeans {
+
+  private final double data[][];
+  private final int dimensions;
+  private final Random random;
+
+  private double centers[][];
+
+  public KMeans(double data[][], long seed) {
+    this.data = data;
+    this.dimensions = data.length == 0 ? 0 : data[0].length;
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Lloyd's algorithm, iterated until no point changes its cluster or maxIterations is reached.
+   * Returns the cluster of each point.
+   */
+  public int[] cluster(int numberOfClusters, int maxIterations) {
+
+    centers = initializeCenters(numberOfClusters);
+    final int assignment[] = new int[data.length];
+    Arrays.fill(assignment, -1);
+
+    for (int iteration = 0; iteration < maxIterations; iteration++) {
+
+      final long changes = IntStream.range(0, data.length).parallel().filter(i -> {
+        final int nearest = findNearestCenter(data[i]);
+        if (nearest == assignment[i])
+          return false;
+        assignment[i] = nearest;
+        return true;
+      }).count();
+      if (changes == 0)
+        break;
+
+      // Move each center to the mean of its points, centers without points stay where they are
+      final int counts[] = new int[centers.length];
+      for (int cluster : assignment)
+        counts[cluster]++;
+      final double newCenters[][] = new double[centers.length][dimensions];
+      IntStream.range(0, dimensions).parallel().forEach(d -> {
+        for (int i = 0; i < data.length; i++)
+          newCenters[assignment[i]][d] += data[i][d];
+        for (int c = 0; c < newCenters.length; c++) {
+          if (counts[c] > 0)
+            newCenters[c][d] /= counts[c];
+          else
+            newCenters[c][d] = centers[c][d];
+        }
+      });
+      centers = newCenters;
+    }
+
+    return assignment;
+  }
+
+  /**
+   * Mini-batch k-means with given batch size and number of iterations. Returns the cluster of each
+   * point.
+   */
+  public int[] clusterMiniBatch(int numberOfClusters, int batchSize, int iterations) {
+
+    centers = initializeCenters(numberOfClusters);
+    final int counts[] = new int[centers.length];
+    final int batch[] = new int[Math.min(batchSize, data.length)];
+    final int batchAssignment[] = new int[batch.length];
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+      for (int i = 0; i < batch.length; i++)
+        batch[i] = random.nextInt(data.length);
+      IntStream.range(0, batch.length).parallel()
+          .forEach(i -> batchAssignment[i] = findNearestCenter(data[batch[i]]));
+
+      // Gradient step with a per-center learning rate of 1 / (number of points seen so far)
+      for (int i = 0; i < batch.length; i++) {
+        final int c = batchAssignment[i];
+        counts[c]++;
+        final double learningRate = 1.0 / counts[c];
+        final double point[] = data[batch[i]], center[] = centers[c];
+        for (int d = 0; d < dimensions; d++)
+          center[d] += learningRate * (point[d] - center[d]);
+      }
+    }
+
+    final int assignment[] = new int[data.length];
+    IntStream.range(0, data.length).parallel()
+        .forEach(i -> assignment[i] = findNearestCenter(data[i]));
+    return assignment;
+  }
+
+  /**
+   * Cluster centers of the last clustering, indexed as [cluster][dimension]
+   */
+  public double[][] getCenters() {
+    return centers;
+  }
+
+  /**
+   * k-means++ seeding: the first center is a random point, each following center is a point chosen
+   * with probability proportional to its squared distance to the nearest center chosen so far
+   */
+  private double[][] initializeCenters(int numberOfClusters) {
+
+    final int k = Math.max(1, Math.min(numberOfClusters, data.length));
+    final double chosen[][] = new double[k][];
+    if (data.length == 0)
+      return new double[0][];
+
+    chosen[0] = data[random.nextInt(data.length)].clone();
+    final double minDistances[] = new double[data.length];
+    IntStream.range(0, data.length).parallel()
+        .forEach(i -> minDistances[i] = squaredDistance(data[i], chosen[0]));
+
+    for (int c = 1; c < k; c++) {
+      double total = 0.0;
+      for (double d : minDistances)
+        total += d;
+
+      int next;
+      if (total > 0.0) {
+        double target = random.nextDouble() * total;
+        next = 0;
+        while ((next < data.length - 1) && ((target -= minDistances[next]) >= 0.0))
+          next++;
+      } else {
+        // All points coincide with the centers, pick any
+        next = random.nextInt(data.length);
+      }
+
+      final double center[] = data[next].clone();
+      chosen[c] = center;
+      IntStream.range(0, data.length).parallel().forEach(
+          i -> minDistances[i] = Math.min(minDistances[i], squaredDistance(data[i], center)));
+    }
+
+    return chosen;
+  }
+
+  private int findNearestCenter(double point[]) {
+    int nearest = 0;
+    double nearestDistance = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < centers.length; c++) {
+      final double distance = squaredDistance(point, centers[c]);
+      if (distance < nearestDistance) {
+        nearestDistance = distance;
+        nearest = c;
+      }
+    }
+    return nearest;
+  }
+
+  private static double squaredDistance(double a[], double b[]) {
+    double sum = 0.0;
+    for (int d = 0; d < a.length; d++) {
+      final double diff = a[d] - b[d];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.kmeans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringAlgorithm;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringResult;
+import net.sf.mzmine.parameters.ParameterSet;
+
+/**
+ * K-means++ clustering on the primitive data, without conversion to a Weka data set. As in the
+ * Weka clusterers, the attributes are normalized to the range [0, 1] and clusters which end up
+ * without any points are dropped.
+ */
+public class KMeansClusterer implements ClusteringAlgorithm {
+
+  private static final String MODULE_NAME = "K-means++ (multithreaded)";
+
+  // Same default seed as the Weka SimpleKMeans clusterer
+  private static final long SEED = 10;
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters) {
+
+    final int numberOfGroups =
+        parameters.getParameter(KMeansClustererParameters.numberOfGroups).getValue();
+    final int numberOfIterations =
+        parameters.getParameter(KMeansClustererParameters.numberOfIterations).getValue();
+
+    KMeans kMeans = new KMeans(data.getNormalizedValues(), SEED);
+    int assignment[];
+    if (parameters.getParameter(KMeansClustererParameters.miniBatchSize).getValue()) {
+      final int batchSize = parameters.getParameter(KMeansClustererParameters.miniBatchSize)
+          .getEmbeddedParameter().getValue();
+      assignment = kMeans.clusterMiniBatch(numberOfGroups, batchSize, numberOfIterations);
+    } else {
+      assignment = kMeans.cluster(numberOfGroups, numberOfIterations);
+    }
+
+    // Number the non-empty clusters consecutively
+    final int clusterNumbers[] = new int[kMeans.getCenters().length];
+    for (int cluster : assignment)
+      clusterNumbers[cluster] = 1;
+    int numberOfClusters = 0;
+    for (int c = 0; c < clusterNumbers.length; c++)
+      clusterNumbers[c] = (clusterNumbers[c] > 0) ? numberOfClusters++ : -1;
+
+    List<Integer> clusters = new ArrayList<Integer>(assignment.length);
+    for (int cluster : assignment)
+      clusters.add(clusterNumbers[cluster]);
+
+    return new ClusteringResult(clusters, null, numberOfClusters,
+        parameters.getParameter(KMeansClustererParameters.visualization).getValue());
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return KMeansClustererParameters.class;
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.kmeans;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.VisualizationType;
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.ComboParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+
+public class KMeansClustererParameters extends SimpleParameterSet {
+
+  public static final ComboParameter<VisualizationType> visualization =
+      new ComboParameter<VisualizationType>("Visualization type",
+          "Select the kind of visualization for the clustering result", VisualizationType.values());
+
+  public static final IntegerParameter numberOfGroups = new IntegerParameter(
+      "Number of clusters to generate", "Specify the number of clusters to generate.", 3, 1, null);
+
+  public static final IntegerParameter numberOfIterations = new IntegerParameter(
+      "Maximum number of iterations",
+      "Maximum number of iterations (of mini-batches, if enabled) to compute the cluster centers",
+      500, 1, null);
+
+  public static final OptionalParameter<IntegerParameter> miniBatchSize =
+      new OptionalParameter<>(new IntegerParameter("Mini-batch size",
+          "If enabled, each iteration only uses this number of randomly chosen data points. "
+              + "This is much faster for large data sets, but gives less exact clusters.",
+          1000, 1, null));
+
+  public KMeansClustererParameters() {
+    super(new Parameter[] {visualization, numberOfGroups, numberOfIterations, miniBatchSize});
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.nnchain;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.DistanceType;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.LinkType;
+
+/**
+ * Agglomerative hierarchical clustering of the rows of a double[][] matrix by the nearest-neighbor
+ * chain algorithm (Müllner, "Modern hierarchical, agglomerative clustering algorithms", 2011). The
+ * algorithm needs O(n²) time and the condensed distance matrix, which is computed in parallel. It
+ * is exact for the linkages which satisfy the reducibility property: single, complete, average
+ * (UPGMA) and Ward.
+ */
+public class NNChain {
+
+  private final int size;
+  private final LinkType linkType;
+
+  // Condensed distance matrix, distance of i < j at index(i, j)
+  private final double distances[];
+
+  // Dendrogram: node n + k is the k-th merge (sorted by distance) of nodes left[k] and right[k],
+  // nodes 0 .. n - 1 are the clustered items
+  private int left[], right[], parentNodes[];
+  private double heights[];
+
+  public NNChain(double data[][], LinkType linkType, DistanceType distanceType) {
+
+    if (!isSupported(linkType))
+      throw new IllegalArgumentException("Link type " + linkType + " is not supported");
+    final long matrixSize = (long) data.length * (data.length - 1) / 2;
+    if (matrixSize > Integer.MAX_VALUE - 8)
+      throw new IllegalArgumentException("Too many items to cluster: " + data.length);
+
+    this.size = data.length;
+    this.linkType = linkType;
+    this.distances = new double[(int) matrixSize];
+
+    IntStream.range(0, size).parallel().forEach(i -> {
+      for (int j = i + 1; j < size; j++)
+        distances[index(i, j)] = distance(data[i], data[j], distanceType);
+    });
+  }
+
+  public static boolean isSupported(LinkType linkType) {
+    switch (linkType) {
+      case SINGLE:
+      case COMPLETE:
+      case AVERAGE:
+      case WARD:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Builds the dendrogram
+   */
+  public void cluster() {
+
+    final int clusterSizes[] = new int[size];
+    Arrays.fill(clusterSizes, 1);
+    final boolean active[] = new boolean[size];
+    Arrays.fill(active, true);
+
+    final int mergedFirst[] = new int[Math.max(0, size - 1)];
+    final int mergedSecond[] = new int[mergedFirst.length];
+    final double mergedDistances[] = new double[mergedFirst.length];
+
+    final int chain[] = new int[size];
+    int chainLength = 0;
+    int firstActive = 0;
+
+    for (int step = 0; step < size - 1; step++) {
+
+      if (chainLength == 0) {
+        while (!active[firstActive])
+          firstActive++;
+        chain[chainLength++] = firstActive;
+      }
+
+      // Follow the nearest neighbors until two clusters are mutual nearest neighbors. On ties,
+      // the previous element of the chain is preferred, so that the chain cannot cycle.
+      int a, b;
+      double minDistance;
+      while (true) {
+        a = chain[chainLength - 1];
+        final int previous = (chainLength >= 2) ? chain[chainLength - 2] : -1;
+        b = previous;
+        minDistance = (previous >= 0) ? getDistance(a, previous) : Double.POSITIVE_INFINITY;
+        for (int x = 0; x < size; x++) {
+          if ((x == a) || !active[x])
+            continue;
+          final double d = getDistance(a, x);
+          if ((d < minDistance) || (b < 0)) {
+            minDistance = d;
+            b = x;
+          }
+        }
+        if (b == previous)
+          break;
+        chain[chainLength++] = b;
+      }
+      chainLength -= 2;
+
+      // The merged cluster is stored at the position of b, a becomes inactive
+      mergedFirst[step] = a;
+      mergedSecond[step] = b;
+      mergedDistances[step] = minDistance;
+      for (int x = 0; x < size; x++) {
+        if ((x == a) || (x == b) || !active[x])
+          continue;
+        distances[index(Math.min(x, b), Math.max(x, b))] = updateDistance(getDistance(a, x),
+            getDistance(b, x), minDistance, clusterSizes[a], clusterSizes[b], clusterSizes[x]);
+      }
+      clusterSizes[b] += clusterSizes[a];
+      active[a] = false;
+    }
+
+    // The merges are not found in the order of their distance, sort them and label the merged
+    // clusters by a union-find structure
+    final Integer order[] = new Integer[mergedFirst.length];
+    for (int i = 0; i < order.length; i++)
+      order[i] = i;
+    Arrays.sort(order, (i, j) -> Double.compare(mergedDistances[i], mergedDistances[j]));
+
+    left = new int[mergedFirst.length];
+    right = new int[mergedFirst.length];
+    heights = new double[mergedFirst.length];
+    parentNodes = new int[2 * size];
+    final int parents[] = new int[2 * size];
+    for (int i = 0; i < parents.length; i++)
+      parents[i] = i;
+    for (int k = 0; k < order.length; k++) {
+      final int node = size + k;
+      final int first = find(parents, mergedFirst[order[k]]);
+      final int second = find(parents, mergedSecond[order[k]]);
+      left[k] = Math.min(first, second);
+      right[k] = Math.max(first, second);
+      heights[k] = mergedDistances[order[k]];
+      parents[first] = node;
+      parents[second] = node;
+      parentNodes[left[k]] = node;
+      parentNodes[right[k]] = node;
+    }
+  }
+
+  /**
+   * Cuts the dendrogram into given number of clusters. Returns the cluster of each item, the
+   * clusters are numbered by their first item.
+   */
+  public int[] getClusters(int numberOfClusters) {
+    final int clusters[] = new int[size];
+    final int roots[] = getRoots(numberOfClusters);
+    final int rootNumbers[] = new int[2 * size];
+    int clusterNumber = 0;
+    for (int i = 0; i < size; i++) {
+      final int root = roots[i];
+      if (rootNumbers[root] == 0)
+        rootNumbers[root] = ++clusterNumber;
+      clusters[i] = rootNumbers[root] - 1;
+    }
+    return clusters;
+  }
+
+  /**
+   * Returns the dendrogram of each cluster in Newick format, in the same format as the Weka
+   * HierarchicalClusterer ("Cluster i" followed by the tree). Clusters of a single item are
+   * numbered, but not printed.
+   */
+  public String toNewick(int numberOfClusters, String names[]) {
+
+    final DecimalFormat format = new DecimalFormat("#.#####", new DecimalFormatSymbols(Locale.US));
+    final int roots[] = getRoots(numberOfClusters);
+    final boolean printed[] = new boolean[2 * size];
+    final StringBuilder str = new StringBuilder();
+    int clusterNumber = 0;
+
+    for (int i = 0; i < size; i++) {
+      final int root = roots[i];
+      if (printed[root])
+        continue;
+      printed[root] = true;
+      if (root >= size) {
+        str.append("Cluster " + clusterNumber + "\n");
+        appendTree(str, root, names, format);
+        str.append("\n\n");
+      }
+      clusterNumber++;
+    }
+
+    return str.toString();
+  }
+
+  /**
+   * Appends the subtree of given node, without recursion because the tree can be very deep
+   */
+  private void appendTree(StringBuilder str, int root, String names[], DecimalFormat format) {
+
+    // Negative entries close a node: -1 - node
+    final Deque<Integer> stack = new ArrayDeque<Integer>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      final int entry = stack.pop();
+      if (entry == Integer.MIN_VALUE) {
+        str.append(',');
+        continue;
+      }
+      if (entry < 0) {
+        final int node = -1 - entry;
+        str.append(')');
+        if (node != root)
+          appendLength(str, node, format);
+        continue;
+      }
+      if (entry < size) {
+        str.append(names[entry]);
+        if (entry != root)
+          appendLength(str, entry, format);
+        continue;
+      }
+      str.append('(');
+      final int k = entry - size;
+      stack.push(-1 - entry);
+      stack.push(right[k]);
+      stack.push(Integer.MIN_VALUE);
+      stack.push(left[k]);
+    }
+  }
+
+  private void appendLength(StringBuilder str, int node, DecimalFormat format) {
+    final int parent = parentNodes[node];
+    final double nodeHeight = (node < size) ? 0.0 : heights[node - size];
+    str.append(':');
+    str.append(format.format(heights[parent - size] - nodeHeight));
+  }
+
+  private int[] getRoots(int numberOfClusters) {
+    final int merges = Math.max(0, size - Math.max(1, numberOfClusters));
+    final int parents[] = new int[2 * size];
+    for (int i = 0; i < parents.length; i++)
+      parents[i] = i;
+    for (int k = 0; k < merges; k++) {
+      parents[left[k]] = size + k;
+      parents[right[k]] = size + k;
+    }
+    final int roots[] = new int[size];
+    for (int i = 0; i < size; i++)
+      roots[i] = find(parents, i);
+    return roots;
+  }
+
+  private static int find(int parents[], int node) {
+    int root = node;
+    while (parents[root] != root)
+      root = parents[root];
+    while (parents[node] != root) {
+      final int next = parents[node];
+      parents[node] = root;
+      node = next;
+    }
+    return root;
+  }
+
+  /**
+   * Lance-Williams update of the distance between cluster x and the union of clusters a and b
+   */
+  private double updateDistance(double ax, double bx, double ab, int sizeA, int sizeB, int sizeX) {
+    switch (linkType) {
+      case SINGLE:
+        return Math.min(ax, bx);
+      case COMPLETE:
+        return Math.max(ax, bx);
+      case AVERAGE:
+        return (sizeA * ax + sizeB * bx) / (sizeA + sizeB);
+      case WARD:
+        final double value =
+            ((sizeA + sizeX) * ax * ax + (sizeB + sizeX) * bx * bx - sizeX * ab * ab)
+                / (sizeA + sizeB + sizeX);
+        return Math.sqrt(Math.max(0.0, value));
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  private double getDistance(int i, int j) {
+    return (i < j) ? distances[index(i, j)] : distances[index(j, i)];
+  }
+
+  private int index(int i, int j) {
+    return (int) ((long) i * size - (long) i * (i + 1) / 2 + j - i - 1);
+  }
+
+  private static double distance(double a[], double b[], DistanceType distanceType) {
+    double result = 0.0;
+    for (int d = 0; d < a.length; d++) {
+      final double diff = Math.abs(a[d] - b[d]);
+      switch (distanceType) {
+        case CHEBYSHEV:
+          result = Math.max(result, diff);
+          break;
+        case MANHATTAN:
+          result += diff;
+          break;
+        default:
+          // Euclidean, and Minkowski with the Weka default order 2
+          result += diff * diff;
+      }
+    }
+    return ((distanceType == DistanceType.EUCLIDIAN) || (distanceType == DistanceType.MINKOWSKI))
+        ? Math.sqrt(result)
+        : result;
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.nnchain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringAlgorithm;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringResult;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.DistanceType;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.LinkType;
+import net.sf.mzmine.parameters.ParameterSet;
+
+/**
+ * Hierarchical clustering by the nearest-neighbor chain algorithm on the primitive data. As in the
+ * Weka HierarchicalClusterer, the attributes are normalized to the range [0, 1] and the result is
+ * given as a Newick tree for each cluster.
+ */
+public class NNChainClusterer implements ClusteringAlgorithm {
+
+  private Logger logger = Logger.getLogger(this.getClass().getName());
+
+  private static final String MODULE_NAME = "Hierarchical clusterer (NN-chain)";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters) {
+
+    LinkType link = parameters.getParameter(NNChainClustererParameters.linkType).getValue();
+    DistanceType distanceType =
+        parameters.getParameter(NNChainClustererParameters.distanceType).getValue();
+    int numberOfClusters =
+        parameters.getParameter(NNChainClustererParameters.numberOfClusters).getValue();
+
+    try {
+      NNChain clusterer = new NNChain(data.getNormalizedValues(), link, distanceType);
+      clusterer.cluster();
+
+      List<Integer> clusters = new ArrayList<Integer>();
+      int numberOfGroups = 0;
+      for (int cluster : clusterer.getClusters(numberOfClusters)) {
+        clusters.add(cluster);
+        numberOfGroups = Math.max(numberOfGroups, cluster + 1);
+      }
+      return new ClusteringResult(clusters, clusterer.toNewick(numberOfClusters, data.getNames()),
+          numberOfGroups, null);
+    } catch (Exception ex) {
+      logger.log(Level.SEVERE, null, ex);
+      return null;
+    }
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return NNChainClustererParameters.class;
+  }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.nnchain;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.DistanceType;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.LinkType;
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.ComboParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+
+public class NNChainClustererParameters extends SimpleParameterSet {
+
+  public static final ComboParameter<LinkType> linkType =
+      new ComboParameter<LinkType>("Type of link", "Type of link", new LinkType[] {LinkType.SINGLE,
+          LinkType.COMPLETE, LinkType.AVERAGE, LinkType.WARD});
+
+  public static final ComboParameter<DistanceType> distanceType =
+      new ComboParameter<DistanceType>("Distances", "Distances", DistanceType.values());
+
+  public static final IntegerParameter numberOfClusters = new IntegerParameter(
+      "Number of clusters", "Number of clusters the hierarchy is cut into", 2, 1, null);
+
+  public NNChainClustererParameters() {
+    super(new Parameter[] {linkType, distanceType, numberOfClusters});
+  }
+}
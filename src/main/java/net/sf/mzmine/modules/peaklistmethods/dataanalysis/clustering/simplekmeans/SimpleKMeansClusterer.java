@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import javax.annotation.Nonnull;
 
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringAlgorithm;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringResult;
 import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.em.EMClustererParameters;
 import net.sf.mzmine.parameters.ParameterSet;
@@ -46,8 +47,9 @@ public class SimpleKMeansClusterer implements ClusteringAlgorithm {
   }
 
   @Override
-  public ClusteringResult performClustering(Instances dataset, ParameterSet parameters) {
+  public ClusteringResult performClustering(ClusteringData data, ParameterSet parameters) {
 
+    Instances dataset = data.createWekaDataset(false);
     List<Integer> clusters = new ArrayList<Integer>();
     String[] options = new String[2];
     SimpleKMeans clusterer = new SimpleKMeans();
@@ -29,7 +29,7 @@ import org.apache.commons.math.MathException;
 import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math.stat.inference.TTestImpl;
 
-import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -64,6 +64,9 @@ public class HeatMapTask extends AbstractTask {
   private final Object referenceGroup;
   private final PeakList peakList;
 
+  // Memory of one cell of the data matrices, including the p-value label
+  private static final int BYTES_PER_MATRIX_CELL = 80;
+
 
   public HeatMapTask(MZmineProject project, PeakList peakList, ParameterSet parameters) {
 
@@ -100,6 +103,15 @@ public class HeatMapTask extends AbstractTask {
     return finishedPercentage;
   }
 
+  /**
+   * The task keeps several matrices of values and p-value labels for all rows and data files
+   */
+  @Override
+  public long getEstimatedMemory() {
+    return (long) peakList.getNumberOfRows() * peakList.getNumberOfRawDataFiles()
+        * BYTES_PER_MATRIX_CELL;
+  }
+
   @Override
   public void cancel() {
 
@@ -352,24 +364,22 @@ public class HeatMapTask extends AbstractTask {
       shownDataFiles = nonReferenceDataFiles;
     }
 
-    for (int row = 0, rowIndex = 0; row < peakList.getNumberOfRows(); row++) {
-      PeakListRow rowPeak = peakList.getRow(row);
+    final FeatureMatrix matrix = peakList.getFeatureMatrix();
+    final int referenceColumns[] = getFileIndexes(matrix, referenceDataFiles);
+    final int shownColumns[] = getFileIndexes(matrix, shownDataFiles);
+
+    for (int row = 0, rowIndex = 0; row < matrix.getNumberOfRows(); row++) {
+      PeakListRow rowPeak = matrix.getRow(row);
       if (!onlyIdentified || (onlyIdentified && rowPeak.getPeakIdentities().length > 0)) {
 
         // Average area or height of the reference group
         double referenceAverage = 0;
         int referencePeakCount = 0;
-        for (int column = 0; column < referenceDataFiles.size(); column++) {
+        for (int column : referenceColumns) {
 
-          if (rowPeak.getPeak(referenceDataFiles.get(column)) != null) {
+          if (matrix.hasPeak(row, column)) {
 
-            if (area) {
-
-              referenceAverage += rowPeak.getPeak(referenceDataFiles.get(column)).getArea();
-            } else {
-
-              referenceAverage += rowPeak.getPeak(referenceDataFiles.get(column)).getHeight();
-            }
+            referenceAverage += getValue(matrix, row, column);
             referencePeakCount++;
           }
         }
@@ -380,18 +390,11 @@ public class HeatMapTask extends AbstractTask {
 
         // Divide the area or height of each peak by the average of the
         // area or height of the reference peaks in each row
-        for (int column = 0; column < shownDataFiles.size(); column++) {
+        for (int column = 0; column < shownColumns.length; column++) {
           double value = Double.NaN;
-          if (rowPeak.getPeak(shownDataFiles.get(column)) != null) {
+          if (matrix.hasPeak(row, shownColumns[column])) {
 
-            Feature peak = rowPeak.getPeak(shownDataFiles.get(column));
-            if (area) {
-
-              value = peak.getArea() / referenceAverage;
-            } else {
-
-              value = peak.getHeight() / referenceAverage;
-            }
+            value = getValue(matrix, row, shownColumns[column]) / referenceAverage;
             if (log) {
 
               value = Math.log(value);
@@ -435,6 +438,24 @@ public class HeatMapTask extends AbstractTask {
     return dataMatrix;
   }
 
+  /**
+   * Returns the positions of given data files in the feature matrix
+   */
+  private static int[] getFileIndexes(FeatureMatrix matrix, List<RawDataFile> dataFiles) {
+    int indexes[] = new int[dataFiles.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = matrix.getRawDataFileIndex(dataFiles.get(i));
+    }
+    return indexes;
+  }
+
+  /**
+   * Returns the area or height of the peak, depending on the selected measurement
+   */
+  private double getValue(FeatureMatrix matrix, int row, int column) {
+    return area ? matrix.getArea(row, column) : matrix.getHeight(row, column);
+  }
+
   private void scale(double[][] peakList) {
     DescriptiveStatistics stdDevStats = new DescriptiveStatistics();
 
@@ -503,24 +524,25 @@ public class HeatMapTask extends AbstractTask {
     // data files that should be in the heat map
     List<RawDataFile> shownDataFiles = nonReferenceDataFiles;
 
-    for (int row = 0, rowIndex = 0; row < peakList.getNumberOfRows(); row++) {
-      PeakListRow rowPeak = peakList.getRow(row);
+    final FeatureMatrix matrix = peakList.getFeatureMatrix();
+    final int referenceColumns[] = getFileIndexes(matrix, referenceDataFiles);
+    final int shownColumns[] = getFileIndexes(matrix, shownDataFiles);
+    final String shownGroups[] = new String[shownDataFiles.size()];
+    for (int dataColumn = 0; dataColumn < shownGroups.length; dataColumn++) {
+      shownGroups[dataColumn] = String
+          .valueOf(project.getParameterValue(selectedParameter, shownDataFiles.get(dataColumn)));
+    }
+
+    for (int row = 0, rowIndex = 0; row < matrix.getNumberOfRows(); row++) {
+      PeakListRow rowPeak = matrix.getRow(row);
       if (!onlyIdentified || (onlyIdentified && rowPeak.getPeakIdentities().length > 0)) {
         // Average area or height of the reference group
         meanControlStats.clear();
-        for (int column = 0; column < referenceDataFiles.size(); column++) {
-
-          if (rowPeak.getPeak(referenceDataFiles.get(column)) != null) {
+        for (int column : referenceColumns) {
 
-            if (area) {
-
-              meanControlStats.addValue(rowPeak.getPeak(referenceDataFiles.get(column)).getArea());
-            } else {
-
-              meanControlStats
-                  .addValue(rowPeak.getPeak(referenceDataFiles.get(column)).getHeight());
-            }
+          if (matrix.hasPeak(row, column)) {
 
+            meanControlStats.addValue(getValue(matrix, row, column));
           }
         }
 
@@ -532,24 +554,15 @@ public class HeatMapTask extends AbstractTask {
           meanGroupStats.clear();
           if (!group.equals(referenceGroup)) {
 
-            for (int dataColumn = 0; dataColumn < shownDataFiles.size(); dataColumn++) {
-
-              Object paramValue =
-                  project.getParameterValue(selectedParameter, shownDataFiles.get(dataColumn));
-              if (rowPeak.getPeak(shownDataFiles.get(dataColumn)) != null
-                  && String.valueOf(paramValue).equals(group)) {
-
-                Feature peak = rowPeak.getPeak(shownDataFiles.get(dataColumn));
-
-                if (!Double.isInfinite(peak.getArea()) && !Double.isNaN(peak.getArea())) {
+            for (int dataColumn = 0; dataColumn < shownColumns.length; dataColumn++) {
 
-                  if (area) {
+              final int matrixColumn = shownColumns[dataColumn];
+              if (matrix.hasPeak(row, matrixColumn) && shownGroups[dataColumn].equals(group)) {
 
-                    meanGroupStats.addValue(peak.getArea());
-                  } else {
+                final double peakArea = matrix.getArea(row, matrixColumn);
+                if (!Double.isInfinite(peakArea) && !Double.isNaN(peakArea)) {
 
-                    meanGroupStats.addValue(peak.getHeight());
-                  }
+                  meanGroupStats.addValue(getValue(matrix, row, matrixColumn));
                 }
 
               }
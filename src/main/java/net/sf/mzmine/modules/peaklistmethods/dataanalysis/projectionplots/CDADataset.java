@@ -22,9 +22,7 @@ import java.util.Vector;
 import java.util.logging.Logger;
 import org.jfree.data.xy.AbstractXYDataset;
 import jmprojection.CDA;
-import jmprojection.Preprocess;
 import jmprojection.ProjectionStatus;
-import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -63,6 +61,7 @@ public class CDADataset extends AbstractXYDataset implements ProjectionPlotDatas
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
 
+  private ProjectionEngine engine;
   private ProjectionStatus projectionStatus;
 
   public CDADataset(MZmineProject project, ParameterSet parameters) {
@@ -228,28 +227,22 @@ public class CDADataset extends AbstractXYDataset implements ProjectionPlotDatas
         .getValue() == PeakMeasurementType.AREA)
       useArea = true;
 
-    double[][] rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-    for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-      PeakListRow peakListRow = selectedRows[rowIndex];
-      for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-        RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-        Feature p = peakListRow.getPeak(rawDataFile);
-        if (p != null) {
-          if (useArea)
-            rawData[fileIndex][rowIndex] = p.getArea();
-          else
-            rawData[fileIndex][rowIndex] = p.getHeight();
-        }
-      }
-    }
+    engine = ProjectionEngine.createEngine(peakList.getFeatureMatrix(), selectedRows,
+        selectedRawDataFiles, useArea);
 
     int numComponents = xAxisDimension;
     if (yAxisDimension > numComponents)
       numComponents = yAxisDimension;
 
-    // Scale data and do CDA
-    Preprocess.scaleToUnityVariance(rawData);
-    CDA cdaProj = new CDA(rawData);
+    // Scale data and do CDA. CDA only uses the distances between the samples, so it runs on the
+    // reduced coordinates, which have at most as many dimensions as there are samples.
+    engine.scaleToUnityVariance();
+    double[][] reducedData = engine.computeReducedCoordinates();
+    if ((reducedData == null) || (status == TaskStatus.CANCELED))
+      return;
+
+    CDA cdaProj = new CDA(reducedData);
+    projectionStatus = cdaProj.getProjectionStatus();
     cdaProj.iterate(100);
 
     if (status == TaskStatus.CANCELED)
@@ -273,6 +266,8 @@ public class CDADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public void cancel() {
+    if (engine != null)
+      engine.cancel();
     if (projectionStatus != null)
       projectionStatus.cancel();
     status = TaskStatus.CANCELED;
@@ -295,9 +290,12 @@ public class CDADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null)
+    // The reduction of the data and the CDA iterations count as one half each
+    if (engine == null)
       return 0;
-    return projectionStatus.getFinishedPercentage();
+    if (projectionStatus == null)
+      return engine.getFinishedPercentage() / 2;
+    return 0.5 + projectionStatus.getFinishedPercentage() / 2;
   }
 
 }
@@ -21,10 +21,6 @@ package net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots;
 import java.util.Vector;
 import java.util.logging.Logger;
 import org.jfree.data.xy.AbstractXYDataset;
-import jmprojection.PCA;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -63,7 +59,7 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
 
-  private ProjectionStatus projectionStatus;
+  private ProjectionEngine engine;
 
   public PCADataset(MZmineProject project, ParameterSet parameters) {
 
@@ -225,43 +221,18 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
       return;
     }
 
-    double[][] rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-    for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-      PeakListRow peakListRow = selectedRows[rowIndex];
-      for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-        RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-        Feature p = peakListRow.getPeak(rawDataFile);
-        if (p != null) {
-          if (useArea)
-            rawData[fileIndex][rowIndex] = p.getArea();
-          else
-            rawData[fileIndex][rowIndex] = p.getHeight();
-        }
-      }
-    }
+    engine = ProjectionEngine.createEngine(peakList.getFeatureMatrix(), selectedRows,
+        selectedRawDataFiles, useArea);
 
     int numComponents = xAxisPC;
     if (yAxisPC > numComponents)
       numComponents = yAxisPC;
 
-    // Scale data and do PCA
-    Preprocess.scaleToUnityVariance(rawData);
-
-    // Replace NaN values with 0.0
-    for (int i = 0; i < rawData.length; i++) {
-      for (int j = 0; j < rawData[i].length; j++) {
-        if (Double.isNaN(rawData[i][j]))
-          rawData[i][j] = 0.0;
-      }
-    }
-
-    PCA pcaProj = new PCA(rawData, numComponents);
-
-    projectionStatus = pcaProj.getProjectionStatus();
-
-    double[][] result = pcaProj.getState();
+    // Scale data (NaN values are replaced with 0.0) and do PCA
+    engine.scaleToUnityVariance();
+    double[][] result = engine.computePCA(numComponents);
 
-    if (status == TaskStatus.CANCELED)
+    if ((result == null) || (status == TaskStatus.CANCELED))
       return;
 
     component1Coords = result[xAxisPC - 1];
@@ -277,8 +248,8 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public void cancel() {
-    if (projectionStatus != null)
-      projectionStatus.cancel();
+    if (engine != null)
+      engine.cancel();
     status = TaskStatus.CANCELED;
   }
 
@@ -299,9 +270,9 @@ public class PCADataset extends AbstractXYDataset implements ProjectionPlotDatas
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null)
+    if (engine == null)
       return 0;
-    return projectionStatus.getFinishedPercentage();
+    return engine.getFinishedPercentage();
   }
 
 }
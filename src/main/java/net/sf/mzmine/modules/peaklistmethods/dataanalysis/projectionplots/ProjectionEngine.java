@@ -0,0 +1,579 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import net.sf.mzmine.datamodel.FeatureMatrix;
+import net.sf.mzmine.datamodel.PeakListRow;
+import net.sf.mzmine.datamodel.RawDataFile;
+
+/**
+ * Computes the projections of the projection plots. The input is a samples x features matrix (one
+ * sample per raw data file, one feature per peak list row), stored column-major in a single
+ * primitive array, so that the values of one feature are contiguous.
+ *
+ * PCA is computed by a randomized truncated SVD (Halko, Martinsson & Tropp, 2011), which only
+ * needs a few passes over the matrix instead of the full decomposition. Sammon's mapping computes
+ * the distances between samples once and evaluates the gradient of all samples in parallel.
+ *
+ * Unlike the sequential rule of jmprojection, where each sample is moved using the coordinates
+ * already updated in the same iteration (Gauss-Seidel style), all samples are moved at once based
+ * on the coordinates of the previous iteration (Jacobi style). The mapping therefore differs from
+ * the one of jmprojection, and the stress may increase in the first iterations before it
+ * converges.
+ *
+ * The computations run on the common fork-join pool, update the finished percentage and return
+ * null as soon as possible after cancel() was called.
+ */
+public class ProjectionEngine {
+
+  // Number of additional random vectors and power iterations of the randomized SVD
+  private static final int OVERSAMPLING = 10;
+  private static final int POWER_ITERATIONS = 4;
+
+  // Magic factor of Sammon's mapping, empirically determined to be ~ 0.3 or 0.4
+  private static final double SAMMON_MAGIC_FACTOR = 0.4;
+
+  // Pivots below this fraction of the largest diagonal value are treated as zero
+  private static final double CHOLESKY_TOLERANCE = 1e-12;
+
+  // Fixed seed, so that the same data always gives the same plot
+  private static final long RANDOM_SEED = 0x4d5a6d696e65L;
+
+  private final int samples, features;
+  private final double data[];
+
+  private final AtomicLong processedWork = new AtomicLong();
+  private volatile long totalWork = 0;
+  private volatile boolean canceled = false;
+
+  /**
+   * @param data samples x features matrix in column-major order
+   */
+  public ProjectionEngine(double data[], int samples, int features) {
+    if (data.length != samples * features)
+      throw new IllegalArgumentException("Matrix size does not match its dimensions");
+    this.data = data;
+    this.samples = samples;
+    this.features = features;
+  }
+
+  /**
+   * Creates the matrix of peak areas or heights of given rows in given raw data files, taken from
+   * the feature matrix of their peak list. Missing peaks have value 0.
+   */
+  public static ProjectionEngine createEngine(FeatureMatrix matrix, PeakListRow rows[],
+      RawDataFile files[], boolean useArea) {
+    final int fileIndexes[] = new int[files.length];
+    for (int fileIndex = 0; fileIndex < files.length; fileIndex++)
+      fileIndexes[fileIndex] = matrix.getRawDataFileIndex(files[fileIndex]);
+    final double data[] = new double[rows.length * files.length];
+    for (int rowIndex = 0; rowIndex < rows.length; rowIndex++) {
+      final int offset = rowIndex * files.length;
+      final int row = matrix.getRowIndex(rows[rowIndex]);
+      for (int fileIndex = 0; fileIndex < files.length; fileIndex++) {
+        final int file = fileIndexes[fileIndex];
+        if ((row < 0) || (file < 0))
+          continue;
+        data[offset + fileIndex] =
+            useArea ? matrix.getArea(row, file) : matrix.getHeight(row, file);
+      }
+    }
+    return new ProjectionEngine(data, files.length, rows.length);
+  }
+
+  /**
+   * Creates the engine for a matrix indexed as [sample][feature]
+   */
+  public static ProjectionEngine createEngine(double rows[][]) {
+    final int samples = rows.length, features = (samples == 0) ? 0 : rows[0].length;
+    final double data[] = new double[samples * features];
+    for (int i = 0; i < samples; i++) {
+      for (int f = 0; f < features; f++)
+        data[f * samples + i] = rows[i][f];
+    }
+    return new ProjectionEngine(data, samples, features);
+  }
+
+  public int getSamples() {
+    return samples;
+  }
+
+  public int getFeatures() {
+    return features;
+  }
+
+  public double getFinishedPercentage() {
+    final long total = totalWork;
+    if (total <= 0)
+      return 0;
+    return Math.min(1.0, (double) processedWork.get() / total);
+  }
+
+  public void cancel() {
+    canceled = true;
+  }
+
+  public boolean isCanceled() {
+    return canceled;
+  }
+
+  /**
+   * Centers each feature and scales it to unit variance. Values which cannot be scaled (constant
+   * features or a single sample) are set to 0.
+   */
+  public void scaleToUnityVariance() {
+    IntStream.range(0, features).parallel().forEach(feature -> {
+      final int offset = feature * samples;
+      double mean = 0.0, s = 0.0;
+      for (int i = 0; i < samples; i++) {
+        final double value = data[offset + i];
+        final double delta = value - mean;
+        mean += delta / (i + 1);
+        s += delta * (value - mean);
+      }
+      s = Math.sqrt(s / (samples - 1));
+      for (int i = 0; i < samples; i++) {
+        final double value = (data[offset + i] - mean) / s;
+        data[offset + i] = Double.isNaN(value) ? 0.0 : value;
+      }
+    });
+  }
+
+  /**
+   * Returns the coordinates of the samples on the first principal components, indexed as
+   * [component][sample], or null if canceled. Components beyond the rank of the matrix are 0.
+   */
+  public double[][] computePCA(int components) {
+
+    final int rank = Math.min(samples, features);
+    final int size = Math.min(components + OVERSAMPLING, rank);
+    final double result[][] = new double[components][samples];
+    if (size == 0)
+      return result;
+
+    // Each multiplication is one pass over the matrix
+    startWork((2L * POWER_ITERATIONS + 2) * features);
+
+    // Sample the range of the matrix with random vectors, Y = X * Omega
+    final Random random = new Random(RANDOM_SEED);
+    double omega[] = new double[features * size];
+    for (int i = 0; i < omega.length; i++)
+      omega[i] = random.nextGaussian();
+    double range[] = multiply(omega, size);
+
+    // Power iterations sharpen the decay of the singular values, Y = (X * X') ^ q * Y
+    for (int i = 0; i < POWER_ITERATIONS; i++) {
+      if (!orthonormalize(range, samples, size))
+        return null;
+      final double z[] = multiplyTransposed(range, size);
+      if (!orthonormalize(z, features, size))
+        return null;
+      range = multiply(z, size);
+    }
+    if (!orthonormalize(range, samples, size))
+      return null;
+
+    // X ~ Q * B with B = Q' * X, the singular values and left singular vectors of B follow from
+    // the eigen decomposition of B * B' = Z' * Z, Z = X' * Q
+    final double z[] = multiplyTransposed(range, size);
+    if (z == null)
+      return null;
+    final double gram[] = new double[size * size];
+    IntStream.range(0, size).parallel().forEach(i -> {
+      for (int j = 0; j <= i; j++) {
+        double sum = 0.0;
+        for (int k = 0; k < features; k++)
+          sum += z[i * features + k] * z[j * features + k];
+        gram[i * size + j] = gram[j * size + i] = sum;
+      }
+    });
+    final double eigenVectors[] = new double[size * size];
+    final double eigenValues[] = symmetricEigen(gram, size, eigenVectors);
+
+    // Coordinates of the samples are U * S = Q * W * S
+    for (int c = 0; c < Math.min(components, size); c++) {
+      final double singularValue = Math.sqrt(Math.max(0.0, eigenValues[c]));
+      final double coords[] = result[c];
+      for (int k = 0; k < size; k++) {
+        final double w = eigenVectors[c * size + k] * singularValue;
+        for (int i = 0; i < samples; i++)
+          coords[i] += range[k * samples + i] * w;
+      }
+      // The sign of a component is arbitrary, make the largest coordinate positive
+      int largest = 0;
+      for (int i = 1; i < samples; i++) {
+        if (Math.abs(coords[i]) > Math.abs(coords[largest]))
+          largest = i;
+      }
+      if (coords[largest] < 0) {
+        for (int i = 0; i < samples; i++)
+          coords[i] = -coords[i];
+      }
+    }
+
+    return canceled ? null : result;
+  }
+
+  /**
+   * Returns the coordinates of Sammon's mapping after given number of iterations, indexed as
+   * [dimension][sample], or null if canceled
+   */
+  public double[][] computeSammon(int dimensions, int iterations) {
+
+    final long pairWork = (long) samples * (samples - 1) / 2 * features;
+    startWork(pairWork + (long) iterations * samples * samples);
+
+    final double distances[] = computeDistances();
+    if (distances == null)
+      return null;
+
+    double maxDistance = 0.0;
+    for (double d : distances)
+      maxDistance = Math.max(maxDistance, d);
+
+    final Random random = new Random(RANDOM_SEED);
+    double coords[][] = new double[dimensions][samples];
+    for (int i = 0; i < samples; i++) {
+      for (int q = 0; q < dimensions; q++)
+        coords[q][i] = maxDistance * random.nextDouble();
+    }
+
+    for (int iteration = 0; iteration < iterations; iteration++) {
+
+      // All samples are moved at the same time, based on the previous coordinates
+      final double previous[][] = coords;
+      final double next[][] = new double[dimensions][samples];
+      IntStream.range(0, samples).parallel().forEach(p -> {
+        if (canceled)
+          return;
+        final double pder[] = new double[dimensions];
+        final double pder2[] = new double[dimensions];
+        for (int j = 0; j < samples; j++) {
+          if (j == p)
+            continue;
+          double dMap = 0.0;
+          for (int q = 0; q < dimensions; q++) {
+            final double diff = previous[q][p] - previous[q][j];
+            dMap += diff * diff;
+          }
+          dMap = Math.sqrt(dMap);
+          double dOrig = distances[p * samples + j];
+          if (dOrig == 0.0)
+            dOrig = 1.0;
+          if (dMap == 0.0)
+            dMap = 1.0;
+          final double temp = (dOrig - dMap) / (dOrig * dMap);
+          for (int q = 0; q < dimensions; q++) {
+            final double diff = previous[q][p] - previous[q][j];
+            pder[q] += temp * diff;
+            pder2[q] += temp - diff * diff / (dMap * dMap * dMap);
+          }
+        }
+        for (int q = 0; q < dimensions; q++)
+          next[q][p] = previous[q][p] + SAMMON_MAGIC_FACTOR * pder[q] / Math.abs(pder2[q]);
+        processedWork.addAndGet(samples);
+      });
+      if (canceled)
+        return null;
+      coords = next;
+    }
+
+    return coords;
+  }
+
+  /**
+   * Returns coordinates of the samples, indexed as [sample][dimension], with the same Euclidean
+   * distances between the samples as in the matrix but with at most as many dimensions as there
+   * are samples. Returns null if canceled.
+   *
+   * The coordinates are the rows of the Cholesky factor of the Gram matrix X * X', so methods
+   * based on Euclidean distances (e.g. CDA) give the same results on a much smaller input.
+   */
+  public double[][] computeReducedCoordinates() {
+
+    if (features <= samples) {
+      startWork(0);
+      final double coords[][] = new double[samples][features];
+      for (int f = 0; f < features; f++) {
+        for (int i = 0; i < samples; i++)
+          coords[i][f] = data[f * samples + i];
+      }
+      return coords;
+    }
+
+    final long gramWork = (long) samples * (samples + 1) / 2 * features;
+    startWork(gramWork + (long) samples * samples * samples / 12);
+
+    final double gram[][] = new double[samples][];
+    IntStream.range(0, samples).parallel().forEach(i -> {
+      if (canceled)
+        return;
+      final double row[] = new double[i + 1];
+      for (int f = 0; f < features; f++) {
+        final int offset = f * samples;
+        final double value = data[offset + i];
+        if (value == 0.0)
+          continue;
+        for (int j = 0; j <= i; j++)
+          row[j] += value * data[offset + j];
+      }
+      gram[i] = row;
+      processedWork.addAndGet((long) (i + 1) * features);
+    });
+    if (canceled)
+      return null;
+
+    double maxDiagonal = 0.0;
+    for (int i = 0; i < samples; i++)
+      maxDiagonal = Math.max(maxDiagonal, gram[i][i]);
+    final double tolerance = maxDiagonal * CHOLESKY_TOLERANCE;
+
+    // Cholesky decomposition of the positive semidefinite Gram matrix, in place and column by
+    // column. Columns with a (numerically) zero pivot are linearly dependent and set to 0.
+    final double factor[][] = gram;
+    for (int j = 0; j < samples; j++) {
+      if (canceled)
+        return null;
+      final double rowJ[] = factor[j];
+      double pivot = rowJ[j];
+      for (int k = 0; k < j; k++)
+        pivot -= rowJ[k] * rowJ[k];
+      final double diagonal = (pivot > tolerance) ? Math.sqrt(pivot) : 0.0;
+      rowJ[j] = diagonal;
+      final int column = j;
+      IntStream.range(j + 1, samples).parallel().forEach(i -> {
+        final double rowI[] = factor[i];
+        if (diagonal == 0.0) {
+          rowI[column] = 0.0;
+          return;
+        }
+        double sum = rowI[column];
+        for (int k = 0; k < column; k++)
+          sum -= rowI[k] * rowJ[k];
+        rowI[column] = sum / diagonal;
+      });
+      processedWork.addAndGet((long) (samples - j) * j / 2);
+    }
+
+    final double coords[][] = new double[samples][samples];
+    for (int i = 0; i < samples; i++)
+      System.arraycopy(factor[i], 0, coords[i], 0, i + 1);
+    return coords;
+  }
+
+  private void startWork(long work) {
+    processedWork.set(0);
+    totalWork = Math.max(1, work);
+    if (work == 0)
+      processedWork.set(1);
+  }
+
+  /**
+   * Euclidean distances between all samples, as a symmetric samples x samples matrix
+   */
+  private double[] computeDistances() {
+    final double distances[] = new double[samples * samples];
+    IntStream.range(0, samples).parallel().forEach(i -> {
+      if (canceled)
+        return;
+      final double sums[] = new double[samples];
+      for (int f = 0; f < features; f++) {
+        final int offset = f * samples;
+        final double value = data[offset + i];
+        for (int j = i + 1; j < samples; j++) {
+          final double diff = value - data[offset + j];
+          sums[j] += diff * diff;
+        }
+      }
+      for (int j = i + 1; j < samples; j++) {
+        final double d = Math.sqrt(sums[j]);
+        distances[i * samples + j] = d;
+        distances[j * samples + i] = d;
+      }
+      processedWork.addAndGet((long) (samples - 1 - i) * features);
+    });
+    return canceled ? null : distances;
+  }
+
+  /**
+   * Returns X * M, where M is a features x columns matrix, as a samples x columns matrix. Both
+   * matrices are column-major.
+   */
+  private double[] multiply(double m[], int columns) {
+    final double result[] = new double[samples * columns];
+    final int chunks = Math.max(1, Math.min(features, Runtime.getRuntime().availableProcessors()));
+    final int chunkSize = (features + chunks - 1) / chunks;
+
+    // Every chunk of features adds its own partial product, which are summed at the end
+    final double partial[][] = new double[chunks][];
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      final double sum[] = new double[samples * columns];
+      final int end = Math.min(features, (chunk + 1) * chunkSize);
+      for (int f = chunk * chunkSize; f < end; f++) {
+        if (canceled)
+          return;
+        final int offset = f * samples;
+        for (int c = 0; c < columns; c++) {
+          final double factor = m[c * features + f];
+          final int resultOffset = c * samples;
+          for (int i = 0; i < samples; i++)
+            sum[resultOffset + i] += data[offset + i] * factor;
+        }
+      }
+      partial[chunk] = sum;
+      processedWork.addAndGet(end - chunk * chunkSize);
+    });
+    if (canceled)
+      return null;
+
+    for (double sum[] : partial) {
+      if (sum == null)
+        continue;
+      for (int i = 0; i < result.length; i++)
+        result[i] += sum[i];
+    }
+    return result;
+  }
+
+  /**
+   * Returns X' * M, where M is a samples x columns matrix, as a features x columns matrix. Both
+   * matrices are column-major.
+   */
+  private double[] multiplyTransposed(double m[], int columns) {
+    if (m == null)
+      return null;
+    final double result[] = new double[features * columns];
+    IntStream.range(0, features).parallel().forEach(f -> {
+      if (canceled)
+        return;
+      final int offset = f * samples;
+      for (int c = 0; c < columns; c++) {
+        final int mOffset = c * samples;
+        double sum = 0.0;
+        for (int i = 0; i < samples; i++)
+          sum += data[offset + i] * m[mOffset + i];
+        result[c * features + f] = sum;
+      }
+      processedWork.incrementAndGet();
+    });
+    return canceled ? null : result;
+  }
+
+  /**
+   * Orthonormalizes the columns of the rows x columns column-major matrix in place, by modified
+   * Gram-Schmidt with re-orthogonalization. Columns which are linearly dependent on the previous
+   * ones are set to 0. Returns false if the matrix is null (i.e. the computation was canceled).
+   */
+  private static boolean orthonormalize(double m[], int rows, int columns) {
+    if (m == null)
+      return false;
+    for (int c = 0; c < columns; c++) {
+      final int offset = c * rows;
+      double initialNorm = 0.0;
+      for (int i = 0; i < rows; i++)
+        initialNorm += m[offset + i] * m[offset + i];
+      initialNorm = Math.sqrt(initialNorm);
+      for (int pass = 0; pass < 2; pass++) {
+        for (int prev = 0; prev < c; prev++) {
+          final int prevOffset = prev * rows;
+          double dot = 0.0;
+          for (int i = 0; i < rows; i++)
+            dot += m[offset + i] * m[prevOffset + i];
+          for (int i = 0; i < rows; i++)
+            m[offset + i] -= dot * m[prevOffset + i];
+        }
+      }
+      double norm = 0.0;
+      for (int i = 0; i < rows; i++)
+        norm += m[offset + i] * m[offset + i];
+      norm = Math.sqrt(norm);
+      final double scale = (norm > initialNorm * 1e-10) && (norm > 0.0) ? 1.0 / norm : 0.0;
+      for (int i = 0; i < rows; i++)
+        m[offset + i] *= scale;
+    }
+    return true;
+  }
+
+  /**
+   * Eigen decomposition of a small symmetric size x size matrix by cyclic Jacobi rotations.
+   * Returns the eigenvalues in descending order and stores the corresponding eigenvectors as the
+   * columns of the column-major matrix vectors.
+   */
+  private static double[] symmetricEigen(double matrix[], int size, double vectors[]) {
+
+    final double a[] = matrix.clone();
+    final double v[] = new double[size * size];
+    for (int i = 0; i < size; i++)
+      v[i * size + i] = 1.0;
+
+    for (int sweep = 0; sweep < 100; sweep++) {
+      double offDiagonal = 0.0;
+      for (int p = 0; p < size; p++) {
+        for (int q = p + 1; q < size; q++)
+          offDiagonal += a[p * size + q] * a[p * size + q];
+      }
+      if (offDiagonal < 1e-30)
+        break;
+      for (int p = 0; p < size; p++) {
+        for (int q = p + 1; q < size; q++) {
+          final double apq = a[p * size + q];
+          if (apq == 0.0)
+            continue;
+          final double theta = (a[q * size + q] - a[p * size + p]) / (2 * apq);
+          final double t = Math.signum(theta == 0.0 ? 1.0 : theta)
+              / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+          final double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+          for (int k = 0; k < size; k++) {
+            final double akp = a[k * size + p], akq = a[k * size + q];
+            a[k * size + p] = c * akp - s * akq;
+            a[k * size + q] = s * akp + c * akq;
+          }
+          for (int k = 0; k < size; k++) {
+            final double apk = a[p * size + k], aqk = a[q * size + k];
+            a[p * size + k] = c * apk - s * aqk;
+            a[q * size + k] = s * apk + c * aqk;
+          }
+          for (int k = 0; k < size; k++) {
+            final double vkp = v[p * size + k], vkq = v[q * size + k];
+            v[p * size + k] = c * vkp - s * vkq;
+            v[q * size + k] = s * vkp + c * vkq;
+          }
+        }
+      }
+    }
+
+    // Sort by descending eigenvalue
+    final Integer order[] = new Integer[size];
+    for (int i = 0; i < size; i++)
+      order[i] = i;
+    Arrays.sort(order, (i, j) -> Double.compare(a[j * size + j], a[i * size + i]));
+    final double values[] = new double[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = a[order[i] * size + order[i]];
+      System.arraycopy(v, order[i] * size, vectors, i * size, size);
+    }
+    return values;
+  }
+
+}
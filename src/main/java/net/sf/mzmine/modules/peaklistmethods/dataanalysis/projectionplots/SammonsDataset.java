@@ -21,10 +21,6 @@ package net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots;
 import java.util.Vector;
 import java.util.logging.Logger;
 import org.jfree.data.xy.AbstractXYDataset;
-import jmprojection.Preprocess;
-import jmprojection.ProjectionStatus;
-import jmprojection.Sammons;
-import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -63,7 +59,7 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
   private TaskStatus status = TaskStatus.WAITING;
   private String errorMessage;
 
-  private ProjectionStatus projectionStatus;
+  private ProjectionEngine engine;
 
   public SammonsDataset(MZmineProject project, ParameterSet parameters) {
 
@@ -222,39 +218,18 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
         .getValue() == PeakMeasurementType.AREA)
       useArea = true;
 
-    double[][] rawData = new double[selectedRawDataFiles.length][selectedRows.length];
-    for (int rowIndex = 0; rowIndex < selectedRows.length; rowIndex++) {
-      PeakListRow peakListRow = selectedRows[rowIndex];
-      for (int fileIndex = 0; fileIndex < selectedRawDataFiles.length; fileIndex++) {
-        RawDataFile rawDataFile = selectedRawDataFiles[fileIndex];
-        Feature p = peakListRow.getPeak(rawDataFile);
-        if (p != null) {
-          if (useArea)
-            rawData[fileIndex][rowIndex] = p.getArea();
-          else
-            rawData[fileIndex][rowIndex] = p.getHeight();
-        }
-      }
-    }
+    engine = ProjectionEngine.createEngine(peakList.getFeatureMatrix(), selectedRows,
+        selectedRawDataFiles, useArea);
 
     int numComponents = xAxisDimension;
     if (yAxisDimension > numComponents)
       numComponents = yAxisDimension;
 
     // Scale data and do Sammon's mapping
-    Preprocess.scaleToUnityVariance(rawData);
-    Sammons sammonsProj = new Sammons(rawData);
-
-    projectionStatus = sammonsProj.getProjectionStatus();
-
-    sammonsProj.iterate(100);
-
-    if (status == TaskStatus.CANCELED)
-      return;
-
-    double[][] result = sammonsProj.getState();
+    engine.scaleToUnityVariance();
+    double[][] result = engine.computeSammon(Math.max(2, numComponents), 100);
 
-    if (status == TaskStatus.CANCELED)
+    if ((result == null) || (status == TaskStatus.CANCELED))
       return;
 
     component1Coords = result[xAxisDimension - 1];
@@ -270,8 +245,8 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public void cancel() {
-    if (projectionStatus != null)
-      projectionStatus.cancel();
+    if (engine != null)
+      engine.cancel();
     setStatus(TaskStatus.CANCELED);
   }
 
@@ -292,9 +267,9 @@ public class SammonsDataset extends AbstractXYDataset implements ProjectionPlotD
 
   @Override
   public double getFinishedPercentage() {
-    if (projectionStatus == null)
+    if (engine == null)
       return 0;
-    return projectionStatus.getFinishedPercentage();
+    return engine.getFinishedPercentage();
   }
 
   /**
@@ -19,8 +19,10 @@
 package net.sf.mzmine.modules.peaklistmethods.filtering.duplicatefilter;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.google.common.collect.Range;
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.Feature.FeatureStatus;
 import net.sf.mzmine.datamodel.MZmineProject;
@@ -38,8 +40,10 @@ import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.MZRTIndex;
 import net.sf.mzmine.util.PeakListRowSorter;
 import net.sf.mzmine.util.PeakUtils;
+import net.sf.mzmine.util.RangeUtils;
 import net.sf.mzmine.util.SortingDirection;
 import net.sf.mzmine.util.SortingProperty;
 
@@ -160,23 +164,47 @@ public class DuplicateFilterTask extends AbstractTask {
     // filter by average mz and rt
     boolean filterByAvgRTMZ = !mode.equals(FilterMode.SINGLE_FEATURE);
 
+    // Index the rows by m/z and RT. For the average modes, the rows are indexed by their average
+    // m/z and RT, for the single feature mode, each raw data file has its own index of features.
+    final MZRTIndex averageIndex = filterByAvgRTMZ ? createAverageIndex(peakListRows, rtTolerance)
+        : null;
+    final MZRTIndex featureIndexes[] =
+        filterByAvgRTMZ ? null : createFeatureIndexes(peakListRows, rawFiles, rtTolerance);
+
+    // Rows which were merged into a previous row
+    final BitSet removedRows = new BitSet(rowCount);
+
     // Loop through all peak list rows
     processedRows = 0;
     int n = 0;
     totalRows = rowCount;
     for (int firstRowIndex = 0; !isCanceled() && firstRowIndex < rowCount; firstRowIndex++) {
 
-      final PeakListRow mainRow = peakListRows[firstRowIndex];
-
-      if (mainRow != null) {
+      if (!removedRows.get(firstRowIndex)) {
         // copy first row
-        PeakListRow firstRow = copyRow(mainRow);
-
-        for (int secondRowIndex = firstRowIndex + 1; !isCanceled()
-            && secondRowIndex < rowCount; secondRowIndex++) {
-
-          final PeakListRow secondRow = peakListRows[secondRowIndex];
-          if (secondRow != null) {
+        PeakListRow firstRow = copyRow(peakListRows[firstRowIndex]);
+
+        // Only the rows found in the index can be within the tolerances of the first row. The rows
+        // are compared in the order of their index, as in a loop over all following rows. A new
+        // consensus row changes the m/z and RT of the first row, so in that case the index is
+        // searched again for the remaining rows.
+        int lastComparedIndex = firstRowIndex;
+        boolean firstRowChanged;
+        do {
+          firstRowChanged = false;
+          final int candidates[] =
+              filterByAvgRTMZ ? queryAverageIndex(averageIndex, firstRow, mzTolerance, rtTolerance)
+                  : queryFeatureIndexes(featureIndexes, rawFiles, firstRow, mzTolerance,
+                      rtTolerance);
+
+          for (int secondRowIndex : candidates) {
+            if (isCanceled())
+              break;
+            if ((secondRowIndex <= lastComparedIndex) || removedRows.get(secondRowIndex))
+              continue;
+            lastComparedIndex = secondRowIndex;
+
+            final PeakListRow secondRow = peakListRows[secondRowIndex];
             // Compare identifications
             final boolean sameID =
                 !requireSameId || PeakUtils.compareIdentities(firstRow, secondRow);
@@ -188,18 +216,22 @@ public class DuplicateFilterTask extends AbstractTask {
 
             // Duplicate peaks?
             if (sameID && sameMZRT) {
+              // second row deleted
+              n++;
+              removedRows.set(secondRowIndex);
+
               // create consensus row in new filter
               if (!mode.equals(FilterMode.OLD_AVERAGE)) {
                 // copy all detected features of row2 into row1
                 // to exchange gap-filled against detected features
                 createConsensusFirstRow(rawFiles, firstRow, secondRow);
+                firstRowChanged = true;
+                break;
               }
-              // second row deleted
-              n++;
-              peakListRows[secondRowIndex] = null;
             }
           }
-        }
+        } while (firstRowChanged && !isCanceled());
+
         // add to new list
         newPeakList.addRow(firstRow);
       }
@@ -222,6 +254,83 @@ public class DuplicateFilterTask extends AbstractTask {
     return newPeakList;
   }
 
+  /**
+   * Index of the average m/z and RT of all rows
+   */
+  private MZRTIndex createAverageIndex(PeakListRow rows[], RTTolerance rtTolerance) {
+    final double mzValues[] = new double[rows.length];
+    final double rtValues[] = new double[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      mzValues[i] = rows[i].getAverageMZ();
+      rtValues[i] = rows[i].getAverageRT();
+    }
+    return new MZRTIndex(mzValues, rtValues, getBucketWidth(rtValues, rtTolerance));
+  }
+
+  /**
+   * Returns the rows with average m/z and RT within the tolerances of the first row, in ascending
+   * order
+   */
+  private int[] queryAverageIndex(MZRTIndex index, PeakListRow firstRow, MZTolerance mzTolerance,
+      RTTolerance rtTolerance) {
+    Range<Double> mzRange = mzTolerance.getToleranceRange(firstRow.getAverageMZ());
+    Range<Double> rtRange = rtTolerance.getToleranceRange(firstRow.getAverageRT());
+    return index.query(mzRange.lowerEndpoint(), mzRange.upperEndpoint(), rtRange.lowerEndpoint(),
+        rtRange.upperEndpoint());
+  }
+
+  /**
+   * One index of the m/z and RT of the features of all rows for each raw data file. Rows without a
+   * feature in the raw data file are not indexed.
+   */
+  private MZRTIndex[] createFeatureIndexes(PeakListRow rows[], RawDataFile rawFiles[],
+      RTTolerance rtTolerance) {
+    final MZRTIndex indexes[] = new MZRTIndex[rawFiles.length];
+    for (int f = 0; f < rawFiles.length; f++) {
+      final double mzValues[] = new double[rows.length];
+      final double rtValues[] = new double[rows.length];
+      for (int i = 0; i < rows.length; i++) {
+        Feature feature = rows[i].getPeak(rawFiles[f]);
+        mzValues[i] = (feature == null) ? Double.NaN : feature.getMZ();
+        rtValues[i] = (feature == null) ? Double.NaN : feature.getRT();
+      }
+      indexes[f] = new MZRTIndex(mzValues, rtValues, getBucketWidth(rtValues, rtTolerance));
+    }
+    return indexes;
+  }
+
+  /**
+   * Returns the rows which have at least one feature within the tolerances of a feature of the
+   * first row, in ascending order
+   */
+  private int[] queryFeatureIndexes(MZRTIndex indexes[], RawDataFile rawFiles[],
+      PeakListRow firstRow, MZTolerance mzTolerance, RTTolerance rtTolerance) {
+    final BitSet result = new BitSet();
+    for (int f = 0; f < rawFiles.length; f++) {
+      Feature feature = firstRow.getPeak(rawFiles[f]);
+      if (feature == null)
+        continue;
+      Range<Double> mzRange = mzTolerance.getToleranceRange(feature.getMZ());
+      Range<Double> rtRange = rtTolerance.getToleranceRange(feature.getRT());
+      for (int i : indexes[f].query(mzRange.lowerEndpoint(), mzRange.upperEndpoint(),
+          rtRange.lowerEndpoint(), rtRange.upperEndpoint()))
+        result.set(i);
+    }
+    return result.stream().toArray();
+  }
+
+  /**
+   * The RT buckets are as wide as the widest RT tolerance window
+   */
+  private double getBucketWidth(double rtValues[], RTTolerance rtTolerance) {
+    double maxRT = 0;
+    for (double rt : rtValues) {
+      if (!Double.isNaN(rt))
+        maxRT = Math.max(maxRT, Math.abs(rt));
+    }
+    return RangeUtils.rangeLength(rtTolerance.getToleranceRange(maxRT));
+  }
+
   /**
    * Turns firstRow to consensus row. With all features with highest FeatureStatus:
    * DETECTED>ESTIMATED>UNKNOWN Or the highest feature when comparing two ESTIMATED features
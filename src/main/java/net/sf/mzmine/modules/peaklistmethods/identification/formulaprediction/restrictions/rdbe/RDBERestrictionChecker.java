@@ -65,24 +65,9 @@ public class RDBERestrictionChecker {
 
     double sum = 0;
 
-    Map<String, Integer> valences2 = new HashMap<String, Integer>();
-    valences2.put("H", 1);
-    valences2.put("C", 4);
-    valences2.put("N", 3);
-    valences2.put("O", 2);
-    valences2.put("Si", 4);
-    valences2.put("P", 3);
-    valences2.put("S", 2);
-    valences2.put("F", 1);
-    valences2.put("Cl", 1);
-    valences2.put("Br", 1);
-    valences2.put("I", 1);
-    valences2.put("Na", 1);
-    valences2.put("K", 1);
-
     for (IIsotope isotope : formula.isotopes()) {
 
-      Integer valence = valences2.get(isotope.getSymbol());
+      Integer valence = valences.get(isotope.getSymbol());
       if (valence == null)
         return null;
       sum += (valence - 2) * formula.getIsotopeCount(isotope);
@@ -19,7 +19,10 @@ package net.sf.mzmine.modules.peaklistmethods.identification.formulapredictionpe
 
 import java.util.Comparator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import org.openscience.cdk.formula.MolecularFormulaGenerator;
 import org.openscience.cdk.formula.MolecularFormulaRange;
@@ -42,7 +45,7 @@ import net.sf.mzmine.modules.peaklistmethods.identification.formulaprediction.re
 import net.sf.mzmine.modules.peaklistmethods.identification.formulaprediction.restrictions.rdbe.RDBERestrictionChecker;
 import net.sf.mzmine.modules.peaklistmethods.isotopes.isotopepatternscore.IsotopePatternScoreCalculator;
 import net.sf.mzmine.modules.peaklistmethods.isotopes.isotopepatternscore.IsotopePatternScoreParameters;
-import net.sf.mzmine.modules.peaklistmethods.isotopes.isotopeprediction.IsotopePatternCalculator;
+import net.sf.mzmine.modules.peaklistmethods.isotopes.isotopeprediction.IsotopePatternCache;
 import net.sf.mzmine.modules.peaklistmethods.msms.msmsscore.MSMSScore;
 import net.sf.mzmine.modules.peaklistmethods.msms.msmsscore.MSMSScoreCalculator;
 import net.sf.mzmine.modules.peaklistmethods.msms.msmsscore.MSMSScoreParameters;
@@ -50,25 +53,35 @@ import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.FormulaUtils;
+import net.sf.mzmine.util.ParallelScanProcessor;
 
+/**
+ * Predicts formulas for all rows of a peak list. The rows are processed in parallel, each by its
+ * own formula generator, in the thread pool of ParallelScanProcessor. That pool is shared by all
+ * tasks, so concurrent formula prediction tasks do not use more threads than set in the
+ * preferences. Predicted isotope patterns are taken from the shared IsotopePatternCache.
+ */
 public class FormulaPredictionPeakListTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
-  private Range<Double> massRange;
   private MolecularFormulaRange elementCounts;
-  private MolecularFormulaGenerator generator;
   private IonizationType ionType;
-  private double searchedMass;
   private int charge;
   private PeakList peakList;
   private boolean checkIsotopes, checkMSMS, checkRatios, checkRDBE;
   private ParameterSet isotopeParameters, msmsParameters, ratiosParameters, rdbeParameters;
+  private double isotopeNoiseLevel, minIsotopeScore;
   private MZTolerance mzTolerance;
-  private String message;
-  private int totalRows, finishedRows;
+  private volatile String message;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger();
   private int maxBestFormulasPerPeak;
 
+  // Generators of the rows which are currently processed, so they can be canceled
+  private final Set<MolecularFormulaGenerator> runningGenerators = ConcurrentHashMap.newKeySet();
+
   /**
    *
    * @param parameters
@@ -95,6 +108,12 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
         parameters.getParameter(FormulaPredictionPeakListParameters.isotopeFilter).getValue();
     isotopeParameters = parameters.getParameter(FormulaPredictionPeakListParameters.isotopeFilter)
         .getEmbeddedParameters();
+    if (checkIsotopes) {
+      isotopeNoiseLevel = isotopeParameters
+          .getParameter(IsotopePatternScoreParameters.isotopeNoiseLevel).getValue();
+      minIsotopeScore = isotopeParameters
+          .getParameter(IsotopePatternScoreParameters.isotopePatternScoreThreshold).getValue();
+    }
 
     checkMSMS = parameters.getParameter(FormulaPredictionPeakListParameters.msmsFilter).getValue();
     msmsParameters = parameters.getParameter(FormulaPredictionPeakListParameters.msmsFilter)
@@ -122,7 +141,7 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0.0;
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -139,35 +158,79 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
 
     setStatus(TaskStatus.PROCESSING);
 
-    totalRows = peakList.getNumberOfRows();
+    final PeakListRow rows[] = peakList.getRows();
+    totalRows = rows.length;
 
-    for (PeakListRow row : peakList.getRows()) {
+    try {
 
-      if (row.getPeakIdentities().length > 0) {
-        continue;
-      }
+      final boolean finished = ParallelScanProcessor.processScans(totalRows, this, i -> {
+        predictFormulas(rows[i]);
+        return null;
+      }, (i, result) -> {
+      });
+
+      if (!finished)
+        return;
+
+    } catch (Exception e) {
+      if (isCanceled())
+        return;
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error during formula prediction: " + ExceptionUtils.exceptionToString(e));
+      return;
+    } finally {
+      cancelGenerators();
+    }
+
+    if (isCanceled())
+      return;
+
+    logger.finest("Finished formula search for all the peaks");
+
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+  /**
+   * Generates the formulas of one row and adds the best ones as identities. Called concurrently for
+   * different rows.
+   */
+  private void predictFormulas(PeakListRow row) {
+
+    if (isCanceled())
+      return;
+
+    if (row.getPeakIdentities().length > 0) {
+      finishedRows.incrementAndGet();
+      return;
+    }
 
-      this.searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
+    final double searchedMass = (row.getAverageMZ() - ionType.getAddedMass()) * charge;
 
-      message = "Formula prediction for "
-          + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
+    message =
+        "Formula prediction for " + MZmineCore.getConfiguration().getMZFormat().format(searchedMass);
 
-      massRange = mzTolerance.getToleranceRange(searchedMass);
+    Range<Double> massRange = mzTolerance.getToleranceRange(searchedMass);
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-      generator = new MolecularFormulaGenerator(builder, massRange.lowerEndpoint(),
-          massRange.upperEndpoint(), elementCounts);
+    IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+    MolecularFormulaGenerator generator = new MolecularFormulaGenerator(builder,
+        massRange.lowerEndpoint(), massRange.upperEndpoint(), elementCounts);
+    runningGenerators.add(generator);
 
-      IMolecularFormula cdkFormula;
+    // The detected pattern is the same for all candidates of this row
+    final IsotopePattern detectedPattern = row.getBestIsotopePattern();
 
-      // create a map to store ResultFormula and relative mass deviation for sorting
-      Map<Double, String> possibleFormulas = new TreeMap<>();
+    IMolecularFormula cdkFormula;
+
+    // create a map to store ResultFormula and relative mass deviation for sorting
+    Map<Double, String> possibleFormulas = new TreeMap<>();
+    try {
       while ((cdkFormula = generator.getNextFormula()) != null) {
         if (isCanceled())
           return;
 
         // Mass is ok, so test other constraints
-        if (checkConstraints(cdkFormula, row) == true) {
+        if (checkConstraints(cdkFormula, row, detectedPattern) == true) {
           String formula = MolecularFormulaManipulator.getString(cdkFormula);
 
           // calc rel mass deviation
@@ -179,40 +242,38 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
           possibleFormulas.put(relMassDev, formula);
         }
       }
-
-      if (isCanceled())
-        return;
-
-      // create a map to store ResultFormula and relative mass deviation for sorting
-      Map<Double, String> possibleFormulasSorted = new TreeMap<>(
-          (Comparator<Double>) (o1, o2) -> Double.compare(Math.abs(o1), Math.abs(o2)));
-      possibleFormulasSorted.putAll(possibleFormulas);
-
-      // Add the new formula entry top results
-      int ctr = 0;
-      for (Map.Entry<Double, String> entry : possibleFormulasSorted.entrySet()) {
-        if (ctr < maxBestFormulasPerPeak) {
-          SimplePeakIdentity newIdentity = new SimplePeakIdentity(entry.getValue());
-          row.addPeakIdentity(newIdentity, false);
-          ctr++;
-        }
-      }
-      if (isCanceled())
-        return;
-      finishedRows++;
-
+    } finally {
+      runningGenerators.remove(generator);
     }
 
     if (isCanceled())
       return;
 
-    logger.finest("Finished formula search for all the peaks");
+    // create a map to store ResultFormula and relative mass deviation for sorting
+    Map<Double, String> possibleFormulasSorted = new TreeMap<>(
+        (Comparator<Double>) (o1, o2) -> Double.compare(Math.abs(o1), Math.abs(o2)));
+    possibleFormulasSorted.putAll(possibleFormulas);
+
+    // Add the new formula entry top results
+    int ctr = 0;
+    for (Map.Entry<Double, String> entry : possibleFormulasSorted.entrySet()) {
+      if (ctr < maxBestFormulasPerPeak) {
+        SimplePeakIdentity newIdentity = new SimplePeakIdentity(entry.getValue());
+        row.addPeakIdentity(newIdentity, false);
+        ctr++;
+      }
+    }
 
-    setStatus(TaskStatus.FINISHED);
+    finishedRows.incrementAndGet();
 
   }
 
-  private boolean checkConstraints(IMolecularFormula cdkFormula, PeakListRow peakListRow) {
+  /**
+   * Checks the cheap elemental ratio and RDBE restrictions first, so that isotope pattern and MS/MS
+   * scores are only calculated for the remaining candidates
+   */
+  private boolean checkConstraints(IMolecularFormula cdkFormula, PeakListRow peakListRow,
+      IsotopePattern detectedPattern) {
 
     // Check elemental ratios
     if (checkRatios) {
@@ -222,43 +283,33 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
       }
     }
 
-    Double rdbeValue = RDBERestrictionChecker.calculateRDBE(cdkFormula);
-
     // Check RDBE condition
-    if (checkRDBE && (rdbeValue != null)) {
-      boolean check = RDBERestrictionChecker.checkRDBE(rdbeValue, rdbeParameters);
-      if (!check) {
-        return false;
+    if (checkRDBE) {
+      Double rdbeValue = RDBERestrictionChecker.calculateRDBE(cdkFormula);
+      if (rdbeValue != null) {
+        boolean check = RDBERestrictionChecker.checkRDBE(rdbeValue, rdbeParameters);
+        if (!check) {
+          return false;
+        }
       }
     }
 
     // Calculate isotope similarity score
-    IsotopePattern detectedPattern = peakListRow.getBestIsotopePattern();
-    IsotopePattern predictedIsotopePattern = null;
-    Double isotopeScore = null;
     if ((checkIsotopes) && (detectedPattern != null)) {
 
       String stringFormula = MolecularFormulaManipulator.getString(cdkFormula);
 
-      String adjustedFormula = FormulaUtils.ionizeFormula(stringFormula, ionType, charge);
-
-      final double isotopeNoiseLevel = isotopeParameters
-          .getParameter(IsotopePatternScoreParameters.isotopeNoiseLevel).getValue();
-
       final double detectedPatternHeight = detectedPattern.getHighestDataPoint().getIntensity();
 
       final double minPredictedAbundance = isotopeNoiseLevel / detectedPatternHeight;
 
-      predictedIsotopePattern = IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula,
-          minPredictedAbundance, charge, ionType.getPolarity());
+      IsotopePattern predictedIsotopePattern = IsotopePatternCache
+          .getIsotopePattern(stringFormula, charge, ionType, minPredictedAbundance);
 
-      isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
+      double isotopeScore = IsotopePatternScoreCalculator.getSimilarityScore(detectedPattern,
           predictedIsotopePattern, isotopeParameters);
 
-      final double minScore = isotopeParameters
-          .getParameter(IsotopePatternScoreParameters.isotopePatternScoreThreshold).getValue();
-
-      if (isotopeScore < minScore) {
+      if (isotopeScore < minIsotopeScore) {
         return false;
       }
 
@@ -278,6 +329,7 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
         setStatus(TaskStatus.ERROR);
         setErrorMessage("The MS/MS scan #" + msmsScanNumber + " in file " + dataFile.getName()
             + " does not have a mass list called '" + massListName + "'");
+        cancelGenerators();
         return false;
       }
 
@@ -298,15 +350,18 @@ public class FormulaPredictionPeakListTask extends AbstractTask {
     return true;
   }
 
+  private void cancelGenerators() {
+    for (MolecularFormulaGenerator generator : runningGenerators)
+      generator.cancel();
+  }
+
   @Override
   public void cancel() {
     super.cancel();
 
-    // We need to cancel the formula generator, because searching for next
+    // We need to cancel the formula generators, because searching for next
     // candidate formula may take a looong time
-    if (generator != null) {
-      generator.cancel();
-    }
+    cancelGenerators();
 
   }
 }
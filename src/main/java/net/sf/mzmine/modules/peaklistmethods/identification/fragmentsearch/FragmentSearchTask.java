@@ -18,10 +18,14 @@
 
 package net.sf.mzmine.modules.peaklistmethods.identification.fragmentsearch;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
 import net.sf.mzmine.datamodel.RawDataFile;
@@ -36,6 +40,10 @@ import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.MS2SpectrumCache;
+import net.sf.mzmine.util.MS2SpectrumCache.MS2Spectrum;
+import net.sf.mzmine.util.MZRTIndex;
+import net.sf.mzmine.util.ParallelScanProcessor;
 import net.sf.mzmine.util.PeakListRowSorter;
 import net.sf.mzmine.util.SortingDirection;
 import net.sf.mzmine.util.SortingProperty;
@@ -46,7 +54,8 @@ public class FragmentSearchTask extends AbstractTask {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
-  private int finishedRows, totalRows;
+  private AtomicInteger finishedRows = new AtomicInteger();
+  private int totalRows;
   private PeakList peakList;
 
   private RTTolerance rtTolerance;
@@ -55,6 +64,12 @@ public class FragmentSearchTask extends AbstractTask {
 
   private ParameterSet parameters;
 
+  // Rows sorted by descending height, their MS/MS spectra (null if the row has no MS/MS scan) and
+  // the index of the rows by RT
+  private PeakListRow rows[];
+  private MS2Spectrum fragmentSpectra[];
+  private MZRTIndex rtIndex;
+
   /**
    * @param parameters
    * @param peakList
@@ -79,7 +94,7 @@ public class FragmentSearchTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0;
-    return ((double) finishedRows) / totalRows;
+    return ((double) finishedRows.get()) / totalRows;
   }
 
   /**
@@ -98,35 +113,54 @@ public class FragmentSearchTask extends AbstractTask {
 
     logger.info("Starting fragments search in " + peakList);
 
-    PeakListRow rows[] = peakList.getRows();
+    rows = peakList.getRows();
     totalRows = rows.length;
 
     // Start with the highest peaks
     Arrays.sort(rows, new PeakListRowSorter(SortingProperty.Height, SortingDirection.Descending));
 
-    // Compare each two rows against each other
-    for (int i = 0; i < totalRows; i++) {
-
-      for (int j = i + 1; j < rows.length; j++) {
-
-        // Task canceled?
-        if (isCanceled())
-          return;
-
-        // Treat the higher m/z peak as main peak and check if the
-        // smaller one may be a fragment
-        if (rows[i].getAverageMZ() > rows[j].getAverageMZ()) {
-          if (checkFragment(rows[i], rows[j]))
-            addFragmentInfo(rows[i], rows[j]);
-        } else {
-          if (checkFragment(rows[j], rows[i]))
-            addFragmentInfo(rows[j], rows[i]);
-        }
-
-      }
-
-      finishedRows++;
+    // Read the MS/MS spectra of all rows once, only the data points above the minimum height are
+    // needed
+    fragmentSpectra = new MS2Spectrum[totalRows];
+    try {
+      boolean finished = ParallelScanProcessor.processScans(totalRows, this,
+          i -> getFragmentSpectrum(rows[i]), (i, spectrum) -> fragmentSpectra[i] = spectrum);
+      if (!finished)
+        return;
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Error while reading MS/MS spectra", e);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error while reading MS/MS spectra: " + e.toString());
+      return;
+    }
 
+    // Index the rows by RT, so each row is only compared with the rows of similar RT
+    double mzValues[] = new double[totalRows];
+    double rtValues[] = new double[totalRows];
+    double maxRT = 0;
+    for (int i = 0; i < totalRows; i++) {
+      mzValues[i] = rows[i].getAverageMZ();
+      rtValues[i] = rows[i].getAverageRT();
+      maxRT = Math.max(maxRT, Math.abs(rtValues[i]));
+    }
+    rtIndex = new MZRTIndex(mzValues, rtValues, 2 * getRTSearchWidth(maxRT));
+
+    // Compare each two rows against each other. The rows are compared in parallel, the fragment
+    // identities are added in the same order as in a sequential comparison.
+    try {
+      boolean finished = ParallelScanProcessor.processScans(totalRows, this,
+          i -> findFragments(i), (i, fragments) -> {
+            for (int pair[] : fragments)
+              addFragmentInfo(rows[pair[0]], rows[pair[1]]);
+            finishedRows.incrementAndGet();
+          });
+      if (!finished)
+        return;
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Error while searching for fragments", e);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error while searching for fragments: " + e.toString());
+      return;
     }
 
     // Add task description to peakList
@@ -144,13 +178,89 @@ public class FragmentSearchTask extends AbstractTask {
 
   }
 
+  /**
+   * Compares the row of given index with all following rows
+   * 
+   * @return pairs of (main row index, fragment row index), in the order of the compared rows
+   */
+  private List<int[]> findFragments(int i) {
+
+    double rt = rows[i].getAverageRT();
+    double rtWidth = getRTSearchWidth(rt);
+    int candidates[] = rtIndex.query(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+        rt - rtWidth, rt + rtWidth);
+
+    List<int[]> fragments = new ArrayList<int[]>();
+    for (int j : candidates) {
+
+      if (j <= i)
+        continue;
+
+      // Treat the higher m/z peak as main peak and check if the
+      // smaller one may be a fragment
+      int main = j, fragment = i;
+      if (rows[i].getAverageMZ() > rows[j].getAverageMZ()) {
+        main = i;
+        fragment = j;
+      }
+      if (checkFragment(main, fragment))
+        fragments.add(new int[] {main, fragment});
+
+    }
+
+    return fragments;
+
+  }
+
+  /**
+   * Returns the half width of an RT window around given RT, which contains all rows within the RT
+   * tolerance of a row at given RT, whichever of them is the main row
+   */
+  private double getRTSearchWidth(double rt) {
+    double width = rtTolerance.getTolerance();
+    if (!rtTolerance.isAbsolute()) {
+      if (width >= 1)
+        return Double.POSITIVE_INFINITY;
+      width = Math.abs(rt) * width / (1 - width);
+    }
+    // Small margin for rounding errors, the exact tolerance check is done in checkFragment()
+    return Math.max(0, width) * (1 + 1E-9) + 1E-9;
+  }
+
+  /**
+   * Returns the data points of the most intense MS/MS scan of the best peak of given row, or null
+   * if the row has no MS/MS scan
+   */
+  private MS2Spectrum getFragmentSpectrum(PeakListRow row) {
+
+    Feature bestPeak = row.getBestPeak();
+    if (bestPeak == null)
+      return null;
+
+    // Get MS/MS scan, if exists
+    int fragmentScanNumber = bestPeak.getMostIntenseFragmentScanNumber();
+    if (fragmentScanNumber <= 0)
+      return null;
+
+    RawDataFile dataFile = bestPeak.getDataFile();
+    Scan fragmentScan = dataFile.getScan(fragmentScanNumber);
+    if (fragmentScan == null)
+      return null;
+
+    return MS2SpectrumCache.getSpectrum(fragmentScan, minMS2peakHeight);
+
+  }
+
   /**
    * Check if candidate peak may be a possible fragment of a given main peak
    * 
-   * @param mainPeak
-   * @param possibleFragment
+   * @param main index of the main row
+   * @param fragment index of the possible fragment row
    */
-  private boolean checkFragment(PeakListRow mainPeak, PeakListRow possibleFragment) {
+  private boolean checkFragment(int main, int fragment) {
+
+    PeakListRow mainPeak = rows[main];
+    PeakListRow possibleFragment = rows[fragment];
 
     // Check retention time condition
     boolean rtCheck =
@@ -163,27 +273,14 @@ public class FragmentSearchTask extends AbstractTask {
       return false;
 
     // Get MS/MS scan, if exists
-    int fragmentScanNumber = mainPeak.getBestPeak().getMostIntenseFragmentScanNumber();
-    if (fragmentScanNumber <= 0)
+    MS2Spectrum fragmentSpectrum = fragmentSpectra[main];
+    if (fragmentSpectrum == null)
       return false;
 
-    RawDataFile dataFile = mainPeak.getBestPeak().getDataFile();
-    Scan fragmentScan = dataFile.getScan(fragmentScanNumber);
-    if (fragmentScan == null)
-      return false;
-
-    // Get MS/MS data points in the tolerance range
+    // If there is a MS/MS peak of required height in the tolerance range, we have a hit
     Range<Double> ms2mzRange = ms2mzTolerance.getToleranceRange(possibleFragment.getAverageMZ());
-
-    DataPoint fragmentDataPoints[] = fragmentScan.getDataPointsByMass(ms2mzRange);
-
-    // If there is a MS/MS peak of required height, we have a hit
-    for (DataPoint dp : fragmentDataPoints) {
-      if (dp.getIntensity() > minMS2peakHeight)
-        return true;
-    }
-
-    return false;
+    return fragmentSpectrum.containsDataPoint(ms2mzRange.lowerEndpoint(),
+        ms2mzRange.upperEndpoint());
 
   }
 
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.sf.mzmine.datamodel.PeakIdentity;
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+
+/**
+ * Gateway which wraps the gateway of an online database. Requests are sent through the
+ * OnlineDBRequestLimiter, and the results are stored in the OnlineDBCache (if enabled in the
+ * preferences). Search results are identified by the database, the searched mass, the tolerance,
+ * the number of results and the database parameters; compounds by the database, their ID and the
+ * database parameters.
+ */
+public class CachedDBGateway implements DBGateway {
+
+  private static final String RESULT_COUNT = "results";
+  private static final String RESULT_PREFIX = "result.";
+  private static final String PROPERTY_PREFIX = "property.";
+  private static final String URL_2D = "url2d";
+  private static final String URL_3D = "url3d";
+
+  private final OnlineDatabase db;
+  private final DBGateway gateway;
+  private final OnlineDBCache cache;
+
+  /**
+   * @param cache the cache, or null to only limit the requests
+   */
+  public CachedDBGateway(@Nonnull OnlineDatabase db, @Nonnull DBGateway gateway,
+      @Nullable OnlineDBCache cache) {
+    this.db = db;
+    this.gateway = gateway;
+    this.cache = cache;
+  }
+
+  @Override
+  public String[] findCompounds(double mass, MZTolerance mzTolerance, int numOfResults,
+      ParameterSet parameters) throws IOException {
+
+    final String key = "find|" + db.name() + "|" + mass + "|" + mzTolerance.getMzTolerance() + "|"
+        + mzTolerance.getPpmTolerance() + "|" + numOfResults + "|" + parametersToString(parameters);
+
+    if (cache != null) {
+      Properties cached = cache.get(key);
+      if (cached != null) {
+        try {
+          int count = Integer.parseInt(cached.getProperty(RESULT_COUNT));
+          String results[] = new String[count];
+          for (int i = 0; i < count; i++)
+            results[i] = cached.getProperty(RESULT_PREFIX + i);
+          return results;
+        } catch (NumberFormatException e) {
+          // Invalid entry, search again
+        }
+      }
+    }
+
+    String results[] = OnlineDBRequestLimiter.execute(db,
+        () -> gateway.findCompounds(mass, mzTolerance, numOfResults, parameters));
+
+    if ((cache != null) && (results != null)) {
+      Properties values = new Properties();
+      values.setProperty(RESULT_COUNT, String.valueOf(results.length));
+      for (int i = 0; i < results.length; i++) {
+        if (results[i] != null)
+          values.setProperty(RESULT_PREFIX + i, results[i]);
+      }
+      cache.put(key, values);
+    }
+
+    return results;
+  }
+
+  @Override
+  public DBCompound getCompound(String ID, ParameterSet parameters) throws IOException {
+
+    final String key = "compound|" + db.name() + "|" + ID + "|" + parametersToString(parameters);
+
+    if (cache != null) {
+      Properties cached = cache.get(key);
+      if (cached != null) {
+        DBCompound compound = createCompound(cached);
+        if (compound != null)
+          return compound;
+      }
+    }
+
+    DBCompound compound =
+        OnlineDBRequestLimiter.execute(db, () -> gateway.getCompound(ID, parameters));
+
+    if ((cache != null) && (compound != null))
+      cache.put(key, compoundToProperties(compound));
+
+    return compound;
+  }
+
+  private static String parametersToString(ParameterSet parameters) {
+    if (parameters == null)
+      return "";
+    StringBuilder str = new StringBuilder();
+    for (Parameter<?> parameter : parameters.getParameters()) {
+      str.append(parameter.getName());
+      str.append('=');
+      str.append(parameter.getValue());
+      str.append(';');
+    }
+    return str.toString();
+  }
+
+  private static Properties compoundToProperties(DBCompound compound) {
+    Properties values = new Properties();
+    for (Map.Entry<String, String> property : compound.getAllProperties().entrySet()) {
+      if ((property.getKey() != null) && (property.getValue() != null))
+        values.setProperty(PROPERTY_PREFIX + property.getKey(), property.getValue());
+    }
+    if (compound.get2DStructureURL() != null)
+      values.setProperty(URL_2D, compound.get2DStructureURL().toString());
+    if (compound.get3DStructureURL() != null)
+      values.setProperty(URL_3D, compound.get3DStructureURL().toString());
+    return values;
+  }
+
+  private DBCompound createCompound(Properties values) {
+
+    final String name = values.getProperty(PROPERTY_PREFIX + PeakIdentity.PROPERTY_NAME);
+    final String url = values.getProperty(PROPERTY_PREFIX + PeakIdentity.PROPERTY_URL);
+    if ((name == null) || (url == null))
+      return null;
+
+    try {
+      final String url2d = values.getProperty(URL_2D);
+      final String url3d = values.getProperty(URL_3D);
+      DBCompound compound = new DBCompound(db,
+          values.getProperty(PROPERTY_PREFIX + PeakIdentity.PROPERTY_ID), name,
+          values.getProperty(PROPERTY_PREFIX + PeakIdentity.PROPERTY_FORMULA), new URL(url),
+          (url2d == null) ? null : new URL(url2d), (url3d == null) ? null : new URL(url3d));
+
+      // Restore any additional properties set by the gateway
+      for (String property : values.stringPropertyNames()) {
+        if (property.startsWith(PROPERTY_PREFIX))
+          compound.setPropertyValue(property.substring(PROPERTY_PREFIX.length()),
+              values.getProperty(property));
+      }
+      return compound;
+    } catch (MalformedURLException e) {
+      return null;
+    }
+  }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.desktop.preferences.OnlineDBCacheSettings;
+import net.sf.mzmine.main.MZmineConfiguration;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
+
+/**
+ * On-disk store of online database responses. Each entry is a small properties file in the cache
+ * directory (dbcache in the MZmine configuration directory, or in the system temporary directory if
+ * the configuration directory is not writable). The file name is the SHA-256 hash of the entry key,
+ * so keys may contain parameter values such as API keys without storing them in clear text.
+ * Entries older than the expiration time set in the preferences are removed when they are read,
+ * and all expired entries are removed at startup.
+ *
+ * Failures to read or write the cache are logged and otherwise ignored, the caller then simply
+ * queries the database.
+ */
+public class OnlineDBCache {
+
+  private static final Logger logger = Logger.getLogger(OnlineDBCache.class.getName());
+
+  private static final String CACHE_DIR_NAME = "dbcache";
+  private static final String CACHE_FILE_SUFFIX = ".properties";
+  private static final String TMP_FILE_SUFFIX = ".tmp";
+  private static final String TIMESTAMP_PROPERTY = "mzmine.timestamp";
+
+  private static File cacheDir;
+
+  private final File dir;
+  private final long expirationMillis;
+
+  OnlineDBCache(@Nonnull File dir, long expirationMillis) {
+    this.dir = dir;
+    this.expirationMillis = expirationMillis;
+  }
+
+  /**
+   * Returns the cache configured in the preferences, or null if caching is disabled
+   */
+  static @Nullable OnlineDBCache getCache() {
+
+    if (MZmineCore.getConfiguration() == null)
+      return null;
+    ParameterSet preferences = MZmineCore.getConfiguration().getPreferences();
+    OptionalModuleParameter cacheParameter =
+        preferences.getParameter(MZminePreferences.onlineDBCache);
+    Boolean enabled = cacheParameter.getValue();
+    if ((enabled == null) || (!enabled))
+      return null;
+
+    Integer days = cacheParameter.getEmbeddedParameters()
+        .getParameter(OnlineDBCacheSettings.expirationDays).getValue();
+    if ((days == null) || (days <= 0))
+      return null;
+
+    File dir = getCacheDir();
+    if (dir == null)
+      return null;
+
+    return new OnlineDBCache(dir, days * 24L * 60L * 60L * 1000L);
+  }
+
+  /**
+   * Removes the expired entries of the cache configured in the preferences in a background thread,
+   * so that scanning the cache directory does not delay the startup
+   */
+  public static void removeExpiredEntriesInBackground() {
+    final OnlineDBCache cache = getCache();
+    if (cache == null)
+      return;
+    Thread cleanupThread =
+        new Thread(cache::removeExpiredEntries, "Online database cache cleanup");
+    cleanupThread.setDaemon(true);
+    cleanupThread.setPriority(Thread.MIN_PRIORITY);
+    cleanupThread.start();
+  }
+
+  private static synchronized File getCacheDir() {
+    if (cacheDir != null)
+      return cacheDir;
+    File confDir = MZmineConfiguration.CONFIG_FILE.getAbsoluteFile().getParentFile();
+    File candidates[] = {new File(confDir, CACHE_DIR_NAME),
+        new File(System.getProperty("java.io.tmpdir"), "mzmine_" + CACHE_DIR_NAME)};
+    for (File candidate : candidates) {
+      candidate.mkdirs();
+      if (candidate.isDirectory() && candidate.canWrite()) {
+        logger.finest("Using online database cache directory " + candidate);
+        cacheDir = candidate;
+        return cacheDir;
+      }
+    }
+    logger.warning("Could not create a directory for the online database cache");
+    return null;
+  }
+
+  /**
+   * Returns the stored values of given key, or null if there is no valid entry
+   */
+  @Nullable
+  Properties get(@Nonnull String key) {
+
+    File file = getFile(key);
+    if (!file.exists())
+      return null;
+
+    if (isExpired(file)) {
+      file.delete();
+      return null;
+    }
+
+    Properties values = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      values.load(in);
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Could not read cached database response " + file, e);
+      return null;
+    }
+
+    long timestamp;
+    try {
+      timestamp = Long.parseLong(values.getProperty(TIMESTAMP_PROPERTY));
+    } catch (NumberFormatException e) {
+      timestamp = 0;
+    }
+    if (System.currentTimeMillis() - timestamp > expirationMillis) {
+      file.delete();
+      return null;
+    }
+
+    values.remove(TIMESTAMP_PROPERTY);
+    return values;
+  }
+
+  /**
+   * Stores the values of given key, replacing any previous entry
+   */
+  void put(@Nonnull String key, @Nonnull Properties values) {
+
+    Properties stored = new Properties();
+    stored.putAll(values);
+    stored.setProperty(TIMESTAMP_PROPERTY, String.valueOf(System.currentTimeMillis()));
+
+    // Write to a temporary file first, so that concurrent readers never see a partial entry
+    File file = getFile(key);
+    try {
+      File tmpFile = File.createTempFile(file.getName(), TMP_FILE_SUFFIX, dir);
+      try (OutputStream out = new FileOutputStream(tmpFile)) {
+        stored.store(out, null);
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Could not store database response " + file, e);
+    }
+  }
+
+  /**
+   * Removes the expired entries, and the temporary files left by interrupted writes
+   */
+  void removeExpiredEntries() {
+
+    File files[] = dir.listFiles();
+    if (files == null)
+      return;
+
+    int removedFiles = 0;
+    for (File file : files) {
+      String name = file.getName();
+      if (!name.endsWith(CACHE_FILE_SUFFIX) && !name.endsWith(TMP_FILE_SUFFIX))
+        continue;
+      if (isExpired(file) && file.delete())
+        removedFiles++;
+    }
+
+    logger.finest("Removed " + removedFiles + " expired files from the online database cache");
+  }
+
+  /**
+   * The entries are never modified after they are written, so the modification time of the file is
+   * the time the entry was stored
+   */
+  private boolean isExpired(File file) {
+    return System.currentTimeMillis() - file.lastModified() > expirationMillis;
+  }
+
+  private File getFile(String key) {
+    return new File(dir, hash(key) + CACHE_FILE_SUFFIX);
+  }
+
+  private static String hash(String key) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte hash[] = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : hash)
+        hex.append(String.format("%02x", b));
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // This should never happen, every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
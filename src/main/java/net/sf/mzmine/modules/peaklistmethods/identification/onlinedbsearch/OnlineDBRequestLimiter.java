@@ -0,0 +1,128 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the requests sent to the online databases, shared by all running tasks. At most
+ * MAX_CONCURRENT_REQUESTS requests are running at the same time, at most MAX_REQUESTS_PER_HOST of
+ * them to the same database, and the requests to one database are started at least
+ * getMinRequestInterval() milliseconds apart, so that parallel searches do not exceed the usage
+ * limits of the public services (e.g. NCBI allows 3 requests per second without an API key).
+ */
+public class OnlineDBRequestLimiter {
+
+  public static final int MAX_CONCURRENT_REQUESTS = 8;
+  public static final int MAX_REQUESTS_PER_HOST = 3;
+
+  private static final Semaphore totalPermits = new Semaphore(MAX_CONCURRENT_REQUESTS, true);
+
+  private static final Map<OnlineDatabase, HostLimit> hostLimits =
+      new EnumMap<OnlineDatabase, HostLimit>(OnlineDatabase.class);
+
+  @FunctionalInterface
+  public interface DBRequest<T> {
+    T execute() throws IOException;
+  }
+
+  private static class HostLimit {
+
+    private final Semaphore permits = new Semaphore(MAX_REQUESTS_PER_HOST, true);
+    private final long minInterval;
+    private long nextRequestTime = 0;
+
+    HostLimit(long minInterval) {
+      this.minInterval = minInterval;
+    }
+
+    /**
+     * Waits until the next request may be started
+     */
+    void waitForSlot() throws InterruptedException {
+      long waitTime;
+      synchronized (this) {
+        long now = System.currentTimeMillis();
+        long requestTime = Math.max(now, nextRequestTime);
+        nextRequestTime = requestTime + minInterval;
+        waitTime = requestTime - now;
+      }
+      if (waitTime > 0)
+        Thread.sleep(waitTime);
+    }
+
+  }
+
+  /**
+   * Minimum time between two requests to given database, in milliseconds
+   */
+  private static long getMinRequestInterval(OnlineDatabase db) {
+    switch (db) {
+      case PubChem:
+        return 350;
+      default:
+        return 100;
+    }
+  }
+
+  private static synchronized HostLimit getHostLimit(OnlineDatabase db) {
+    HostLimit limit = hostLimits.get(db);
+    if (limit == null) {
+      limit = new HostLimit(getMinRequestInterval(db));
+      hostLimits.put(db, limit);
+    }
+    return limit;
+  }
+
+  /**
+   * Executes the request to given database as soon as the limits allow it
+   */
+  public static <T> T execute(OnlineDatabase db, DBRequest<T> request) throws IOException {
+
+    final HostLimit hostLimit = getHostLimit(db);
+
+    try {
+      hostLimit.permits.acquire();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for " + db);
+    }
+    try {
+      totalPermits.acquire();
+    } catch (InterruptedException e) {
+      hostLimit.permits.release();
+      throw new InterruptedIOException("Interrupted while waiting for " + db);
+    }
+
+    try {
+      hostLimit.waitForSlot();
+      return request.execute();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for " + db);
+    } finally {
+      totalPermits.release();
+      hostLimit.permits.release();
+    }
+
+  }
+
+}
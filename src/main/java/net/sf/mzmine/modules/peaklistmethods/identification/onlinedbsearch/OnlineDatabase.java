@@ -66,6 +66,14 @@ public enum OnlineDatabase implements MZmineModule {
     return gatewayClass;
   }
 
+  /**
+   * Creates a new gateway of this database. The requests of the gateway are limited by the
+   * OnlineDBRequestLimiter and the results are cached, if enabled in the preferences.
+   */
+  public @Nonnull DBGateway createGateway() throws InstantiationException, IllegalAccessException {
+    return new CachedDBGateway(this, gatewayClass.newInstance(), OnlineDBCache.getCache());
+  }
+
   public @Nonnull String getName() {
     return dbName;
   }
@@ -19,7 +19,15 @@
 package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -53,8 +61,16 @@ public class PeakListIdentificationTask extends AbstractTask {
   // Minimum abundance.
   private static final double MIN_ABUNDANCE = 0.001;
 
+  // Searches of all tasks. The threads mostly wait for the database, the number of concurrent
+  // requests is limited by the OnlineDBRequestLimiter.
+  private static final ExecutorService searchPool = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "Online database search");
+    thread.setDaemon(true);
+    return thread;
+  });
+
   // Counters.
-  private int finishedItems;
+  private final AtomicInteger finishedItems = new AtomicInteger();
   private int numItems;
 
   private final MZmineProcessingStep<OnlineDatabase> db;
@@ -65,7 +81,7 @@ public class PeakListIdentificationTask extends AbstractTask {
   private final ParameterSet isotopeFilterParameters;
   private final IonizationType ionType;
   private DBGateway gateway;
-  private PeakListRow currentRow;
+  private volatile PeakListRow currentRow;
 
   /**
    * Create the identification task.
@@ -77,7 +93,6 @@ public class PeakListIdentificationTask extends AbstractTask {
 
     peakList = list;
     numItems = 0;
-    finishedItems = 0;
     gateway = null;
     currentRow = null;
 
@@ -96,7 +111,7 @@ public class PeakListIdentificationTask extends AbstractTask {
   @Override
   public double getFinishedPercentage() {
 
-    return numItems == 0 ? 0.0 : (double) finishedItems / (double) numItems;
+    return numItems == 0 ? 0.0 : (double) finishedItems.get() / (double) numItems;
   }
 
   @Override
@@ -117,7 +132,7 @@ public class PeakListIdentificationTask extends AbstractTask {
         setStatus(TaskStatus.PROCESSING);
 
         // Create database gateway.
-        gateway = db.getModule().getGatewayClass().newInstance();
+        gateway = db.getModule().createGateway();
 
         // Identify the peak list rows starting from the biggest peaks.
         final PeakListRow[] rows = peakList.getRows();
@@ -126,11 +141,37 @@ public class PeakListIdentificationTask extends AbstractTask {
         // Initialize counters.
         numItems = rows.length;
 
-        // Process rows.
-        for (finishedItems = 0; !isCanceled() && finishedItems < numItems; finishedItems++) {
-
-          // Retrieve results for each row.
-          retrieveIdentification(rows[finishedItems]);
+        // Process rows. Several rows are searched at the same time, each searcher takes the next
+        // row until all rows are searched, the task is canceled or a search fails.
+        final AtomicInteger nextRow = new AtomicInteger();
+        final Callable<Void> searcher = () -> {
+          int index;
+          while (!isCanceled() && ((index = nextRow.getAndIncrement()) < rows.length)) {
+            try {
+              // Retrieve results for each row.
+              retrieveIdentification(rows[index]);
+              finishedItems.incrementAndGet();
+            } catch (Throwable t) {
+              // Stop the other searchers
+              nextRow.set(rows.length);
+              throw t;
+            }
+          }
+          return null;
+        };
+        final int numOfSearchers =
+            Math.min(OnlineDBRequestLimiter.MAX_REQUESTS_PER_HOST, rows.length);
+        final List<Callable<Void>> searchers = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < numOfSearchers; i++)
+          searchers.add(searcher);
+
+        // Wait for all searchers, then report the first failure
+        for (Future<Void> result : searchPool.invokeAll(searchers)) {
+          try {
+            result.get();
+          } catch (ExecutionException e) {
+            throw e.getCause();
+          }
         }
 
         if (!isCanceled()) {
@@ -76,7 +76,7 @@ public class SingleRowIdentificationTask extends AbstractTask {
     db = parameters.getParameter(DATABASE).getValue();
 
     try {
-      gateway = db.getModule().getGatewayClass().newInstance();
+      gateway = db.getModule().createGateway();
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -24,6 +24,7 @@ import io.github.msdk.id.sirius.SiriusIonAnnotation;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
 
 import javax.annotation.Nonnull;
@@ -57,6 +58,10 @@ public class PeakListIdentificationTask extends AbstractTask {
   // Thread controller
   private final Semaphore semaphore;
 
+  // Worker pool for the Sirius computations
+  private final int threadsAmount;
+  private ExecutorService pool;
+
   // Remote cancel variables
   private final Object cancelLock; //lock
   private boolean cancelled;
@@ -78,9 +83,9 @@ public class PeakListIdentificationTask extends AbstractTask {
     this.parameters = parameters;
     cancelLock = new Object();
 
-    int threadsAmount =
+    threadsAmount =
         parameters.getParameter(PeakListIdentificationParameters.THREADS_AMOUNT).getValue();
-    semaphore = new Semaphore(threadsAmount);
+    semaphore = new Semaphore(Math.max(1, threadsAmount));
     latch = new CountDownLatch(list.getNumberOfRows());
 
     int fingerCandidates, siriusCandidates, timer;
@@ -133,12 +138,21 @@ public class PeakListIdentificationTask extends AbstractTask {
         // Initialize counters.
         numItems = rows.length;
 
+        // Running computations are interrupted when the task is canceled
+        pool = SiriusComputation.createWorkerPool(threadsAmount);
+        addTaskStatusListener((task, newStatus, oldStatus) -> {
+          if (isCanceled())
+            pool.shutdownNow();
+        });
+
         // Process rows.
         for (int index = 0; !isCanceled() && index < numItems;) {
           try {
             semaphore.acquire();
             logger.debug("Semaphore ACQUIRED");
-            Thread th = new Thread(new SiriusThread(rows[index++], parameters, semaphore, latch, this));
+            currentRow = rows[index];
+            Thread th = new Thread(
+                new SiriusThread(rows[index++], parameters, semaphore, latch, pool, this));
             th.setDaemon(true);
             th.start();
           } catch (InterruptedException e) {
@@ -159,6 +173,9 @@ public class PeakListIdentificationTask extends AbstractTask {
         logger.warn(msg, t);
         setStatus(TaskStatus.ERROR);
         setErrorMessage(msg + ": " + ExceptionUtils.exceptionToString(t));
+      } finally {
+        if (pool != null)
+          pool.shutdown();
       }
     }
   }
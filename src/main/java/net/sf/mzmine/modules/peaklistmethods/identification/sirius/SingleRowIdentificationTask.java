@@ -27,15 +27,10 @@ import static net.sf.mzmine.modules.peaklistmethods.identification.sirius.Single
 import static net.sf.mzmine.modules.peaklistmethods.identification.sirius.SingleRowIdentificationParameters.ION_MASS;
 import static net.sf.mzmine.modules.peaklistmethods.identification.sirius.SingleRowIdentificationParameters.SIRIUS_CANDIDATES;
 
-import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 import io.github.msdk.datamodel.IonAnnotation;
-import io.github.msdk.datamodel.IonType;
 import io.github.msdk.datamodel.MsSpectrum;
-import io.github.msdk.id.sirius.ConstraintsGenerator;
-import io.github.msdk.id.sirius.SiriusIdentificationMethod;
 import io.github.msdk.id.sirius.SiriusIonAnnotation;
-import io.github.msdk.util.IonTypeUtil;
 
 import java.text.NumberFormat;
 import java.util.LinkedList;
@@ -43,9 +38,6 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import net.sf.mzmine.datamodel.IonizationType;
@@ -162,24 +154,26 @@ public class SingleRowIdentificationTask extends AbstractTask {
     }
 
     // Use executor to run Sirius Identification Method as an Interruptable thread.
-    // Otherwise it may compute for too long (or even forever).
-    final ExecutorService service = Executors.newSingleThreadExecutor();
-    SiriusIdentificationMethod siriusMethod = null;
+    // Otherwise it may compute for too long (or even forever). The computation is interrupted
+    // when the task is canceled.
+    final ExecutorService service = SiriusComputation.createWorkerPool(1);
+    addTaskStatusListener((task, newStatus, oldStatus) -> {
+      if (isCanceled())
+        service.shutdownNow();
+    });
+    SiriusComputation.SiriusResult siriusResult = null;
     List<IonAnnotation> siriusResults = null;
 
   /* Sirius processing */
     try {
-      FormulaConstraints constraints = ConstraintsGenerator.generateConstraint(range);
-      IonType type = IonTypeUtil.createIonType(ionType.toString());
-
-      final SiriusIdentificationMethod method = new SiriusIdentificationMethod(ms1list, ms2list,
-          parentMass, type, siriusCandidates, constraints, deviationPpm);
-      final Future<List<IonAnnotation>> f = service.submit(() -> {
-        return method.execute();
-      });
-      siriusResults = f.get(timer, TimeUnit.SECONDS);
-      siriusMethod = method;
+      siriusResult = SiriusComputation.identify(service, scanner, parentMass, ionType, range,
+          siriusCandidates, deviationPpm, timer);
+      siriusResults = siriusResult.getAnnotations();
     } catch (InterruptedException | TimeoutException ie) {
+      if (isCanceled()) {
+        window.dispose();
+        return;
+      }
       logger.error("Timeout on Sirius method expired, abort.");
       showError(window, String.format("Processing of the peaklist with mass %.2f by Sirius module expired.\n",
           parentMass) + "Reinitialize the task with larger Sirius Timer value.");
@@ -189,13 +183,15 @@ public class SingleRowIdentificationTask extends AbstractTask {
       showError(window, String.format("Sirius failed to predict compounds from row with id = %d",
           peakListRow.getID()));
       return;
+    } finally {
+      service.shutdown();
     }
 
   /* FingerId processing */
     if (scanner.peakContainsMsMs()) {
       try {
         latch = new CountDownLatch(siriusResults.size());
-        Ms2Experiment experiment = siriusMethod.getExperiment();
+        Ms2Experiment experiment = siriusResult.getExperiment();
         fingerTasks = new LinkedList<>();
 
       /* Create a new FingerIdWebTask for each Sirius result */
@@ -215,7 +211,7 @@ public class SingleRowIdentificationTask extends AbstractTask {
       }
     } else {
       /* MS/MS spectrum is not present */
-      window.addListofItems(siriusMethod.getResult());
+      window.addListofItems(siriusResults);
     }
 
     // If there was a FingerId processing, wait until subtasks finish
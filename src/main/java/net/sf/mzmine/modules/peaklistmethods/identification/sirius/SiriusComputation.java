@@ -0,0 +1,300 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.identification.sirius;
+
+import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
+import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
+
+import io.github.msdk.datamodel.IonAnnotation;
+import io.github.msdk.datamodel.IonType;
+import io.github.msdk.id.sirius.ConstraintsGenerator;
+import io.github.msdk.id.sirius.SiriusIdentificationMethod;
+import io.github.msdk.util.IonTypeUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sf.mzmine.datamodel.IonizationType;
+
+import org.openscience.cdk.formula.MolecularFormulaRange;
+import org.openscience.cdk.interfaces.IIsotope;
+
+/**
+ * Runs the SIRIUS identification method of one peak list row in a worker pool, with a timeout. The
+ * results are cached for the session, identified by the MS1 and MS/MS spectra of the row, the ion
+ * type and the other parameters of the method, so running the identification again (e.g. with a
+ * different FingerID setting) reuses the results of rows which were already computed.
+ */
+class SiriusComputation {
+
+  // Maximum number of cached results
+  private static final int MAX_CACHED_RESULTS = 5000;
+
+  private static final Map<ResultKey, SiriusResult> cache =
+      new LinkedHashMap<ResultKey, SiriusResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ResultKey, SiriusResult> eldest) {
+          return size() > MAX_CACHED_RESULTS;
+        }
+      };
+
+  /**
+   * Results of the SIRIUS identification method
+   */
+  static class SiriusResult {
+
+    private final List<IonAnnotation> annotations;
+    private final Ms2Experiment experiment;
+    private final int candidates;
+
+    SiriusResult(List<IonAnnotation> annotations, Ms2Experiment experiment, int candidates) {
+      this.annotations = annotations;
+      this.experiment = experiment;
+      this.candidates = candidates;
+    }
+
+    List<IonAnnotation> getAnnotations() {
+      return annotations;
+    }
+
+    Ms2Experiment getExperiment() {
+      return experiment;
+    }
+
+  }
+
+  private static class ResultKey {
+
+    private final long ms1Hash, ms2Hash;
+    private final String ionType, elements;
+    private final double parentMass, deviationPpm;
+
+    ResultKey(long ms1Hash, long ms2Hash, String ionType, String elements, double parentMass,
+        double deviationPpm) {
+      this.ms1Hash = ms1Hash;
+      this.ms2Hash = ms2Hash;
+      this.ionType = ionType;
+      this.elements = elements;
+      this.parentMass = parentMass;
+      this.deviationPpm = deviationPpm;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = 31 * Long.hashCode(ms1Hash) + Long.hashCode(ms2Hash);
+      hash = 31 * hash + ionType.hashCode();
+      return 31 * hash + elements.hashCode() + Double.hashCode(parentMass);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ResultKey))
+        return false;
+      ResultKey other = (ResultKey) o;
+      return (ms1Hash == other.ms1Hash) && (ms2Hash == other.ms2Hash)
+          && ionType.equals(other.ionType) && elements.equals(other.elements)
+          && (parentMass == other.parentMass) && (deviationPpm == other.deviationPpm);
+    }
+
+  }
+
+  // States of a computation, see identify()
+  private static final int RUNNING = 0, FINISHED = 1, ABANDONED = 2;
+
+  /**
+   * Pool of workers, which gets an additional worker for each abandoned computation that is still
+   * running. The number of additional workers is limited to the configured number of workers.
+   */
+  private static class WorkerPool extends ThreadPoolExecutor {
+
+    private final int threads;
+
+    // Abandoned computations which are still running
+    private int abandonedComputations = 0;
+
+    WorkerPool(int threads, ThreadFactory factory) {
+      super(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+          factory);
+      this.threads = threads;
+    }
+
+    synchronized boolean isSaturated() {
+      return abandonedComputations >= threads;
+    }
+
+    /**
+     * Marks the running computation of given state as abandoned and adds a worker, unless the
+     * limit of additional workers is reached
+     */
+    synchronized void computationAbandoned(AtomicInteger state) {
+      if (!state.compareAndSet(RUNNING, ABANDONED))
+        return;
+      abandonedComputations++;
+      if (abandonedComputations <= threads) {
+        setMaximumPoolSize(threads + abandonedComputations);
+        setCorePoolSize(threads + abandonedComputations);
+      }
+    }
+
+    /**
+     * Marks the computation of given state as finished, and removes the worker added for it if it
+     * was abandoned
+     */
+    synchronized void computationFinished(AtomicInteger state) {
+      if (state.compareAndSet(RUNNING, FINISHED))
+        return;
+      abandonedComputations--;
+      if (abandonedComputations < threads) {
+        setCorePoolSize(threads + abandonedComputations);
+        setMaximumPoolSize(threads + abandonedComputations);
+      }
+    }
+
+  }
+
+  /**
+   * Creates a pool of given number of daemon threads for the SIRIUS computations
+   */
+  static ExecutorService createWorkerPool(int threads) {
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ThreadFactory factory = runnable -> {
+      Thread thread = new Thread(runnable, "SIRIUS worker " + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    return new WorkerPool(Math.max(1, threads), factory);
+  }
+
+  /**
+   * Returns the SIRIUS results of the row, computing them in the worker pool if they are not
+   * cached. The timeout starts when a worker starts the computation, so rows waiting in the queue
+   * of the pool do not time out. If the computation does not finish within the timeout, it is
+   * interrupted.
+   *
+   * SIRIUS does not always respond to interrupts, so an interrupted computation may keep its worker
+   * busy until it finishes on its own. Meanwhile, the pool gets an additional worker, so the
+   * remaining rows are still computed with the requested number of threads. At most as many
+   * additional workers as the pool was created with are added. When that many computations are
+   * abandoned and still running, further rows are rejected with a RejectedExecutionException
+   * instead of growing the pool. The workers are daemon threads, so they never prevent MZmine from
+   * exiting.
+   *
+   * @param pool worker pool for the computation, must be created by createWorkerPool()
+   * @param scanner spectra of the row
+   * @param timeout maximum computation time in seconds
+   */
+  static SiriusResult identify(ExecutorService pool, SpectrumScanner scanner, double parentMass,
+      IonizationType ionizationType, MolecularFormulaRange range, int candidates,
+      double deviationPpm, int timeout)
+      throws InterruptedException, TimeoutException, ExecutionException {
+
+    final ResultKey key = new ResultKey(scanner.getMsHash(), scanner.getMsMsHash(),
+        ionizationType.toString(), rangeToString(range), parentMass, deviationPpm);
+
+    synchronized (cache) {
+      SiriusResult cached = cache.get(key);
+      if ((cached != null) && (cached.candidates >= candidates)) {
+        List<IonAnnotation> annotations = cached.annotations;
+        if (annotations.size() > candidates)
+          annotations = annotations.subList(0, candidates);
+        return new SiriusResult(annotations, cached.experiment, candidates);
+      }
+    }
+
+    FormulaConstraints constraints = ConstraintsGenerator.generateConstraint(range);
+    IonType siriusIon = IonTypeUtil.createIonType(ionizationType.toString());
+
+    final SiriusIdentificationMethod method =
+        new SiriusIdentificationMethod(scanner.getMsList(), scanner.getMsMsList(), parentMass,
+            siriusIon, candidates, constraints, deviationPpm);
+
+    // On some spectra it may never stop (halting problem), that's why the computation runs in an
+    // interruptable worker thread
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicInteger state = new AtomicInteger(RUNNING);
+    final WorkerPool workerPool = (WorkerPool) pool;
+    if (workerPool.isSaturated())
+      throw new RejectedExecutionException(
+          "All additional SIRIUS workers are busy with computations which did not stop");
+    final Future<List<IonAnnotation>> f = pool.submit(() -> {
+      started.countDown();
+      try {
+        return method.execute();
+      } finally {
+        // The worker was replaced when the computation was abandoned, remove it again
+        workerPool.computationFinished(state);
+      }
+    });
+
+    List<IonAnnotation> annotations;
+    try {
+
+      // Wait until a worker starts the computation. If the pool is shut down because the task was
+      // canceled, the computation never starts.
+      while (!started.await(1, TimeUnit.SECONDS)) {
+        if (pool.isShutdown())
+          throw new InterruptedException("The worker pool was shut down");
+      }
+
+      annotations = f.get(timeout, TimeUnit.SECONDS);
+
+    } catch (InterruptedException | TimeoutException e) {
+      f.cancel(true);
+      if (started.getCount() == 0)
+        workerPool.computationAbandoned(state);
+      throw e;
+    }
+
+    SiriusResult result = new SiriusResult(annotations, method.getExperiment(), candidates);
+    synchronized (cache) {
+      cache.put(key, result);
+    }
+    return result;
+
+  }
+
+  private static String rangeToString(MolecularFormulaRange range) {
+    if (range == null)
+      return "";
+    StringBuilder str = new StringBuilder();
+    for (IIsotope isotope : range.isotopes()) {
+      str.append(isotope.getSymbol());
+      str.append(isotope.getMassNumber());
+      str.append(':');
+      str.append(range.getIsotopeCountMin(isotope));
+      str.append('-');
+      str.append(range.getIsotopeCountMax(isotope));
+      str.append(';');
+    }
+    return str.toString();
+  }
+
+}
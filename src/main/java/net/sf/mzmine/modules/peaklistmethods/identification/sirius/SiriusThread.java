@@ -21,26 +21,19 @@ package net.sf.mzmine.modules.peaklistmethods.identification.sirius;
 import static net.sf.mzmine.modules.peaklistmethods.identification.sirius.PeakListIdentificationTask.addSiriusCompounds;
 import static net.sf.mzmine.modules.peaklistmethods.identification.sirius.SiriusParameters.MASS_LIST;
 
-import de.unijena.bioinf.ChemistryBase.chem.FormulaConstraints;
 import de.unijena.bioinf.ChemistryBase.ms.Ms2Experiment;
 
 import io.github.msdk.datamodel.IonAnnotation;
-import io.github.msdk.datamodel.IonType;
 import io.github.msdk.datamodel.MsSpectrum;
-import io.github.msdk.id.sirius.ConstraintsGenerator;
-import io.github.msdk.id.sirius.SiriusIdentificationMethod;
 import io.github.msdk.id.sirius.SiriusIonAnnotation;
-import io.github.msdk.util.IonTypeUtil;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import net.sf.mzmine.datamodel.IonizationType;
@@ -60,10 +53,6 @@ import org.slf4j.LoggerFactory;
 public class SiriusThread implements Runnable {
   private static final Logger logger = LoggerFactory.getLogger(SiriusThread.class);
 
-  // Use executor to run Sirius Identification Method as an Interruptable thread.
-  // Otherwise it may compute for too long (or even forever).
-  private static final ExecutorService service = Executors.newSingleThreadExecutor();
-
   // Identification params
   private final PeakListRow row;
   private final String massListName;
@@ -80,6 +69,10 @@ public class SiriusThread implements Runnable {
   private final Semaphore semaphore;
   private final int siriusTimer;
 
+  // Worker pool of the task, used to run Sirius Identification Method as an interruptable thread.
+  // Otherwise it may compute for too long (or even forever).
+  private final ExecutorService pool;
+
   // Cancel link
   private final PeakListIdentificationTask task;
 
@@ -90,9 +83,10 @@ public class SiriusThread implements Runnable {
    * @param semaphore
    * @param parameters
    * @param latch
+   * @param pool
    */
   public SiriusThread(PeakListRow row, ParameterSet parameters, Semaphore semaphore,
-      CountDownLatch latch, PeakListIdentificationTask task) {
+      CountDownLatch latch, ExecutorService pool, PeakListIdentificationTask task) {
     ionType = parameters.getParameter(PeakListIdentificationParameters.ionizationType).getValue();
     range = parameters.getParameter(PeakListIdentificationParameters.ELEMENTS).getValue();
     siriusCandidates =
@@ -107,6 +101,7 @@ public class SiriusThread implements Runnable {
     this.semaphore = semaphore;
     this.row = row;
     this.latch = latch;
+    this.pool = pool;
 
     MZTolerance mzTolerance =
         parameters.getParameter(PeakListIdentificationParameters.MZ_TOLERANCE).getValue();
@@ -120,6 +115,11 @@ public class SiriusThread implements Runnable {
     List<MsSpectrum> ms1list, ms2list;
     SpectrumScanner scanner;
 
+    if (task.isCanceled()) {
+      releaseResources();
+      return;
+    }
+
     try {
       scanner = new SpectrumScanner(row, massListName);
       ms1list = scanner.getMsList();
@@ -138,35 +138,26 @@ public class SiriusThread implements Runnable {
       return;
     }
 
-    FormulaConstraints constraints = ConstraintsGenerator.generateConstraint(range);
-    IonType siriusIon = IonTypeUtil.createIonType(ionType.toString());
-
-    List<IonAnnotation> siriusResults = null;
-    SiriusIdentificationMethod siriusMethod = null;
-
     /*
      * Code block below gives SiriusMethod specific amount of time to be executed, if it expires ->
      * log error and continue
      */
     try {
-      final SiriusIdentificationMethod method = new SiriusIdentificationMethod(ms1list, ms2list,
-          row.getAverageMZ(), siriusIon, siriusCandidates, constraints, deviationPpm);
+      final SiriusComputation.SiriusResult siriusResult = SiriusComputation.identify(pool, scanner,
+          row.getAverageMZ(), ionType, range, siriusCandidates, deviationPpm, siriusTimer);
+      final List<IonAnnotation> siriusResults = siriusResult.getAnnotations();
+      final int resultsAmount = Math.min(siriusCandidates, siriusResults.size());
 
-      // On some spectra it may never stop (halting problem), that's why interruptable thread is
-      // used
-      final Future<List<IonAnnotation>> f = service.submit(() -> {
-        return method.execute();
-      });
-      siriusResults = f.get(siriusTimer, TimeUnit.SECONDS);
-      siriusMethod = method;
+      if (task.isCanceled())
+        return;
 
       if (!scanner.peakContainsMsMs()) {
         /* If no MSMS spectra - add sirius results */
-        addSiriusCompounds(siriusResults, row, siriusCandidates);
+        addSiriusCompounds(siriusResults, row, resultsAmount);
       } else {
         /* Initiate FingerId processing */
-        Ms2Experiment experiment = siriusMethod.getExperiment();
-        for (int index = 0; index < siriusCandidates; index++) {
+        Ms2Experiment experiment = siriusResult.getExperiment();
+        for (int index = 0; index < resultsAmount; index++) {
           SiriusIonAnnotation annotation = (SiriusIonAnnotation) siriusResults.get(index);
           try {
             FingerIdWebMethodTask task =
@@ -183,10 +174,19 @@ public class SiriusThread implements Runnable {
           }
         }
       }
-    } catch (InterruptedException | TimeoutException ie) {
+    } catch (TimeoutException te) {
       logger.error("Timeout on Sirius method expired, abort. Row id = {}", row.getID());
+    } catch (InterruptedException ie) {
+      logger.debug("Sirius method interrupted. Row id = {}", row.getID());
     } catch (ExecutionException ce) {
       logger.error("Concurrency error during Sirius method.  Row id = {}", row.getID());
+    } catch (RejectedExecutionException re) {
+      // The worker pool was shut down because the task was canceled, or too many computations did
+      // not stop after their timeout
+      if (task.isCanceled())
+        logger.debug("Sirius method not started, task canceled. Row id = {}", row.getID());
+      else
+        logger.error("Sirius method not started, {}. Row id = {}", re.getMessage(), row.getID());
     } finally {
       // Do not forget to release resources!
       releaseResources();
@@ -58,6 +58,9 @@ public class SpectrumScanner {
 
   private boolean includeMs1 = true;
 
+  // Hashes of the data points of all MS1 and MS2 spectra
+  private long ms1Hash = 1, ms2Hash = 1;
+
   /**
    * Constructor for SpectrumScanner
    * 
@@ -114,6 +117,7 @@ public class SpectrumScanner {
     if (pattern != null) {
       MsSpectrum isotopePattern = buildSpectrum(pattern.getDataPoints());
       ms1list.add(isotopePattern);
+      ms1Hash = updateHash(ms1Hash, pattern.getDataPoints());
     }
 
     /*
@@ -153,6 +157,7 @@ public class SpectrumScanner {
                 if (points.length == 0)
                   continue;
                 ms1list.add(buildSpectrum(points));
+                ms1Hash = updateHash(ms1Hash, points);
               }
             }
           }
@@ -169,6 +174,7 @@ public class SpectrumScanner {
           if (points.length == 0)
             continue;
           ms2list.add(buildSpectrum(points));
+          ms2Hash = updateHash(ms2Hash, points);
         }
       }
     }
@@ -204,6 +210,33 @@ public class SpectrumScanner {
     return ms2list.size() > 0;
   }
 
+  /**
+   * @return hash of the data points of the MS1 spectra, used to identify cached results
+   */
+  public long getMsHash() {
+    return ms1Hash;
+  }
+
+  /**
+   * @return hash of the data points of the MS/MS spectra, used to identify cached results
+   */
+  public long getMsMsHash() {
+    return ms2Hash;
+  }
+
+  /**
+   * Adds the m/z and intensity values of the spectrum to the hash. The spectrum is separated from
+   * the previous ones by its length.
+   */
+  private static long updateHash(long hash, DataPoint[] points) {
+    hash = 31 * hash + points.length;
+    for (DataPoint dp : points) {
+      hash = 31 * hash + Double.doubleToLongBits(dp.getMZ());
+      hash = 31 * hash + Float.floatToIntBits((float) dp.getIntensity());
+    }
+    return hash;
+  }
+
   /**
    * Construct MsSpectrum object from DataPoint array
    * 
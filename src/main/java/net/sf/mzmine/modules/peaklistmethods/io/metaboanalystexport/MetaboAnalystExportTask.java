@@ -24,7 +24,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.regex.Pattern;
 
-import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakIdentity;
 import net.sf.mzmine.datamodel.PeakList;
@@ -199,7 +199,8 @@ class MetaboAnalystExportTask extends AbstractTask {
     writer.write(line.toString());
 
     // Write data rows
-    for (PeakListRow peakListRow : peakList.getRows()) {
+    final FeatureMatrix matrix = peakList.getFeatureMatrix();
+    for (int row = 0; row < matrix.getNumberOfRows(); row++) {
 
       // Cancel?
       if (isCanceled()) {
@@ -209,16 +210,15 @@ class MetaboAnalystExportTask extends AbstractTask {
       // Reset the buffer
       line.setLength(0);
 
-      final String rowName = generateUniquePeakListRowName(peakListRow);
+      final String rowName = generateUniquePeakListRowName(matrix.getRow(row));
 
       line.append("\"" + rowName + "\"");
 
-      for (RawDataFile dataFile : rawDataFiles) {
+      for (int column = 0; column < matrix.getNumberOfRawDataFiles(); column++) {
         line.append(fieldSeparator);
 
-        Feature peak = peakListRow.getPeak(dataFile);
-        if (peak != null) {
-          final double area = peak.getArea();
+        if (matrix.hasPeak(row, column)) {
+          final double area = matrix.getArea(row, column);
           line.append(String.valueOf(area));
         }
       }
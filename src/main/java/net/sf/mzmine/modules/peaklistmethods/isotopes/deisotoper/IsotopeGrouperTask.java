@@ -19,6 +19,9 @@
 package net.sf.mzmine.modules.peaklistmethods.isotopes.deisotoper;
 
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Vector;
 import java.util.logging.Logger;
 
@@ -41,8 +44,10 @@ import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
 import net.sf.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.MZRTIndex;
 import net.sf.mzmine.util.PeakSorter;
 import net.sf.mzmine.util.PeakUtils;
+import net.sf.mzmine.util.RangeUtils;
 import net.sf.mzmine.util.SortingDirection;
 import net.sf.mzmine.util.SortingProperty;
 
@@ -76,6 +81,12 @@ class IsotopeGrouperTask extends AbstractTask {
   private int maximumCharge;
   private ParameterSet parameters;
 
+  // Peaks sorted by descending height, indexed by m/z and RT, and the peaks which were already
+  // assigned to an isotope pattern
+  private Feature sortedPeaks[];
+  private MZRTIndex peakIndex;
+  private BitSet removedPeaks;
+
   /**
    * @param rawDataFile
    * @param parameters
@@ -134,9 +145,30 @@ class IsotopeGrouperTask extends AbstractTask {
       charges[i] = i + 1;
 
     // Sort peaks by descending height
-    Feature[] sortedPeaks = peakList.getPeaks(dataFile);
+    sortedPeaks = peakList.getPeaks(dataFile);
     Arrays.sort(sortedPeaks, new PeakSorter(SortingProperty.Height, SortingDirection.Descending));
 
+    // Index the peaks by m/z and RT, so that only the peaks around the expected isotope positions
+    // have to be checked
+    double mzValues[] = new double[sortedPeaks.length];
+    double rtValues[] = new double[sortedPeaks.length];
+    double maxRT = 0;
+    for (int i = 0; i < sortedPeaks.length; i++) {
+      mzValues[i] = sortedPeaks[i].getMZ();
+      rtValues[i] = sortedPeaks[i].getRT();
+      maxRT = Math.max(maxRT, Math.abs(rtValues[i]));
+    }
+    peakIndex = new MZRTIndex(mzValues, rtValues,
+        RangeUtils.rangeLength(rtTolerance.getToleranceRange(maxRT)));
+    removedPeaks = new BitSet(sortedPeaks.length);
+
+    // Find the row of each peak once, instead of searching the peak list for every pattern
+    Map<Feature, PeakListRow> peakRows = new HashMap<Feature, PeakListRow>();
+    for (PeakListRow row : peakList.getRows()) {
+      for (Feature peak : row.getPeaks())
+        peakRows.putIfAbsent(peak, row);
+    }
+
     // Loop through all peaks
     totalPeaks = sortedPeaks.length;
 
@@ -148,7 +180,7 @@ class IsotopeGrouperTask extends AbstractTask {
       Feature aPeak = sortedPeaks[ind];
 
       // Check if peak was already deleted
-      if (aPeak == null) {
+      if (removedPeaks.get(ind)) {
         processedPeaks++;
         continue;
       }
@@ -157,22 +189,26 @@ class IsotopeGrouperTask extends AbstractTask {
       int bestFitCharge = 0;
       int bestFitScore = -1;
       Vector<Feature> bestFitPeaks = null;
+      BitSet bestFitIndexes = null;
       for (int charge : charges) {
 
         Vector<Feature> fittedPeaks = new Vector<Feature>();
+        BitSet fittedIndexes = new BitSet();
         fittedPeaks.add(aPeak);
-        fitPattern(fittedPeaks, aPeak, charge, sortedPeaks);
+        fittedIndexes.set(ind);
+        fitPattern(fittedPeaks, fittedIndexes, ind, charge);
 
         int score = fittedPeaks.size();
         if ((score > bestFitScore) || ((score == bestFitScore) && (bestFitCharge > charge))) {
           bestFitScore = score;
           bestFitCharge = charge;
           bestFitPeaks = fittedPeaks;
+          bestFitIndexes = fittedIndexes;
         }
 
       }
 
-      PeakListRow oldRow = peakList.getPeakRow(aPeak);
+      PeakListRow oldRow = peakRows.get(aPeak);
 
       assert bestFitPeaks != null;
 
@@ -218,10 +254,7 @@ class IsotopeGrouperTask extends AbstractTask {
       deisotopedPeakList.addRow(newRow);
 
       // Remove all peaks already assigned to isotope pattern
-      for (int i = 0; i < sortedPeaks.length; i++) {
-        if (bestFitPeaks.contains(sortedPeaks[i]))
-          sortedPeaks[i] = null;
-      }
+      removedPeaks.or(bestFitIndexes);
 
       // Update completion rate
       processedPeaks++;
@@ -252,11 +285,10 @@ class IsotopeGrouperTask extends AbstractTask {
   /**
    * Fits isotope pattern around one peak.
    * 
-   * @param p Pattern is fitted around this peak
+   * @param p Index of the peak in sortedPeaks, pattern is fitted around this peak
    * @param charge Charge state of the fitted pattern
    */
-  private void fitPattern(Vector<Feature> fittedPeaks, Feature p, int charge,
-      Feature[] sortedPeaks) {
+  private void fitPattern(Vector<Feature> fittedPeaks, BitSet fittedIndexes, int p, int charge) {
 
     if (charge == 0) {
       return;
@@ -264,29 +296,39 @@ class IsotopeGrouperTask extends AbstractTask {
 
     // Search for peaks before the start peak
     if (!monotonicShape) {
-      fitHalfPattern(p, charge, -1, fittedPeaks, sortedPeaks);
+      fitHalfPattern(p, charge, -1, fittedPeaks, fittedIndexes);
     }
 
     // Search for peaks after the start peak
-    fitHalfPattern(p, charge, 1, fittedPeaks, sortedPeaks);
+    fitHalfPattern(p, charge, 1, fittedPeaks, fittedIndexes);
 
   }
 
   /**
    * Helper method for fitPattern. Fits only one half of the pattern.
    * 
-   * @param p Pattern is fitted around this peak
+   * @param p Index of the peak in sortedPeaks, pattern is fitted around this peak
    * @param charge Charge state of the fitted pattern
    * @param direction Defines which half to fit: -1=fit to peaks before start M/Z, +1=fit to peaks
    *        after start M/Z
    * @param fittedPeaks All matching peaks will be added to this set
+   * @param fittedIndexes Indexes of the fitted peaks in sortedPeaks
    */
-  private void fitHalfPattern(Feature p, int charge, int direction, Vector<Feature> fittedPeaks,
-      Feature[] sortedPeaks) {
+  private void fitHalfPattern(int p, int charge, int direction, Vector<Feature> fittedPeaks,
+      BitSet fittedIndexes) {
 
     // Use M/Z and RT of the strongest peak of the pattern (peak 'p')
-    double mainMZ = p.getMZ();
-    double mainRT = p.getRT();
+    double mainMZ = sortedPeaks[p].getMZ();
+    double mainRT = sortedPeaks[p].getRT();
+
+    // The tolerances are applied around the candidate peaks, so the searched windows are slightly
+    // wider than the tolerances around the main peak. The exact checks below select the
+    // candidates.
+    final double mzWidth = getSearchWidth(mainMZ, mzTolerance.getMzTolerance(),
+        mzTolerance.getPpmTolerance() / 1000000.0);
+    final double rtWidth =
+        rtTolerance.isAbsolute() ? getSearchWidth(mainRT, rtTolerance.getTolerance(), 0)
+            : getSearchWidth(mainRT, 0, rtTolerance.getTolerance());
 
     // Variable n is the number of peak we are currently searching. 1=first
     // peak before/after start peak, 2=peak before/after previous, 3=...
@@ -301,13 +343,16 @@ class IsotopeGrouperTask extends AbstractTask {
       // Loop through all peaks, and collect candidates for the n:th peak
       // in the pattern
       Vector<Feature> goodCandidates = new Vector<Feature>();
-      for (int ind = 0; ind < sortedPeaks.length; ind++) {
-
-        Feature candidatePeak = sortedPeaks[ind];
+      final double expectedMZ = mainMZ + isotopeDistance * direction * n / (double) charge;
+      final int candidates[] = peakIndex.query(expectedMZ - mzWidth, expectedMZ + mzWidth,
+          mainRT - rtWidth, mainRT + rtWidth);
+      for (int ind : candidates) {
 
-        if (candidatePeak == null)
+        if (removedPeaks.get(ind))
           continue;
 
+        Feature candidatePeak = sortedPeaks[ind];
+
         // Get properties of the candidate peak
         double candidatePeakMZ = candidatePeak.getMZ();
         double candidatePeakRT = candidatePeak.getRT();
@@ -320,9 +365,9 @@ class IsotopeGrouperTask extends AbstractTask {
 
         if (mzTolerance.checkWithinTolerance(isotopeMZ, mainMZ)
             && rtTolerance.checkWithinTolerance(candidatePeakRT, mainRT)
-            && (!fittedPeaks.contains(candidatePeak))) {
+            && (!fittedIndexes.get(ind))) {
           goodCandidates.add(candidatePeak);
-
+          fittedIndexes.set(ind);
         }
 
       }
@@ -342,4 +387,17 @@ class IsotopeGrouperTask extends AbstractTask {
 
   }
 
+  /**
+   * Returns the half width of a window around given value, which contains all values v with
+   * |v - value| <= max(absoluteTolerance, |v| * relativeTolerance)
+   */
+  private static double getSearchWidth(double value, double absoluteTolerance,
+      double relativeTolerance) {
+    if (relativeTolerance >= 1)
+      return Double.POSITIVE_INFINITY;
+    double relativeWidth = Math.abs(value) * relativeTolerance / (1 - relativeTolerance);
+    // Small margin for rounding errors, the exact tolerance check is done by the caller
+    return Math.max(absoluteTolerance, relativeWidth) * (1 + 1E-9) + 1E-9;
+  }
+
 }
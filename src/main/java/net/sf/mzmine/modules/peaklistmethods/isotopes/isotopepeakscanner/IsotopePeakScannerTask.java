@@ -22,8 +22,11 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.openscience.cdk.interfaces.IIsotope;
+import com.google.common.collect.Range;
 import io.github.msdk.MSDKRuntimeException;
 import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
@@ -54,6 +57,7 @@ import net.sf.mzmine.parameters.parametertypes.tolerances.RTTolerance;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.FormulaUtils;
+import net.sf.mzmine.util.ParallelScanProcessor;
 import net.sf.mzmine.util.PeakListRowSorter;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.SortingDirection;
@@ -88,7 +92,8 @@ public class IsotopePeakScannerTask extends AbstractTask {
   private double minPatternIntensity;
   private double mergeWidth;
   private String message;
-  private int totalRows, finishedRows;
+  private int totalRows;
+  private final AtomicInteger finishedRows = new AtomicInteger();
   private PeakList resultPeakList;
   private MZmineProject project;
   private PeakList peakList;
@@ -107,6 +112,12 @@ public class IsotopePeakScannerTask extends AbstractTask {
   private int autoCarbonMinPatternSize;
   private boolean excludeZeroCPattern;
 
+  // rows sorted by m/z and their m/z, RT and height, read concurrently by the row searches
+  private PeakListRow[] rows;
+  private double[] rowMZs, rowRTs, rowHeights;
+  private double maxDiff;
+  private PeakListHandler plh, resultMap;
+
 
 
   public enum RatingType {
@@ -207,7 +218,7 @@ public class IsotopePeakScannerTask extends AbstractTask {
   public double getFinishedPercentage() {
     if (totalRows == 0)
       return 0.0;
-    return (double) finishedRows / (double) totalRows;
+    return (double) finishedRows.get() / (double) totalRows;
   }
 
   /**
@@ -239,264 +250,299 @@ public class IsotopePeakScannerTask extends AbstractTask {
     logger.info("maxPatternSize: " + maxPatternSize);
 
     // get all rows and sort by m/z
-    PeakListRow[] rows = peakList.getRows();
+    rows = peakList.getRows();
     Arrays.sort(rows, new PeakListRowSorter(SortingProperty.MZ, SortingDirection.Ascending));
 
-    PeakListHandler plh = new PeakListHandler();
+    // m/z sorted index of the rows, shared by all threads
+    rowMZs = new double[totalRows];
+    rowRTs = new double[totalRows];
+    rowHeights = new double[totalRows];
+    for (int i = 0; i < totalRows; i++) {
+      rowMZs[i] = rows[i].getAverageMZ();
+      rowRTs[i] = rows[i].getAverageRT();
+      rowHeights[i] = rows[i].getAverageHeight();
+    }
+
+    // the largest mass shift of all patterns limits the search window of each row
+    maxDiff = 0;
+    for (int p = 0; p < diff.length; p++)
+      maxDiff = Math.max(maxDiff, diff[p][diff[p].length - 1]);
+
+    plh = new PeakListHandler();
     plh.setUp(peakList);
 
     resultPeakList = new SimplePeakList(peakList.getName() + suffix, peakList.getRawDataFiles());
-    PeakListHandler resultMap = new PeakListHandler();
+    resultMap = new PeakListHandler();
+
+    // the rows are searched in parallel, the results are added in the order of ascending m/z
+    try {
+      boolean finished = ParallelScanProcessor.processScans(totalRows, this,
+          i -> searchPattern(i, diff), (i, result) -> {
+            if (result != null)
+              addResult(result, diff);
+            finishedRows.incrementAndGet();
+          });
+      if (!finished)
+        return;
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Error while scanning for isotope patterns", e);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error while scanning for isotope patterns: " + e.toString());
+      return;
+    }
 
-    for (int i = 0; i < totalRows; i++) {
-      // i will represent the index of the row in peakList
-      if (peakList.getRow(i).getPeakIdentities().length > 0) {
-        finishedRows++;
-        continue;
-      }
+    ArrayList<Integer> keys = resultMap.getAllKeys();
+    for (int j = 0; j < keys.size(); j++)
+      resultPeakList.addRow(resultMap.getRowByID(keys.get(j)));
 
-      message = "Row " + i + "/" + totalRows;
+    if (resultPeakList.getNumberOfRows() > 1)
+      addResultToProject(/* resultPeakList */);
+    else
+      message = "Element not found.";
+    setStatus(TaskStatus.FINISHED);
 
-      // now get all peaks that lie within RT and maxIsotopeMassRange: pL[index].mz ->
-      // pL[index].mz+maxMass
-      ArrayList<PeakListRow> groupedPeaks =
-          groupPeaks(rows, i, diff[maxPatternIndex][diff[maxPatternIndex].length - 1]);
+  }
 
-      if (groupedPeaks.size() < 2) {
-        finishedRows++;
-        continue;
-      }
-      // else
-      // logger.info("groupedPeaks.size > 2 in row: " + i + " size: " +
-      // groupedPeaks.size());
-
-      ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][]; // this will store row
-                                                                       // indexes
-      // TODO: it should be possible to use a single array of result buffer instead of a 2D array
-      // which should reduce computation time later on. the problem is that some carbon peaks
-      // might pop up within
-      // the pattern and change indices. for testing purposes ill do it as it is
-
-      for (int p = 0; p < diff.length; p++) { // resultBuffer[i] index will represent Isotope[i] (if
-        // numAtoms = 0)
-        resultBuffer[p] = new ResultBuffer[diff[p].length];
-
-        for (int k = 0; k < diff[p].length; k++)
-          resultBuffer[p][k] = new ResultBuffer(); // [p][0] will be the isotope with lowest mass#
-      }
+  /**
+   * Result of the pattern search for one row
+   */
+  private static class PatternResult {
 
-      // of all features with fitting rt
-      // and mz
-      boolean trueBuffers[] = new boolean[diff.length];
-      Arrays.fill(trueBuffers, false);
+    private final int rowIndex, bestPatternIndex;
+    private final Candidates candidates;
 
-      for (int j = 0; j < groupedPeaks.size(); j++) // go through all possible peaks
-      {
-        for (int p = 0; p < diff.length; p++) {
-
-          for (int k = 0; k < diff[p].length; k++) // check for each peak if it is a possible
-                                                   // feature
-          // for
-          // every diff[](isotope)
-          { // this is necessary bc there might be more than one possible feature
-            // j represents the row index in groupedPeaks
-            // k represents the isotope number the peak will be a candidate for
-            // p = pattern index for autoCarbon
-            if (mzTolerance.checkWithinTolerance(groupedPeaks.get(0).getAverageMZ() + diff[p][k],
-                groupedPeaks.get(j).getAverageMZ())) {
-              // this will automatically add groupedPeaks[0] to the list -> isotope with
-              // lowest mass
-              resultBuffer[p][k].addFound(); // +1 result for isotope k
-              resultBuffer[p][k].addRow(j); // row in groupedPeaks[]
-              resultBuffer[p][k].addID(groupedPeaks.get(j).getID());
-            }
-          }
-        }
-      }
+    PatternResult(int rowIndex, int bestPatternIndex, Candidates candidates) {
+      this.rowIndex = rowIndex;
+      this.bestPatternIndex = bestPatternIndex;
+      this.candidates = candidates;
+    }
+  }
+
+  /**
+   * Searches for the isotope patterns starting with given row. Called concurrently for different
+   * rows, so all buffers and candidates are local to this call.
+   * 
+   * @param i index of the row in the m/z sorted rows
+   * @return the best pattern found, or null
+   */
+  private PatternResult searchPattern(int i, double[][] diff) {
+
+    if (rows[i].getPeakIdentities().length > 0)
+      return null;
 
-      boolean foundOne = false;
+    // now get all peaks that lie within RT and maxIsotopeMassRange: pL[index].mz ->
+    // pL[index].mz+maxMass
+    int[] groupedPeaks = groupPeaks(i, maxDiff);
 
-      for (int p = 0; p < diff.length; p++)
-        if (checkIfAllTrue(resultBuffer[p])) { // this means that for every isotope we expected to
-                                               // find,
-          foundOne = true; // we found one or more possible features
-          trueBuffers[p] = true;
-          // logger.info("Row: " + i + " filled buffer[" + p +"]");
+    if (groupedPeaks.length < 2)
+      return null;
+
+    double[] groupedMZs = new double[groupedPeaks.length];
+    for (int j = 0; j < groupedPeaks.length; j++)
+      groupedMZs[j] = rowMZs[groupedPeaks[j]];
+
+    ResultBuffer[][] resultBuffer = new ResultBuffer[diff.length][]; // this will store row
+                                                                     // indexes
+
+    for (int p = 0; p < diff.length; p++) { // resultBuffer[i] index will represent Isotope[i] (if
+      // numAtoms = 0)
+      resultBuffer[p] = new ResultBuffer[diff[p].length];
+
+      for (int k = 0; k < diff[p].length; k++)
+        resultBuffer[p][k] = new ResultBuffer(); // [p][0] will be the isotope with lowest mass#
+    }
+
+    boolean trueBuffers[] = new boolean[diff.length];
+    Arrays.fill(trueBuffers, false);
+
+    // the grouped peaks are sorted by m/z, so for every expected isotope peak we only have to look
+    // at the peaks inside its tolerance window
+    for (int p = 0; p < diff.length; p++) {
+      for (int k = 0; k < diff[p].length; k++) {
+        // j represents the row index in groupedPeaks
+        // k represents the isotope number the peak will be a candidate for
+        // p = pattern index for autoCarbon
+        Range<Double> mzRange = mzTolerance.getToleranceRange(groupedMZs[0] + diff[p][k]);
+        for (int j = findFirstIndex(groupedMZs, mzRange.lowerEndpoint()); j < groupedMZs.length
+            && groupedMZs[j] <= mzRange.upperEndpoint(); j++) {
+          // this will automatically add groupedPeaks[0] to the list -> isotope with
+          // lowest mass
+          resultBuffer[p][k].addFound(); // +1 result for isotope k
+          resultBuffer[p][k].addRow(j); // row in groupedPeaks[]
+          resultBuffer[p][k].addID(rows[groupedPeaks[j]].getID());
         }
-      if (!foundOne) {
-        finishedRows++;
-        continue;
       }
+    }
 
-      Candidates[] candidates = new Candidates[diff.length];
-      for (int p = 0; p < diff.length; p++)
-        candidates[p] = new Candidates(diff[p].length, minHeight, mzTolerance, pattern[p],
-            massListName, plh, ratingType);
+    boolean foundOne = false;
 
-      for (int p = 0; p < diff.length; p++) {
-        if (!trueBuffers[p])
-          continue;
-        for (int k = 0; k < resultBuffer[p].length; k++) // reminder: resultBuffer.length =
-                                                         // diff.length
-        {
-          for (int l = 0; l < resultBuffer[p][k].getFoundCount(); l++) {
-            // k represents index resultBuffer[k] and thereby the isotope number
-            // l represents the number of results in resultBuffer[k]
-            candidates[p].checkForBetterRating(k, groupedPeaks.get(0),
-                groupedPeaks.get(resultBuffer[p][k].getRow(l)), minRating, checkIntensity);
-
-          }
-        }
+    for (int p = 0; p < diff.length; p++)
+      if (checkIfAllTrue(resultBuffer[p])) { // this means that for every isotope we expected to
+                                             // find,
+        foundOne = true; // we found one or more possible features
+        trueBuffers[p] = true;
       }
+    if (!foundOne)
+      return null;
+
+    PeakListRow parentRow = rows[groupedPeaks[0]];
 
-      foundOne = false;
-      boolean trueCandidates[] = new boolean[diff.length];
-      Arrays.fill(trueCandidates, false);
+    Candidates[] candidates = new Candidates[diff.length];
+    for (int p = 0; p < diff.length; p++)
+      candidates[p] = new Candidates(diff[p].length, minHeight, mzTolerance, pattern[p],
+          massListName, plh, ratingType);
+
+    for (int p = 0; p < diff.length; p++) {
+      if (!trueBuffers[p])
+        continue;
+      for (int k = 0; k < resultBuffer[p].length; k++) // reminder: resultBuffer.length =
+                                                       // diff.length
+      {
+        for (int l = 0; l < resultBuffer[p][k].getFoundCount(); l++) {
+          // k represents index resultBuffer[k] and thereby the isotope number
+          // l represents the number of results in resultBuffer[k]
+          candidates[p].checkForBetterRating(k, parentRow,
+              rows[groupedPeaks[resultBuffer[p][k].getRow(l)]], minRating, checkIntensity);
 
-      for (int p = 0; p < diff.length; p++) {
-        if (trueBuffers[p] && checkIfAllTrue(candidates[p].getCandidates())) {
-          trueCandidates[p] = true;
-          foundOne = true;
-          // logger.info("Row: " + i + " filled candidates[" + p + "]");
         }
       }
-      if (!foundOne) {
-        finishedRows++;
-        // logger.info("Not enough valid candidates for parent feature " +
-        // groupedPeaks.get(0).getAverageMZ() + "\talthough enough peaks were found.") ;
-        continue; // jump to next i
+    }
+
+    foundOne = false;
+    boolean trueCandidates[] = new boolean[diff.length];
+    Arrays.fill(trueCandidates, false);
+
+    for (int p = 0; p < diff.length; p++) {
+      if (trueBuffers[p] && checkIfAllTrue(candidates[p].getCandidates())) {
+        trueCandidates[p] = true;
+        foundOne = true;
       }
+    }
+    if (!foundOne)
+      return null;
 
-      // find best result now, first we have to calc avg ratings if specified by user
-      int bestPatternIndex = 0;
-      double bestRating = 0.0;
-      for (int p = 0; p < diff.length; p++) {
+    // find best result now, first we have to calc avg ratings if specified by user
+    int bestPatternIndex = 0;
+    double bestRating = 0.0;
+    for (int p = 0; p < diff.length; p++) {
 
-        if (!trueCandidates[p])
-          continue;
+      if (!trueCandidates[p])
+        continue;
 
-        if (accurateAvgIntensity)
-          candidates[p].calcAvgRatings();
-        // this is a final rating, with averaged intensities in all
-        // mass lists that contain EVERY peak that was selected.
-        // thats why we can only do it after ALL peaks have been
-        // found
-
-        if (accurateAvgIntensity && candidates[p].getAvgAccAvgRating() > bestRating) {
-          bestPatternIndex = p;
-          bestRating = candidates[p].getAvgAccAvgRating();
-        } else if (!accurateAvgIntensity && candidates[p].getSimpleAvgRating() > bestRating) {
-          bestPatternIndex = p;
-          bestRating = candidates[p].getSimpleAvgRating();
-        }
+      if (accurateAvgIntensity)
+        candidates[p].calcAvgRatings();
+      // this is a final rating, with averaged intensities in all
+      // mass lists that contain EVERY peak that was selected.
+      // thats why we can only do it after ALL peaks have been
+      // found
+
+      if (accurateAvgIntensity && candidates[p].getAvgAccAvgRating() > bestRating) {
+        bestPatternIndex = p;
+        bestRating = candidates[p].getAvgAccAvgRating();
+      } else if (!accurateAvgIntensity && candidates[p].getSimpleAvgRating() > bestRating) {
+        bestPatternIndex = p;
+        bestRating = candidates[p].getSimpleAvgRating();
       }
+    }
 
-      if (!checkIfAllTrue(candidates[bestPatternIndex].getCandidates())) {
-        logger.warning(
-            "We were about to add candidates with null pointers.\nThis was no valid result. Continueing.");
-        continue;
-      } // TODO: this shouldnt be needed, fix the bug that causes the crash later on.
-        // this happens occasionally if the user wants to do accurate average but does not filter
-        // by RT. then possible isotope peaks are found, although they are not detected at the same
-        // time. This will result in the candidates return -1.0 which will sooner or later return a
-        // null pointer Fixing this will be done in a future update, but needs a rework of the
-        // candidates class.
-        // The results you miss by skipping here would have not been valid results anyway, so this
-        // is not urgent. Will be nicer though, because of cleaner code.
+    if (!checkIfAllTrue(candidates[bestPatternIndex].getCandidates())) {
+      logger.warning(
+          "We were about to add candidates with null pointers.\nThis was no valid result. Continueing.");
+      return null;
+    } // TODO: this shouldnt be needed, fix the bug that causes the crash later on.
+      // this happens occasionally if the user wants to do accurate average but does not filter
+      // by RT. then possible isotope peaks are found, although they are not detected at the same
+      // time. This will result in the candidates return -1.0 which will sooner or later return a
+      // null pointer Fixing this will be done in a future update, but needs a rework of the
+      // candidates class.
+      // The results you miss by skipping here would have not been valid results anyway, so this
+      // is not urgent. Will be nicer though, because of cleaner code.
+
+    return new PatternResult(i, bestPatternIndex, candidates[bestPatternIndex]);
+  }
 
-      PeakListRow parent = copyPeakRow(peakList.getRow(i));
+  /**
+   * Adds the parent and child rows of a found pattern to the result map. Called in the order of
+   * ascending row m/z, because rows assigned to multiple patterns collect their comments.
+   */
+  private void addResult(PatternResult result, double[][] diff) {
 
-      if (resultMap.containsID(parent.getID())) // if we can assign this row multiple times we
-                                                // have to copy the comment, because adding it to
-                                                // the map twice will overwrite the results
-        addComment(parent, resultMap.getRowByID(parent.getID()).getComment());
+    final int bestPatternIndex = result.bestPatternIndex;
+    final Candidates bestCandidates = result.candidates;
 
-      addComment(parent, parent.getID() + "--IS PARENT--"); // ID is added to be able to sort by
-      // comment to bring all isotope patterns together
+    message = "Row " + result.rowIndex + "/" + totalRows;
 
-      if (carbonRange != 1)
-        addComment(parent, "BestPattern: " + pattern[bestPatternIndex].getDescription());
+    PeakListRow parent = copyPeakRow(rows[result.rowIndex]);
 
-      resultMap.addRow(parent); // add results to resultPeakList
+    if (resultMap.containsID(parent.getID())) // if we can assign this row multiple times we
+                                              // have to copy the comment, because adding it to
+                                              // the map twice will overwrite the results
+      addComment(parent, resultMap.getRowByID(parent.getID()).getComment());
 
-      DataPoint[] dp = new DataPoint[pattern[bestPatternIndex].getNumberOfDataPoints()];
-      // we need this to add the IsotopePattern later on
+    addComment(parent, parent.getID() + "--IS PARENT--"); // ID is added to be able to sort by
+    // comment to bring all isotope patterns together
 
-      if (accurateAvgIntensity) {
-        dp[0] = new SimpleDataPoint(parent.getAverageMZ(),
-            candidates[bestPatternIndex].getAvgHeight(0));
-      } else {
-        dp[0] = new SimpleDataPoint(parent.getAverageMZ(), parent.getAverageHeight());
-      }
+    if (carbonRange != 1)
+      addComment(parent, "BestPattern: " + pattern[bestPatternIndex].getDescription());
 
-      for (int k = 1; k < candidates[bestPatternIndex].size(); k++) // we skip k=0 because ==
-                                                                    // groupedPeaks[0]/
-      // ==candidates.get(0) which we added before
-      {
-        PeakListRow child =
-            copyPeakRow(plh.getRowByID(candidates[bestPatternIndex].get(k).getCandID()));
-        if (accurateAvgIntensity) {
-          dp[k] = new SimpleDataPoint(child.getAverageMZ(),
-              candidates[bestPatternIndex].getAvgHeight(k));
-        } else {
-          dp[k] = new SimpleDataPoint(child.getAverageMZ(), child.getAverageHeight());
-        }
+    resultMap.addRow(parent); // add results to resultPeakList
 
-        String average = "";
-        if (accurateAvgIntensity) {
-          average = " AvgRating: " + round(candidates[bestPatternIndex].getAvgRating(k), 3);
-        }
+    DataPoint[] dp = new DataPoint[pattern[bestPatternIndex].getNumberOfDataPoints()];
+    // we need this to add the IsotopePattern later on
 
+    if (accurateAvgIntensity) {
+      dp[0] = new SimpleDataPoint(parent.getAverageMZ(), bestCandidates.getAvgHeight(0));
+    } else {
+      dp[0] = new SimpleDataPoint(parent.getAverageMZ(), parent.getAverageHeight());
+    }
 
-        addComment(parent, "Intensity ratios: " + getIntensityRatios(pattern[bestPatternIndex],
-            pattern[bestPatternIndex].getHighestDataPointIndex()));
-        if (accurateAvgIntensity)
-          addComment(parent, " Avg pattern rating: "
-              + round(candidates[bestPatternIndex].getAvgAccAvgRating(), 3));
-        else
-          addComment(parent,
-              " pattern rating: " + round(candidates[bestPatternIndex].getSimpleAvgRating(), 3));
-
-        ;
-        addComment(child,
-            (parent.getID() + "-Parent ID" + " m/z-shift(ppm): "
-                + round(((child.getAverageMZ() - parent.getAverageMZ()) - diff[bestPatternIndex][k])
-                    / child.getAverageMZ() * 1E6, 2)
-                + " I(c)/I(p): "
-                + round(child.getAverageHeight() / plh
-                    .getRowByID(candidates[bestPatternIndex]
-                        .get(pattern[bestPatternIndex].getHighestDataPointIndex()).getCandID())
-                    .getAverageHeight(), 2)
-                + " Identity: " + pattern[bestPatternIndex].getIsotopeComposition(k) + " Rating: "
-                + round(candidates[bestPatternIndex].get(k).getRating(), 3) + average));
-
-        resultMap.addRow(child);
+    for (int k = 1; k < bestCandidates.size(); k++) // we skip k=0 because == groupedPeaks[0]/
+    // ==candidates.get(0) which we added before
+    {
+      PeakListRow child = copyPeakRow(plh.getRowByID(bestCandidates.get(k).getCandID()));
+      if (accurateAvgIntensity) {
+        dp[k] = new SimpleDataPoint(child.getAverageMZ(), bestCandidates.getAvgHeight(k));
+      } else {
+        dp[k] = new SimpleDataPoint(child.getAverageMZ(), child.getAverageHeight());
       }
 
-      IsotopePattern resultPattern = new SimpleIsotopePattern(dp, IsotopePatternStatus.DETECTED,
-          element + " monoisotopic mass: " + parent.getAverageMZ());
-      parent.getBestPeak().setIsotopePattern(resultPattern);
-
-      for (int j = 1; j < diff[bestPatternIndex].length; j++)
-        resultMap.getRowByID(candidates[bestPatternIndex].get(j).getCandID()).getBestPeak()
-            .setIsotopePattern(resultPattern);
+      String average = "";
+      if (accurateAvgIntensity) {
+        average = " AvgRating: " + round(bestCandidates.getAvgRating(k), 3);
+      }
 
-      if (isCanceled())
-        return;
 
-      finishedRows++;
+      addComment(parent, "Intensity ratios: " + getIntensityRatios(pattern[bestPatternIndex],
+          pattern[bestPatternIndex].getHighestDataPointIndex()));
+      if (accurateAvgIntensity)
+        addComment(parent,
+            " Avg pattern rating: " + round(bestCandidates.getAvgAccAvgRating(), 3));
+      else
+        addComment(parent, " pattern rating: " + round(bestCandidates.getSimpleAvgRating(), 3));
+
+      ;
+      addComment(child,
+          (parent.getID() + "-Parent ID" + " m/z-shift(ppm): "
+              + round(((child.getAverageMZ() - parent.getAverageMZ()) - diff[bestPatternIndex][k])
+                  / child.getAverageMZ() * 1E6, 2)
+              + " I(c)/I(p): "
+              + round(child.getAverageHeight() / plh
+                  .getRowByID(bestCandidates
+                      .get(pattern[bestPatternIndex].getHighestDataPointIndex()).getCandID())
+                  .getAverageHeight(), 2)
+              + " Identity: " + pattern[bestPatternIndex].getIsotopeComposition(k) + " Rating: "
+              + round(bestCandidates.get(k).getRating(), 3) + average));
+
+      resultMap.addRow(child);
     }
 
-    ArrayList<Integer> keys = resultMap.getAllKeys();
-    for (int j = 0; j < keys.size(); j++)
-      resultPeakList.addRow(resultMap.getRowByID(keys.get(j)));
-
-    if (resultPeakList.getNumberOfRows() > 1)
-      addResultToProject(/* resultPeakList */);
-    else
-      message = "Element not found.";
-    setStatus(TaskStatus.FINISHED);
+    IsotopePattern resultPattern = new SimpleIsotopePattern(dp, IsotopePatternStatus.DETECTED,
+        element + " monoisotopic mass: " + parent.getAverageMZ());
+    parent.getBestPeak().setIsotopePattern(resultPattern);
 
+    for (int j = 1; j < diff[bestPatternIndex].length; j++)
+      resultMap.getRowByID(bestCandidates.get(j).getCandID()).getBestPeak()
+          .setIsotopePattern(resultPattern);
   }
 
   /**
@@ -619,41 +665,64 @@ public class IsotopePeakScannerTask extends AbstractTask {
 
   /**
    * 
-   * @param pL
-   * @param parentIndex index of possible parent peak
-   * @param maxMass
-   * @return will return ArrayList<PeakListRow> of all peaks within the range of pL[parentIndex].mz
-   *         -> pL[parentIndex].mz+maxMass
+   * @param parentIndex index of possible parent peak in the m/z sorted rows
+   * @param maxDiff
+   * @return will return the indexes of all peaks within the range of rows[parentIndex].mz ->
+   *         rows[parentIndex].mz+maxMass, sorted by m/z
    */
-  private ArrayList<PeakListRow> groupPeaks(PeakListRow[] pL, int parentIndex, double maxDiff) {
-    ArrayList<PeakListRow> buf = new ArrayList<PeakListRow>();
+  private int[] groupPeaks(int parentIndex, double maxDiff) {
+    int[] buf = new int[8];
+    int size = 0;
 
-    buf.add(pL[parentIndex]); // this means the result will contain row(parentIndex) itself
+    buf[size++] = parentIndex; // this means the result will contain row(parentIndex) itself
 
-    double mz = pL[parentIndex].getAverageMZ();
-    double rt = pL[parentIndex].getAverageRT();
+    double mz = rowMZs[parentIndex];
+    double rt = rowRTs[parentIndex];
+    double maxMZ = mz + maxDiff + mzTolerance.getMzTolerance();
 
-    for (int i = parentIndex + 1; i < pL.length; i++) // will not add the parent peak itself
+    for (int i = parentIndex + 1; i < rowMZs.length; i++) // will not add the parent peak itself
     {
-      PeakListRow r = pL[i];
+      // no later row can be within the m/z window, even if it fails the filters below
+      if (rowMZs[i] > maxMZ)
+        break;
+
       // check for rt
 
-      if (r.getAverageHeight() < minHeight)
+      if (rowHeights[i] < minHeight)
         continue;
 
-      if (!rtTolerance.checkWithinTolerance(rt, r.getAverageRT()) && checkRT)
+      if (!rtTolerance.checkWithinTolerance(rt, rowRTs[i]) && checkRT)
         continue;
 
-      if (pL[i].getAverageMZ() > mz
-          && pL[i].getAverageMZ() <= (mz + maxDiff + mzTolerance.getMzTolerance())) {
-        buf.add(pL[i]);
+      if (rowMZs[i] > mz) {
+        if (size == buf.length)
+          buf = Arrays.copyOf(buf, size * 2);
+        buf[size++] = i;
       }
 
-      if (pL[i].getAverageMZ() > (mz + maxDiff)) // since pL is sorted by ascending mass, we can
-                                                 // stop now
-        return buf;
+      if (rowMZs[i] > (mz + maxDiff)) // since the rows are sorted by ascending mass, we can
+                                      // stop now
+        break;
+    }
+    return Arrays.copyOf(buf, size);
+  }
+
+  /**
+   * 
+   * @param mzs ascending m/z values
+   * @param mz
+   * @return index of the first value that is not lower than mz
+   */
+  private static int findFirstIndex(double[] mzs, double mz) {
+    int low = 0, high = mzs.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mzs[mid] < mz)
+        low = mid + 1;
+      else
+        high = mid;
     }
-    return buf;
+    return low;
   }
 
   /**
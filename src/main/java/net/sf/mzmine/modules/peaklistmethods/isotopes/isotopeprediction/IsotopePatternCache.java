@@ -0,0 +1,177 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.isotopes.isotopeprediction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.IonizationType;
+import net.sf.mzmine.datamodel.IsotopePattern;
+import net.sf.mzmine.datamodel.impl.SimpleIsotopePattern;
+import net.sf.mzmine.util.FormulaUtils;
+
+/**
+ * Thread-safe cache of predicted isotope patterns, shared by all tasks. Patterns are identified by
+ * the neutral formula, charge, ionization type and a minimum abundance floor. The minimum abundance
+ * usually depends on the height of the detected pattern, so it differs for every peak list row. To
+ * share the patterns between rows, each pattern is calculated once with the requested abundance
+ * rounded down to a power of two, and the isotopes below the requested abundance are removed
+ * before the pattern is returned. When the cache is full, the least recently used patterns are
+ * removed.
+ *
+ * The returned patterns are shared and must not be modified.
+ */
+public class IsotopePatternCache {
+
+  // Maximum number of cached patterns
+  private static final int MAX_CACHED_PATTERNS = 200000;
+
+  private static final Map<PatternKey, IsotopePattern> cache =
+      new LinkedHashMap<PatternKey, IsotopePattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PatternKey, IsotopePattern> eldest) {
+          return size() > MAX_CACHED_PATTERNS;
+        }
+      };
+
+  // Number of patterns calculated because they were not cached, for statistics
+  private static final AtomicLong calculatedPatterns = new AtomicLong();
+
+  private static class PatternKey {
+
+    private final String formula;
+    private final int charge;
+    private final IonizationType ionType;
+    private final double minAbundance;
+
+    PatternKey(String formula, int charge, IonizationType ionType, double minAbundance) {
+      this.formula = formula;
+      this.charge = charge;
+      this.ionType = ionType;
+      this.minAbundance = minAbundance;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * (31 * formula.hashCode() + charge) + ionType.hashCode())
+          + Double.hashCode(minAbundance);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof PatternKey))
+        return false;
+      PatternKey other = (PatternKey) o;
+      return formula.equals(other.formula) && (charge == other.charge)
+          && (ionType == other.ionType) && (minAbundance == other.minAbundance);
+    }
+
+  }
+
+  /**
+   * Returns the isotope pattern of the ion of given neutral formula, without the isotopes whose
+   * abundance relative to the highest isotope is below minAbundance. The pattern is calculated if
+   * no pattern of the same formula and abundance floor is cached yet.
+   */
+  public static @Nonnull IsotopePattern getIsotopePattern(@Nonnull String neutralFormula,
+      int charge, @Nonnull IonizationType ionType, double minAbundance) {
+
+    final double abundanceFloor = getAbundanceFloor(minAbundance);
+    final PatternKey key = new PatternKey(neutralFormula, charge, ionType, abundanceFloor);
+
+    IsotopePattern pattern;
+    synchronized (cache) {
+      pattern = cache.get(key);
+    }
+
+    if (pattern == null) {
+
+      // Calculated outside of the map, so that concurrent calculations of other patterns are not
+      // blocked. In the rare case two threads calculate the same pattern, both results are equal.
+      String adjustedFormula = FormulaUtils.ionizeFormula(neutralFormula, ionType, charge);
+      pattern = IsotopePatternCalculator.calculateIsotopePattern(adjustedFormula, abundanceFloor,
+          charge, ionType.getPolarity());
+      calculatedPatterns.incrementAndGet();
+
+      synchronized (cache) {
+        cache.put(key, pattern);
+      }
+
+    }
+
+    return removeIsotopesBelow(pattern, minAbundance);
+  }
+
+  /**
+   * Returns the largest power of two which is not above given abundance
+   */
+  static double getAbundanceFloor(double minAbundance) {
+    if (!(minAbundance >= Double.MIN_NORMAL) || Double.isInfinite(minAbundance))
+      return minAbundance;
+    return Math.scalb(1.0, Math.getExponent(minAbundance));
+  }
+
+  /**
+   * Returns the pattern without the isotopes below given abundance relative to the highest
+   * isotope, or the same pattern if there are no such isotopes. The cached pattern is not modified.
+   */
+  private static IsotopePattern removeIsotopesBelow(IsotopePattern pattern, double minAbundance) {
+
+    final DataPoint highestIsotope = pattern.getHighestDataPoint();
+    if (highestIsotope == null)
+      return pattern;
+    // The highest isotope is always kept
+    final double minIntensity = Math.min(minAbundance, 1) * highestIsotope.getIntensity();
+
+    final DataPoint dataPoints[] = pattern.getDataPoints();
+    final List<DataPoint> keptDataPoints = new ArrayList<DataPoint>(dataPoints.length);
+    for (DataPoint dataPoint : dataPoints) {
+      if (dataPoint.getIntensity() >= minIntensity)
+        keptDataPoints.add(dataPoint);
+    }
+    if (keptDataPoints.size() == dataPoints.length)
+      return pattern;
+
+    return new SimpleIsotopePattern(keptDataPoints.toArray(new DataPoint[0]), pattern.getStatus(),
+        pattern.getDescription());
+  }
+
+  /**
+   * @return Number of patterns which were calculated because they were not cached
+   */
+  static long getNumOfCalculatedPatterns() {
+    return calculatedPatterns.get();
+  }
+
+  /**
+   * Removes all cached patterns
+   */
+  static void clear() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+}
@@ -36,6 +36,8 @@ import net.sf.mzmine.datamodel.MassList;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import net.sf.mzmine.util.MS2SpectrumCache;
+import net.sf.mzmine.util.MS2SpectrumCache.MS2Spectrum;
 
 public class MSMSScoreCalculator {
 
@@ -56,7 +58,8 @@ public class MSMSScoreCalculator {
           + " does not have a mass list called '" + massListName + "'");
     }
 
-    DataPoint msmsIons[] = massList.getDataPoints();
+    // The mass list is read and sorted by m/z only once for all evaluated formulas
+    MS2Spectrum msmsIons = MS2SpectrumCache.getSpectrum(massList, Double.NEGATIVE_INFINITY);
 
     if (msmsIons == null) {
       throw new IllegalArgumentException(
@@ -71,26 +74,31 @@ public class MSMSScoreCalculator {
     int totalMSMSpeaks = 0, interpretedMSMSpeaks = 0;
     Map<DataPoint, String> msmsAnnotations = new Hashtable<DataPoint, String>();
 
-    msmsCycle: for (DataPoint dp : msmsIons) {
+    // If getPrecursorCharge() returns 0, it means charge is unknown. In
+    // that case let's assume charge 1
+    int precursorCharge = msmsScan.getPrecursorCharge();
+    if (precursorCharge == 0)
+      precursorCharge = 1;
 
-      // Check if this is an isotope
-      Range<Double> isotopeCheckRange = Range.closed(dp.getMZ() - 1.4, dp.getMZ() - 0.6);
-      for (DataPoint dpCheck : msmsIons) {
+    IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+
+    msmsCycle: for (int i = 0; i < msmsIons.size(); i++) {
+
+      DataPoint dp = msmsIons.dataPoints[i];
+
+      // Check if this is an isotope. The ions are sorted by m/z, so only
+      // the ions in the check range have to be compared.
+      final double minCheckMZ = dp.getMZ() - 1.4, maxCheckMZ = dp.getMZ() - 0.6;
+      for (int j = msmsIons.findFirstIndex(minCheckMZ); (j < msmsIons.size())
+          && (msmsIons.mzValues[j] <= maxCheckMZ); j++) {
         // If we have any MS/MS peak with 1 neutron mass smaller m/z
         // and higher intensity, it means the current peak is an
         // isotope and we should ignore it
-        if (isotopeCheckRange.contains(dpCheck.getMZ())
-            && (dpCheck.getIntensity() > dp.getIntensity())) {
+        if (msmsIons.intensityValues[j] > dp.getIntensity()) {
           continue msmsCycle;
         }
       }
 
-      // If getPrecursorCharge() returns 0, it means charge is unknown. In
-      // that case let's assume charge 1
-      int precursorCharge = msmsScan.getPrecursorCharge();
-      if (precursorCharge == 0)
-        precursorCharge = 1;
-
       // We don't know the charge of the fragment, so we will simply
       // assume 1
       double neutralLoss = msmsScan.getPrecursorMZ() * precursorCharge - dp.getMZ();
@@ -103,8 +111,6 @@ public class MSMSScoreCalculator {
 
       Range<Double> msmsTargetRange = msmsTolerance.getToleranceRange(neutralLoss);
 
-      IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
-
       MolecularFormulaGenerator msmsEngine = new MolecularFormulaGenerator(builder,
           msmsTargetRange.lowerEndpoint(), msmsTargetRange.upperEndpoint(), msmsElementRange);
 
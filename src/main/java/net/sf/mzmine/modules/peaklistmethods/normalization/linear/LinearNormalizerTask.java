@@ -22,6 +22,7 @@ import java.util.Hashtable;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakList.PeakListAppliedMethod;
@@ -94,21 +95,25 @@ class LinearNormalizerTask extends AbstractTask {
     normalizedPeakList =
         new SimplePeakList(originalPeakList + " " + suffix, originalPeakList.getRawDataFiles());
 
+    final FeatureMatrix matrix = originalPeakList.getFeatureMatrix();
+    final int numOfRows = matrix.getNumberOfRows();
+
     // Loop through all raw data files, and find the peak with biggest
     // height
     double maxOriginalHeight = 0.0;
-    for (RawDataFile file : originalPeakList.getRawDataFiles()) {
-      for (PeakListRow originalpeakListRow : originalPeakList.getRows()) {
-        Feature p = originalpeakListRow.getPeak(file);
-        if (p != null) {
-          if (maxOriginalHeight <= p.getHeight())
-            maxOriginalHeight = p.getHeight();
+    for (int column = 0; column < matrix.getNumberOfRawDataFiles(); column++) {
+      for (int row = 0; row < numOfRows; row++) {
+        if (matrix.hasPeak(row, column)) {
+          if (maxOriginalHeight <= matrix.getHeight(row, column))
+            maxOriginalHeight = matrix.getHeight(row, column);
         }
       }
     }
 
     // Loop through all raw data files, and normalize peak values
-    for (RawDataFile file : originalPeakList.getRawDataFiles()) {
+    for (int column = 0; column < matrix.getNumberOfRawDataFiles(); column++) {
+
+      final RawDataFile file = matrix.getRawDataFile(column);
 
       // Cancel?
       if (isCanceled()) {
@@ -122,14 +127,9 @@ class LinearNormalizerTask extends AbstractTask {
       if (normalizationType == NormalizationType.AverageIntensity) {
         double intensitySum = 0;
         int intensityCount = 0;
-        for (PeakListRow peakListRow : originalPeakList.getRows()) {
-          Feature p = peakListRow.getPeak(file);
-          if (p != null) {
-            if (peakMeasurementType == PeakMeasurementType.HEIGHT) {
-              intensitySum += p.getHeight();
-            } else {
-              intensitySum += p.getArea();
-            }
+        for (int row = 0; row < numOfRows; row++) {
+          if (matrix.hasPeak(row, column)) {
+            intensitySum += getIntensity(matrix, row, column);
             intensityCount++;
           }
         }
@@ -140,14 +140,10 @@ class LinearNormalizerTask extends AbstractTask {
       if (normalizationType == NormalizationType.AverageSquaredIntensity) {
         double intensitySum = 0.0;
         int intensityCount = 0;
-        for (PeakListRow peakListRow : originalPeakList.getRows()) {
-          Feature p = peakListRow.getPeak(file);
-          if (p != null) {
-            if (peakMeasurementType == PeakMeasurementType.HEIGHT) {
-              intensitySum += (p.getHeight() * p.getHeight());
-            } else {
-              intensitySum += (p.getArea() * p.getArea());
-            }
+        for (int row = 0; row < numOfRows; row++) {
+          if (matrix.hasPeak(row, column)) {
+            final double intensity = getIntensity(matrix, row, column);
+            intensitySum += (intensity * intensity);
             intensityCount++;
           }
         }
@@ -157,17 +153,10 @@ class LinearNormalizerTask extends AbstractTask {
       // - normalization by maximum peak intensity
       if (normalizationType == NormalizationType.MaximumPeakHeight) {
         double maximumIntensity = 0.0;
-        for (PeakListRow peakListRow : originalPeakList.getRows()) {
-          Feature p = peakListRow.getPeak(file);
-          if (p != null) {
-            if (peakMeasurementType == PeakMeasurementType.HEIGHT) {
-              if (maximumIntensity < p.getHeight())
-                maximumIntensity = p.getHeight();
-            } else {
-              if (maximumIntensity < p.getArea())
-                maximumIntensity = p.getArea();
-            }
-
+        for (int row = 0; row < numOfRows; row++) {
+          if (matrix.hasPeak(row, column)) {
+            if (maximumIntensity < getIntensity(matrix, row, column))
+              maximumIntensity = getIntensity(matrix, row, column);
           }
         }
         normalizationFactor = maximumIntensity;
@@ -190,15 +179,17 @@ class LinearNormalizerTask extends AbstractTask {
           normalizationFactor * maxNormalizedHeight / maximumOverallPeakHeightAfterNormalization;
 
       // Normalize all peak intenisities using the normalization factor
-      for (PeakListRow originalpeakListRow : originalPeakList.getRows()) {
+      for (int row = 0; row < numOfRows; row++) {
 
         // Cancel?
         if (isCanceled()) {
           return;
         }
 
-        Feature originalPeak = originalpeakListRow.getPeak(file);
-        if (originalPeak != null) {
+        if (matrix.hasPeak(row, column)) {
+
+          PeakListRow originalpeakListRow = matrix.getRow(row);
+          Feature originalPeak = originalpeakListRow.getPeak(file);
 
           SimpleFeature normalizedPeak = new SimpleFeature(originalPeak);
           PeakUtils.copyPeakProperties(originalPeak, normalizedPeak);
@@ -231,8 +222,8 @@ class LinearNormalizerTask extends AbstractTask {
     }
 
     // Finally add all normalized rows to normalized alignment result
-    for (PeakListRow originalpeakListRow : originalPeakList.getRows()) {
-      SimplePeakListRow normalizedRow = rowMap.get(originalpeakListRow);
+    for (int row = 0; row < numOfRows; row++) {
+      SimplePeakListRow normalizedRow = rowMap.get(matrix.getRow(row));
       if (normalizedRow == null)
         continue;
       normalizedPeakList.addRow(normalizedRow);
@@ -259,4 +250,15 @@ class LinearNormalizerTask extends AbstractTask {
 
   }
 
+  /**
+   * Returns the height or area of the peak, depending on the peak measurement type
+   */
+  private double getIntensity(FeatureMatrix matrix, int row, int column) {
+    if (peakMeasurementType == PeakMeasurementType.HEIGHT) {
+      return matrix.getHeight(row, column);
+    } else {
+      return matrix.getArea(row, column);
+    }
+  }
+
 }
@@ -69,6 +69,9 @@ public class DeconvolutionTask extends AbstractTask {
   // function to find center mz of all feature data points
   private final CenterFunction mzCenterFunction;
 
+  // Memory of a data point of a resolved peak: m/z and intensity values and the scan number
+  private static final int BYTES_PER_DATA_POINT = 2 * Double.BYTES + Integer.BYTES;
+
   /**
    * Create the task.
    * 
@@ -100,6 +103,24 @@ public class DeconvolutionTask extends AbstractTask {
     return totalRows == 0 ? 0.0 : (double) processedRows / (double) totalRows;
   }
 
+  /**
+   * The resolved peaks keep a copy of the data points of the chromatograms, so the memory is
+   * estimated from the number of data points of the original peaks
+   */
+  @Override
+  public long getEstimatedMemory() {
+    if (originalPeakList.getNumberOfRawDataFiles() != 1)
+      return 0;
+    final RawDataFile dataFile = originalPeakList.getRawDataFile(0);
+    long numOfDataPoints = 0;
+    for (PeakListRow row : originalPeakList.getRows()) {
+      Feature peak = row.getPeak(dataFile);
+      if (peak != null)
+        numOfDataPoints += peak.getScanNumbers().length;
+    }
+    return numOfDataPoints * BYTES_PER_DATA_POINT;
+  }
+
   @Override
   public void run() {
 
@@ -12,6 +12,7 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.util.FeatureXICStore;
 import net.sf.mzmine.util.MathUtils;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.ScanUtils;
@@ -172,12 +173,15 @@ public class ExtendedPeak implements Feature {
     }
     mz = MathUtils.calcQuantile(allMzValues, 0.5f);
 
+    // Retention times of all scans of this peak
+    double allRetentionTimes[] =
+        FeatureXICStore.getStore(dataFile).getRetentionTimes(allScanNumbers);
+
     // Update raw data point ranges, height, rt and representative scan
     height = Double.MIN_VALUE;
     for (int i = 0; i < allScanNumbers.length; i++) {
 
       DataPoint mzPeak = dataPointsMap.get(allScanNumbers[i]);
-      Scan aScan = dataFile.getScan(allScanNumbers[i]);
 
       // Replace the MzPeak instance with an instance of SimpleDataPoint,
       // to reduce the memory usage. After we finish this extended peak,
@@ -188,17 +192,17 @@ public class ExtendedPeak implements Feature {
       if (i == 0) {
         rawDataPointsIntensityRange = Range.singleton(mzPeak.getIntensity());
         rawDataPointsMZRange = Range.singleton(mzPeak.getMZ());
-        rawDataPointsRTRange = Range.singleton(aScan.getRetentionTime());
+        rawDataPointsRTRange = Range.singleton(allRetentionTimes[i]);
       } else {
         rawDataPointsIntensityRange =
             rawDataPointsIntensityRange.span(Range.singleton(mzPeak.getIntensity()));
         rawDataPointsMZRange = rawDataPointsMZRange.span(Range.singleton(mzPeak.getMZ()));
-        rawDataPointsRTRange = rawDataPointsRTRange.span(Range.singleton(aScan.getRetentionTime()));
+        rawDataPointsRTRange = rawDataPointsRTRange.span(Range.singleton(allRetentionTimes[i]));
       }
 
       if (height < mzPeak.getIntensity()) {
         height = mzPeak.getIntensity();
-        rt = aScan.getRetentionTime();
+        rt = allRetentionTimes[i];
         representativeScan = allScanNumbers[i];
       }
     }
@@ -208,8 +212,8 @@ public class ExtendedPeak implements Feature {
 
     for (int i = 1; i < allScanNumbers.length; i++) {
       // For area calculation, we use retention time in seconds
-      double previousRT = dataFile.getScan(allScanNumbers[i - 1]).getRetentionTime() * 60d;
-      double currentRT = dataFile.getScan(allScanNumbers[i]).getRetentionTime() * 60d;
+      double previousRT = allRetentionTimes[i - 1] * 60d;
+      double currentRT = allRetentionTimes[i] * 60d;
 
       double previousHeight = dataPointsMap.get(allScanNumbers[i - 1]).getIntensity();
       double currentHeight = dataPointsMap.get(allScanNumbers[i]).getIntensity();
@@ -39,11 +39,9 @@ import javax.swing.JPanel;
 import javax.swing.JSeparator;
 import javax.swing.SwingConstants;
 
-import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
-import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.ChromatogramTICDataSet;
 import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.PeakPreviewComboRenderer;
@@ -53,6 +51,8 @@ import net.sf.mzmine.modules.visualization.tic.TICToolBar;
 import net.sf.mzmine.parameters.Parameter;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.dialogs.ParameterSetupDialog;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 import net.sf.mzmine.util.GUIUtils;
 
 public class ShapeModelerSetupDialog extends ParameterSetupDialog
@@ -185,19 +185,10 @@ public class ShapeModelerSetupDialog extends ParameterSetupDialog
     ticPlot.removeAllTICDataSets();
 
     // Load the intensities into array
-    RawDataFile dataFile = previewPeak.getDataFile();
-    int scanNumbers[] = previewPeak.getScanNumbers();
-    double retentionTimes[] = new double[scanNumbers.length];
-    for (int i = 0; i < scanNumbers.length; i++)
-      retentionTimes[i] = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-    double intensities[] = new double[scanNumbers.length];
-    for (int i = 0; i < scanNumbers.length; i++) {
-      DataPoint dp = previewPeak.getDataPoint(scanNumbers[i]);
-      if (dp != null)
-        intensities[i] = dp.getIntensity();
-      else
-        intensities[i] = 0;
-    }
+    FeatureXIC xic = FeatureXICStore.getXIC(previewPeak);
+    int scanNumbers[] = xic.getScanNumbers();
+    double retentionTimes[] = xic.getRetentionTimes();
+    double intensities[] = xic.getIntensityValues();
 
     // Create shape model
     updateParameterSetFromComponents();
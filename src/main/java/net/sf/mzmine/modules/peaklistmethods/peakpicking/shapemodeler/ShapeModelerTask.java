@@ -21,7 +21,6 @@ package net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler;
 import java.lang.reflect.Constructor;
 import java.util.logging.Logger;
 
-import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
@@ -36,6 +35,8 @@ import net.sf.mzmine.modules.peaklistmethods.qualityparameters.QualityParameters
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 
 class ShapeModelerTask extends AbstractTask {
 
@@ -119,20 +120,10 @@ class ShapeModelerTask extends AbstractTask {
         for (Feature peak : row.getPeaks()) {
 
           // Load the intensities into array
-          dataFile = peak.getDataFile();
-          scanNumbers = peak.getScanNumbers();
-          retentionTimes = new double[scanNumbers.length];
-          for (int i = 0; i < scanNumbers.length; i++)
-            retentionTimes[i] = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-
-          intensities = new double[scanNumbers.length];
-          for (int i = 0; i < scanNumbers.length; i++) {
-            DataPoint dp = peak.getDataPoint(scanNumbers[i]);
-            if (dp != null)
-              intensities[i] = dp.getIntensity();
-            else
-              intensities[i] = 0;
-          }
+          FeatureXIC xic = FeatureXICStore.getXIC(peak);
+          scanNumbers = xic.getScanNumbers();
+          retentionTimes = xic.getRetentionTimes();
+          intensities = xic.getIntensityValues();
 
           Feature shapePeak = (Feature) shapeModelConstruct.newInstance(peak, scanNumbers,
               intensities, retentionTimes, resolution);
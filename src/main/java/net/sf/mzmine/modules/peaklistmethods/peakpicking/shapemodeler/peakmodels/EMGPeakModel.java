@@ -30,6 +30,7 @@ import net.sf.mzmine.datamodel.IsotopePattern;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
 import net.sf.mzmine.modules.peaklistmethods.peakpicking.deconvolution.savitzkygolay.SGDerivative;
+import net.sf.mzmine.util.FeatureXICStore;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.RangeUtils;
 
@@ -85,9 +86,8 @@ public class EMGPeakModel implements Feature {
     double shapeHeight, currentRT, previousRT, previousHeight;
 
     int allScanNumbers[] = rawDataFile.getScanNumbers(1);
-    double allRetentionTimes[] = new double[allScanNumbers.length];
-    for (int i = 0; i < allScanNumbers.length; i++)
-      allRetentionTimes[i] = rawDataFile.getScan(allScanNumbers[i]).getRetentionTime();
+    double allRetentionTimes[] =
+        FeatureXICStore.getStore(rawDataFile).getRetentionTimes(allScanNumbers);
 
     previousHeight = calculateEMGIntensity(H, M, Dp, Ap, C, allRetentionTimes[0]);
     previousRT = allRetentionTimes[0] * 60d;
@@ -401,7 +401,7 @@ public class EMGPeakModel implements Feature {
    * @param t
    * @return intensity
    */
-  private static double calculateEMGIntensity(double H, double M, double Dp, double Ap, double C,
+  public static double calculateEMGIntensity(double H, double M, double Dp, double Ap, double C,
       double t) {
     double shapeHeight;
 
@@ -28,6 +28,7 @@ import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.IsotopePattern;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.util.FeatureXICStore;
 import net.sf.mzmine.util.PeakUtils;
 import net.sf.mzmine.util.RangeUtils;
 
@@ -80,9 +81,8 @@ public class GaussianPeakModel implements Feature {
     double shapeHeight, currentRT, previousRT, previousHeight;
 
     int allScanNumbers[] = rawDataFile.getScanNumbers(1);
-    double allRetentionTimes[] = new double[allScanNumbers.length];
-    for (int i = 0; i < allScanNumbers.length; i++)
-      allRetentionTimes[i] = rawDataFile.getScan(allScanNumbers[i]).getRetentionTime();
+    double allRetentionTimes[] =
+        FeatureXICStore.getStore(rawDataFile).getRetentionTimes(allScanNumbers);
 
     previousHeight = calculateIntensity(allRetentionTimes[0]);
     previousRT = allRetentionTimes[0] * 60d;
@@ -194,6 +194,18 @@ public class GaussianPeakModel implements Feature {
   }
 
   public double calculateIntensity(double retentionTime) {
+    return calculateIntensity(height, rt, FWHM, retentionTime);
+  }
+
+  /**
+   * Calculates the intensity of a Gaussian peak with given height, apex retention time and width
+   * at half maximum, at given retention time
+   */
+  public static double calculateIntensity(double height, double rt, double fwhm,
+      double retentionTime) {
+
+    double partC = fwhm / CONST;
+    double part2C2 = 2f * (double) Math.pow(partC, 2);
 
     // Using the Gaussian function we calculate the intensity at given m/z
     double diff2 = (double) Math.pow(retentionTime - rt, 2);
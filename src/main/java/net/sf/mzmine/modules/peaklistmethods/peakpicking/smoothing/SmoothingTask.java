@@ -43,6 +43,8 @@ import net.sf.mzmine.modules.peaklistmethods.qualityparameters.QualityParameters
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 
 import com.google.common.collect.Range;
 
@@ -128,14 +130,10 @@ public class SmoothingTask extends AbstractTask {
             if (!isCanceled()) {
 
               // Copy original peak intensities.
+              final FeatureXIC xic = FeatureXICStore.getXIC(peak);
               final int[] scanNumbers = peak.getScanNumbers();
               final int numScans = scanNumbers.length;
-              final double[] intensities = new double[numScans];
-              for (int i = 0; i < numScans; i++) {
-
-                final DataPoint dataPoint = peak.getDataPoint(scanNumbers[i]);
-                intensities[i] = dataPoint == null ? 0.0 : dataPoint.getIntensity();
-              }
+              final double[] intensities = xic.getIntensityValues();
 
               // Smooth peak.
               final double[] smoothed = convolve(intensities, filterWeights);
@@ -151,13 +149,12 @@ public class SmoothingTask extends AbstractTask {
               for (int i = 0; i < numScans; i++) {
 
                 final int scanNumber = scanNumbers[i];
-                final DataPoint dataPoint = peak.getDataPoint(scanNumber);
                 final double intensity = smoothed[i];
-                if (dataPoint != null && intensity > 0.0) {
+                if (xic.hasDataPoint(i) && intensity > 0.0) {
 
                   // Create a new data point.
-                  final double mz = dataPoint.getMZ();
-                  final double rt = dataFile.getScan(scanNumber).getRetentionTime();
+                  final double mz = xic.getMZ(i);
+                  final double rt = xic.getRetentionTime(i);
                   final DataPoint newDataPoint = new SimpleDataPoint(mz, intensity);
                   newDataPoints[i] = newDataPoint;
 
@@ -181,7 +178,7 @@ public class SmoothingTask extends AbstractTask {
 
                     final DataPoint lastDP = newDataPoints[i - 1];
                     final double lastIntensity = lastDP == null ? 0.0 : lastDP.getIntensity();
-                    final double lastRT = dataFile.getScan(scanNumbers[i - 1]).getRetentionTime();
+                    final double lastRT = xic.getRetentionTime(i - 1);
                     area += (rt - lastRT) * 60d * (intensity + lastIntensity) / 2.0;
                   }
                 }
@@ -20,7 +20,8 @@ package net.sf.mzmine.modules.peaklistmethods.qualityparameters;
 
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.PeakList;
-import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 
 /**
  * Calculates quality parameters for each peak in a peak list: - Full width at half maximum (FWHM) -
@@ -75,29 +76,28 @@ public class QualityParameters {
 
     double x1 = 0, x2 = 0, x3 = 0, x4 = 0, y1 = 0, y2 = 0, y3 = 0, y4 = 0, lastDiff1 = intensity,
         lastDiff2 = intensity, currentDiff, currentRT;
-    int[] scanNumbers = peak.getScanNumbers();
-    RawDataFile dataFile = peak.getDataFile();
+    FeatureXIC xic = FeatureXICStore.getXIC(peak);
 
     // Find the data points closet to input intensity on both side of the
     // peak apex
-    for (int i = 1; i < scanNumbers.length - 1; i++) {
+    for (int i = 1; i < xic.size() - 1; i++) {
 
-      if (peak.getDataPoint(scanNumbers[i]) != null) {
-        currentDiff = Math.abs(intensity - peak.getDataPoint(scanNumbers[i]).getIntensity());
-        currentRT = dataFile.getScan(scanNumbers[i]).getRetentionTime();
+      if (xic.hasDataPoint(i)) {
+        currentDiff = Math.abs(intensity - xic.getIntensity(i));
+        currentRT = xic.getRetentionTime(i);
         if (currentDiff < lastDiff1 & currentDiff > 0 & currentRT <= rt
-            & peak.getDataPoint(scanNumbers[i + 1]) != null) {
-          x1 = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-          y1 = peak.getDataPoint(scanNumbers[i]).getIntensity();
-          x2 = dataFile.getScan(scanNumbers[i + 1]).getRetentionTime();
-          y2 = peak.getDataPoint(scanNumbers[i + 1]).getIntensity();
+            & xic.hasDataPoint(i + 1)) {
+          x1 = xic.getRetentionTime(i);
+          y1 = xic.getIntensity(i);
+          x2 = xic.getRetentionTime(i + 1);
+          y2 = xic.getIntensity(i + 1);
           lastDiff1 = currentDiff;
         } else if (currentDiff < lastDiff2 & currentDiff > 0 & currentRT >= rt
-            & peak.getDataPoint(scanNumbers[i - 1]) != null) {
-          x3 = dataFile.getScan(scanNumbers[i - 1]).getRetentionTime();
-          y3 = peak.getDataPoint(scanNumbers[i - 1]).getIntensity();
-          x4 = dataFile.getScan(scanNumbers[i]).getRetentionTime();
-          y4 = peak.getDataPoint(scanNumbers[i]).getIntensity();
+            & xic.hasDataPoint(i - 1)) {
+          x3 = xic.getRetentionTime(i - 1);
+          y3 = xic.getIntensity(i - 1);
+          x4 = xic.getRetentionTime(i);
+          y4 = xic.getIntensity(i);
           lastDiff2 = currentDiff;
         }
       }
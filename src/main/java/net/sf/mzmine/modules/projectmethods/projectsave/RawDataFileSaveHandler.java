@@ -91,26 +91,29 @@ class RawDataFileSaveHandler {
     // We save only those data points that still have a reference in the
     // dataPointsOffset table. Some deleted mass lists may still be present
     // in the data points file, we don't want to copy those.
-    long newOffset = 0;
-    byte buffer[] = new byte[1 << 20];
-    RandomAccessFile dataPointsFile = rawDataFile.getDataPointsFile();
-    for (Integer storageID : dataPointsOffsets.keySet()) {
-
-      if (canceled)
-        return;
-
-      final long offset = dataPointsOffsets.get(storageID);
-      dataPointsFile.seek(offset);
-
-      final int bytes = dataPointsLengths.get(storageID) * 4 * 2;
-      consolidatedDataPointsOffsets.put(storageID, newOffset);
-      if (buffer.length < bytes) {
-        buffer = new byte[bytes * 2];
+    // The data points file must not be modified or compacted while we copy it
+    synchronized (rawDataFile) {
+      long newOffset = 0;
+      byte buffer[] = new byte[1 << 20];
+      RandomAccessFile dataPointsFile = rawDataFile.getDataPointsFile();
+      for (Integer storageID : dataPointsOffsets.keySet()) {
+
+        if (canceled)
+          return;
+
+        final long offset = dataPointsOffsets.get(storageID);
+        dataPointsFile.seek(offset);
+
+        final int bytes = dataPointsLengths.get(storageID) * 4 * 2;
+        consolidatedDataPointsOffsets.put(storageID, newOffset);
+        if (buffer.length < bytes) {
+          buffer = new byte[bytes * 2];
+        }
+        dataPointsFile.read(buffer, 0, bytes);
+        zipOutputStream.write(buffer, 0, bytes);
+        newOffset += bytes;
+        progress = 0.9 * ((double) offset / dataPointsFile.length());
       }
-      dataPointsFile.read(buffer, 0, bytes);
-      zipOutputStream.write(buffer, 0, bytes);
-      newOffset += bytes;
-      progress = 0.9 * ((double) offset / dataPointsFile.length());
     }
 
     if (canceled)
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.projectmethods.tempfilecompaction;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.desktop.preferences.TempFileCompactionSettings;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.MZmineModuleCategory;
+import net.sf.mzmine.modules.MZmineProcessingModule;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.submodules.OptionalModuleParameter;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskPriority;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExitCode;
+
+/**
+ * Reclaims the disk space occupied by removed scans and mass lists in the temporary files of the
+ * raw data files
+ */
+public class TempFileCompactionModule implements MZmineProcessingModule {
+
+  private static final String MODULE_NAME = "Compact temporary files";
+  private static final String MODULE_DESCRIPTION =
+      "This module reclaims the disk space of removed scans and mass lists in the temporary files of raw data files.";
+
+  @Override
+  public @Nonnull String getName() {
+    return MODULE_NAME;
+  }
+
+  @Override
+  public @Nonnull String getDescription() {
+    return MODULE_DESCRIPTION;
+  }
+
+  @Override
+  @Nonnull
+  public ExitCode runModule(@Nonnull MZmineProject project, @Nonnull ParameterSet parameters,
+      @Nonnull Collection<Task> tasks) {
+    RawDataFile dataFiles[] = parameters.getParameter(TempFileCompactionParameters.dataFiles)
+        .getValue().getMatchingRawDataFiles();
+    Task newTask = new TempFileCompactionTask(dataFiles);
+    tasks.add(newTask);
+    return ExitCode.OK;
+  }
+
+  /**
+   * Starts a compaction of the temporary file of the raw data file in the background, if its
+   * removed data points exceed the threshold set in the preferences. Called after mass lists were
+   * removed or replaced. Must not be called while holding the lock of the raw data file.
+   */
+  public static void compactIfNeeded(RawDataFile file) {
+
+    if (!(file instanceof RawDataFileImpl))
+      return;
+    final RawDataFileImpl dataFile = (RawDataFileImpl) file;
+
+    if ((MZmineCore.getConfiguration() == null) || (MZmineCore.getTaskController() == null))
+      return;
+
+    ParameterSet preferences = MZmineCore.getConfiguration().getPreferences();
+    OptionalModuleParameter compactionParameter =
+        preferences.getParameter(MZminePreferences.tempFileCompaction);
+    Boolean enabled = compactionParameter.getValue();
+    if ((enabled == null) || (!enabled))
+      return;
+
+    ParameterSet settings = compactionParameter.getEmbeddedParameters();
+    Double deadSpaceRatio =
+        settings.getParameter(TempFileCompactionSettings.deadSpaceRatio).getValue();
+    Integer minDeadSpace = settings.getParameter(TempFileCompactionSettings.minDeadSpace).getValue();
+    if ((deadSpaceRatio == null) || (minDeadSpace == null))
+      return;
+
+    final long deadBytes = dataFile.getDeadBytes();
+    if (deadBytes < minDeadSpace * 1024L * 1024L)
+      return;
+    if (deadBytes < deadSpaceRatio * dataFile.getDataPointsFileSize())
+      return;
+
+    // Only one compaction of each file at a time
+    if (!dataFile.requestCompaction())
+      return;
+
+    TempFileCompactionTask newTask = new TempFileCompactionTask(new RawDataFile[] {dataFile});
+
+    // Allow a new request if the task is canceled before it starts
+    newTask.addTaskStatusListener((task, newStatus, oldStatus) -> {
+      if (newStatus == TaskStatus.CANCELED)
+        dataFile.cancelCompactionRequest();
+    });
+
+    MZmineCore.getTaskController().addTask(newTask, TaskPriority.HIGH);
+
+  }
+
+  @Override
+  public @Nonnull MZmineModuleCategory getModuleCategory() {
+    return MZmineModuleCategory.PROJECT;
+  }
+
+  @Override
+  public @Nonnull Class<? extends ParameterSet> getParameterSetClass() {
+    return TempFileCompactionParameters.class;
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.projectmethods.tempfilecompaction;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+/**
+ * Compacts the temporary files of the raw data files, see RawDataFileImpl.compactDataPointsFile()
+ */
+class TempFileCompactionTask extends AbstractTask {
+
+  private Logger logger = Logger.getLogger(this.getClass().getName());
+
+  private final RawDataFile dataFiles[];
+  private int processedFiles;
+  private long reclaimedBytes;
+
+  TempFileCompactionTask(RawDataFile dataFiles[]) {
+    this.dataFiles = dataFiles;
+  }
+
+  @Override
+  public String getTaskDescription() {
+    if (dataFiles.length == 1)
+      return "Compacting temporary file of " + dataFiles[0].getName();
+    return "Compacting temporary files of " + dataFiles.length + " raw data files";
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    if (dataFiles.length == 0)
+      return 0;
+    return (double) processedFiles / dataFiles.length;
+  }
+
+  @Override
+  public void run() {
+
+    setStatus(TaskStatus.PROCESSING);
+
+    for (RawDataFile dataFile : dataFiles) {
+
+      if (isCanceled())
+        return;
+
+      if (dataFile instanceof RawDataFileImpl) {
+        try {
+          reclaimedBytes += ((RawDataFileImpl) dataFile).compactDataPointsFile();
+        } catch (Exception e) {
+          logger.log(Level.SEVERE, "Error compacting temporary file of " + dataFile.getName(), e);
+          setStatus(TaskStatus.ERROR);
+          setErrorMessage("Error compacting temporary file of " + dataFile.getName() + ": " + e);
+          return;
+        }
+      }
+
+      processedFiles++;
+
+    }
+
+    logger.info("Reclaimed " + reclaimedBytes + " bytes in the temporary files of "
+        + dataFiles.length + " raw data files");
+
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+}
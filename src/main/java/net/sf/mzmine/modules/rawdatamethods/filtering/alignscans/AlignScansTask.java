@@ -18,7 +18,7 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.alignscans;
 
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.DataPoint;
@@ -32,6 +32,7 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ParallelScanProcessor;
 
 public class AlignScansTask extends AbstractTask {
 
@@ -107,97 +108,20 @@ public class AlignScansTask extends AbstractTask {
     try {
       newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' ' + suffix);
 
-      DataPoint mzValues[][] = null; // [relative scan][j value]
-      int i, j, si, sj, ii, k, shift, ks;
-      int shiftedScans[] = new int[mzSpan * 2 + 1];
-      for (i = 0; i < totalScans; i++) {
+      final RawDataFileWriter writer = newRDFW;
+      final AtomicIntegerArray shiftedScans = new AtomicIntegerArray(mzSpan * 2 + 1);
 
-        if (isCanceled())
-          return;
-
-        Scan scan = dataFile.getScan(scanNumbers[i]);
-        si = (int) Math.max(0, i - scanSpan);
-        sj = (int) (si + 2 * scanSpan);
-        if (sj >= totalScans) {
-          si = (int) Math.max(0, si - (sj - totalScans + 1));
-          sj = (int) (si + 2 * scanSpan);
-        }
-        if (scan != null) {
-          // Allocate
-          if (mzValues == null || mzValues.length < sj - si + 1)
-            mzValues = new DataPoint[sj - si + 1][];
-          // Load Data Points
-          for (j = si; j <= sj; j++) {
-            Scan xscan = dataFile.getScan(scanNumbers[j]);
-            mzValues[j - si] = xscan.getDataPoints();
-          }
-          // Estimate Correlations
-          ii = i - si;
-          final SimpleScan newScan = new SimpleScan(scan);
-          DataPoint[] newDP = new DataPoint[mzValues[ii].length];
-          int maxShift = 0;
-          double maxCorrelation = 0;
-          int ndp = mzValues[ii].length;
-          // System.out.print("Scan="+i);
-          for (shift = -mzSpan; shift <= mzSpan; shift++) {
-            PearsonCorrelation thisShift = new PearsonCorrelation();
-            for (k = 0; k < ndp; k++) {
-              ks = k + shift;
-              if (ks >= 0 && ks < ndp && mzValues[ii][ks].getIntensity() >= minimumHeight) {
-                DataPoint dp = mzValues[ii][k];
-                double mz = dp.getMZ();
-                int f = 0;
-                for (j = 0; j < mzValues.length; j++) {
-                  // System.out.println(j);
-                  if (j != ii) {
-                    if (mzValues[j].length > k && Math.abs(mzValues[j][k].getMZ() - mz) < 1e-10) {
-                      f = k;
-                    } else {
-                      f = findFirstMass(mz, mzValues[j]);
-                      if (Math.abs(mzValues[j][f].getMZ() - mz) > 1e-10) {
-                        f = -f;
-                      }
-                    }
-                    if (f >= 0) {
-                      if (logScale) {
-                        thisShift.enter(Math.log(mzValues[j][f].getIntensity()),
-                            Math.log(mzValues[ii][ks].getIntensity()));
-                      } else {
-                        thisShift.enter(mzValues[j][f].getIntensity(),
-                            mzValues[ii][ks].getIntensity());
-                      }
-                    }
-                  }
-                }
-              }
-            }
-            // System.out.print(", shift="+shift+",
-            // correlation="+Math.round(thisShift.correlation()*1000)/1000.0);
-            if (thisShift.correlation() > maxCorrelation) {
-              maxShift = shift;
-              maxCorrelation = thisShift.correlation();
-            }
-            // newDP[k] = new SimpleDataPoint(mz, c > 0 ? a/c : 0);
-          }
-          // Copy DataPoints with maxShift as the shift
-          shift = maxShift;
-          // System.out.println("\nScan="+i+", Shift="+maxShift+", Correlation="+maxCorrelation);
-          shiftedScans[maxShift + mzSpan]++;
-          for (k = 0; k < ndp; k++) {
-            ks = k + shift;
-            if (ks >= 0 && ks < ndp) {
-              newDP[k] =
-                  new SimpleDataPoint(mzValues[ii][k].getMZ(), mzValues[ii][ks].getIntensity());
-            } else {
-              newDP[k] = new SimpleDataPoint(mzValues[ii][k].getMZ(), 0);
+      // Align several scans in parallel, but write them in the original order
+      final boolean finished = ParallelScanProcessor.processScans(totalScans, this,
+          i -> alignScan(i, shiftedScans), (i, newScan) -> {
+            if (newScan != null) {
+              writer.addScan(newScan);
             }
-          }
-          newScan.setDataPoints(newDP);
-          newRDFW.addScan(newScan);
-        }
+            processedScans++;
+          });
 
-        processedScans++;
-      }
+      if (!finished)
+        return;
 
       if (!isCanceled()) {
 
@@ -215,17 +139,113 @@ public class AlignScansTask extends AbstractTask {
         setStatus(TaskStatus.FINISHED);
 
         String shifts = "";
-        for (i = -mzSpan; i <= mzSpan; i++) {
-          shifts = shifts + i + ":" + shiftedScans[i + mzSpan] + " | ";
+        for (int i = -mzSpan; i <= mzSpan; i++) {
+          shifts = shifts + i + ":" + shiftedScans.get(i + mzSpan) + " | ";
         }
         logger.info("Finished Scan Alignment on " + dataFile + ". Scans per shift = " + shifts);
 
       }
 
-    } catch (IOException e) {
+    } catch (Exception e) {
       e.printStackTrace();
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage(e.toString());
+    }
+
+  }
+
+  /**
+   * Aligns the scan of given index, may be called concurrently for different scans
+   *
+   * @return the aligned scan or null if there is no such scan
+   */
+  private Scan alignScan(int i, AtomicIntegerArray shiftedScans) {
+
+    DataPoint mzValues[][] = null; // [relative scan][j value]
+    int j, si, sj, ii, k, shift, ks;
+
+    Scan scan = dataFile.getScan(scanNumbers[i]);
+    si = (int) Math.max(0, i - scanSpan);
+    sj = (int) (si + 2 * scanSpan);
+    if (sj >= totalScans) {
+      si = (int) Math.max(0, si - (sj - totalScans + 1));
+      sj = (int) (si + 2 * scanSpan);
+    }
+    if (scan != null) {
+      // Allocate
+      if (mzValues == null || mzValues.length < sj - si + 1)
+        mzValues = new DataPoint[sj - si + 1][];
+      // Load Data Points
+      for (j = si; j <= sj; j++) {
+        Scan xscan = dataFile.getScan(scanNumbers[j]);
+        mzValues[j - si] = xscan.getDataPoints();
+      }
+      // Estimate Correlations
+      ii = i - si;
+      final SimpleScan newScan = new SimpleScan(scan);
+      DataPoint[] newDP = new DataPoint[mzValues[ii].length];
+      int maxShift = 0;
+      double maxCorrelation = 0;
+      int ndp = mzValues[ii].length;
+      // System.out.print("Scan="+i);
+      for (shift = -mzSpan; shift <= mzSpan; shift++) {
+        PearsonCorrelation thisShift = new PearsonCorrelation();
+        for (k = 0; k < ndp; k++) {
+          ks = k + shift;
+          if (ks >= 0 && ks < ndp && mzValues[ii][ks].getIntensity() >= minimumHeight) {
+            DataPoint dp = mzValues[ii][k];
+            double mz = dp.getMZ();
+            int f = 0;
+            for (j = 0; j < mzValues.length; j++) {
+              // System.out.println(j);
+              if (j != ii) {
+                if (mzValues[j].length > k && Math.abs(mzValues[j][k].getMZ() - mz) < 1e-10) {
+                  f = k;
+                } else {
+                  f = findFirstMass(mz, mzValues[j]);
+                  if (Math.abs(mzValues[j][f].getMZ() - mz) > 1e-10) {
+                    f = -f;
+                  }
+                }
+                if (f >= 0) {
+                  if (logScale) {
+                    thisShift.enter(Math.log(mzValues[j][f].getIntensity()),
+                        Math.log(mzValues[ii][ks].getIntensity()));
+                  } else {
+                    thisShift.enter(mzValues[j][f].getIntensity(),
+                        mzValues[ii][ks].getIntensity());
+                  }
+                }
+              }
+            }
+          }
+        }
+        // System.out.print(", shift="+shift+",
+        // correlation="+Math.round(thisShift.correlation()*1000)/1000.0);
+        if (thisShift.correlation() > maxCorrelation) {
+          maxShift = shift;
+          maxCorrelation = thisShift.correlation();
+        }
+        // newDP[k] = new SimpleDataPoint(mz, c > 0 ? a/c : 0);
+      }
+      // Copy DataPoints with maxShift as the shift
+      shift = maxShift;
+      // System.out.println("\nScan="+i+", Shift="+maxShift+", Correlation="+maxCorrelation);
+      shiftedScans.incrementAndGet(maxShift + mzSpan);
+      for (k = 0; k < ndp; k++) {
+        ks = k + shift;
+        if (ks >= 0 && ks < ndp) {
+          newDP[k] =
+              new SimpleDataPoint(mzValues[ii][k].getMZ(), mzValues[ii][ks].getIntensity());
+        } else {
+          newDP[k] = new SimpleDataPoint(mzValues[ii][k].getMZ(), 0);
+        }
+      }
+      newScan.setDataPoints(newDP);
+      return newScan;
     }
 
+    return null;
   }
 
   int findFirstMass(double mass, DataPoint mzValues[]) {
@@ -18,7 +18,6 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.scanfilters;
 
-import java.io.IOException;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.MZmineProject;
@@ -30,6 +29,7 @@ import net.sf.mzmine.modules.MZmineProcessingStep;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ParallelScanProcessor;
 
 class ScanFilteringTask extends AbstractTask {
 
@@ -103,21 +103,23 @@ class ScanFilteringTask extends AbstractTask {
       // Create new raw data file
 
       String newName = dataFile.getName() + " " + suffix;
-      RawDataFileWriter rawDataFileWriter = MZmineCore.createNewFile(newName);
-
-      for (int i = 0; i < totalScans; i++) {
-
-        if (isCanceled()) {
-          return;
-        }
-
-        Scan scan = dataFile.getScan(scanNumbers[i]);
-        Scan newScan = rawDataFilter.getModule().filterScan(scan, rawDataFilter.getParameterSet());
-        if (newScan != null) {
-          rawDataFileWriter.addScan(newScan);
-        }
-
-        processedScans++;
+      final RawDataFileWriter rawDataFileWriter = MZmineCore.createNewFile(newName);
+
+      final ScanFilter filter = rawDataFilter.getModule();
+      final ParameterSet filterParameters = rawDataFilter.getParameterSet();
+
+      // Filter several scans in parallel, but write them in the original order
+      final boolean finished = ParallelScanProcessor.processScans(totalScans, this,
+          i -> filter.filterScan(dataFile.getScan(scanNumbers[i]), filterParameters),
+          (i, newScan) -> {
+            if (newScan != null) {
+              rawDataFileWriter.addScan(newScan);
+            }
+            processedScans++;
+          });
+
+      if (!finished) {
+        return;
       }
 
       // Finalize writing
@@ -136,7 +138,7 @@ class ScanFilteringTask extends AbstractTask {
       setStatus(TaskStatus.FINISHED);
       logger.info("Finished scan filter on " + dataFile);
 
-    } catch (IOException e) {
+    } catch (Exception e) {
       setStatus(TaskStatus.ERROR);
       setErrorMessage(e.toString());
       return;
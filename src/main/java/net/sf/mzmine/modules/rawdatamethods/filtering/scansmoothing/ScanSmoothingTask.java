@@ -18,7 +18,7 @@
 
 package net.sf.mzmine.modules.rawdatamethods.filtering.scansmoothing;
 
-import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.DataPoint;
@@ -32,6 +32,7 @@ import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ParallelScanProcessor;
 
 public class ScanSmoothingTask extends AbstractTask {
 
@@ -53,6 +54,9 @@ public class ScanSmoothingTask extends AbstractTask {
   private boolean removeOriginal;
   RawDataFile newRDF = null;
 
+  // Counters of scans smoothed in time and m/z space, updated concurrently
+  private final AtomicInteger timepassed = new AtomicInteger(), mzpassed = new AtomicInteger();
+
   /**
    * @param dataFile
    * @param parameters
@@ -106,137 +110,22 @@ public class ScanSmoothingTask extends AbstractTask {
     totalScans = scanNumbers.length;
 
     RawDataFileWriter newRDFW = null;
-    int timepassed = 0;
-    int mzpassed = 0;
     try {
       newRDFW = MZmineCore.createNewFile(dataFile.getName() + ' ' + suffix);
 
-      DataPoint mzValues[][] = null; // [relative scan][j value]
-      int i, j, si, sj, ii, k, ssi, ssj;
-      for (i = 0; i < totalScans; i++) {
-
-        if (isCanceled())
-          return;
-
-        // Smoothing in TIME space
-        Scan scan = dataFile.getScan(scanNumbers[i]);
-        if (scan != null) {
-          double rt = scan.getRetentionTime();
-          final SimpleScan newScan = new SimpleScan(scan);
-          DataPoint[] newDP = null;
-          sj = si = i;
-          ssi = ssj = i;
-          if (timeSpan > 0 || scanSpan > 0) {
-            double timeMZtol = Math.max(mzTol, 1e-5);
-            for (si = i; si > 1; si--) {
-              Scan scanS = dataFile.getScan(scanNumbers[si - 1]);
-              if (scanS == null || scanS.getRetentionTime() < rt - timeSpan / 2) {
-                break;
-              }
-            }
-            for (sj = i; sj < totalScans - 1; sj++) {
-              Scan scanS = dataFile.getScan(scanNumbers[sj + 1]);
-              if (scanS == null || scanS.getRetentionTime() >= rt + timeSpan / 2) {
-                break;
-              }
-            }
-            ssi = i - (scanSpan - 1) / 2;
-            ssj = i + (scanSpan - 1) / 2;
-            if (ssi < 0) {
-              ssj += -ssi;
-              ssi = 0;
-            }
-            if (ssj >= totalScans) {
-              ssi -= (ssj - totalScans + 1);
-              ssj = totalScans - 1;
-            }
-            if (sj - si + 1 < scanSpan) {
-              si = ssi;
-              sj = ssj;
-              // si = Math.min(si, ssi);
-              // sj = Math.max(sj, ssj);
-            }
-            if (sj > si) {
-              timepassed++;
-              // Allocate
-              if (mzValues == null || mzValues.length < sj - si + 1)
-                mzValues = new DataPoint[sj - si + 1][];
-              // Load Data Points
-              for (j = si; j <= sj; j++) {
-                Scan xscan = dataFile.getScan(scanNumbers[j]);
-                mzValues[j - si] = xscan.getDataPoints();
-              }
-              // Estimate Averages
-              ii = i - si;
-              newDP = new DataPoint[mzValues[ii].length];
-              for (k = 0; k < mzValues[ii].length; k++) {
-                DataPoint dp = mzValues[ii][k];
-                double mz = dp.getMZ();
-                double intensidad = 0;
-                if (dp.getIntensity() > 0) { // only process
-                  // those > 0
-                  double a = 0;
-                  short c = 0;
-                  int f = 0;
-                  for (j = 0; j < mzValues.length; j++) {
-                    // System.out.println(j);
-                    if (mzValues[j].length > k
-                        && Math.abs(mzValues[j][k].getMZ() - mz) < timeMZtol) {
-                      f = k;
-                    } else {
-                      f = findFirstMass(mz, mzValues[j]);
-                      if (Math.abs(mzValues[j][f].getMZ() - mz) > timeMZtol) {
-                        f = -f;
-                      }
-                    }
-                    if (f >= 0 && mzValues[j][f].getIntensity() >= minimumHeight) {
-                      a += mzValues[j][f].getIntensity();
-                      c++;
-                    } else {
-                      c = (short) (c + 0);
-                    }
-                  }
-                  intensidad = c > 0 ? a / c : 0;
-                }
-                newDP[k] = new SimpleDataPoint(mz, intensidad);
-              }
-            }
-          } else if (scan != null) {
-            newDP = scan.getDataPoints();
-          }
+      final RawDataFileWriter writer = newRDFW;
 
-          // Smoothing in MZ space
-
-          if ((mzTol > 0 || mzPoints > 0)) {
-            mzpassed++;
-            DataPoint[] updatedDP = new DataPoint[newDP.length];
-            for (k = 0; k < newDP.length; k++) {
-              double mz = newDP[k].getMZ();
-              double intensidad = 0;
-              if (newDP[k].getIntensity() > 0) {
-                for (si = k; si > 0
-                    && (newDP[si].getMZ() + mzTol >= mz || k - si <= mzPoints); si--);
-                for (sj = k; sj < newDP.length - 1
-                    && (newDP[sj].getMZ() - mzTol <= mz || sj - k <= mzPoints); sj++);
-                double sum = 0;
-                for (j = si; j <= sj; j++) {
-                  sum += newDP[j].getIntensity();
-                }
-                intensidad = sum / (sj - si + 1);
-              }
-              updatedDP[k] = new SimpleDataPoint(mz, intensidad);
+      // Smooth several scans in parallel, but write them in the original order
+      final boolean finished = ParallelScanProcessor.processScans(totalScans, this,
+          i -> smoothScan(i), (i, newScan) -> {
+            if (newScan != null) {
+              writer.addScan(newScan);
             }
-            newDP = updatedDP;
-          }
+            processedScans++;
+          });
 
-          // Register new smoothing data
-          if (scan != null && newDP != null) {
-            newScan.setDataPoints(newDP);
-            newRDFW.addScan(newScan);
-          }
-        }
-        processedScans++;
-      }
+      if (!finished)
+        return;
 
       if (!isCanceled()) {
 
@@ -253,7 +142,7 @@ public class ScanSmoothingTask extends AbstractTask {
 
         setStatus(TaskStatus.FINISHED);
 
-        if (mzpassed + timepassed < totalScans / 2) {
+        if (mzpassed.get() + timepassed.get() < totalScans / 2) {
           logger.warning("It seems that parameters were not properly set. Scans processed : time="
               + timepassed + ", mz=" + mzpassed);
         }
@@ -262,10 +151,143 @@ public class ScanSmoothingTask extends AbstractTask {
 
       }
 
-    } catch (IOException e) {
+    } catch (Exception e) {
       e.printStackTrace();
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage(e.toString());
+    }
+
+  }
+
+  /**
+   * Smoothes the scan of given index, may be called concurrently for different scans
+   *
+   * @return the smoothed scan or null if there is no such scan
+   */
+  private Scan smoothScan(int i) {
+
+    DataPoint mzValues[][] = null; // [relative scan][j value]
+    int j, si, sj, ii, k, ssi, ssj;
+
+    // Smoothing in TIME space
+    Scan scan = dataFile.getScan(scanNumbers[i]);
+    if (scan != null) {
+      double rt = scan.getRetentionTime();
+      final SimpleScan newScan = new SimpleScan(scan);
+      DataPoint[] newDP = null;
+      sj = si = i;
+      ssi = ssj = i;
+      if (timeSpan > 0 || scanSpan > 0) {
+        double timeMZtol = Math.max(mzTol, 1e-5);
+        for (si = i; si > 1; si--) {
+          Scan scanS = dataFile.getScan(scanNumbers[si - 1]);
+          if (scanS == null || scanS.getRetentionTime() < rt - timeSpan / 2) {
+            break;
+          }
+        }
+        for (sj = i; sj < totalScans - 1; sj++) {
+          Scan scanS = dataFile.getScan(scanNumbers[sj + 1]);
+          if (scanS == null || scanS.getRetentionTime() >= rt + timeSpan / 2) {
+            break;
+          }
+        }
+        ssi = i - (scanSpan - 1) / 2;
+        ssj = i + (scanSpan - 1) / 2;
+        if (ssi < 0) {
+          ssj += -ssi;
+          ssi = 0;
+        }
+        if (ssj >= totalScans) {
+          ssi -= (ssj - totalScans + 1);
+          ssj = totalScans - 1;
+        }
+        if (sj - si + 1 < scanSpan) {
+          si = ssi;
+          sj = ssj;
+          // si = Math.min(si, ssi);
+          // sj = Math.max(sj, ssj);
+        }
+        if (sj > si) {
+          timepassed.incrementAndGet();
+          // Allocate
+          if (mzValues == null || mzValues.length < sj - si + 1)
+            mzValues = new DataPoint[sj - si + 1][];
+          // Load Data Points
+          for (j = si; j <= sj; j++) {
+            Scan xscan = dataFile.getScan(scanNumbers[j]);
+            mzValues[j - si] = xscan.getDataPoints();
+          }
+          // Estimate Averages
+          ii = i - si;
+          newDP = new DataPoint[mzValues[ii].length];
+          for (k = 0; k < mzValues[ii].length; k++) {
+            DataPoint dp = mzValues[ii][k];
+            double mz = dp.getMZ();
+            double intensidad = 0;
+            if (dp.getIntensity() > 0) { // only process
+              // those > 0
+              double a = 0;
+              short c = 0;
+              int f = 0;
+              for (j = 0; j < mzValues.length; j++) {
+                // System.out.println(j);
+                if (mzValues[j].length > k
+                    && Math.abs(mzValues[j][k].getMZ() - mz) < timeMZtol) {
+                  f = k;
+                } else {
+                  f = findFirstMass(mz, mzValues[j]);
+                  if (Math.abs(mzValues[j][f].getMZ() - mz) > timeMZtol) {
+                    f = -f;
+                  }
+                }
+                if (f >= 0 && mzValues[j][f].getIntensity() >= minimumHeight) {
+                  a += mzValues[j][f].getIntensity();
+                  c++;
+                } else {
+                  c = (short) (c + 0);
+                }
+              }
+              intensidad = c > 0 ? a / c : 0;
+            }
+            newDP[k] = new SimpleDataPoint(mz, intensidad);
+          }
+        }
+      } else if (scan != null) {
+        newDP = scan.getDataPoints();
+      }
+
+      // Smoothing in MZ space
+
+      if ((mzTol > 0 || mzPoints > 0)) {
+        mzpassed.incrementAndGet();
+        DataPoint[] updatedDP = new DataPoint[newDP.length];
+        for (k = 0; k < newDP.length; k++) {
+          double mz = newDP[k].getMZ();
+          double intensidad = 0;
+          if (newDP[k].getIntensity() > 0) {
+            for (si = k; si > 0
+                && (newDP[si].getMZ() + mzTol >= mz || k - si <= mzPoints); si--);
+            for (sj = k; sj < newDP.length - 1
+                && (newDP[sj].getMZ() - mzTol <= mz || sj - k <= mzPoints); sj++);
+            double sum = 0;
+            for (j = si; j <= sj; j++) {
+              sum += newDP[j].getIntensity();
+            }
+            intensidad = sum / (sj - si + 1);
+          }
+          updatedDP[k] = new SimpleDataPoint(mz, intensidad);
+        }
+        newDP = updatedDP;
+      }
+
+      // Register new smoothing data
+      if (scan != null && newDP != null) {
+        newScan.setDataPoints(newDP);
+        return newScan;
+      }
     }
 
+    return null;
   }
 
   static int findFirstMass(double mass, DataPoint mzValues[]) {
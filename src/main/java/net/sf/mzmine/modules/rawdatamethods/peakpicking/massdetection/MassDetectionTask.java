@@ -22,14 +22,18 @@ import java.io.File;
 import java.util.logging.Logger;
 
 import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassList;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleMassList;
 import net.sf.mzmine.modules.MZmineProcessingStep;
+import net.sf.mzmine.modules.projectmethods.tempfilecompaction.TempFileCompactionModule;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.parameters.parametertypes.selectors.ScanSelection;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExceptionUtils;
+import net.sf.mzmine.util.ParallelScanProcessor;
 
 import ucar.nc2.NetcdfFileWriter;
 import ucar.nc2.Dimension;
@@ -39,8 +43,6 @@ import ucar.ma2.InvalidRangeException;
 // import ucar.ma2.*;
 import ucar.ma2.DataType;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
 import ucar.nc2.Attribute;
 
@@ -63,6 +65,9 @@ public class MassDetectionTask extends AbstractTask {
   private File outFilename;
   private boolean saveToCDF;
 
+  // Maximum number of masses written to the CDF file at once
+  private static final int CDF_CHUNK_POINTS = 1 << 20;
+
   /**
    * @param dataFile
    * @param parameters
@@ -112,34 +117,9 @@ public class MassDetectionTask extends AbstractTask {
    * @see Runnable#run()
    */
   public void run() {
-    int indexOfPeriod = dataFile.getName().indexOf(".");
-
-    // String massOutLocation =
-    // outFilename.getPath()+dataFile.getName().substring(0,indexOfPeriod)+".CDF";
-    String massOutLocation = outFilename != null ? outFilename.getPath() : "";
-
-    boolean writeMasses = true;
-    // make arrays to contain everything you need
-    ArrayList<Integer> pointsInScans = new ArrayList<Integer>();
-    ArrayList<Double> allMZ = new ArrayList<Double>();
-    ArrayList<Double> allIntensities = new ArrayList<Double>();
-    // idecies of full mass list where scan starts?
-    ArrayList<Integer> startIndex = new ArrayList<Integer>();
-    ArrayList<Double> scanAcquisitionTime = new ArrayList<Double>();
-    // XCMS needs this one
-    ArrayList<Double> totalIntensity = new ArrayList<Double>();
-
-
-    NetcdfFileWriter writer = null;
-
-    double curTotalIntensity;
-    int lastPointCount = 0;
-
-    startIndex.add(0);
 
     try {
 
-
       setStatus(TaskStatus.PROCESSING);
 
       logger.info("Started mass detector on " + dataFile);
@@ -147,156 +127,169 @@ public class MassDetectionTask extends AbstractTask {
       final Scan scans[] = scanSelection.getMatchingScans(dataFile);
       totalScans = scans.length;
 
-      // Process scans one by one
-      for (Scan scan : scans) {
+      final MassDetector detector = massDetector.getModule();
+      final ParameterSet detectorParameters = massDetector.getParameterSet();
 
-        if (isCanceled())
-          return;
+      // Per-scan values needed for the CDF export. The masses themselves are read back from the
+      // stored mass lists while writing, so they never have to be kept in memory
+      final int pointsInScans[] = new int[totalScans];
+      final double totalIntensity[] = new double[totalScans];
 
-        MassDetector detector = massDetector.getModule();
-        DataPoint mzPeaks[] = detector.getMassValues(scan, massDetector.getParameterSet());
+      // Detect the masses of several scans in parallel, but add the mass lists in scan order
+      final boolean finished = ParallelScanProcessor.processScans(totalScans, this,
+          index -> detector.getMassValues(scans[index], detectorParameters), (index, mzPeaks) -> {
 
-        SimpleMassList newMassList = new SimpleMassList(name, scan, mzPeaks);
+            Scan scan = scans[index];
+            SimpleMassList newMassList = new SimpleMassList(name, scan, mzPeaks);
 
-        // Add new mass list to the scan
-        scan.addMassList(newMassList);
+            // Add new mass list to the scan
+            scan.addMassList(newMassList);
 
-        curTotalIntensity = 0;
-        for (int a = 0; a < mzPeaks.length; a++) {
-          DataPoint curMzPeak = mzPeaks[a];
-          allMZ.add(curMzPeak.getMZ());
-          allIntensities.add(curMzPeak.getIntensity());
+            double scanTotalIntensity = 0;
+            for (DataPoint curMzPeak : mzPeaks)
+              scanTotalIntensity += curMzPeak.getIntensity();
 
-          curTotalIntensity += curMzPeak.getIntensity();
-        }
+            pointsInScans[index] = mzPeaks.length;
+            totalIntensity[index] = scanTotalIntensity;
 
-        scanAcquisitionTime.add(scan.getRetentionTime());
-        pointsInScans.add(0);
-        startIndex.add(mzPeaks.length + lastPointCount);
-        totalIntensity.add(curTotalIntensity);
+            processedScans++;
+          });
 
+      // Replaced mass lists of the same name leave removed data points in the temporary file
+      TempFileCompactionModule.compactIfNeeded(dataFile);
 
-        lastPointCount = mzPeaks.length + lastPointCount;
+      if (!finished)
+        return;
 
-        processedScans++;
+      if (this.saveToCDF) {
+        String massOutLocation = outFilename != null ? outFilename.getPath() : "";
+        writeCDF(massOutLocation, scans, pointsInScans, totalIntensity);
       }
 
       setStatus(TaskStatus.FINISHED);
 
       logger.info("Finished mass detector on " + dataFile);
 
-      if (this.saveToCDF) {
-        // ************** write mass list *******************************
-        writer =
-            NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, massOutLocation, null);
-
-        Dimension dim_massValues = writer.addDimension(null, "mass_values", allMZ.size());
-        Dimension dim_intensityValues =
-            writer.addDimension(null, "intensity_values", allIntensities.size());
-        Dimension dim_scanIndex = writer.addDimension(null, "scan_index", startIndex.size() - 1);
-        Dimension dim_scanAcquisitionTime =
-            writer.addDimension(null, "scan_acquisition_time", scanAcquisitionTime.size());
-        Dimension dim_totalIntensity =
-            writer.addDimension(null, "total_intensity", totalIntensity.size());
-        Dimension dim_pointsInScans =
-            writer.addDimension(null, "point_count", pointsInScans.size());
-
-        // add dimensions to list
-        List<Dimension> dims = new ArrayList<>();
-        dims.add(dim_massValues);
-        dims.add(dim_intensityValues);
-        dims.add(dim_scanIndex);
-        dims.add(dim_scanAcquisitionTime);
-        dims.add(dim_totalIntensity);
-        dims.add(dim_pointsInScans);
-
-        // make the variables that contain the actual data I think.
-        Variable var_massValues =
-            writer.addVariable(null, "mass_values", DataType.DOUBLE, "mass_values");
-        Variable var_intensityValues =
-            writer.addVariable(null, "intensity_values", DataType.DOUBLE, "intensity_values");
-        Variable var_scanIndex = writer.addVariable(null, "scan_index", DataType.INT, "scan_index");
-        Variable var_scanAcquisitionTime = writer.addVariable(null, "scan_acquisition_time",
-            DataType.DOUBLE, "scan_acquisition_time");
-        Variable var_totalIntensity =
-            writer.addVariable(null, "total_intensity", DataType.DOUBLE, "total_intensity");
-        Variable var_pointsInScans =
-            writer.addVariable(null, "point_count", DataType.INT, "point_count");
-
-        var_massValues.addAttribute(new Attribute("units", "M/Z"));
-        var_intensityValues.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
-        var_scanIndex.addAttribute(new Attribute("units", "index"));
-        var_scanAcquisitionTime.addAttribute(new Attribute("units", "seconds"));
-        var_totalIntensity.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
-        var_pointsInScans.addAttribute(new Attribute("units", "count"));
-
-        var_massValues.addAttribute(new Attribute("scale_factor", 1.0));
-        var_intensityValues.addAttribute(new Attribute("scale_factor", 1.0));
-        var_scanIndex.addAttribute(new Attribute("scale_factor", 1.0));
-        var_scanAcquisitionTime.addAttribute(new Attribute("scale_factor", 1.0));
-        var_totalIntensity.addAttribute(new Attribute("scale_factor", 1.0));
-        var_pointsInScans.addAttribute(new Attribute("scale_factor", 1.0));
-
-        // create file
-        writer.create();
-
-        ArrayDouble.D1 arr_massValues = new ArrayDouble.D1(dim_massValues.getLength());
-        ArrayDouble.D1 arr_intensityValues = new ArrayDouble.D1(dim_intensityValues.getLength());
-        ArrayDouble.D1 arr_scanIndex = new ArrayDouble.D1(dim_scanIndex.getLength());
-        ArrayDouble.D1 arr_scanAcquisitionTime =
-            new ArrayDouble.D1(dim_scanAcquisitionTime.getLength());
-        ArrayDouble.D1 arr_totalIntensity = new ArrayDouble.D1(dim_totalIntensity.getLength());
-        ArrayDouble.D1 arr_pointsInScans = new ArrayDouble.D1(dim_pointsInScans.getLength());
-
-        for (int i = 0; i < allMZ.size(); i++) {
-          arr_massValues.set(i, allMZ.get(i));
-          arr_intensityValues.set(i, allIntensities.get(i));
-        }
-        int i = 0;
-        for (; i < scanAcquisitionTime.size(); i++) {
-          arr_scanAcquisitionTime.set(i, scanAcquisitionTime.get(i) * 60);
-          arr_pointsInScans.set(i, pointsInScans.get(i));
-          arr_scanIndex.set(i, startIndex.get(i));
-          arr_totalIntensity.set(i, totalIntensity.get(i));
-        }
-        // arr_scanIndex.set(i,startIndex.get(i));
+    } catch (Exception e) {
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error while detecting masses in " + dataFile + ": "
+          + ExceptionUtils.exceptionToString(e));
+    }
 
-        // For tiny test file
-        // arr_intensityValues .set(0,200);
-        // arr_scanIndex .set(0,0);
-        // arr_scanAcquisitionTime .set(0,10);
-        // arr_totalIntensity .set(0,200);
-        // arr_pointsInScans .set(0,0);
+  }
 
-        // arr_intensityValues .set(1,300);
-        // arr_scanIndex .set(1,1);
-        // arr_scanAcquisitionTime .set(1,20);
-        // arr_totalIntensity .set(1,300);
-        // arr_pointsInScans .set(1,0);
+  /**
+   * Writes the detected masses to a NetCDF (ANDI-MS) file. The scan-level variables are written at
+   * once, the mass_values and intensity_values are written in sections of consecutive scans with at
+   * most CDF_CHUNK_POINTS values, read back from the stored mass lists.
+   */
+  private void writeCDF(String massOutLocation, Scan scans[], int pointsInScans[],
+      double totalIntensity[]) throws IOException, InvalidRangeException {
+
+    // Indices of the full mass list where each scan starts
+    int startIndex[] = new int[scans.length];
+    int totalPoints = 0;
+    for (int i = 0; i < scans.length; i++) {
+      startIndex[i] = totalPoints;
+      totalPoints += pointsInScans[i];
+    }
 
+    NetcdfFileWriter writer =
+        NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, massOutLocation, null);
 
+    try {
 
-        writer.write(var_massValues, arr_massValues);
-        writer.write(var_intensityValues, arr_intensityValues);
-        writer.write(var_scanIndex, arr_scanIndex);
-        writer.write(var_scanAcquisitionTime, arr_scanAcquisitionTime);
-        writer.write(var_totalIntensity, arr_totalIntensity);
-        writer.write(var_pointsInScans, arr_pointsInScans);
+      Dimension dim_massValues = writer.addDimension(null, "mass_values", totalPoints);
+      Dimension dim_intensityValues = writer.addDimension(null, "intensity_values", totalPoints);
+      Dimension dim_scanIndex = writer.addDimension(null, "scan_index", scans.length);
+      Dimension dim_scanAcquisitionTime =
+          writer.addDimension(null, "scan_acquisition_time", scans.length);
+      Dimension dim_totalIntensity = writer.addDimension(null, "total_intensity", scans.length);
+      Dimension dim_pointsInScans = writer.addDimension(null, "point_count", scans.length);
+
+      // make the variables that contain the actual data
+      Variable var_massValues =
+          writer.addVariable(null, "mass_values", DataType.DOUBLE, "mass_values");
+      Variable var_intensityValues =
+          writer.addVariable(null, "intensity_values", DataType.DOUBLE, "intensity_values");
+      Variable var_scanIndex = writer.addVariable(null, "scan_index", DataType.INT, "scan_index");
+      Variable var_scanAcquisitionTime = writer.addVariable(null, "scan_acquisition_time",
+          DataType.DOUBLE, "scan_acquisition_time");
+      Variable var_totalIntensity =
+          writer.addVariable(null, "total_intensity", DataType.DOUBLE, "total_intensity");
+      Variable var_pointsInScans =
+          writer.addVariable(null, "point_count", DataType.INT, "point_count");
+
+      var_massValues.addAttribute(new Attribute("units", "M/Z"));
+      var_intensityValues.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
+      var_scanIndex.addAttribute(new Attribute("units", "index"));
+      var_scanAcquisitionTime.addAttribute(new Attribute("units", "seconds"));
+      var_totalIntensity.addAttribute(new Attribute("units", "Arbitrary Intensity Units"));
+      var_pointsInScans.addAttribute(new Attribute("units", "count"));
+
+      var_massValues.addAttribute(new Attribute("scale_factor", 1.0));
+      var_intensityValues.addAttribute(new Attribute("scale_factor", 1.0));
+      var_scanIndex.addAttribute(new Attribute("scale_factor", 1.0));
+      var_scanAcquisitionTime.addAttribute(new Attribute("scale_factor", 1.0));
+      var_totalIntensity.addAttribute(new Attribute("scale_factor", 1.0));
+      var_pointsInScans.addAttribute(new Attribute("scale_factor", 1.0));
+
+      // create file
+      writer.create();
+
+      ArrayDouble.D1 arr_scanIndex = new ArrayDouble.D1(dim_scanIndex.getLength());
+      ArrayDouble.D1 arr_scanAcquisitionTime =
+          new ArrayDouble.D1(dim_scanAcquisitionTime.getLength());
+      ArrayDouble.D1 arr_totalIntensity = new ArrayDouble.D1(dim_totalIntensity.getLength());
+      ArrayDouble.D1 arr_pointsInScans = new ArrayDouble.D1(dim_pointsInScans.getLength());
+
+      for (int i = 0; i < scans.length; i++) {
+        arr_scanAcquisitionTime.set(i, scans[i].getRetentionTime() * 60);
+        // XCMS expects zero point counts
+        arr_pointsInScans.set(i, 0);
+        arr_scanIndex.set(i, startIndex[i]);
+        arr_totalIntensity.set(i, totalIntensity[i]);
       }
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (InvalidRangeException e) {
-      e.printStackTrace();
-    }
 
-    finally {
-      if (null != writer) {
-        try {
-          writer.close();
-        } catch (IOException ioe) {
-          ioe.printStackTrace();
+      writer.write(var_scanIndex, arr_scanIndex);
+      writer.write(var_scanAcquisitionTime, arr_scanAcquisitionTime);
+      writer.write(var_totalIntensity, arr_totalIntensity);
+      writer.write(var_pointsInScans, arr_pointsInScans);
+
+      // Stream the masses in sections of consecutive scans
+      int chunkStartScan = 0;
+      while (chunkStartScan < scans.length) {
+
+        int chunkEndScan = chunkStartScan;
+        int chunkPoints = 0;
+        while ((chunkEndScan < scans.length) && ((chunkEndScan == chunkStartScan)
+            || (chunkPoints + pointsInScans[chunkEndScan] <= CDF_CHUNK_POINTS))) {
+          chunkPoints += pointsInScans[chunkEndScan];
+          chunkEndScan++;
+        }
+
+        ArrayDouble.D1 arr_massValues = new ArrayDouble.D1(chunkPoints);
+        ArrayDouble.D1 arr_intensityValues = new ArrayDouble.D1(chunkPoints);
+        int pos = 0;
+        for (int i = chunkStartScan; i < chunkEndScan; i++) {
+          MassList massList = scans[i].getMassList(name);
+          DataPoint mzPeaks[] = (massList == null) ? new DataPoint[0] : massList.getDataPoints();
+          for (int j = 0; j < pointsInScans[i]; j++) {
+            arr_massValues.set(pos, mzPeaks[j].getMZ());
+            arr_intensityValues.set(pos, mzPeaks[j].getIntensity());
+            pos++;
+          }
         }
+
+        int origin[] = new int[] {startIndex[chunkStartScan]};
+        writer.write(var_massValues, origin, arr_massValues);
+        writer.write(var_intensityValues, origin, arr_intensityValues);
+
+        chunkStartScan = chunkEndScan;
       }
+
+    } finally {
+      writer.close();
     }
 
   }
@@ -20,7 +20,6 @@ package net.sf.mzmine.modules.rawdatamethods.rawdataimport.fileformats;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Hashtable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,7 +37,6 @@ import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
 import net.sf.mzmine.util.ScanUtils;
 import ucar.ma2.Array;
-import ucar.ma2.Index;
 import ucar.ma2.IndexIterator;
 import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFile;
@@ -56,8 +54,16 @@ public class NetCDFReadTask extends AbstractTask {
   private int parsedScans;
   private int totalScans = 0, numberOfGoodScans, scanNum = 0;
 
-  private Hashtable<Integer, Integer[]> scansIndex;
-  private Hashtable<Integer, Double> scansRetentionTimes;
+  // Start position in mass_values, number of values and retention time of each scan
+  private int scanStartPositions[], scanLengths[];
+  private double scansRetentionTimes[];
+
+  // Maximum number of values read from mass_values and intensity_values at once
+  private static final int READ_CHUNK_POINTS = 1 << 20;
+
+  // Currently buffered section of mass_values and intensity_values, already scaled
+  private double chunkMassValues[], chunkIntensityValues[];
+  private int chunkStartPosition = 0, chunkLength = 0;
 
   private File file;
   private MZmineProject project;
@@ -334,24 +340,13 @@ public class NetCDFReadTask extends AbstractTask {
 
     // Collect information about retention times, start positions and
     // lengths for scans
-    scansRetentionTimes = new Hashtable<Integer, Double>();
-    scansIndex = new Hashtable<Integer, Integer[]>();
+    this.scansRetentionTimes = retentionTimes;
+    this.scanStartPositions = scanStartPositions;
+    this.scanLengths = new int[totalScans];
     for (int i = 0; i < totalScans; i++) {
-
-      Integer scanNum = new Integer(i);
-
-      Integer[] startAndLength = new Integer[2];
-      startAndLength[0] = scanStartPositions[i];
-      startAndLength[1] = scanStartPositions[i + 1] - scanStartPositions[i];
-
-      scansRetentionTimes.put(scanNum, new Double(retentionTimes[i]));
-      scansIndex.put(scanNum, startAndLength);
-
+      scanLengths[i] = scanStartPositions[i + 1] - scanStartPositions[i];
     }
 
-    scanStartPositions = null;
-    retentionTimes = null;
-
   }
 
   /**
@@ -366,30 +361,21 @@ public class NetCDFReadTask extends AbstractTask {
    */
   private Scan readNextScan() throws IOException {
 
-    // Get scan starting position and length
-    int[] scanStartPosition = new int[1];
-    int[] scanLength = new int[1];
-    Integer[] startAndLength = scansIndex.get(scanNum);
-
     // End of file
-    if (startAndLength == null) {
+    if (scanNum >= totalScans) {
       return null;
     }
-    scanStartPosition[0] = startAndLength[0];
-    scanLength[0] = startAndLength[1];
-
-    // Get retention time of the scan
-    Double retentionTime = scansRetentionTimes.get(scanNum);
-    if (retentionTime == null) {
-      logger.severe("Could not find retention time for scan " + scanNum);
-      throw (new IOException("Could not find retention time for scan " + scanNum));
-    }
+
+    // Get scan starting position, length and retention time
+    final int scanStartPosition = scanStartPositions[scanNum];
+    final int scanLength = scanLengths[scanNum];
+    final double retentionTime = scansRetentionTimes[scanNum];
 
     // An empty scan needs special attention..
-    if (scanLength[0] == 0) {
+    if (scanLength == 0) {
       scanNum++;
-      return new SimpleScan(null, scanNum, 1, retentionTime.doubleValue(), 0, 0, null,
-          new DataPoint[0], MassSpectrumType.CENTROIDED, PolarityType.UNKNOWN, "", null);
+      return new SimpleScan(null, scanNum, 1, retentionTime, 0, 0, null, new DataPoint[0],
+          MassSpectrumType.CENTROIDED, PolarityType.UNKNOWN, "", null);
     }
 
     // Is there any way how to extract polarity from netcdf?
@@ -398,44 +384,67 @@ public class NetCDFReadTask extends AbstractTask {
     // Is there any way how to extract scan definition from netcdf?
     String scanDefinition = "";
 
-    // Read mass and intensity values
+    // Read mass and intensity values, unless they are in the current chunk already
+    if ((scanStartPosition < chunkStartPosition)
+        || (scanStartPosition + scanLength > chunkStartPosition + chunkLength)) {
+      readChunk(scanStartPosition, scanLength);
+    }
+
+    DataPoint dataPoints[] = new DataPoint[scanLength];
+    final int offset = scanStartPosition - chunkStartPosition;
+    for (int j = 0; j < scanLength; j++) {
+      dataPoints[j] =
+          new SimpleDataPoint(chunkMassValues[offset + j], chunkIntensityValues[offset + j]);
+    }
+
+    scanNum++;
+
+    // Auto-detect whether this scan is centroided
+    MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(dataPoints);
+
+    SimpleScan buildingScan = new SimpleScan(null, scanNum, 1, retentionTime, 0, 0, null,
+        dataPoints, spectrumType, polarity, scanDefinition, null);
+
+    return buildingScan;
+
+  }
+
+  /**
+   * Reads a section of the mass_values and intensity_values variables into the primitive chunk
+   * buffers. The section starts at the given position and contains at least the given number of
+   * values, so that the following scans can usually be served from the same chunk.
+   */
+  private void readChunk(int startPosition, int minLength) throws IOException {
+
+    final int available = (int) massValueVariable.getSize() - startPosition;
+    final int length = Math.max(minLength, Math.min(READ_CHUNK_POINTS, available));
+
     Array massValueArray;
     Array intensityValueArray;
     try {
-      massValueArray = massValueVariable.read(scanStartPosition, scanLength);
-      intensityValueArray = intensityValueVariable.read(scanStartPosition, scanLength);
+      massValueArray = massValueVariable.read(new int[] {startPosition}, new int[] {length});
+      intensityValueArray =
+          intensityValueVariable.read(new int[] {startPosition}, new int[] {length});
     } catch (Exception e) {
       logger.log(Level.SEVERE, "Could not read from variables mass_values and/or intensity_values.",
           e);
       throw (new IOException("Could not read from variables mass_values and/or intensity_values."));
     }
 
-    Index massValuesIndex = massValueArray.getIndex();
-    Index intensityValuesIndex = intensityValueArray.getIndex();
-
-    int arrayLength = massValueArray.getShape()[0];
-
-    DataPoint dataPoints[] = new DataPoint[arrayLength];
-
-    for (int j = 0; j < arrayLength; j++) {
-      Index massIndex0 = massValuesIndex.set0(j);
-      Index intensityIndex0 = intensityValuesIndex.set0(j);
-
-      double mz = massValueArray.getDouble(massIndex0) * massValueScaleFactor;
-      double intensity = intensityValueArray.getDouble(intensityIndex0) * intensityValueScaleFactor;
-      dataPoints[j] = new SimpleDataPoint(mz, intensity);
-
+    if ((chunkMassValues == null) || (chunkMassValues.length < length)) {
+      chunkMassValues = new double[length];
+      chunkIntensityValues = new double[length];
     }
 
-    scanNum++;
-
-    // Auto-detect whether this scan is centroided
-    MassSpectrumType spectrumType = ScanUtils.detectSpectrumType(dataPoints);
-
-    SimpleScan buildingScan = new SimpleScan(null, scanNum, 1, retentionTime.doubleValue(), 0, 0,
-        null, dataPoints, spectrumType, polarity, scanDefinition, null);
+    IndexIterator massIterator = massValueArray.getIndexIterator();
+    IndexIterator intensityIterator = intensityValueArray.getIndexIterator();
+    for (int j = 0; j < length; j++) {
+      chunkMassValues[j] = massIterator.getDoubleNext() * massValueScaleFactor;
+      chunkIntensityValues[j] = intensityIterator.getDoubleNext() * intensityValueScaleFactor;
+    }
 
-    return buildingScan;
+    chunkStartPosition = startPosition;
+    chunkLength = length;
 
   }
 
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.syntheticdata;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.datamodel.PolarityType;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.RawDataFileWriter;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleScan;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler.ShapeModel;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler.peakmodels.EMGPeakModel;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler.peakmodels.GaussianPeakModel;
+import net.sf.mzmine.parameters.ParameterSet;
+
+/**
+ * Generates the scans of synthetic LC-MS(/MS) runs. Each feature elutes as a Gaussian or EMG peak
+ * (using the peak models of the shape modeler) at a random retention time with a random m/z and
+ * height. The retention times drift linearly between the samples and the heights vary randomly.
+ * Random noise is added to each MS1 spectrum.
+ *
+ * All random values are derived from the seed parameter, the sample index and the scan number, so
+ * the same scan is always generated identically, regardless of the order in which the scans are
+ * created.
+ */
+public class SyntheticDataGenerator {
+
+  // Relative m/z error of the data points (standard deviation, ppm)
+  private static final double MZ_ERROR_PPM = 2.0;
+
+  // Resolving power of the profile spectra (m/z divided by the m/z peak width at half maximum)
+  private static final double PROFILE_RESOLUTION = 30000.0;
+
+  // Relative standard deviation of the feature heights between samples
+  private static final double HEIGHT_VARIATION = 0.1;
+
+  // Ratio of the largest and the smallest feature height
+  private static final double HEIGHT_DYNAMIC_RANGE = 1E4;
+
+  // Random retention time shift of each feature in each sample, relative to the peak width
+  private static final double RT_JITTER = 0.1;
+
+  // Ratio of FWHM and sigma of a Gaussian peak
+  private static final double FWHM_TO_SIGMA = 2.354820045;
+
+  // Lowest m/z of the fragments in MS/MS scans
+  private static final double MIN_FRAGMENT_MZ = 50.0;
+
+  private final String fileName;
+  private final int numberOfSamples, numberOfScans, pointsPerScan;
+  private final MassSpectrumType spectrumType;
+  private final Range<Double> mzRange, rtRange;
+  private final ShapeModel peakModel;
+  private final double peakWidth, noiseLevel, rtDrift;
+  private final boolean generateMSMS;
+  private final long seed;
+
+  // Features, ordered by their retention time
+  private final double featureMZ[], featureRT[], featureHeight[], featureAsymmetry[];
+
+  // Feature retention times and heights of the last used sample
+  private int currentSample = -1;
+  private double sampleRT[], sampleHeight[];
+  private int sampleOrder[];
+
+  public SyntheticDataGenerator(ParameterSet parameters) {
+
+    fileName = parameters.getParameter(SyntheticDataParameters.fileName).getValue();
+    numberOfSamples = parameters.getParameter(SyntheticDataParameters.numberOfSamples).getValue();
+    numberOfScans = parameters.getParameter(SyntheticDataParameters.numberOfScans).getValue();
+    pointsPerScan = parameters.getParameter(SyntheticDataParameters.pointsPerScan).getValue();
+    spectrumType = parameters.getParameter(SyntheticDataParameters.spectrumType).getValue();
+    mzRange = parameters.getParameter(SyntheticDataParameters.mzRange).getValue();
+    rtRange = parameters.getParameter(SyntheticDataParameters.rtRange).getValue();
+    peakModel = parameters.getParameter(SyntheticDataParameters.peakModel).getValue();
+    peakWidth = parameters.getParameter(SyntheticDataParameters.peakWidth).getValue();
+    noiseLevel = parameters.getParameter(SyntheticDataParameters.noiseLevel).getValue();
+    rtDrift = parameters.getParameter(SyntheticDataParameters.rtDrift).getValue();
+    generateMSMS = parameters.getParameter(SyntheticDataParameters.generateMSMS).getValue();
+    seed = parameters.getParameter(SyntheticDataParameters.seed).getValue();
+
+    final int numberOfFeatures =
+        parameters.getParameter(SyntheticDataParameters.numberOfFeatures).getValue();
+    final Random random = new Random(seed);
+    final double minHeight = Math.max(noiseLevel, 100.0) * 3.0;
+    final double rtMargin = Math.min(2.0 * peakWidth, getRTLength() / 4.0);
+    final double featureRTs[] = new double[numberOfFeatures];
+    for (int i = 0; i < numberOfFeatures; i++)
+      featureRTs[i] = rtRange.lowerEndpoint() + rtMargin
+          + random.nextDouble() * (getRTLength() - 2.0 * rtMargin);
+    Arrays.sort(featureRTs);
+
+    featureRT = featureRTs;
+    featureMZ = new double[numberOfFeatures];
+    featureHeight = new double[numberOfFeatures];
+    featureAsymmetry = new double[numberOfFeatures];
+    for (int i = 0; i < numberOfFeatures; i++) {
+      featureMZ[i] = mzRange.lowerEndpoint()
+          + random.nextDouble() * (mzRange.upperEndpoint() - mzRange.lowerEndpoint());
+      // log-uniform distribution of the heights
+      featureHeight[i] = minHeight * Math.pow(HEIGHT_DYNAMIC_RANGE, random.nextDouble());
+      featureAsymmetry[i] = random.nextDouble();
+    }
+  }
+
+  public int getNumberOfSamples() {
+    return numberOfSamples;
+  }
+
+  public int getNumberOfFeatures() {
+    return featureRT.length;
+  }
+
+  /**
+   * Returns the number of scans of each sample, including the MS/MS scans
+   */
+  public int getNumberOfScans() {
+    return (generateMSMS && (featureRT.length > 0)) ? 2 * numberOfScans : numberOfScans;
+  }
+
+  /**
+   * Returns the name of the raw data file of given sample (0-based index)
+   */
+  public @Nonnull String getFileName(int sampleIndex) {
+    if (numberOfSamples == 1)
+      return fileName;
+    return fileName + "_" + (sampleIndex + 1);
+  }
+
+  /**
+   * Generates the whole raw data file of given sample
+   */
+  public @Nonnull RawDataFile createFile(int sampleIndex) throws IOException {
+    RawDataFileWriter writer = MZmineCore.createNewFile(getFileName(sampleIndex));
+    for (int scanNumber = 1; scanNumber <= getNumberOfScans(); scanNumber++)
+      writer.addScan(createScan(sampleIndex, scanNumber));
+    return writer.finishWriting();
+  }
+
+  /**
+   * Generates one scan of given sample (0-based index). If MS/MS scans are generated, the scans
+   * with odd numbers are MS1 scans and each of them is followed by an MS/MS scan.
+   */
+  public @Nonnull Scan createScan(int sampleIndex, int scanNumber) {
+
+    final boolean msms = getNumberOfScans() > numberOfScans;
+    final int ms1Index = msms ? (scanNumber - 1) / 2 : scanNumber - 1;
+    final boolean isMS1 = !msms || (scanNumber % 2 == 1);
+    final double scanInterval = getRTLength() / numberOfScans;
+    final double ms1RT = rtRange.lowerEndpoint() + ms1Index * scanInterval;
+    final Random random = new Random(seed * 31L + sampleIndex * 1000003L + scanNumber);
+
+    synchronized (this) {
+      prepareSample(sampleIndex);
+
+      if (isMS1) {
+        final DataPoint dataPoints[] = (spectrumType == MassSpectrumType.PROFILE)
+            ? createProfileSpectrum(ms1RT, random)
+            : createCentroidSpectrum(ms1RT, random);
+        final int fragmentScans[] = msms ? new int[] {scanNumber + 1} : new int[0];
+        return new SimpleScan(null, scanNumber, 1, ms1RT, 0.0, 0, fragmentScans, dataPoints,
+            spectrumType, PolarityType.POSITIVE, "", mzRange);
+      }
+
+      // MS/MS scan of the most intense feature of the preceding MS1 scan
+      final int precursor = findPrecursor(ms1RT);
+      final double precursorMZ = featureMZ[precursor];
+      final double precursorIntensity =
+          Math.max(calculateIntensity(precursor, ms1RT), noiseLevel);
+      final DataPoint dataPoints[] = createFragmentSpectrum(precursor, precursorIntensity, random);
+      return new SimpleScan(null, scanNumber, 2, ms1RT + scanInterval / 2.0, precursorMZ, 1,
+          new int[0], dataPoints, MassSpectrumType.CENTROIDED, PolarityType.POSITIVE, "",
+          Range.closed(MIN_FRAGMENT_MZ, Math.max(MIN_FRAGMENT_MZ, precursorMZ)));
+    }
+  }
+
+  private double getRTLength() {
+    return rtRange.upperEndpoint() - rtRange.lowerEndpoint();
+  }
+
+  /**
+   * Calculates the retention times and heights of the features in given sample
+   */
+  private void prepareSample(int sampleIndex) {
+    if (sampleIndex == currentSample)
+      return;
+
+    final int numberOfFeatures = featureRT.length;
+    final Random random = new Random(seed * 31L + sampleIndex);
+    final double drift =
+        (numberOfSamples > 1) ? rtDrift * sampleIndex / (numberOfSamples - 1) : 0.0;
+    sampleRT = new double[numberOfFeatures];
+    sampleHeight = new double[numberOfFeatures];
+    for (int i = 0; i < numberOfFeatures; i++) {
+      sampleRT[i] = featureRT[i] + drift + random.nextGaussian() * RT_JITTER * peakWidth;
+      sampleHeight[i] =
+          featureHeight[i] * Math.exp(random.nextGaussian() * HEIGHT_VARIATION);
+    }
+
+    // the jitter may change the order of the features
+    sampleOrder = new int[numberOfFeatures];
+    Integer order[] = new Integer[numberOfFeatures];
+    for (int i = 0; i < numberOfFeatures; i++)
+      order[i] = i;
+    Arrays.sort(order, Comparator.comparingDouble(i -> sampleRT[i]));
+    double sortedRT[] = new double[numberOfFeatures];
+    for (int i = 0; i < numberOfFeatures; i++) {
+      sampleOrder[i] = order[i];
+      sortedRT[i] = sampleRT[order[i]];
+    }
+    sampleRT = sortedRT;
+    currentSample = sampleIndex;
+  }
+
+  /**
+   * Returns the indexes of the features eluting at given retention time
+   */
+  private List<Integer> getElutingFeatures(double rt) {
+    // EMG peaks are tailing, so they need a wider window
+    final double window = (peakModel == ShapeModel.EMG ? 6.0 : 4.0) * peakWidth;
+    int first = Arrays.binarySearch(sampleRT, rt - window);
+    if (first < 0)
+      first = -first - 1;
+    List<Integer> features = new ArrayList<>();
+    for (int i = first; (i < sampleRT.length) && (sampleRT[i] <= rt + window); i++)
+      features.add(i);
+    return features;
+  }
+
+  /**
+   * Calculates the intensity of a feature at given retention time. The feature is given by its
+   * position in the current sample.
+   */
+  private double calculateIntensity(int position, double rt) {
+    final int feature = sampleOrder[position];
+    final double apexRT = sampleRT[position];
+    final double height = sampleHeight[feature];
+    switch (peakModel) {
+      case EMG:
+        return EMGPeakModel.calculateEMGIntensity(height, apexRT, peakWidth / FWHM_TO_SIGMA,
+            featureAsymmetry[feature], 0.0, rt);
+      default:
+        return GaussianPeakModel.calculateIntensity(height, apexRT, peakWidth, rt);
+    }
+  }
+
+  private double getMZ(int position, Random random) {
+    return featureMZ[sampleOrder[position]] * (1.0 + random.nextGaussian() * MZ_ERROR_PPM * 1E-6);
+  }
+
+  private DataPoint[] createCentroidSpectrum(double rt, Random random) {
+    List<DataPoint> dataPoints = new ArrayList<>(pointsPerScan);
+    for (int position : getElutingFeatures(rt)) {
+      final double intensity = calculateIntensity(position, rt);
+      if (intensity > 0)
+        dataPoints.add(new SimpleDataPoint(getMZ(position, random), intensity));
+    }
+
+    final double mzLength = mzRange.upperEndpoint() - mzRange.lowerEndpoint();
+    while (dataPoints.size() < pointsPerScan) {
+      final double mz = mzRange.lowerEndpoint() + random.nextDouble() * mzLength;
+      dataPoints.add(new SimpleDataPoint(mz, random.nextDouble() * noiseLevel));
+    }
+
+    DataPoint sortedDataPoints[] = dataPoints.toArray(new DataPoint[0]);
+    Arrays.sort(sortedDataPoints, Comparator.comparingDouble(DataPoint::getMZ));
+    return sortedDataPoints;
+  }
+
+  private DataPoint[] createProfileSpectrum(double rt, Random random) {
+    final double mzStart = mzRange.lowerEndpoint();
+    final double mzStep = (pointsPerScan > 1)
+        ? (mzRange.upperEndpoint() - mzStart) / (pointsPerScan - 1) : 1.0;
+
+    final double intensities[] = new double[pointsPerScan];
+    for (int i = 0; i < pointsPerScan; i++)
+      intensities[i] = random.nextDouble() * noiseLevel;
+
+    for (int position : getElutingFeatures(rt)) {
+      final double intensity = calculateIntensity(position, rt);
+      if (intensity <= 0)
+        continue;
+      final double mz = getMZ(position, random);
+      final double sigma = Math.max(mz / PROFILE_RESOLUTION / FWHM_TO_SIGMA, mzStep);
+      final int firstPoint = Math.max(0, (int) Math.ceil((mz - 4.0 * sigma - mzStart) / mzStep));
+      final int lastPoint =
+          Math.min(pointsPerScan - 1, (int) Math.floor((mz + 4.0 * sigma - mzStart) / mzStep));
+      for (int i = firstPoint; i <= lastPoint; i++) {
+        final double diff = (mzStart + i * mzStep - mz) / sigma;
+        intensities[i] += intensity * Math.exp(-0.5 * diff * diff);
+      }
+    }
+
+    DataPoint dataPoints[] = new DataPoint[pointsPerScan];
+    for (int i = 0; i < pointsPerScan; i++)
+      dataPoints[i] = new SimpleDataPoint(mzStart + i * mzStep, intensities[i]);
+    return dataPoints;
+  }
+
+  /**
+   * Returns the position of the most intense feature at given retention time, or of the closest
+   * feature if none is eluting
+   */
+  private int findPrecursor(double rt) {
+    int best = -1;
+    double bestIntensity = 0;
+    for (int position : getElutingFeatures(rt)) {
+      final double intensity = calculateIntensity(position, rt);
+      if (intensity > bestIntensity) {
+        best = position;
+        bestIntensity = intensity;
+      }
+    }
+    if (best >= 0)
+      return best;
+
+    int closest = Arrays.binarySearch(sampleRT, rt);
+    if (closest >= 0)
+      return closest;
+    closest = -closest - 1;
+    if (closest == sampleRT.length)
+      return closest - 1;
+    if ((closest > 0) && (rt - sampleRT[closest - 1] < sampleRT[closest] - rt))
+      return closest - 1;
+    return closest;
+  }
+
+  /**
+   * Creates the MS/MS spectrum of a feature. The fragments only depend on the feature, so all
+   * MS/MS scans of the same feature contain the same fragments.
+   */
+  private DataPoint[] createFragmentSpectrum(int position, double precursorIntensity,
+      Random random) {
+    final int feature = sampleOrder[position];
+    final double precursorMZ = featureMZ[feature];
+    final Random fragmentRandom = new Random(seed * 7919L + feature);
+    final int numberOfFragments = 5 + fragmentRandom.nextInt(26);
+    DataPoint dataPoints[] = new DataPoint[numberOfFragments];
+    for (int i = 0; i < numberOfFragments; i++) {
+      final double mz =
+          MIN_FRAGMENT_MZ + fragmentRandom.nextDouble() * Math.max(0, precursorMZ - MIN_FRAGMENT_MZ);
+      final double relativeIntensity = fragmentRandom.nextDouble();
+      dataPoints[i] = new SimpleDataPoint(
+          mz * (1.0 + random.nextGaussian() * MZ_ERROR_PPM * 1E-6),
+          relativeIntensity * precursorIntensity * 0.1);
+    }
+    Arrays.sort(dataPoints, Comparator.comparingDouble(DataPoint::getMZ));
+    return dataPoints;
+  }
+
+}
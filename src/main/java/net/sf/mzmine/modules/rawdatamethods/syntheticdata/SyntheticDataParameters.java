@@ -0,0 +1,104 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.syntheticdata;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.datamodel.MassSpectrumType;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.peaklistmethods.peakpicking.shapemodeler.ShapeModel;
+import net.sf.mzmine.parameters.Parameter;
+import net.sf.mzmine.parameters.impl.SimpleParameterSet;
+import net.sf.mzmine.parameters.parametertypes.BooleanParameter;
+import net.sf.mzmine.parameters.parametertypes.ComboParameter;
+import net.sf.mzmine.parameters.parametertypes.DoubleParameter;
+import net.sf.mzmine.parameters.parametertypes.IntegerParameter;
+import net.sf.mzmine.parameters.parametertypes.OptionalParameter;
+import net.sf.mzmine.parameters.parametertypes.StringParameter;
+import net.sf.mzmine.parameters.parametertypes.filenames.DirectoryParameter;
+import net.sf.mzmine.parameters.parametertypes.ranges.DoubleRangeParameter;
+import net.sf.mzmine.parameters.parametertypes.ranges.RTRangeParameter;
+
+public class SyntheticDataParameters extends SimpleParameterSet {
+
+  public static final StringParameter fileName = new StringParameter("File name",
+      "Name of the generated raw data files, the sample number is appended if more than one sample is generated",
+      "synthetic");
+
+  public static final IntegerParameter numberOfSamples = new IntegerParameter("Number of samples",
+      "Number of raw data files to generate. All samples contain the same features.", 1, 1, null);
+
+  public static final IntegerParameter numberOfScans = new IntegerParameter("Number of MS1 scans",
+      "Number of MS1 scans of each raw data file", 2000, 1, null);
+
+  public static final IntegerParameter pointsPerScan = new IntegerParameter("Data points per scan",
+      "Number of data points of each MS1 scan. Profile spectra sample the m/z range with this number of points,"
+          + " centroided spectra are filled up with noise data points to this number.",
+      1000, 1, null);
+
+  public static final ComboParameter<MassSpectrumType> spectrumType =
+      new ComboParameter<MassSpectrumType>("Spectrum type", "Type of the generated MS1 spectra",
+          new MassSpectrumType[] {MassSpectrumType.CENTROIDED, MassSpectrumType.PROFILE},
+          MassSpectrumType.CENTROIDED);
+
+  public static final DoubleRangeParameter mzRange = new DoubleRangeParameter("m/z range",
+      "m/z range of the generated spectra", MZmineCore.getConfiguration().getMZFormat(), true,
+      Range.closed(100.0, 1000.0));
+
+  public static final RTRangeParameter rtRange = new RTRangeParameter("Retention time range",
+      "Retention time range of the generated runs in minutes", true, Range.closed(0.0, 30.0));
+
+  public static final IntegerParameter numberOfFeatures = new IntegerParameter(
+      "Number of features",
+      "Number of features (compounds) with random m/z, retention time and height", 1000, 0, null);
+
+  public static final ComboParameter<ShapeModel> peakModel = new ComboParameter<ShapeModel>(
+      "Peak model", "Chromatographic peak shape of the features",
+      new ShapeModel[] {ShapeModel.Gaussian, ShapeModel.EMG}, ShapeModel.Gaussian);
+
+  public static final DoubleParameter peakWidth = new DoubleParameter("Peak width (min)",
+      "Chromatographic peak width at half maximum (FWHM)", MZmineCore.getConfiguration().getRTFormat(),
+      0.1, 0.0001, null);
+
+  public static final DoubleParameter noiseLevel = new DoubleParameter("Noise level",
+      "Maximum intensity of the random noise", MZmineCore.getConfiguration().getIntensityFormat(),
+      1000.0, 0.0, null);
+
+  public static final DoubleParameter rtDrift = new DoubleParameter("RT drift (min)",
+      "Retention time shift between the first and the last sample. The shift increases linearly with the sample number.",
+      MZmineCore.getConfiguration().getRTFormat(), 0.1, 0.0, null);
+
+  public static final BooleanParameter generateMSMS = new BooleanParameter("Generate MS/MS scans",
+      "If checked, each MS1 scan is followed by an MS/MS scan of the most intense eluting feature",
+      false);
+
+  public static final IntegerParameter seed = new IntegerParameter("Random seed",
+      "Files generated with the same parameters and random seed are identical", 1);
+
+  public static final OptionalParameter<DirectoryParameter> exportFolder =
+      new OptionalParameter<>(new DirectoryParameter("Export to mzML",
+          "If checked, the generated raw data files are also exported to this folder in mzML format"));
+
+  public SyntheticDataParameters() {
+    super(new Parameter[] {fileName, numberOfSamples, numberOfScans, pointsPerScan, spectrumType,
+        mzRange, rtRange, numberOfFeatures, peakModel, peakWidth, noiseLevel, rtDrift, generateMSMS,
+        seed, exportFolder});
+  }
+
+}
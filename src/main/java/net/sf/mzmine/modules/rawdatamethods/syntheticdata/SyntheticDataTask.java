@@ -0,0 +1,137 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.rawdatamethods.syntheticdata;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.RawDataFileWriter;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.rawdatamethods.rawdataexport.RawDataExportTask;
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+
+class SyntheticDataTask extends AbstractTask {
+
+  private Logger logger = Logger.getLogger(this.getClass().getName());
+
+  private final MZmineProject project;
+  private final SyntheticDataGenerator generator;
+  private final File exportFolder;
+
+  private int totalScans, processedScans;
+
+  SyntheticDataTask(MZmineProject project, ParameterSet parameters) {
+    this.project = project;
+    this.generator = new SyntheticDataGenerator(parameters);
+    if (parameters.getParameter(SyntheticDataParameters.exportFolder).getValue())
+      exportFolder = parameters.getParameter(SyntheticDataParameters.exportFolder)
+          .getEmbeddedParameter().getValue();
+    else
+      exportFolder = null;
+  }
+
+  @Override
+  public String getTaskDescription() {
+    return "Generating synthetic data file " + generator.getFileName(0)
+        + (generator.getNumberOfSamples() > 1 ? " and others" : "");
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    if (totalScans == 0)
+      return 0;
+    return (double) processedScans / totalScans;
+  }
+
+  @Override
+  public void run() {
+
+    setStatus(TaskStatus.PROCESSING);
+
+    totalScans = generator.getNumberOfSamples() * generator.getNumberOfScans();
+
+    logger.info("Generating " + generator.getNumberOfSamples() + " synthetic data files with "
+        + generator.getNumberOfFeatures() + " features");
+
+    // File which is being written, discarded if the task is canceled or fails
+    RawDataFileWriter writer = null;
+
+    try {
+
+      for (int sample = 0; sample < generator.getNumberOfSamples(); sample++) {
+
+        final String fileName = generator.getFileName(sample);
+        writer = MZmineCore.createNewFile(fileName);
+
+        for (int scanNumber = 1; scanNumber <= generator.getNumberOfScans(); scanNumber++) {
+          if (isCanceled()) {
+            discardFile(writer);
+            return;
+          }
+          writer.addScan(generator.createScan(sample, scanNumber));
+          processedScans++;
+        }
+
+        RawDataFile dataFile = writer.finishWriting();
+        writer = null;
+        project.addFile(dataFile);
+
+        if (exportFolder != null) {
+          // Export with the raw data export module, which uses the MSDK mzML writer
+          File exportFile = new File(exportFolder, fileName + ".mzML");
+          RawDataExportTask exportTask = new RawDataExportTask(dataFile, exportFile);
+          exportTask.run();
+          if (exportTask.getStatus() == TaskStatus.ERROR) {
+            setStatus(TaskStatus.ERROR);
+            setErrorMessage(exportTask.getErrorMessage());
+            return;
+          }
+        }
+
+      }
+
+    } catch (Exception e) {
+      logger.log(Level.SEVERE, "Error generating synthetic data", e);
+      if (writer != null)
+        discardFile(writer);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage("Error generating synthetic data: " + e.toString());
+      return;
+    }
+
+    logger.info("Finished generating synthetic data files");
+
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+  /**
+   * Closes a partly written file, which deletes its temporary data points file
+   */
+  private void discardFile(RawDataFileWriter writer) {
+    if (writer instanceof RawDataFile)
+      ((RawDataFile) writer).close();
+  }
+
+}
@@ -31,6 +31,7 @@ import org.jfree.data.xy.IntervalXYDataset;
 import com.google.common.primitives.Doubles;
 
 import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.FeatureMatrix;
 import net.sf.mzmine.datamodel.MZmineProject;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -58,11 +59,21 @@ class IntensityPlotDataset extends AbstractDataset
   private Comparable<?> xValues[];
   private RawDataFile selectedFiles[];
   private PeakListRow selectedRows[];
+  private PeakList peakList;
+
+  // Values are taken from the feature matrix of the peak list: matrix row of each selected row,
+  // and matrix columns of the raw data files of each X axis value. The matrix is re-read when the
+  // values are used, which takes constant time unless the peak list changed, and the indexes are
+  // updated when the peak list returns a new matrix.
+  private RawDataFile columnFiles[][];
+  private FeatureMatrix matrix;
+  private int rowIndexes[];
+  private int columnFileIndexes[][];
 
   @SuppressWarnings("rawtypes")
   IntensityPlotDataset(ParameterSet parameters) {
 
-    PeakList peakList = parameters.getParameter(IntensityPlotParameters.peakList).getValue()
+    this.peakList = parameters.getParameter(IntensityPlotParameters.peakList).getValue()
         .getMatchingPeakLists()[0];
     this.xAxisValueSource =
         parameters.getParameter(IntensityPlotParameters.xAxisValueSource).getValue();
@@ -95,23 +106,47 @@ class IntensityPlotDataset extends AbstractDataset
       for (int i = 0; i < selectedFiles.length; i++)
         xValues[i] = selectedFiles[i].getName();
     }
+
+    columnFiles = new RawDataFile[xValues.length][];
+    for (int column = 0; column < xValues.length; column++)
+      columnFiles[column] = getFiles(xValues[column]);
   }
 
-  Feature[] getPeaks(int row, int column) {
-    return getPeaks(xValues[column], selectedRows[row]);
+  /**
+   * Returns the current feature matrix of the peak list, and updates the matrix indexes of the
+   * selected rows and files if the matrix was rebuilt
+   */
+  private synchronized FeatureMatrix getMatrix() {
+    final FeatureMatrix currentMatrix = peakList.getFeatureMatrix();
+    if (currentMatrix == matrix)
+      return matrix;
+
+    int newRowIndexes[] = new int[selectedRows.length];
+    for (int row = 0; row < selectedRows.length; row++)
+      newRowIndexes[row] = currentMatrix.getRowIndex(selectedRows[row]);
+    int newColumnFileIndexes[][] = new int[columnFiles.length][];
+    for (int column = 0; column < columnFiles.length; column++) {
+      newColumnFileIndexes[column] = new int[columnFiles[column].length];
+      for (int i = 0; i < columnFiles[column].length; i++)
+        newColumnFileIndexes[column][i] = currentMatrix.getRawDataFileIndex(columnFiles[column][i]);
+    }
+    rowIndexes = newRowIndexes;
+    columnFileIndexes = newColumnFileIndexes;
+    matrix = currentMatrix;
+    return matrix;
   }
 
-  Feature[] getPeaks(Comparable<?> xValue, PeakListRow row) {
-    RawDataFile files[] = getFiles(xValue);
+  Feature[] getPeaks(int row, int column) {
+    RawDataFile files[] = columnFiles[column];
     Feature[] peaks = new Feature[files.length];
     for (int i = 0; i < files.length; i++) {
-      peaks[i] = row.getPeak(files[i]);
+      peaks[i] = selectedRows[row].getPeak(files[i]);
     }
     return peaks;
   }
 
   RawDataFile[] getFiles(int column) {
-    return getFiles(xValues[column]);
+    return columnFiles[column];
   }
 
   RawDataFile[] getFiles(Comparable<?> xValue) {
@@ -135,20 +170,35 @@ class IntensityPlotDataset extends AbstractDataset
     return null;
   }
 
-  public Number getMeanValue(int row, int column) {
-    Feature[] peaks = getPeaks(xValues[column], selectedRows[row]);
+  /**
+   * Returns the distinct Y axis values of the peaks of given row in the raw data files of given
+   * column
+   */
+  private double[] getYValues(int row, int column) {
+    final int matrixRow;
+    final int fileIndexes[];
+    final FeatureMatrix matrix;
+    synchronized (this) {
+      matrix = getMatrix();
+      matrixRow = rowIndexes[row];
+      fileIndexes = columnFileIndexes[column];
+    }
     HashSet<Double> values = new HashSet<Double>();
-    for (int i = 0; i < peaks.length; i++) {
-      if (peaks[i] == null)
+    for (int file : fileIndexes) {
+      if ((matrixRow < 0) || (file < 0) || !matrix.hasPeak(matrixRow, file))
         continue;
       if (yAxisValueSource == YAxisValueSource.HEIGHT)
-        values.add(peaks[i].getHeight());
+        values.add(matrix.getHeight(matrixRow, file));
       if (yAxisValueSource == YAxisValueSource.AREA)
-        values.add(peaks[i].getArea());
+        values.add(matrix.getArea(matrixRow, file));
       if (yAxisValueSource == YAxisValueSource.RT)
-        values.add(peaks[i].getRT());
+        values.add(matrix.getRT(matrixRow, file));
     }
-    double doubleValues[] = Doubles.toArray(values);
+    return Doubles.toArray(values);
+  }
+
+  public Number getMeanValue(int row, int column) {
+    double doubleValues[] = getYValues(row, column);
     if (doubleValues.length == 0)
       return 0;
     double mean = MathUtils.calcAvg(doubleValues);
@@ -161,24 +211,11 @@ class IntensityPlotDataset extends AbstractDataset
   }
 
   public Number getStdDevValue(int row, int column) {
-    Feature[] peaks = getPeaks(xValues[column], selectedRows[row]);
-
     // if we have only 1 peak, there is no standard deviation
-    if (peaks.length == 1)
+    if (columnFiles[column].length == 1)
       return 0;
 
-    HashSet<Double> values = new HashSet<Double>();
-    for (int i = 0; i < peaks.length; i++) {
-      if (peaks[i] == null)
-        continue;
-      if (yAxisValueSource == YAxisValueSource.HEIGHT)
-        values.add(peaks[i].getHeight());
-      if (yAxisValueSource == YAxisValueSource.AREA)
-        values.add(peaks[i].getArea());
-      if (yAxisValueSource == YAxisValueSource.RT)
-        values.add(peaks[i].getRT());
-    }
-    double doubleValues[] = Doubles.toArray(values);
+    double doubleValues[] = getYValues(row, column);
     double std = MathUtils.calcStd(doubleValues);
     return std;
   }
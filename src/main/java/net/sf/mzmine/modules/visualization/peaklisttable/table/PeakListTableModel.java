@@ -18,6 +18,9 @@
 
 package net.sf.mzmine.modules.visualization.peaklisttable.table;
 
+import java.util.BitSet;
+
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 import net.sf.mzmine.datamodel.Feature;
@@ -35,6 +38,23 @@ public class PeakListTableModel extends AbstractTableModel {
   private static final long serialVersionUID = 1L;
   private PeakList peakList;
 
+  /**
+   * Cache of the numeric columns, built on the first access of each column and cleared whenever
+   * the table data changes. Sorting and painting then read primitive arrays, instead of looking up
+   * the peaks and computing their values again for every call.
+   */
+  private NumericColumn numericColumns[];
+
+  private static class NumericColumn {
+    final double values[];
+    final BitSet nullValues;
+
+    NumericColumn(int size) {
+      values = new double[size];
+      nullValues = new BitSet(size);
+    }
+  }
+
   /**
    * Constructor, assign given dataset to this table
    */
@@ -43,6 +63,12 @@ public class PeakListTableModel extends AbstractTableModel {
 
   }
 
+  @Override
+  public void fireTableChanged(TableModelEvent event) {
+    numericColumns = null;
+    super.fireTableChanged(event);
+  }
+
   public int getColumnCount() {
     return CommonColumnType.values().length
         + peakList.getNumberOfRawDataFiles() * DataFileColumnType.values().length;
@@ -75,6 +101,47 @@ public class PeakListTableModel extends AbstractTableModel {
 
   public Object getValueAt(int row, int col) {
 
+    Class<?> columnClass = getColumnClass(col);
+    if ((columnClass == Double.class) || (columnClass == Integer.class)) {
+      NumericColumn numericColumn = getNumericColumn(col);
+      if (row >= numericColumn.values.length)
+        return computeValueAt(row, col);
+      if (numericColumn.nullValues.get(row))
+        return null;
+      final double value = numericColumn.values[row];
+      if (columnClass == Integer.class)
+        return Integer.valueOf((int) value);
+      return Double.valueOf(value);
+    }
+
+    return computeValueAt(row, col);
+
+  }
+
+  private NumericColumn getNumericColumn(int col) {
+
+    if ((numericColumns == null) || (numericColumns.length != getColumnCount()))
+      numericColumns = new NumericColumn[getColumnCount()];
+
+    NumericColumn numericColumn = numericColumns[col];
+    if (numericColumn == null) {
+      final int rowCount = getRowCount();
+      numericColumn = new NumericColumn(rowCount);
+      for (int row = 0; row < rowCount; row++) {
+        Object value = computeValueAt(row, col);
+        if (value == null)
+          numericColumn.nullValues.set(row);
+        else
+          numericColumn.values[row] = ((Number) value).doubleValue();
+      }
+      numericColumns[col] = numericColumn;
+    }
+    return numericColumn;
+
+  }
+
+  private Object computeValueAt(int row, int col) {
+
     PeakListRow peakListRow = peakList.getRow(row);
 
     if (isCommonColumn(col)) {
@@ -1,16 +1,16 @@
 /*
  * Copyright 2006-2018 The MZmine 2 Development Team
- * 
+ *
  * This file is part of MZmine 2.
- * 
+ *
  * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
  * General Public License as published by the Free Software Foundation; either version 2 of the
  * License, or (at your option) any later version.
- * 
+ *
  * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
  * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
  * General Public License for more details.
- * 
+ *
  * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
  * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
  * USA
@@ -20,12 +20,18 @@ package net.sf.mzmine.modules.visualization.peaklisttable.table;
 
 import java.awt.Color;
 import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.GeneralPath;
 
-import javax.swing.JPanel;
+import javax.swing.JComponent;
 import javax.swing.JTable;
-import javax.swing.OverlayLayout;
 import javax.swing.table.TableCellRenderer;
 
+import com.google.common.collect.Range;
+
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.PeakList;
 import net.sf.mzmine.datamodel.PeakListRow;
@@ -34,12 +40,25 @@ import net.sf.mzmine.modules.visualization.peaklisttable.PeakListTableParameters
 import net.sf.mzmine.modules.visualization.peaklisttable.PeakShapeNormalization;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.util.components.CombinedXICComponent;
+import net.sf.mzmine.util.components.ComponentToolTipManager;
 import net.sf.mzmine.util.components.PeakXICComponent;
+import net.sf.mzmine.util.components.XICThumbnailCache;
+import net.sf.mzmine.util.components.XICThumbnailCache.XICThumbnail;
 
+/**
+ * Renders the peak shapes of single peaks and the combined peak shapes of rows, in the same way as
+ * PeakXICComponent and CombinedXICComponent. The shapes are painted from downsampled thumbnails,
+ * which are built in the background, and one component is reused for all cells.
+ */
 class PeakShapeCellRenderer implements TableCellRenderer {
 
+  // Number of cached peak shapes, enough for many screens of a table with many files
+  private static final int THUMBNAIL_CACHE_SIZE = 100000;
+
   private PeakList peakList;
   private ParameterSet parameters;
+  private XICThumbnailCache thumbnailCache;
+  private final PeakShapeComponent component = new PeakShapeComponent();
 
   PeakShapeCellRenderer(PeakList peakList, ParameterSet parameters) {
     this.peakList = peakList;
@@ -53,8 +72,8 @@ class PeakShapeCellRenderer implements TableCellRenderer {
   public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
       boolean hasFocus, int row, int column) {
 
-    JPanel newPanel = new JPanel();
-    newPanel.setLayout(new OverlayLayout(newPanel));
+    if (thumbnailCache == null)
+      thumbnailCache = new XICThumbnailCache(THUMBNAIL_CACHE_SIZE, table);
 
     Color bgColor;
 
@@ -63,7 +82,8 @@ class PeakShapeCellRenderer implements TableCellRenderer {
     else
       bgColor = table.getBackground();
 
-    newPanel.setBackground(bgColor);
+    component.setBackground(bgColor);
+    component.clear();
 
     if (value instanceof Feature) {
 
@@ -79,18 +99,18 @@ class PeakShapeCellRenderer implements TableCellRenderer {
           maxHeight = peakList.getDataPointMaxIntensity();
           break;
         case ROWMAX:
-          int rowNumber = peakList.getPeakRowNum(peak);
+          int rowNumber = table.convertRowIndexToModel(row);
           maxHeight = peakList.getRow(rowNumber).getDataPointMaxIntensity();
           break;
         default:
           maxHeight = peak.getRawDataPointsIntensityRange().upperEndpoint();
           break;
       }
-      PeakXICComponent xic = new PeakXICComponent(peak, maxHeight);
 
-      newPanel.add(xic);
-
-      newPanel.setToolTipText(xic.getToolTipText());
+      component.setPeaks(new XICThumbnail[] {thumbnailCache.getThumbnail(peak)},
+          new Color[] {PeakXICComponent.XICColor}, peak.getDataFile().getDataRTRange(), maxHeight,
+          true);
+      component.setToolTipText(peak.toString());
 
     }
 
@@ -99,20 +119,125 @@ class PeakShapeCellRenderer implements TableCellRenderer {
       PeakListRow plRow = (PeakListRow) value;
 
       RawDataFile[] dataFiles = peakList.getRawDataFiles();
-      Feature[] peaks = new Feature[dataFiles.length];
+      XICThumbnail thumbnails[] = new XICThumbnail[dataFiles.length];
+      Color colors[] = new Color[dataFiles.length];
+      Range<Double> rtRange = null;
+      double maxIntensity = 0;
       for (int i = 0; i < dataFiles.length; i++) {
-        peaks[i] = plRow.getPeak(dataFiles[i]);
+        colors[i] = CombinedXICComponent.plotColors[i % CombinedXICComponent.plotColors.length];
+        Feature peak = plRow.getPeak(dataFiles[i]);
+        if (peak == null)
+          continue;
+        maxIntensity =
+            Math.max(maxIntensity, peak.getRawDataPointsIntensityRange().upperEndpoint());
+        if (rtRange == null)
+          rtRange = peak.getDataFile().getDataRTRange();
+        else
+          rtRange = rtRange.span(peak.getDataFile().getDataRTRange());
+        if (peak.getScanNumbers().length > 0)
+          thumbnails[i] = thumbnailCache.getThumbnail(peak);
       }
 
-      CombinedXICComponent xic = new CombinedXICComponent(peaks, plRow.getID());
+      component.setPeaks(thumbnails, colors, rtRange, maxIntensity, false);
+
+      // We use the tool tip text as a id for customTooltipProvider
+      component.setToolTipText(ComponentToolTipManager.CUSTOM + plRow.getID());
 
-      newPanel.add(xic);
+    }
 
-      newPanel.setToolTipText(xic.getToolTipText());
+    return component;
+
+  }
+
+  /**
+   * Paints filled peak shapes (single peaks) or peak shape outlines (rows)
+   */
+  private static class PeakShapeComponent extends JComponent {
 
+    private static final long serialVersionUID = 1L;
+
+    private XICThumbnail thumbnails[];
+    private Color colors[];
+    private Range<Double> rtRange;
+    private double maxIntensity;
+    private boolean filled;
+
+    PeakShapeComponent() {
+      setOpaque(true);
+      setBorder(PeakXICComponent.componentBorder);
+    }
+
+    void clear() {
+      thumbnails = null;
+      setToolTipText(null);
+    }
+
+    void setPeaks(XICThumbnail thumbnails[], Color colors[], Range<Double> rtRange,
+        double maxIntensity, boolean filled) {
+      this.thumbnails = thumbnails;
+      this.colors = colors;
+      this.rtRange = rtRange;
+      this.maxIntensity = maxIntensity;
+      this.filled = filled;
     }
 
-    return newPanel;
+    @Override
+    protected void paintComponent(Graphics g) {
+
+      g.setColor(getBackground());
+      g.fillRect(0, 0, getWidth(), getHeight());
+
+      if ((thumbnails == null) || (rtRange == null))
+        return;
+
+      // use Graphics2D for antialiasing
+      Graphics2D g2 = (Graphics2D) g;
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+      Dimension size = getSize();
+      final double rtLen = rtRange.upperEndpoint() - rtRange.lowerEndpoint();
+
+      for (int t = 0; t < thumbnails.length; t++) {
+
+        XICThumbnail thumbnail = thumbnails[t];
+
+        // if we have no data (yet), skip the peak
+        if ((thumbnail == null) || (thumbnail.size() == 0))
+          continue;
+
+        // for each data point, find [X:Y] coordinates of its point in painted image, with an extra
+        // point on the baseline at both ends
+        final int points = thumbnail.size();
+        int xValues[] = new int[points + 2];
+        int yValues[] = new int[points + 2];
+        for (int i = 0; i < points; i++) {
+          xValues[i + 1] = (int) Math.floor(
+              (thumbnail.retentionTimes[i] - rtRange.lowerEndpoint()) / rtLen * (size.width - 1));
+          yValues[i + 1] = size.height
+              - (int) Math.floor(thumbnail.intensities[i] / maxIntensity * (size.height - 1));
+        }
+        xValues[0] = xValues[1];
+        yValues[0] = size.height - 1;
+        xValues[points + 1] = xValues[points];
+        yValues[points + 1] = size.height - 1;
+
+        g2.setColor(colors[t]);
+
+        if (filled) {
+          // same polygon as PeakXICComponent, which starts at the baseline below the first point
+          GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+          path.moveTo(xValues[0], yValues[0]);
+          for (int i = 2; i < xValues.length; i++)
+            path.lineTo(xValues[i], yValues[i]);
+          path.closePath();
+          g2.fill(path);
+        } else {
+          g2.drawPolyline(xValues, yValues, xValues.length);
+        }
+
+      }
+
+    }
 
   }
 
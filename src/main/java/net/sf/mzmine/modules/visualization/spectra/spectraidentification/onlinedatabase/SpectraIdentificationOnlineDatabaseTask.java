@@ -86,7 +86,7 @@ public class SpectraIdentificationOnlineDatabaseTask extends AbstractTask {
 
     db = parameters.getParameter(DATABASE).getValue();
     try {
-      gateway = db.getModule().getGatewayClass().newInstance();
+      gateway = db.getModule().createGateway();
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -24,6 +24,7 @@ import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.MassSpectrumType;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.modules.visualization.twod.IntensityPyramid;
 import net.sf.mzmine.taskcontrol.AbstractTask;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
@@ -115,8 +116,44 @@ class ThreeDSamplingTask extends AbstractTask {
       float[][] intensityValues = new float[1][mzResolution * rtResolution];
       boolean rtDataSet[] = new boolean[rtResolution];
 
+      final double mzStep = (mzRange.upperEndpoint() - mzRange.lowerEndpoint()) / mzResolution;
+
+      // If the intensity pyramid of the MS level of these scans is already built and fine enough,
+      // sample the values from it instead of reading all data points
+      IntensityPyramid pyramid = IntensityPyramid.getIfReady(dataFile, scans);
+      if ((pyramid != null) && (pyramid.getMZBinWidth() <= mzStep)) {
+        final Range<Double> scansRTRange = Range.closed(scans[0].getRetentionTime(),
+            scans[scans.length - 1].getRetentionTime());
+        for (int rtIndex = 0; rtIndex < rtResolution; rtIndex++) {
+
+          if (isCanceled())
+            return;
+
+          double rtMin = rtRange.lowerEndpoint() + (rtIndex * rtStep);
+          Range<Double> rtBinRange = Range.closed(rtMin, rtMin + rtStep);
+
+          for (int mzIndex = 0; mzIndex < mzResolution; mzIndex++) {
+            double mzMin = mzRange.lowerEndpoint() + (mzIndex * mzStep);
+            double intensity = pyramid.getMaxIntensity(rtBinRange,
+                Range.closed(mzMin, mzMin + mzStep), scansRTRange);
+
+            // no scan within this RT bin, will be interpolated
+            if (intensity < 0)
+              break;
+
+            rtDataSet[rtIndex] = true;
+            int intensityValuesIndex = (rtResolution * mzIndex) + rtIndex;
+            intensityValues[0][intensityValuesIndex] = (float) intensity;
+            if (intensity > maxBinnedIntensity)
+              maxBinnedIntensity = intensity;
+          }
+
+        }
+        retrievedScans = scans.length;
+      }
+
       // load scans
-      for (int scanIndex = 0; scanIndex < scans.length; scanIndex++) {
+      for (int scanIndex = retrievedScans; scanIndex < scans.length; scanIndex++) {
 
         if (isCanceled())
           return;
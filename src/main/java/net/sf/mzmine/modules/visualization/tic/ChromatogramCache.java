@@ -0,0 +1,152 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.visualization.tic;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+
+/**
+ * Session-wide cache of calculated chromatograms (TIC, base peak and XIC values). A chromatogram is
+ * identified by its raw data file, the scans and the m/z range. Once a TICDataSet has calculated
+ * the values for a combination, any later data set of the same combination (e.g. when the TIC
+ * visualizer or a preview plot is opened again) is filled from the cache without reading the data
+ * points. The least recently used chromatograms are evicted when the total number of cached values
+ * exceeds MAX_CACHED_SCANS.
+ */
+class ChromatogramCache {
+
+  // Maximum total number of scans in all cached chromatograms (4 doubles each)
+  private static final int MAX_CACHED_SCANS = 2000000;
+
+  private static int cachedScans = 0;
+
+  private static final LinkedHashMap<ChromatogramKey, CachedChromatogram> cache =
+      new LinkedHashMap<ChromatogramKey, CachedChromatogram>(16, 0.75f, true);
+
+  /**
+   * Chromatogram values of one data set
+   */
+  static class CachedChromatogram {
+
+    final double rtValues[], basePeakMZValues[], basePeakIntensityValues[], ticValues[];
+
+    CachedChromatogram(double rtValues[], double basePeakMZValues[],
+        double basePeakIntensityValues[], double ticValues[]) {
+      this.rtValues = rtValues;
+      this.basePeakMZValues = basePeakMZValues;
+      this.basePeakIntensityValues = basePeakIntensityValues;
+      this.ticValues = ticValues;
+    }
+
+    int size() {
+      return rtValues.length;
+    }
+
+  }
+
+  /**
+   * The raw data file is weakly referenced, so the cache does not keep closed files in memory
+   */
+  private static class ChromatogramKey {
+
+    private final WeakReference<RawDataFile> dataFile;
+    private final int scanNumbers[];
+    private final double mzMin, mzMax;
+    private final int hashCode;
+
+    ChromatogramKey(RawDataFile dataFile, Scan scans[], Range<Double> mzRange) {
+      this.dataFile = new WeakReference<RawDataFile>(dataFile);
+      scanNumbers = new int[scans.length];
+      for (int i = 0; i < scans.length; i++)
+        scanNumbers[i] = scans[i].getScanNumber();
+      mzMin = mzRange.lowerEndpoint();
+      mzMax = mzRange.upperEndpoint();
+      hashCode = 31 * (31 * System.identityHashCode(dataFile) + Arrays.hashCode(scanNumbers))
+          + Double.hashCode(mzMin) + 17 * Double.hashCode(mzMax);
+    }
+
+    boolean isStale() {
+      return dataFile.get() == null;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof ChromatogramKey))
+        return false;
+      ChromatogramKey other = (ChromatogramKey) o;
+      RawDataFile file = dataFile.get();
+      return (file != null) && (file == other.dataFile.get()) && (mzMin == other.mzMin)
+          && (mzMax == other.mzMax) && Arrays.equals(scanNumbers, other.scanNumbers);
+    }
+
+  }
+
+  /**
+   * Returns the cached chromatogram, or null if these values were not calculated yet
+   */
+  static synchronized CachedChromatogram getChromatogram(RawDataFile dataFile, Scan scans[],
+      Range<Double> mzRange) {
+    return cache.get(new ChromatogramKey(dataFile, scans, mzRange));
+  }
+
+  static synchronized void putChromatogram(RawDataFile dataFile, Scan scans[],
+      Range<Double> mzRange, CachedChromatogram chromatogram) {
+
+    // Chromatograms larger than the whole cache are not stored
+    if (chromatogram.size() > MAX_CACHED_SCANS)
+      return;
+
+    CachedChromatogram previous =
+        cache.put(new ChromatogramKey(dataFile, scans, mzRange), chromatogram);
+    if (previous != null)
+      cachedScans -= previous.size();
+    cachedScans += chromatogram.size();
+
+    // Remove chromatograms of closed files first, then the least recently used ones
+    Iterator<Map.Entry<ChromatogramKey, CachedChromatogram>> iterator =
+        cache.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<ChromatogramKey, CachedChromatogram> entry = iterator.next();
+      if (entry.getKey().isStale()) {
+        cachedScans -= entry.getValue().size();
+        iterator.remove();
+      }
+    }
+    iterator = cache.entrySet().iterator();
+    while ((cachedScans > MAX_CACHED_SCANS) && iterator.hasNext()) {
+      cachedScans -= iterator.next().getValue().size();
+      iterator.remove();
+    }
+
+  }
+
+}
@@ -31,10 +31,10 @@ import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.visualization.tic.ChromatogramCache.CachedChromatogram;
 import net.sf.mzmine.taskcontrol.Task;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
-import net.sf.mzmine.util.ScanUtils;
 
 /**
  * TIC visualizer data set. One data set is created per file shown in this visualizer. We need to
@@ -321,28 +321,65 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
     // Determine plot type (now done from constructor).
     final TICPlotType plotType = this.plotType;
 
+    // Use the values calculated by a previous data set, if available.
+    final CachedChromatogram cached =
+        ChromatogramCache.getChromatogram(dataFile, scans, mzRange);
+    if (cached != null) {
+
+      for (int index = 0; index < totalScans; index++) {
+
+        basePeakValues[index] = cached.basePeakMZValues[index];
+        rtValues[index] = cached.rtValues[index];
+        final double intensity = plotType == TICPlotType.TIC ? cached.ticValues[index]
+            : cached.basePeakIntensityValues[index];
+        intensityValues[index] = intensity;
+        updateIntensityRange(index, intensity);
+      }
+      processedScans = totalScans;
+      return;
+    }
+
+    final double[] basePeakIntensities = new double[totalScans];
+    final double[] ticValues = new double[totalScans];
+
     // Process each scan.
     for (int index = 0; status != TaskStatus.CANCELED && index < totalScans; index++) {
 
       // Current scan.
       final Scan scan = scans[index];
 
-      // Determine base peak value.
-      final DataPoint basePeak =
-          mzRange.encloses(scan.getDataPointMZRange()) ? scan.getHighestDataPoint()
-              : ScanUtils.findBasePeak(scan, mzRange);
+      // Determine base peak and total ion count, reading the data points at most once.
+      DataPoint basePeak = null;
+      double tic = 0.0;
+      if (mzRange.encloses(scan.getDataPointMZRange())) {
+
+        basePeak = scan.getHighestDataPoint();
+        tic = scan.getTIC();
+
+      } else {
+
+        for (final DataPoint dataPoint : scan.getDataPointsByMass(mzRange)) {
+
+          if (basePeak == null || dataPoint.getIntensity() > basePeak.getIntensity()) {
+            basePeak = dataPoint;
+          }
+          tic += dataPoint.getIntensity();
+        }
+      }
+
       if (basePeak != null) {
 
         basePeakValues[index] = basePeak.getMZ();
+        basePeakIntensities[index] = basePeak.getIntensity();
       }
+      ticValues[index] = tic;
 
       // Determine peak intensity.
       double intensity = 0.0;
       if (plotType == TICPlotType.TIC) {
 
         // Total ion count.
-        intensity = mzRange.encloses(scan.getDataPointMZRange()) ? scan.getTIC()
-            : ScanUtils.calculateTIC(scan, mzRange);
+        intensity = tic;
 
       } else if (plotType == TICPlotType.BASEPEAK && basePeak != null) {
 
@@ -353,16 +390,7 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
       rtValues[index] = scan.getRetentionTime();
 
       // Update min and max.
-      if (index == 0) {
-
-        intensityMin = intensity;
-        intensityMax = intensity;
-
-      } else {
-
-        intensityMin = Math.min(intensity, intensityMin);
-        intensityMax = Math.max(intensity, intensityMax);
-      }
+      updateIntensityRange(index, intensity);
 
       processedScans++;
 
@@ -376,6 +404,27 @@ public class TICDataSet extends AbstractXYZDataset implements Task {
         }
       }
     }
+
+    // Remember the values for other data sets of the same file, scans and m/z range.
+    if (status != TaskStatus.CANCELED) {
+
+      ChromatogramCache.putChromatogram(dataFile, scans, mzRange, new CachedChromatogram(
+          rtValues.clone(), basePeakValues.clone(), basePeakIntensities, ticValues));
+    }
+  }
+
+  private void updateIntensityRange(final int index, final double intensity) {
+
+    if (index == 0) {
+
+      intensityMin = intensity;
+      intensityMax = intensity;
+
+    } else {
+
+      intensityMin = Math.min(intensity, intensityMin);
+      intensityMax = Math.max(intensity, intensityMax);
+    }
   }
 
   /**
@@ -0,0 +1,537 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.visualization.twod;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.Range;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.taskcontrol.TaskPriority;
+
+/**
+ * Multi-resolution intensity map of all scans of one MS level. Level 0 contains, for each scan,
+ * the maximum intensity in each of a fixed number of equally sized m/z bins. Every following level
+ * halves the resolution on both the RT and the m/z axis by taking the maximum of 2x2 cells of the
+ * previous level. The cells are kept in a memory-mapped temporary file (mzmine*.pyramid), so the
+ * heap usage does not depend on the size of the raw data file.
+ *
+ * The pyramid is built once per raw data file and MS level by IntensityPyramidBuildTask and is
+ * shared by all visualizers showing scans of that level. A visualizer can use the pyramid if its
+ * scans are a consecutive run of the scans of one MS level, e.g. all MS1 scans within an RT range;
+ * it then queries the pyramid within the RT range of its scans. A maximum intensity query covers
+ * the queried area with the largest cells which lie completely inside of it, so only few cells are
+ * read.
+ *
+ * The pyramids of a raw data file are discarded together with their temporary files when the file
+ * is closed, or when it is garbage collected. The pyramids themselves do not reference the file or
+ * its scans.
+ */
+public class IntensityPyramid {
+
+  private static final Logger logger = Logger.getLogger(IntensityPyramid.class.getName());
+
+  // Maximum number of m/z bins on level 0
+  private static final int MAX_MZ_BINS = 4096;
+
+  // Pyramids which are already built or being built, per raw data file
+  private static final List<FilePyramids> pyramids = new ArrayList<FilePyramids>();
+
+  // Receives the references of garbage collected raw data files
+  private static final ReferenceQueue<RawDataFile> collectedFiles =
+      new ReferenceQueue<RawDataFile>();
+
+  /**
+   * Pyramids of one raw data file, which is only weakly referenced
+   */
+  private static class FilePyramids extends WeakReference<RawDataFile> {
+
+    private final List<IntensityPyramid> filePyramids = new ArrayList<IntensityPyramid>();
+
+    FilePyramids(RawDataFile dataFile) {
+      super(dataFile, collectedFiles);
+    }
+
+  }
+
+  private final String dataFileName;
+  private final int msLevel;
+  private final int scanNumbers[];
+  private final double retentionTimes[];
+
+  private final double mzMin, mzBinWidth;
+  private final int mzBins;
+
+  private int levelWidths[], levelHeights[];
+  private FloatBuffer levels[];
+
+  private File pyramidFileName;
+  private RandomAccessFile pyramidFile;
+
+  private volatile boolean ready = false;
+  private final List<Runnable> readyListeners = new ArrayList<Runnable>();
+
+  private IntensityPyramid(RawDataFile dataFile, int msLevel, Scan scans[]) {
+
+    this.dataFileName = dataFile.getName();
+    this.msLevel = msLevel;
+
+    scanNumbers = new int[scans.length];
+    retentionTimes = new double[scans.length];
+    Range<Double> mzRange = null;
+    for (int i = 0; i < scans.length; i++) {
+      scanNumbers[i] = scans[i].getScanNumber();
+      retentionTimes[i] = scans[i].getRetentionTime();
+      Range<Double> scanMZRange = scans[i].getDataPointMZRange();
+      if (scanMZRange == null)
+        continue;
+      mzRange = (mzRange == null) ? scanMZRange : mzRange.span(scanMZRange);
+    }
+    if (mzRange == null)
+      mzRange = Range.singleton(0.0);
+
+    // Keep a single level within the 2 GB limit of one mapped buffer
+    int bins = MAX_MZ_BINS;
+    while ((bins > 1) && ((long) bins * Math.max(1, scans.length) * 4 > Integer.MAX_VALUE))
+      bins /= 2;
+    mzBins = bins;
+
+    mzMin = mzRange.lowerEndpoint();
+    double width = (mzRange.upperEndpoint() - mzMin) / mzBins;
+    mzBinWidth = (width > 0) ? width : 1.0;
+
+  }
+
+  /**
+   * Returns the pyramid of the MS level of given scans, or null if the scans are not a consecutive
+   * run of the scans of one MS level. If the pyramid does not exist yet, it is created and its
+   * building is started in the background. Use isReady() or addReadyListener() to find out when
+   * the returned pyramid can be queried.
+   */
+  public static synchronized IntensityPyramid getPyramid(RawDataFile dataFile, Scan scans[]) {
+
+    if (!isConsecutiveRun(dataFile, scans))
+      return null;
+    final int msLevel = scans[0].getMSLevel();
+
+    IntensityPyramid pyramid = findPyramid(dataFile, msLevel);
+    if (pyramid != null)
+      return pyramid;
+
+    FilePyramids filePyramids = findFilePyramids(dataFile);
+    if (filePyramids == null) {
+      filePyramids = new FilePyramids(dataFile);
+      pyramids.add(filePyramids);
+    }
+
+    final int levelScanNumbers[] = dataFile.getScanNumbers(msLevel);
+    final Scan levelScans[] = new Scan[levelScanNumbers.length];
+    for (int i = 0; i < levelScanNumbers.length; i++)
+      levelScans[i] = dataFile.getScan(levelScanNumbers[i]);
+
+    IntensityPyramid newPyramid = new IntensityPyramid(dataFile, msLevel, levelScans);
+    filePyramids.filePyramids.add(newPyramid);
+    MZmineCore.getTaskController().addTask(new IntensityPyramidBuildTask(newPyramid, levelScans),
+        TaskPriority.NORMAL);
+    return newPyramid;
+
+  }
+
+  /**
+   * Returns the pyramid of the MS level of given scans if it is already built and the scans are a
+   * consecutive run of the scans of one MS level, otherwise null. Unlike getPyramid(), this method
+   * never starts building a new pyramid.
+   */
+  public static synchronized IntensityPyramid getIfReady(RawDataFile dataFile, Scan scans[]) {
+    if (!isConsecutiveRun(dataFile, scans))
+      return null;
+    IntensityPyramid pyramid = findPyramid(dataFile, scans[0].getMSLevel());
+    if ((pyramid == null) || (!pyramid.isReady()))
+      return null;
+    return pyramid;
+  }
+
+  /**
+   * Returns true if given scans are exactly the scans of one MS level within their RT range, so
+   * the pyramid of that level, queried within the RT range of the scans, covers exactly these
+   * scans
+   */
+  private static boolean isConsecutiveRun(RawDataFile dataFile, Scan scans[]) {
+    if (scans.length == 0)
+      return false;
+    final int levelScanNumbers[] = dataFile.getScanNumbers(scans[0].getMSLevel());
+    final int start = Arrays.binarySearch(levelScanNumbers, scans[0].getScanNumber());
+    if ((start < 0) || (start + scans.length > levelScanNumbers.length))
+      return false;
+    for (int i = 0; i < scans.length; i++) {
+      if (levelScanNumbers[start + i] != scans[i].getScanNumber())
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Discards all pyramids of given raw data file and deletes their files. Called when the raw data
+   * file is closed.
+   */
+  public static synchronized void discardPyramids(RawDataFile dataFile) {
+    FilePyramids filePyramids = findFilePyramids(dataFile);
+    if (filePyramids == null)
+      return;
+    pyramids.remove(filePyramids);
+    for (IntensityPyramid pyramid : filePyramids.filePyramids)
+      pyramid.close();
+  }
+
+  /**
+   * Forgets the given pyramid, e.g. because its building was canceled, and deletes its file.
+   */
+  static synchronized void discard(IntensityPyramid pyramid) {
+    for (FilePyramids filePyramids : pyramids)
+      filePyramids.filePyramids.remove(pyramid);
+    pyramid.close();
+  }
+
+  private static IntensityPyramid findPyramid(RawDataFile dataFile, int msLevel) {
+
+    FilePyramids filePyramids = findFilePyramids(dataFile);
+    if (filePyramids == null)
+      return null;
+
+    for (IntensityPyramid pyramid : filePyramids.filePyramids) {
+      if (pyramid.msLevel == msLevel)
+        return pyramid;
+    }
+    return null;
+
+  }
+
+  private static FilePyramids findFilePyramids(RawDataFile dataFile) {
+
+    // Discard the pyramids of garbage collected files first
+    FilePyramids collected;
+    while ((collected = (FilePyramids) collectedFiles.poll()) != null) {
+      pyramids.remove(collected);
+      for (IntensityPyramid pyramid : collected.filePyramids)
+        pyramid.close();
+    }
+
+    for (FilePyramids filePyramids : pyramids) {
+      if (filePyramids.get() == dataFile)
+        return filePyramids;
+    }
+    return null;
+
+  }
+
+  String getDataFileName() {
+    return dataFileName;
+  }
+
+  int getNumberOfScans() {
+    return scanNumbers.length;
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Width of the m/z bins of the finest level. Areas narrower than this cannot be answered from the
+   * pyramid.
+   */
+  public double getMZBinWidth() {
+    return mzBinWidth;
+  }
+
+  /**
+   * Registers a listener which is run once the pyramid has been built. If the pyramid is already
+   * built, the listener is run immediately.
+   */
+  public void addReadyListener(Runnable listener) {
+    synchronized (readyListeners) {
+      if (!ready) {
+        readyListeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  /**
+   * Fills the level 0 from the given scan. Called by IntensityPyramidBuildTask for each scan index,
+   * after allocate().
+   */
+  void addScan(int scanIndex, Scan scan) {
+
+    final int height = levelHeights[0];
+    final float row[] = new float[height];
+    final DataPoint dataPoints[] = scan.getDataPoints();
+
+    for (DataPoint dp : dataPoints) {
+      int bin = (int) ((dp.getMZ() - mzMin) / mzBinWidth);
+      if (bin < 0)
+        bin = 0;
+      if (bin >= height)
+        bin = height - 1;
+      if (dp.getIntensity() > row[bin])
+        row[bin] = (float) dp.getIntensity();
+    }
+
+    synchronized (this) {
+
+      // Discarded in the meantime
+      if (levels == null)
+        return;
+
+      final FloatBuffer level = levels[0];
+      final int offset = scanIndex * height;
+      for (int i = 0; i < height; i++)
+        level.put(offset + i, row[i]);
+
+    }
+
+  }
+
+  /**
+   * Creates the temporary file and maps all the levels into memory
+   */
+  synchronized void allocate() throws IOException {
+
+    List<Integer> widths = new ArrayList<Integer>();
+    List<Integer> heights = new ArrayList<Integer>();
+    int width = Math.max(1, scanNumbers.length), height = mzBins;
+    widths.add(width);
+    heights.add(height);
+    while ((width > 1) || (height > 1)) {
+      width = (width + 1) / 2;
+      height = (height + 1) / 2;
+      widths.add(width);
+      heights.add(height);
+    }
+
+    levelWidths = new int[widths.size()];
+    levelHeights = new int[heights.size()];
+    levels = new FloatBuffer[widths.size()];
+
+    pyramidFileName = File.createTempFile("mzmine", ".pyramid");
+    pyramidFileName.deleteOnExit();
+    pyramidFile = new RandomAccessFile(pyramidFileName, "rw");
+
+    FileChannel fileChannel = pyramidFile.getChannel();
+
+    // Lock the file, so it is not removed by TmpFileCleanup of another MZmine instance
+    try {
+      fileChannel.lock();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to lock the file " + pyramidFileName, e);
+    }
+
+    long offset = 0;
+    for (int i = 0; i < levels.length; i++) {
+      levelWidths[i] = widths.get(i);
+      levelHeights[i] = heights.get(i);
+      long size = (long) levelWidths[i] * levelHeights[i] * 4;
+      levels[i] = fileChannel.map(MapMode.READ_WRITE, offset, size).asFloatBuffer();
+      offset += size;
+    }
+
+  }
+
+  /**
+   * Calculates the coarser levels from level 0 and marks the pyramid as ready
+   */
+  void finish() {
+
+    synchronized (this) {
+
+      // Discarded in the meantime
+      if (levels == null)
+        return;
+
+      for (int l = 1; l < levels.length; l++) {
+        final FloatBuffer prev = levels[l - 1], cur = levels[l];
+        final int prevWidth = levelWidths[l - 1], prevHeight = levelHeights[l - 1];
+        final int width = levelWidths[l], height = levelHeights[l];
+        for (int r = 0; r < width; r++) {
+          for (int m = 0; m < height; m++) {
+            float max = 0;
+            for (int pr = 2 * r; (pr <= 2 * r + 1) && (pr < prevWidth); pr++) {
+              for (int pm = 2 * m; (pm <= 2 * m + 1) && (pm < prevHeight); pm++) {
+                float value = prev.get(pr * prevHeight + pm);
+                if (value > max)
+                  max = value;
+              }
+            }
+            cur.put(r * height + m, max);
+          }
+        }
+      }
+
+    }
+
+    List<Runnable> listeners;
+    synchronized (readyListeners) {
+      ready = true;
+      listeners = new ArrayList<Runnable>(readyListeners);
+      readyListeners.clear();
+    }
+    for (Runnable listener : listeners)
+      listener.run();
+
+  }
+
+  /**
+   * Returns the maximum intensity within given RT and m/z range, or -1 if the pyramid cannot answer
+   * this query (it is not ready yet, the range does not contain any scan or the m/z range is
+   * narrower than the finest m/z bin). In that case the caller has to read the data points.
+   *
+   * All scans within the RT range are considered exactly. On the m/z axis, the range is resolved to
+   * the bins of level 0, so data points up to one bin width outside of the m/z range may be
+   * included. Cells of coarser levels are only used where they lie completely inside the queried
+   * bins and scans.
+   */
+  public double getMaxIntensity(Range<Double> rtRange, Range<Double> mzRange) {
+
+    if (!ready)
+      return -1;
+
+    final double mzLower = mzRange.lowerEndpoint(), mzUpper = mzRange.upperEndpoint();
+    if (mzUpper - mzLower < mzBinWidth)
+      return -1;
+
+    int startScanIndex = Arrays.binarySearch(retentionTimes, rtRange.lowerEndpoint());
+    if (startScanIndex < 0)
+      startScanIndex = (startScanIndex * -1) - 1;
+    int endScanIndex = Arrays.binarySearch(retentionTimes, rtRange.upperEndpoint());
+    if (endScanIndex < 0)
+      endScanIndex = (endScanIndex * -1) - 2;
+    if (startScanIndex > endScanIndex)
+      return -1;
+
+    final int height = levelHeights[0];
+    int startBin = (int) Math.floor((mzLower - mzMin) / mzBinWidth);
+    int endBin = (int) Math.floor((mzUpper - mzMin) / mzBinWidth);
+    if ((endBin < 0) || (startBin >= height))
+      return 0;
+    startBin = Math.max(startBin, 0);
+    endBin = Math.min(endBin, height - 1);
+
+    synchronized (this) {
+      if (levels == null)
+        return -1;
+      return getMaxIntensity(startScanIndex, endScanIndex, startBin, endBin);
+    }
+
+  }
+
+  /**
+   * Same as getMaxIntensity(rtRange, mzRange), but only considers the scans within scansRTRange,
+   * which is usually the RT range of the scans shown by the caller
+   */
+  public double getMaxIntensity(Range<Double> rtRange, Range<Double> mzRange,
+      Range<Double> scansRTRange) {
+    if (!rtRange.isConnected(scansRTRange))
+      return -1;
+    return getMaxIntensity(rtRange.intersection(scansRTRange), mzRange);
+  }
+
+  /**
+   * Returns the maximum of the level 0 cells within given scan and bin indexes (inclusive). The
+   * inner part of the area is read from the coarsest level whose aligned cells fit inside the area,
+   * the remaining border strips are read recursively from finer levels.
+   */
+  private float getMaxIntensity(int startScan, int endScan, int startBin, int endBin) {
+
+    if ((startScan > endScan) || (startBin > endBin))
+      return 0;
+
+    // Find the coarsest level with at least one cell completely inside the area
+    int level = 0;
+    while (level + 1 < levels.length) {
+      final int next = level + 1;
+      if ((ceilShift(startScan, next) >= ((endScan + 1) >> next))
+          || (ceilShift(startBin, next) >= ((endBin + 1) >> next)))
+        break;
+      level = next;
+    }
+
+    final int firstRow = ceilShift(startScan, level), lastRow = ((endScan + 1) >> level) - 1;
+    final int firstCol = ceilShift(startBin, level), lastCol = ((endBin + 1) >> level) - 1;
+
+    final FloatBuffer cells = levels[level];
+    final int levelHeight = levelHeights[level];
+    float max = 0;
+    for (int r = firstRow; r <= lastRow; r++) {
+      final int offset = r * levelHeight;
+      for (int m = firstCol; m <= lastCol; m++) {
+        float value = cells.get(offset + m);
+        if (value > max)
+          max = value;
+      }
+    }
+
+    if (level == 0)
+      return max;
+
+    // Border strips which are not covered by the cells of this level
+    final int innerStartScan = firstRow << level, innerEndScan = ((lastRow + 1) << level) - 1;
+    final int innerStartBin = firstCol << level, innerEndBin = ((lastCol + 1) << level) - 1;
+    max = Math.max(max, getMaxIntensity(startScan, innerStartScan - 1, startBin, endBin));
+    max = Math.max(max, getMaxIntensity(innerEndScan + 1, endScan, startBin, endBin));
+    max = Math.max(max,
+        getMaxIntensity(innerStartScan, innerEndScan, startBin, innerStartBin - 1));
+    max = Math.max(max, getMaxIntensity(innerStartScan, innerEndScan, innerEndBin + 1, endBin));
+
+    return max;
+
+  }
+
+  private static int ceilShift(int value, int shift) {
+    return (value + (1 << shift) - 1) >> shift;
+  }
+
+  private synchronized void close() {
+    levels = null;
+    try {
+      if (pyramidFile != null)
+        pyramidFile.close();
+      if (pyramidFileName != null)
+        pyramidFileName.delete();
+    } catch (IOException e) {
+      logger.warning("Could not close file " + pyramidFileName + ": " + e.toString());
+    }
+  }
+
+}
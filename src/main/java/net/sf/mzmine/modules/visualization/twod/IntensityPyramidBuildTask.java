@@ -0,0 +1,94 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.visualization.twod;
+
+import java.util.logging.Logger;
+
+import net.sf.mzmine.datamodel.Scan;
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.ExceptionUtils;
+
+/**
+ * Reads all scans of an IntensityPyramid once and builds its levels
+ */
+class IntensityPyramidBuildTask extends AbstractTask {
+
+  private Logger logger = Logger.getLogger(this.getClass().getName());
+
+  private final IntensityPyramid pyramid;
+  private final Scan scans[];
+  private final int totalScans;
+  private int processedScans = 0;
+
+  IntensityPyramidBuildTask(IntensityPyramid pyramid, Scan scans[]) {
+    this.pyramid = pyramid;
+    this.scans = scans;
+    this.totalScans = pyramid.getNumberOfScans();
+  }
+
+  @Override
+  public String getTaskDescription() {
+    return "Building intensity pyramid of " + pyramid.getDataFileName();
+  }
+
+  @Override
+  public double getFinishedPercentage() {
+    if (totalScans == 0)
+      return 0;
+    return (double) processedScans / totalScans;
+  }
+
+  @Override
+  public void run() {
+
+    setStatus(TaskStatus.PROCESSING);
+
+    logger.info("Started building intensity pyramid of " + pyramid.getDataFileName());
+
+    try {
+
+      pyramid.allocate();
+
+      for (int scanIndex = 0; scanIndex < totalScans; scanIndex++) {
+        if (isCanceled()) {
+          IntensityPyramid.discard(pyramid);
+          return;
+        }
+        pyramid.addScan(scanIndex, scans[scanIndex]);
+        processedScans++;
+      }
+
+      pyramid.finish();
+
+    } catch (Throwable e) {
+      IntensityPyramid.discard(pyramid);
+      setStatus(TaskStatus.ERROR);
+      setErrorMessage(
+          "Error while building intensity pyramid, " + ExceptionUtils.exceptionToString(e));
+      return;
+    }
+
+    logger.info("Finished building intensity pyramid of " + pyramid.getDataFileName());
+
+    setStatus(TaskStatus.FINISHED);
+
+  }
+
+}
@@ -51,6 +51,11 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
   private TaskStatus status = TaskStatus.WAITING;
 
+  // Precomputed intensity maxima of the MS level of the scans, null if the scans are not a
+  // consecutive run of one MS level. Used once built, the plot stays empty until then.
+  private final IntensityPyramid pyramid;
+  private final Range<Double> scansRTRange;
+
   public double curMaxIntensity;
   private ArrayList<Double> rtValuesInUserRange;
 
@@ -72,6 +77,19 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
     retentionTimes = new double[totalScans];
     basePeaks = new double[totalScans];
 
+    pyramid = IntensityPyramid.getPyramid(rawDataFile, scans);
+    if (pyramid != null) {
+      scansRTRange = Range.closed(scans[0].getRetentionTime(),
+          scans[totalScans - 1].getRetentionTime());
+      pyramid.addReadyListener(new Runnable() {
+        public void run() {
+          fireDatasetChanged();
+        }
+      });
+    } else {
+      scansRTRange = null;
+    }
+
     MZmineCore.getTaskController().addTask(this, TaskPriority.HIGH);
 
 
@@ -92,8 +110,11 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
       DataPoint scanBasePeak = scan.getHighestDataPoint();
       retentionTimes[index] = scan.getRetentionTime();
       basePeaks[index] = (scanBasePeak == null ? 0 : scanBasePeak.getIntensity());
-      DataPoint scanDataPoints[] = scan.getDataPoints();
-      dataPointMatrix[index] = new SoftReference<DataPoint[]>(scanDataPoints);
+
+      // With a pyramid, data points are only read when zoomed in beyond its resolution. The scans
+      // are not read while the pyramid is being built, the build task reads them already.
+      if (pyramid == null)
+        getDataPoints(index);
       processedScans++;
     }
 
@@ -151,6 +172,23 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
   double upperEndpointIntensity(Range<Double> rtRange, Range<Double> mzRange, PlotMode plotMode) {
 
+    if (pyramid != null) {
+
+      // Wait for the pyramid instead of reading the scans at the same time as its build task.
+      // The plot is repainted when the pyramid is ready.
+      if (!pyramid.isReady())
+        return 0;
+
+      // Use the pyramid, unless we are zoomed in beyond its resolution. The pyramid only contains
+      // the maxima of the data points, so continuous mode always interpolates from the scans.
+      if (plotMode == PlotMode.CENTROID) {
+        double pyramidIntensity = pyramid.getMaxIntensity(rtRange, mzRange, scansRTRange);
+        if (pyramidIntensity >= 0)
+          return pyramidIntensity;
+      }
+
+    }
+
     double maxIntensity = 0;
 
     double searchRetentionTimes[] = retentionTimes;
@@ -243,7 +281,7 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
     for (int scanIndex = startScanIndex; ((scanIndex < searchRetentionTimes.length)
         && (searchRetentionTimes[scanIndex] <= rtRange.upperEndpoint())); scanIndex++) {
       // get the list of data points
-      DataPoint dataPoints[] = dataPointMatrix[scanIndex].get();
+      DataPoint dataPoints[] = getDataPoints(scanIndex);
       // Binary search for the mz values in the range you want
 
       DataPoint searchMZ = new SimpleDataPoint(mzRange.lowerEndpoint(), 0);
@@ -285,13 +323,22 @@ class TwoDDataSet extends AbstractXYDataset implements Task {
 
   private double upperEndpointIntensity(int dataPointMatrixIndex, Range<Double> mzRange,
       PlotMode plotMode) {
-    DataPoint dataPoints[] = dataPointMatrix[dataPointMatrixIndex].get();
+    DataPoint dataPoints[] = getDataPoints(dataPointMatrixIndex);
+    return upperEndpointIntensity(dataPoints, mzRange, plotMode);
+  }
+
+  /**
+   * Returns the data points of given scan, reading them again if they were garbage collected
+   */
+  private DataPoint[] getDataPoints(int dataPointMatrixIndex) {
+    SoftReference<DataPoint[]> reference = dataPointMatrix[dataPointMatrixIndex];
+    DataPoint dataPoints[] = (reference == null) ? null : reference.get();
     if (dataPoints == null) {
       Scan scan = scans[dataPointMatrixIndex];
       dataPoints = scan.getDataPoints();
       dataPointMatrix[dataPointMatrixIndex] = new SoftReference<DataPoint[]>(dataPoints);
     }
-    return upperEndpointIntensity(dataPoints, mzRange, plotMode);
+    return dataPoints;
   }
 
   private double upperEndpointIntensity(DataPoint dataPoints[], Range<Double> mzRange,
@@ -36,7 +36,9 @@ import net.sf.mzmine.desktop.impl.projecttree.PeakListTreeModel;
 import net.sf.mzmine.desktop.impl.projecttree.ProjectTree;
 import net.sf.mzmine.desktop.impl.projecttree.RawDataTreeModel;
 import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.modules.visualization.twod.IntensityPyramid;
 import net.sf.mzmine.parameters.UserParameter;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 
 /**
  * This class represents a MZmine project. That includes raw data files, peak lists and parameters.
@@ -178,6 +180,7 @@ public class MZmineProjectImpl implements MZmineProject {
 
     // Close the data file, which also removed the temporary data
     file.close();
+    IntensityPyramid.discardPyramids(file);
 
   }
 
@@ -207,6 +210,8 @@ public class MZmineProjectImpl implements MZmineProject {
       e.printStackTrace();
     }
 
+    TaskMetrics.recordRowsProduced(peakList.getNumberOfRows());
+
     // Notify listeners
     for (MZmineProjectListener listener : listeners) {
       listener.peakListAdded(peakList);
@@ -25,8 +25,10 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoadModule;
 import net.sf.mzmine.modules.projectmethods.projectload.ProjectLoaderParameters;
+import net.sf.mzmine.modules.visualization.twod.IntensityPyramid;
 import net.sf.mzmine.parameters.ParameterSet;
 import net.sf.mzmine.project.ProjectManager;
+import net.sf.mzmine.util.JMXUtils;
 
 /**
  * Project manager implementation
@@ -43,6 +45,9 @@ public class ProjectManagerImpl implements ProjectManager {
   public void initModule() {
     currentProject = new MZmineProjectImpl();
     myInstance = this;
+
+    // Expose the temporary file statistics for monitoring tools
+    JMXUtils.registerMBean(new RawDataStorageMonitor(), "RawDataStorage");
   }
 
   public MZmineProject getCurrentProject() {
@@ -50,15 +55,24 @@ public class ProjectManagerImpl implements ProjectManager {
   }
 
   public void setCurrentProject(MZmineProject project) {
+    setCurrentProject(project, true);
+  }
+
+  /**
+   * Replaces the current project. If closeDataFiles is false, the data files of the previous project
+   * are kept open, so they can be moved to another project.
+   */
+  public void setCurrentProject(MZmineProject project, boolean closeDataFiles) {
 
     if (project == currentProject)
       return;
 
     // Close previous data files
-    if (currentProject != null) {
+    if ((currentProject != null) && closeDataFiles) {
       RawDataFile prevDataFiles[] = currentProject.getDataFiles();
       for (RawDataFile prevDataFile : prevDataFiles) {
         prevDataFile.close();
+        IntensityPyramid.discardPyramids(prevDataFile);
       }
     }
 
@@ -31,6 +31,8 @@ import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +43,9 @@ import net.sf.mzmine.datamodel.RawDataFile;
 import net.sf.mzmine.datamodel.RawDataFileWriter;
 import net.sf.mzmine.datamodel.Scan;
 import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+import net.sf.mzmine.util.jfr.JFRUtils;
+import net.sf.mzmine.util.jfr.ScanReadEvent;
 
 import com.google.common.collect.Range;
 import com.google.common.primitives.Ints;
@@ -54,6 +59,9 @@ import com.google.common.primitives.Ints;
  * removeStoredDataPoints(), the dataPointsFile is not modified, the storage ID is just deleted from
  * the two TreeMaps. When the project is saved, the contents of the dataPointsFile are consolidated
  * - only data points referenced by the TreeMaps are saved (see the RawDataFileSaveHandler class).
+ * The space occupied by removed data points (dead bytes) is reclaimed by compactDataPointsFile(),
+ * which is started by TempFileCompactionModule.compactIfNeeded() after mass lists were removed, when
+ * the dead space exceeds the threshold set in the preferences.
  */
 public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
@@ -79,6 +87,18 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
    */
   private final Hashtable<Integer, StorableScan> scans;
 
+  // Storage statistics for monitoring, see RawDataStorageMXBean
+  private static final AtomicLong totalReads = new AtomicLong();
+  private long numOfReads, numOfRemovedStorageIDs;
+  private final AtomicLong cacheHits = new AtomicLong(), cacheMisses = new AtomicLong();
+
+  // Bytes of the data points referenced by the TreeMaps, -1 if not known
+  private long liveBytes = 0;
+
+  // Compaction of the data points file, see compactDataPointsFile()
+  private final Object compactionLock = new Object();
+  private final AtomicBoolean compactionPending = new AtomicBoolean(false);
+
   public RawDataFileImpl(String dataFileName) throws IOException {
 
     this.dataFileName = dataFileName;
@@ -127,22 +147,33 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     }
 
     this.dataPointsFileName = dataPointsFileName;
-    this.dataPointsFile = new RandomAccessFile(dataPointsFileName, "rw");
+    this.dataPointsFile = openTemporaryFile(dataPointsFileName);
+
+    // The data points in the file are not known yet
+    liveBytes = -1;
+
+  }
+
+  private RandomAccessFile openTemporaryFile(File fileName) throws IOException {
+
+    RandomAccessFile file = new RandomAccessFile(fileName, "rw");
 
     // Locks the temporary file so it is not removed when another instance
     // of MZmine is starting. Lock will be automatically released when this
     // instance of MZmine exits. Locking may fail on network-mounted filesystems.
     try {
-      FileChannel fileChannel = dataPointsFile.getChannel();
+      FileChannel fileChannel = file.getChannel();
       fileChannel.lock();
     } catch (IOException e) {
-      logger.log(Level.WARNING, "Failed to lock the file " + dataPointsFileName, e);
+      logger.log(Level.WARNING, "Failed to lock the file " + fileName, e);
     }
 
     // Unfortunately, deleteOnExit() doesn't work on Windows, see JDK
     // bug #4171239. We will try to remove the temporary files in a
     // shutdown hook registered in the main.ShutDownHook class
-    dataPointsFileName.deleteOnExit();
+    fileName.deleteOnExit();
+
+    return file;
 
   }
 
@@ -164,6 +195,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
    * @see net.sf.mzmine.datamodel.RawDataFile#getScanNumbers(int)
    */
   public @Nonnull int[] getScanNumbers(int msLevel) {
+    recordCacheAccess(scanNumbersCache.containsKey(msLevel));
     if (scanNumbersCache.containsKey(msLevel))
       return scanNumbersCache.get(msLevel);
     Range<Double> all = Range.all();
@@ -200,6 +232,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
    */
   public @Nonnull int[] getScanNumbers() {
 
+    recordCacheAccess(scanNumbersCache.containsKey(0));
     if (scanNumbersCache.containsKey(0))
       return scanNumbersCache.get(0);
 
@@ -239,6 +272,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     // check if we have this value already cached
     Double maxBasePeak = dataMaxBasePeakIntensity.get(msLevel);
+    recordCacheAccess(maxBasePeak != null);
     if (maxBasePeak != null)
       return maxBasePeak;
 
@@ -278,6 +312,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     // check if we have this value already cached
     Double maxTIC = dataMaxTIC.get(msLevel);
+    recordCacheAccess(maxTIC != null);
     if (maxTIC != null)
       return maxTIC.doubleValue();
 
@@ -346,6 +381,9 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
     dataPointsOffsets.put(currentID, currentOffset);
     dataPointsLengths.put(currentID, numOfDataPoints);
 
+    if (liveBytes >= 0)
+      liveBytes += numOfBytes;
+
     return currentID;
 
   }
@@ -361,6 +399,12 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     final int numOfBytes = numOfDataPoints * 2 * 4;
 
+    ScanReadEvent event = null;
+    if (JFRUtils.isAvailable()) {
+      event = new ScanReadEvent();
+      event.begin();
+    }
+
     if (buffer.capacity() < numOfBytes) {
       buffer = ByteBuffer.allocate(numOfBytes * 2);
     } else {
@@ -380,13 +424,250 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
       dataPoints[i] = new SimpleDataPoint(mz, intensity);
     }
 
+    numOfReads++;
+    totalReads.incrementAndGet();
+    TaskMetrics.recordDataPointsRead(numOfDataPoints, numOfBytes);
+
+    if ((event != null) && event.shouldCommit()) {
+      event.dataFile = dataFileName;
+      event.storageID = ID;
+      event.dataPoints = numOfDataPoints;
+      event.bytes = numOfBytes;
+      event.commit();
+    }
+
     return dataPoints;
 
   }
 
   public synchronized void removeStoredDataPoints(int ID) throws IOException {
-    dataPointsOffsets.remove(ID);
-    dataPointsLengths.remove(ID);
+    if (dataPointsOffsets.remove(ID) != null)
+      numOfRemovedStorageIDs++;
+    Integer numOfDataPoints = dataPointsLengths.remove(ID);
+    if ((numOfDataPoints != null) && (liveBytes >= 0))
+      liveBytes -= numOfDataPoints * 2 * 4;
+  }
+
+  /**
+   * @return Bytes of the temporary file occupied by data points which can be read
+   */
+  public synchronized long getLiveBytes() {
+    if (liveBytes < 0) {
+      liveBytes = 0;
+      for (Integer numOfDataPoints : dataPointsLengths.values())
+        liveBytes += numOfDataPoints * 2 * 4;
+    }
+    return liveBytes;
+  }
+
+  /**
+   * @return Bytes of the temporary file occupied by removed data points
+   */
+  public synchronized long getDeadBytes() {
+    return Math.max(0, getDataPointsFileSize() - getLiveBytes());
+  }
+
+  /**
+   * Marks that a compaction of this file has been scheduled.
+   * 
+   * @return false if a compaction is already scheduled or running
+   */
+  public boolean requestCompaction() {
+    return compactionPending.compareAndSet(false, true);
+  }
+
+  /**
+   * Withdraws a scheduled compaction which will not be run
+   */
+  public void cancelCompactionRequest() {
+    compactionPending.set(false);
+  }
+
+  /**
+   * Rewrites the live data points into a new temporary file and replaces the current file, to
+   * reclaim the space of removed data points. The data points are copied without blocking other
+   * threads, which may continue reading, storing and removing data points. Only the final swap of
+   * the file and the offsets blocks them, and also copies the data points stored in the meantime.
+   * 
+   * @return Number of reclaimed bytes
+   */
+  public long compactDataPointsFile() throws IOException {
+
+    synchronized (compactionLock) {
+
+      try {
+
+        final RandomAccessFile oldFile;
+        final TreeMap<Integer, Long> oldOffsets;
+        final TreeMap<Integer, Integer> oldLengths;
+        final long oldFileSize;
+
+        synchronized (this) {
+          if ((dataPointsFile == null) || (getDeadBytes() == 0))
+            return 0;
+          oldFile = dataPointsFile;
+          oldOffsets = new TreeMap<>(dataPointsOffsets);
+          oldLengths = new TreeMap<>(dataPointsLengths);
+          oldFileSize = getDataPointsFileSize();
+        }
+
+        logger.info("Compacting temporary file of " + dataFileName + ", " + oldFileSize
+            + " bytes, " + getDeadBytes() + " bytes removed");
+
+        final File newFileName = createNewDataPointsFile();
+        final RandomAccessFile newFile = openTemporaryFile(newFileName);
+
+        try {
+
+          // Copy the live data points, without blocking the readers
+          TreeMap<Integer, Long> newOffsets = new TreeMap<>();
+          long newSize = copyDataPoints(oldFile.getChannel(), newFile.getChannel(), oldOffsets,
+              oldLengths, newOffsets, 0);
+
+          synchronized (this) {
+
+            if (dataPointsFile != oldFile)
+              throw new IOException("Temporary file of " + dataFileName + " has been replaced");
+
+            // Copy the data points stored during the copying. A removed storage ID may have been
+            // reused, so compare the offsets, too.
+            TreeMap<Integer, Long> addedOffsets = new TreeMap<>();
+            for (Integer storageID : dataPointsOffsets.keySet()) {
+              Long offset = dataPointsOffsets.get(storageID);
+              if (!offset.equals(oldOffsets.get(storageID)))
+                addedOffsets.put(storageID, offset);
+            }
+            copyDataPoints(oldFile.getChannel(), newFile.getChannel(), addedOffsets,
+                dataPointsLengths, newOffsets, newSize);
+
+            // Drop the data points removed during the copying
+            newOffsets.keySet().retainAll(dataPointsOffsets.keySet());
+
+            // Swap the files and the offsets. The storage IDs and lengths stay the same.
+            oldFile.close();
+            dataPointsFileName.delete();
+            dataPointsFile = newFile;
+            dataPointsFileName = newFileName;
+            dataPointsOffsets.clear();
+            dataPointsOffsets.putAll(newOffsets);
+            liveBytes = -1;
+
+            long reclaimedBytes = oldFileSize - getDataPointsFileSize();
+            logger.info("Compacted temporary file of " + dataFileName + ", " + reclaimedBytes
+                + " bytes reclaimed");
+            return reclaimedBytes;
+          }
+
+        } catch (IOException e) {
+          newFile.close();
+          newFileName.delete();
+          throw e;
+        }
+
+      } finally {
+        compactionPending.set(false);
+      }
+
+    }
+
+  }
+
+  /**
+   * Copies the given data points to the end of the target file, which is at targetOffset, and
+   * stores their new offsets. Uses positional reads, which do not interfere with other readers.
+   * 
+   * @return New size of the target file
+   */
+  private static long copyDataPoints(FileChannel source, FileChannel target,
+      TreeMap<Integer, Long> offsets, TreeMap<Integer, Integer> lengths,
+      TreeMap<Integer, Long> newOffsets, long targetOffset) throws IOException {
+
+    ByteBuffer copyBuffer = ByteBuffer.allocate(1 << 20);
+
+    for (Integer storageID : offsets.keySet()) {
+
+      final long offset = offsets.get(storageID);
+      final int numOfBytes = lengths.get(storageID) * 2 * 4;
+
+      if (copyBuffer.capacity() < numOfBytes)
+        copyBuffer = ByteBuffer.allocate(numOfBytes * 2);
+      copyBuffer.clear();
+      copyBuffer.limit(numOfBytes);
+      while (copyBuffer.hasRemaining()) {
+        if (source.read(copyBuffer, offset + copyBuffer.position()) < 0)
+          throw new IOException("Unexpected end of temporary file");
+      }
+
+      copyBuffer.flip();
+      newOffsets.put(storageID, targetOffset);
+      while (copyBuffer.hasRemaining())
+        targetOffset += target.write(copyBuffer, targetOffset);
+
+    }
+
+    return targetOffset;
+
+  }
+
+  /**
+   * @return Size of the temporary data points file in bytes, including removed data points
+   */
+  public synchronized long getDataPointsFileSize() {
+    if (dataPointsFileName == null)
+      return 0;
+    return dataPointsFileName.length();
+  }
+
+  /**
+   * @return Number of storage IDs which can be read
+   */
+  public synchronized int getNumOfLiveStorageIDs() {
+    return dataPointsOffsets.size();
+  }
+
+  /**
+   * @return Number of storage IDs removed by removeStoredDataPoints() since the file was created.
+   *         Their data points occupy the temporary file until it is compacted.
+   */
+  public synchronized long getNumOfRemovedStorageIDs() {
+    return numOfRemovedStorageIDs;
+  }
+
+  /**
+   * @return Number of readDataPoints() calls on this file
+   */
+  public synchronized long getNumOfReads() {
+    return numOfReads;
+  }
+
+  /**
+   * @return Number of readDataPoints() calls on all files since MZmine was started
+   */
+  public static long getTotalReads() {
+    return totalReads.get();
+  }
+
+  /**
+   * @return Number of accesses to the cached scan numbers and data ranges of this file which were
+   *         served from the cache
+   */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * @return Number of accesses to the cached scan numbers and data ranges of this file which had to
+   *         be calculated
+   */
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  private void recordCacheAccess(boolean hit) {
+    if (hit)
+      cacheHits.incrementAndGet();
+    else
+      cacheMisses.incrementAndGet();
   }
 
   public synchronized void addScan(Scan newScan) throws IOException {
@@ -426,6 +707,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     // check if we have this value already cached
     Range<Double> mzRange = dataMZRange.get(msLevel);
+    recordCacheAccess(mzRange != null);
     if (mzRange != null)
       return mzRange;
 
@@ -461,6 +743,7 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
 
     // check if we have this value already cached
     Range<Double> rtRange = dataRTRange.get(msLevel);
+    recordCacheAccess(rtRange != null);
     if (rtRange != null)
       return rtRange;
 
@@ -501,6 +784,8 @@ public class RawDataFileImpl implements RawDataFile, RawDataFileWriter {
   }
 
   public synchronized TreeMap<Integer, Long> getDataPointsOffsets() {
+    // The caller may modify the offsets, e.g. when loading a project
+    liveBytes = -1;
     return dataPointsOffsets;
   }
 
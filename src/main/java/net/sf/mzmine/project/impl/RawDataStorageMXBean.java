@@ -0,0 +1,68 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.util.Map;
+
+/**
+ * Management interface with the statistics of the temporary data point storage of the raw data
+ * files in the current project, registered as "net.sf.mzmine:type=RawDataStorage"
+ */
+public interface RawDataStorageMXBean {
+
+  int getNumOfDataFiles();
+
+  /**
+   * @return Total size of the temporary data points files in bytes
+   */
+  long getTemporaryFilesSize();
+
+  /**
+   * @return Size of the temporary data points file of each raw data file
+   */
+  Map<String, Long> getTemporaryFileSizes();
+
+  /**
+   * @return Number of stored scans and mass lists which can be read
+   */
+  long getNumOfLiveStorageIDs();
+
+  /**
+   * @return Number of removed scans and mass lists, whose data points still occupy the temporary
+   *         files
+   */
+  long getNumOfRemovedStorageIDs();
+
+  /**
+   * @return Number of scan and mass list reads since MZmine was started
+   */
+  long getTotalReads();
+
+  /**
+   * @return Scan and mass list reads per second since the previous call of this method
+   */
+  double getReadsPerSecond();
+
+  /**
+   * @return Ratio of the accesses to the scan numbers and data ranges of the raw data files which
+   *         were served from the cache, between 0 and 1
+   */
+  double getCacheHitRatio();
+
+}
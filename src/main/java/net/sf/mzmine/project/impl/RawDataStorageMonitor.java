@@ -0,0 +1,123 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sf.mzmine.datamodel.MZmineProject;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.main.MZmineCore;
+
+/**
+ * Collects the storage statistics of the raw data files in the current project. The raw data files
+ * themselves are not registered as MBeans, because they may be discarded without being closed.
+ */
+class RawDataStorageMonitor implements RawDataStorageMXBean {
+
+  private long previousReads, previousTime;
+
+  RawDataStorageMonitor() {
+    previousReads = RawDataFileImpl.getTotalReads();
+    previousTime = System.nanoTime();
+  }
+
+  private RawDataFileImpl[] getDataFiles() {
+    if (MZmineCore.getProjectManager() == null)
+      return new RawDataFileImpl[0];
+    MZmineProject project = MZmineCore.getProjectManager().getCurrentProject();
+    if (project == null)
+      return new RawDataFileImpl[0];
+    RawDataFile dataFiles[] = project.getDataFiles();
+    int numOfFiles = 0;
+    RawDataFileImpl result[] = new RawDataFileImpl[dataFiles.length];
+    for (RawDataFile dataFile : dataFiles) {
+      if (dataFile instanceof RawDataFileImpl)
+        result[numOfFiles++] = (RawDataFileImpl) dataFile;
+    }
+    return Arrays.copyOf(result, numOfFiles);
+  }
+
+  @Override
+  public int getNumOfDataFiles() {
+    return getDataFiles().length;
+  }
+
+  @Override
+  public long getTemporaryFilesSize() {
+    long size = 0;
+    for (RawDataFileImpl dataFile : getDataFiles())
+      size += dataFile.getDataPointsFileSize();
+    return size;
+  }
+
+  @Override
+  public Map<String, Long> getTemporaryFileSizes() {
+    Map<String, Long> sizes = new LinkedHashMap<>();
+    for (RawDataFileImpl dataFile : getDataFiles())
+      sizes.put(dataFile.getName(), dataFile.getDataPointsFileSize());
+    return sizes;
+  }
+
+  @Override
+  public long getNumOfLiveStorageIDs() {
+    long numOfIDs = 0;
+    for (RawDataFileImpl dataFile : getDataFiles())
+      numOfIDs += dataFile.getNumOfLiveStorageIDs();
+    return numOfIDs;
+  }
+
+  @Override
+  public long getNumOfRemovedStorageIDs() {
+    long numOfIDs = 0;
+    for (RawDataFileImpl dataFile : getDataFiles())
+      numOfIDs += dataFile.getNumOfRemovedStorageIDs();
+    return numOfIDs;
+  }
+
+  @Override
+  public long getTotalReads() {
+    return RawDataFileImpl.getTotalReads();
+  }
+
+  @Override
+  public synchronized double getReadsPerSecond() {
+    final long currentReads = RawDataFileImpl.getTotalReads();
+    final long currentTime = System.nanoTime();
+    final double seconds = (currentTime - previousTime) / 1e9;
+    final double readsPerSecond = seconds > 0 ? (currentReads - previousReads) / seconds : 0;
+    previousReads = currentReads;
+    previousTime = currentTime;
+    return readsPerSecond;
+  }
+
+  @Override
+  public double getCacheHitRatio() {
+    long hits = 0, misses = 0;
+    for (RawDataFileImpl dataFile : getDataFiles()) {
+      hits += dataFile.getCacheHits();
+      misses += dataFile.getCacheMisses();
+    }
+    if (hits + misses == 0)
+      return 0;
+    return (double) hits / (hits + misses);
+  }
+
+}
@@ -18,8 +18,8 @@
 
 package net.sf.mzmine.taskcontrol;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * An abstract implementation of task which defines common methods to make Task implementation
@@ -27,10 +27,11 @@ import java.util.List;
  */
 public abstract class AbstractTask implements Task {
 
-  private TaskStatus status = TaskStatus.WAITING;
+  // The status is read by other threads, e.g. by the batch task waiting for its steps
+  private volatile TaskStatus status = TaskStatus.WAITING;
   private String errorMessage = null;
-  // listener to control status changes
-  private List<TaskStatusListener> listener;
+  // listener to control status changes, may be added and removed while the task is running
+  private volatile List<TaskStatusListener> listener;
 
 
   /**
@@ -39,9 +40,10 @@ public abstract class AbstractTask implements Task {
   public final void setStatus(TaskStatus newStatus) {
     TaskStatus old = status;
     this.status = newStatus;
-    if (listener != null && !status.equals(old))
-      for (int i = 0; i < listener.size(); i++)
-        listener.get(i).taskStatusChanged(this, status, old);
+    final List<TaskStatusListener> currentListener = listener;
+    if (currentListener != null && !newStatus.equals(old))
+      for (TaskStatusListener l : currentListener)
+        l.taskStatusChanged(this, newStatus, old);
   }
 
   /**
@@ -100,9 +102,9 @@ public abstract class AbstractTask implements Task {
     return this.status;
   }
 
-  public void addTaskStatusListener(TaskStatusListener list) {
+  public synchronized void addTaskStatusListener(TaskStatusListener list) {
     if (listener == null)
-      listener = new ArrayList<>();
+      listener = new CopyOnWriteArrayList<>();
     listener.add(list);
   }
 
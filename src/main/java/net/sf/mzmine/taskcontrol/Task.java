@@ -44,4 +44,12 @@ public interface Task extends Runnable {
    */
   public void cancel();
 
+  /**
+   * Estimated memory used by the task while it is running, in bytes. The task controller starts
+   * the task only when this memory is available. Tasks which do not need much memory return 0.
+   */
+  public default long getEstimatedMemory() {
+    return 0;
+  }
+
 }
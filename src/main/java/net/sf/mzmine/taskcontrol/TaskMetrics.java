@@ -0,0 +1,275 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.taskcontrol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+/**
+ * Performance metrics of a single task: wall clock time, CPU time, allocated memory, scans and data
+ * points read from the raw data files and peak list rows produced. The metrics are collected by the
+ * task controller for the thread which runs the task. Work done by the task in other threads is
+ * included if the threads run it through callWith(), as the workers of ParallelScanProcessor do.
+ * Work done in parallel streams is not included.
+ */
+public class TaskMetrics {
+
+  private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+  // Metrics of the task running in the current thread
+  private static final ThreadLocal<TaskMetrics> currentMetrics = new ThreadLocal<>();
+
+  // Metrics of all tasks, until the tasks are garbage collected
+  private static final Map<Task, TaskMetrics> taskMetrics =
+      Collections.synchronizedMap(new WeakHashMap<Task, TaskMetrics>());
+
+  private final String taskDescription;
+  private final long threadId;
+  private final long startTime, startCpuTime, startAllocatedBytes;
+
+  private volatile boolean finished = false;
+  private volatile long wallTime, cpuTime, allocatedBytes;
+  private volatile long memoryWaitTime;
+
+  private final AtomicLong scansRead = new AtomicLong();
+  private final AtomicLong dataPointsRead = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong rowsProduced = new AtomicLong();
+
+  // CPU time and allocated bytes of the work done in other threads through callWith()
+  private final AtomicLong workerCpuTime = new AtomicLong();
+  private final AtomicLong workerAllocatedBytes = new AtomicLong();
+
+  private TaskMetrics(Task task) {
+    this.taskDescription = task.getTaskDescription();
+    this.threadId = Thread.currentThread().getId();
+    this.startTime = System.nanoTime();
+    this.startCpuTime = getThreadCpuTime(threadId);
+    this.startAllocatedBytes = getThreadAllocatedBytes(threadId);
+  }
+
+  /**
+   * Starts collecting the metrics of the given task in the current thread. Must be followed by a
+   * call to finish() in the same thread.
+   */
+  public static TaskMetrics start(Task task) {
+    TaskMetrics metrics = new TaskMetrics(task);
+    currentMetrics.set(metrics);
+    taskMetrics.put(task, metrics);
+    return metrics;
+  }
+
+  /**
+   * Stops collecting the metrics. Must be called from the thread which started the metrics.
+   */
+  public void finish() {
+    if (finished)
+      return;
+    wallTime = getWallTime();
+    cpuTime = getCpuTime();
+    allocatedBytes = getAllocatedBytes();
+    finished = true;
+    if (currentMetrics.get() == this)
+      currentMetrics.remove();
+  }
+
+  /**
+   * Returns the metrics of the given task, or null if the task has not been started by the task
+   * controller
+   */
+  public static @Nullable TaskMetrics getMetrics(Task task) {
+    return taskMetrics.get(task);
+  }
+
+  /**
+   * Returns the metrics of the task running in the current thread, or null if there is none
+   */
+  public static @Nullable TaskMetrics getCurrentMetrics() {
+    return currentMetrics.get();
+  }
+
+  /**
+   * Runs the given work in the current thread on behalf of the task of the given metrics, e.g. in a
+   * thread pool. The data read, the rows produced, the CPU time and the allocated bytes of the work
+   * are added to the metrics.
+   *
+   * @param metrics metrics of the task, usually obtained by getCurrentMetrics() in the thread of
+   *        the task. If null, the work is only run.
+   */
+  public static <T> T callWith(@Nullable TaskMetrics metrics, Callable<T> work) throws Exception {
+    if ((metrics == null) || (currentMetrics.get() == metrics))
+      return work.call();
+
+    final TaskMetrics previousMetrics = currentMetrics.get();
+    final long threadId = Thread.currentThread().getId();
+    final long startCpuTime = getThreadCpuTime(threadId);
+    final long startAllocatedBytes = getThreadAllocatedBytes(threadId);
+    currentMetrics.set(metrics);
+    try {
+      return work.call();
+    } finally {
+      if (previousMetrics == null)
+        currentMetrics.remove();
+      else
+        currentMetrics.set(previousMetrics);
+      if (startCpuTime >= 0) {
+        final long endCpuTime = getThreadCpuTime(threadId);
+        if (endCpuTime >= 0)
+          metrics.workerCpuTime.addAndGet(endCpuTime - startCpuTime);
+      }
+      if (startAllocatedBytes >= 0) {
+        final long endAllocatedBytes = getThreadAllocatedBytes(threadId);
+        if (endAllocatedBytes >= 0)
+          metrics.workerAllocatedBytes.addAndGet(endAllocatedBytes - startAllocatedBytes);
+      }
+    }
+  }
+
+  /**
+   * Records a read of scan or mass list data points by the task running in the current thread
+   */
+  public static void recordDataPointsRead(int numOfDataPoints, long numOfBytes) {
+    TaskMetrics metrics = currentMetrics.get();
+    if (metrics == null)
+      return;
+    metrics.scansRead.incrementAndGet();
+    metrics.dataPointsRead.addAndGet(numOfDataPoints);
+    metrics.bytesRead.addAndGet(numOfBytes);
+  }
+
+  /**
+   * Records peak list rows produced by the task running in the current thread
+   */
+  public static void recordRowsProduced(int numOfRows) {
+    TaskMetrics metrics = currentMetrics.get();
+    if (metrics == null)
+      return;
+    metrics.rowsProduced.addAndGet(numOfRows);
+  }
+
+  public String getTaskDescription() {
+    return taskDescription;
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * @return Wall clock time in nanoseconds, up to now if the task is still running
+   */
+  public long getWallTime() {
+    if (finished)
+      return wallTime;
+    return System.nanoTime() - startTime;
+  }
+
+  /**
+   * @return CPU time of the task thread and of its work in other threads in nanoseconds, or -1 if
+   *         not supported by the JVM
+   */
+  public long getCpuTime() {
+    if (finished)
+      return cpuTime;
+    if (startCpuTime < 0)
+      return -1;
+    long currentCpuTime = getThreadCpuTime(threadId);
+    if (currentCpuTime < 0)
+      return -1;
+    return currentCpuTime - startCpuTime + workerCpuTime.get();
+  }
+
+  /**
+   * @return Bytes allocated by the task thread and by its work in other threads, or -1 if not
+   *         supported by the JVM
+   */
+  public long getAllocatedBytes() {
+    if (finished)
+      return allocatedBytes;
+    if (startAllocatedBytes < 0)
+      return -1;
+    long currentAllocatedBytes = getThreadAllocatedBytes(threadId);
+    if (currentAllocatedBytes < 0)
+      return -1;
+    return currentAllocatedBytes - startAllocatedBytes + workerAllocatedBytes.get();
+  }
+
+  /**
+   * @return Number of scans and mass lists read from the raw data files
+   */
+  public long getScansRead() {
+    return scansRead.get();
+  }
+
+  public long getDataPointsRead() {
+    return dataPointsRead.get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  public long getRowsProduced() {
+    return rowsProduced.get();
+  }
+
+  /**
+   * @return Time the task was waiting in the queue for its estimated memory, in nanoseconds
+   */
+  public long getMemoryWaitTime() {
+    return memoryWaitTime;
+  }
+
+  public void setMemoryWaitTime(long memoryWaitTime) {
+    this.memoryWaitTime = memoryWaitTime;
+  }
+
+  private static long getThreadCpuTime(long threadId) {
+    try {
+      if (!threadBean.isThreadCpuTimeSupported() || !threadBean.isThreadCpuTimeEnabled())
+        return -1;
+      return threadBean.getThreadCpuTime(threadId);
+    } catch (UnsupportedOperationException e) {
+      return -1;
+    }
+  }
+
+  private static long getThreadAllocatedBytes(long threadId) {
+    // Allocation tracking is only available in the HotSpot extension of ThreadMXBean
+    if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+      return -1;
+    com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+    try {
+      if (!sunThreadBean.isThreadAllocatedMemorySupported()
+          || !sunThreadBean.isThreadAllocatedMemoryEnabled())
+        return -1;
+      return sunThreadBean.getThreadAllocatedBytes(threadId);
+    } catch (UnsupportedOperationException e) {
+      return -1;
+    }
+  }
+
+}
@@ -24,6 +24,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import net.sf.mzmine.desktop.preferences.MZminePreferences;
 import net.sf.mzmine.desktop.preferences.NumOfThreadsParameter;
@@ -34,21 +35,26 @@ import net.sf.mzmine.taskcontrol.TaskControlListener;
 import net.sf.mzmine.taskcontrol.TaskController;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
+import net.sf.mzmine.util.JMXUtils;
 
 /**
  * Task controller implementation
  */
-public class TaskControllerImpl implements TaskController, Runnable {
+public class TaskControllerImpl implements TaskController, TaskControllerMXBean, Runnable {
 
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   ArrayList<TaskControlListener> listeners = new ArrayList<TaskControlListener>();
 
   /**
-   * Update the task progress window every 300 ms
+   * Update the task progress window every 300 ms. Tasks are started as soon as they are added or
+   * other tasks finish, without waiting for the update.
    */
   private final int TASKCONTROLLER_THREAD_SLEEP = 300;
 
+  // Set when tasks were added or finished since the last pass over the queue, guarded by this
+  private boolean queueChanged = false;
+
   private Thread taskControllerThread;
 
   private TaskQueue taskQueue;
@@ -59,6 +65,13 @@ public class TaskControllerImpl implements TaskController, Runnable {
    */
   private Vector<WorkerThread> runningThreads;
 
+  private final AtomicLong totalStartedTasks = new AtomicLong();
+
+  // Statistics of the memory admission control, updated by the task controller thread
+  private final AtomicLong totalMemoryWaitTime = new AtomicLong();
+  private volatile int numOfTasksWaitingForMemory = 0;
+  private volatile long estimatedMemoryInUse = 0;
+
   /**
    * Initialize the task controller
    */
@@ -74,6 +87,9 @@ public class TaskControllerImpl implements TaskController, Runnable {
     taskControllerThread.setPriority(Thread.MIN_PRIORITY);
     taskControllerThread.start();
 
+    // Expose the state of the queue for monitoring tools
+    JMXUtils.registerMBean(this, "TaskController");
+
   }
 
   @Override
@@ -133,7 +149,15 @@ public class TaskControllerImpl implements TaskController, Runnable {
     }
 
     // Wake up the task controller thread
+    wakeUp();
+  }
+
+  /**
+   * Wakes up the task controller thread to start the waiting tasks, e.g. when a task has finished
+   */
+  void wakeUp() {
     synchronized (this) {
+      queueChanged = true;
       this.notifyAll();
     }
   }
@@ -187,43 +211,84 @@ public class TaskControllerImpl implements TaskController, Runnable {
       WrappedTask[] queueSnapshot = taskQueue.getQueueSnapshot();
 
       // Obtain the settings of max concurrent threads
-      NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
-          .getParameter(MZminePreferences.numOfThreads);
-      int maxRunningThreads;
-      if (parameter.isAutomatic() || (parameter.getValue() == null))
-        maxRunningThreads = Runtime.getRuntime().availableProcessors();
-      else
-        maxRunningThreads = parameter.getValue();
-
-      // Check all tasks in the queue
+      int maxRunningThreads = getMaxRunningThreads();
+
+      // Memory of the tasks which are running or reserved for a task waiting for memory
+      final long memoryBudget = getMemoryBudget();
+      long reservedMemory = 0;
+      for (WrappedTask task : queueSnapshot) {
+        if (task.isRunning())
+          reservedMemory += task.getEstimatedMemory();
+      }
+      estimatedMemoryInUse = reservedMemory;
+      boolean memoryReserved = false;
+      int waitingForMemory = 0;
+
+      // Check all tasks in the queue, in the order they were added
       for (WrappedTask task : queueSnapshot) {
 
         // Skip assigned and canceled tasks
-        if (task.isAssigned() || (task.getActualTask().getStatus() == TaskStatus.CANCELED))
+        if (task.isAssigned() || (task.getActualTask().getStatus() == TaskStatus.CANCELED)) {
+          task.setWaitingForMemory(false);
           continue;
+        }
 
         // Create a new thread if the task is high-priority or if we
         // have less then maximum # of threads running
         if ((task.getPriority() == TaskPriority.HIGH)
             || (runningThreads.size() < maxRunningThreads)) {
-          WorkerThread newThread = new WorkerThread(task);
+
+          final long estimatedMemory = task.getEstimatedMemory();
+
+          /*
+           * Tasks of NORMAL priority are only started if their estimated memory fits in the budget.
+           * A task which needs more than the whole budget is started when no other task with an
+           * estimate is running. The oldest waiting task reserves its memory, so the tasks added
+           * later cannot take the memory it is waiting for and the task cannot starve. The tasks
+           * added later may still run on the free threads if they fit in the remaining memory.
+           */
+          if ((task.getPriority() == TaskPriority.NORMAL) && (estimatedMemory > 0)
+              && (reservedMemory + estimatedMemory > memoryBudget)
+              && ((reservedMemory > 0) || memoryReserved)) {
+            task.setWaitingForMemory(true);
+            waitingForMemory++;
+            if (!memoryReserved) {
+              reservedMemory += Math.min(estimatedMemory, memoryBudget);
+              memoryReserved = true;
+            }
+            continue;
+          }
+
+          task.setWaitingForMemory(false);
+          totalMemoryWaitTime.addAndGet(task.getMemoryWaitTime());
+          reservedMemory += estimatedMemory;
+
+          WorkerThread newThread = new WorkerThread(task, this);
 
           if (task.getPriority() == TaskPriority.NORMAL) {
             runningThreads.add(newThread);
           }
 
           newThread.start();
+          totalStartedTasks.incrementAndGet();
         }
       }
 
+      numOfTasksWaitingForMemory = waitingForMemory;
+
       // Tell the queue to refresh the Task progress window
       taskQueue.refresh();
 
-      // Sleep for a while until next update
-      try {
-        Thread.sleep(TASKCONTROLLER_THREAD_SLEEP);
-      } catch (InterruptedException e) {
-        // Ignore
+      // Wait until the queue changes or until the next update of the task progress window
+      synchronized (this) {
+        if (!queueChanged) {
+          try {
+            this.wait(TASKCONTROLLER_THREAD_SLEEP);
+          } catch (InterruptedException e) {
+            // Ignore
+          }
+        }
+        queueChanged = false;
       }
 
     }
@@ -247,6 +312,9 @@ public class TaskControllerImpl implements TaskController, Runnable {
         // Call refresh to re-sort the queue according to new priority
         // and update the Task progress window
         taskQueue.refresh();
+
+        // A task of HIGH priority may be started immediately
+        wakeUp();
       }
     }
   }
@@ -256,4 +324,78 @@ public class TaskControllerImpl implements TaskController, Runnable {
     listeners.add(listener);
   }
 
+  @Override
+  public int getQueueSize() {
+    return taskQueue.getRowCount();
+  }
+
+  @Override
+  public int getNumOfWaitingTasks() {
+    return taskQueue.getNumOfTasks(TaskStatus.WAITING);
+  }
+
+  @Override
+  public int getNumOfRunningTasks() {
+    return taskQueue.getNumOfTasks(TaskStatus.PROCESSING);
+  }
+
+  @Override
+  public int getMaxRunningThreads() {
+    NumOfThreadsParameter parameter = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.numOfThreads);
+    if (parameter.isAutomatic() || (parameter.getValue() == null))
+      return Runtime.getRuntime().availableProcessors();
+    else
+      return parameter.getValue();
+  }
+
+  @Override
+  public long getMemoryBudget() {
+    Double ratio = MZmineCore.getConfiguration().getPreferences()
+        .getParameter(MZminePreferences.taskMemoryLimit).getValue();
+    if (ratio == null)
+      ratio = 1.0;
+    return (long) (Runtime.getRuntime().maxMemory() * ratio);
+  }
+
+  @Override
+  public long getEstimatedMemoryInUse() {
+    return estimatedMemoryInUse;
+  }
+
+  @Override
+  public int getNumOfTasksWaitingForMemory() {
+    return numOfTasksWaitingForMemory;
+  }
+
+  @Override
+  public long getTotalMemoryWaitTime() {
+    return totalMemoryWaitTime.get() / 1000000L;
+  }
+
+  @Override
+  public int getNumOfWorkerThreads() {
+    int numOfWorkerThreads = 0;
+    synchronized (runningThreads) {
+      for (WorkerThread thread : runningThreads) {
+        if (!thread.isFinished())
+          numOfWorkerThreads++;
+      }
+    }
+    return numOfWorkerThreads;
+  }
+
+  @Override
+  public double getThreadUtilization() {
+    int maxRunningThreads = getMaxRunningThreads();
+    if (maxRunningThreads <= 0)
+      return 0;
+    return Math.min(1.0, (double) getNumOfWorkerThreads() / maxRunningThreads);
+  }
+
+  @Override
+  public long getTotalStartedTasks() {
+    return totalStartedTasks.get();
+  }
+
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.taskcontrol.impl;
+
+/**
+ * Management interface of the task controller, registered as "net.sf.mzmine:type=TaskController"
+ */
+public interface TaskControllerMXBean {
+
+  /**
+   * @return Number of tasks in the queue, including finished tasks which are still shown in the
+   *         tasks window
+   */
+  int getQueueSize();
+
+  /**
+   * @return Number of tasks waiting to be started
+   */
+  int getNumOfWaitingTasks();
+
+  /**
+   * @return Number of tasks being processed
+   */
+  int getNumOfRunningTasks();
+
+  /**
+   * @return Maximum number of concurrently running tasks of NORMAL priority, as set in the
+   *         preferences
+   */
+  int getMaxRunningThreads();
+
+  /**
+   * @return Memory available to the tasks which declare their estimated memory, in bytes
+   */
+  long getMemoryBudget();
+
+  /**
+   * @return Sum of the estimated memory of the running tasks, in bytes
+   */
+  long getEstimatedMemoryInUse();
+
+  /**
+   * @return Number of tasks which are not started because their estimated memory is not available
+   */
+  int getNumOfTasksWaitingForMemory();
+
+  /**
+   * @return Total time the started tasks were waiting for memory, in milliseconds
+   */
+  long getTotalMemoryWaitTime();
+
+  /**
+   * @return Number of worker threads running tasks of NORMAL priority
+   */
+  int getNumOfWorkerThreads();
+
+  /**
+   * @return Ratio of the worker threads to the maximum number of threads, between 0 and 1
+   */
+  double getThreadUtilization();
+
+  /**
+   * @return Number of tasks started since MZmine was started
+   */
+  long getTotalStartedTasks();
+
+}
@@ -25,6 +25,7 @@ import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.components.LabeledProgressBar;
@@ -72,6 +73,18 @@ public class TaskQueue extends AbstractTableModel {
     return numOfWaitingTasks;
   }
 
+  /**
+   * @return Number of tasks in the queue with the given status
+   */
+  synchronized int getNumOfTasks(TaskStatus status) {
+    int numOfTasks = 0;
+    for (int i = 0; i < size; i++) {
+      if (queue[i].getActualTask().getStatus() == status)
+        numOfTasks++;
+    }
+    return numOfTasks;
+  }
+
   synchronized void addWrappedTask(WrappedTask task) {
 
     logger.finest("Adding task \"" + task + "\" to the task controller queue");
@@ -147,7 +160,8 @@ public class TaskQueue extends AbstractTableModel {
 
   /* TableModel implementation */
 
-  private static final String columns[] = {"Item", "Priority", "Status", "% done"};
+  private static final String columns[] =
+      {"Item", "Priority", "Status", "% done", "Time", "CPU time", "Allocated", "Data read"};
 
   /**
    * @see javax.swing.table.TableModel#getRowCount()
@@ -194,6 +208,11 @@ public class TaskQueue extends AbstractTableModel {
             progressBar.setValue(finishedPercentage);
           }
           return progressBar;
+        case 4:
+        case 5:
+        case 6:
+        case 7:
+          return getMetricsValue(wrappedTask.getMetrics(), column);
       }
     }
 
@@ -214,9 +233,46 @@ public class TaskQueue extends AbstractTableModel {
         return TaskStatus.class;
       case 3:
         return LabeledProgressBar.class;
+      case 4:
+      case 5:
+      case 6:
+      case 7:
+        return String.class;
+    }
+    return null;
+
+  }
+
+  /**
+   * Formats the performance metrics of a task for the task window
+   */
+  private static String getMetricsValue(TaskMetrics metrics, int column) {
+    if (metrics == null)
+      return "";
+    switch (column) {
+      case 4:
+        return formatTime(metrics.getWallTime());
+      case 5:
+        return formatTime(metrics.getCpuTime());
+      case 6:
+        return formatBytes(metrics.getAllocatedBytes());
+      case 7:
+        return formatBytes(metrics.getBytesRead());
     }
     return null;
+  }
+
+  private static String formatTime(long nanoseconds) {
+    if (nanoseconds < 0)
+      return "N/A";
+    long seconds = nanoseconds / 1000000000L;
+    return String.format("%d:%02d", seconds / 60, seconds % 60);
+  }
 
+  private static String formatBytes(long bytes) {
+    if (bytes < 0)
+      return "N/A";
+    return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
   }
 
 }
@@ -23,8 +23,11 @@ import java.util.logging.Logger;
 
 import net.sf.mzmine.main.MZmineCore;
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskStatus;
 import net.sf.mzmine.util.ExceptionUtils;
+import net.sf.mzmine.util.jfr.JFRUtils;
+import net.sf.mzmine.util.jfr.TaskExecutionEvent;
 
 /**
  * Task controller worker thread, this thread will process one task and then finish
@@ -34,11 +37,13 @@ class WorkerThread extends Thread {
   private Logger logger = Logger.getLogger(this.getClass().getName());
 
   private WrappedTask wrappedTask;
-  private boolean finished = false;
+  private final TaskControllerImpl taskController;
+  private volatile boolean finished = false;
 
-  WorkerThread(WrappedTask wrappedTask) {
+  WorkerThread(WrappedTask wrappedTask, TaskControllerImpl taskController) {
     super("Thread executing task " + wrappedTask);
     this.wrappedTask = wrappedTask;
+    this.taskController = taskController;
     wrappedTask.assignTo(this);
   }
 
@@ -49,6 +54,18 @@ class WorkerThread extends Thread {
 
     Task actualTask = wrappedTask.getActualTask();
 
+    // Collect the performance metrics of the task in this thread
+    TaskMetrics metrics = TaskMetrics.start(actualTask);
+    metrics.setMemoryWaitTime(wrappedTask.getMemoryWaitTime());
+    wrappedTask.setMetrics(metrics);
+
+    // Flight Recorder event of the task execution
+    TaskExecutionEvent event = null;
+    if (JFRUtils.isAvailable()) {
+      event = new TaskExecutionEvent();
+      event.begin();
+    }
+
     try {
 
       // Log the start (INFO level events go to the Status bar, too)
@@ -57,6 +74,8 @@ class WorkerThread extends Thread {
       // Process the actual task
       actualTask.run();
 
+      metrics.finish();
+
       // Check if task finished with an error
       if (actualTask.getStatus() == TaskStatus.ERROR) {
 
@@ -100,10 +119,26 @@ class WorkerThread extends Thread {
 
     }
 
+    // Make sure the metrics are stopped also after an unhandled exception
+    metrics.finish();
+
+    if ((event != null) && event.shouldCommit()) {
+      event.taskClass = actualTask.getClass().getName();
+      event.taskDescription = actualTask.getTaskDescription();
+      event.priority = String.valueOf(wrappedTask.getPriority());
+      event.status = String.valueOf(actualTask.getStatus());
+      event.cpuTime = metrics.getCpuTime();
+      event.allocatedBytes = metrics.getAllocatedBytes();
+      event.scansRead = metrics.getScansRead();
+      event.rowsProduced = metrics.getRowsProduced();
+      event.commit();
+    }
+
     /*
-     * Mark this thread as finished
+     * Mark this thread as finished and let the task controller start the next tasks
      */
     finished = true;
+    taskController.wakeUp();
 
   }
 
@@ -19,6 +19,7 @@
 package net.sf.mzmine.taskcontrol.impl;
 
 import net.sf.mzmine.taskcontrol.Task;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
 import net.sf.mzmine.taskcontrol.TaskPriority;
 
 /**
@@ -29,6 +30,13 @@ public class WrappedTask {
   private Task task;
   private TaskPriority priority;
   private WorkerThread assignedTo;
+  private TaskMetrics metrics;
+
+  // Estimated memory of the task, -1 until it is first needed
+  private long estimatedMemory = -1;
+
+  // Time spent waiting for memory before the task was started, in nanoseconds
+  private long memoryWaitStart = -1, memoryWaitTime = 0;
 
   WrappedTask(Task task, TaskPriority priority) {
     this.task = task;
@@ -70,6 +78,65 @@ public class WrappedTask {
     assignedTo = thread;
   }
 
+  /**
+   * @return True if the task was started and its thread has not finished yet
+   */
+  boolean isRunning() {
+    return (assignedTo != null) && !assignedTo.isFinished();
+  }
+
+  /**
+   * @return Estimated memory of the task in bytes. The estimate is only determined once, so the
+   *         accounting of the task controller does not change while the task is running.
+   */
+  synchronized long getEstimatedMemory() {
+    if (estimatedMemory < 0) {
+      try {
+        estimatedMemory = Math.max(0, task.getEstimatedMemory());
+      } catch (Exception e) {
+        // A failed estimate should not prevent the task from running
+        estimatedMemory = 0;
+      }
+    }
+    return estimatedMemory;
+  }
+
+  /**
+   * Marks the start or the end of the time the task is waiting for memory
+   */
+  synchronized void setWaitingForMemory(boolean waiting) {
+    if (waiting && (memoryWaitStart < 0)) {
+      memoryWaitStart = System.nanoTime();
+    } else if (!waiting && (memoryWaitStart >= 0)) {
+      memoryWaitTime += System.nanoTime() - memoryWaitStart;
+      memoryWaitStart = -1;
+    }
+  }
+
+  synchronized boolean isWaitingForMemory() {
+    return memoryWaitStart >= 0;
+  }
+
+  /**
+   * @return Time the task has been waiting for memory in nanoseconds, including the current wait
+   */
+  synchronized long getMemoryWaitTime() {
+    if (memoryWaitStart >= 0)
+      return memoryWaitTime + System.nanoTime() - memoryWaitStart;
+    return memoryWaitTime;
+  }
+
+  /**
+   * @return Returns the performance metrics, or null if the task has not been started yet.
+   */
+  public TaskMetrics getMetrics() {
+    return metrics;
+  }
+
+  void setMetrics(TaskMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   /**
    * @return Returns the task.
    */
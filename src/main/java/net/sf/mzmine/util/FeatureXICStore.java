@@ -0,0 +1,198 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.datamodel.Scan;
+
+/**
+ * Compact chromatogram store of the features of one raw data file. The store keeps the retention
+ * time of every scan of the file in primitive arrays, so that peak list methods and renderers do not
+ * have to go through RawDataFile.getScan() for each data point. For each feature, the extracted ion
+ * chromatogram (scan numbers, retention times, m/z and intensity values) is built once on first
+ * request and shared by all callers. Stores and chromatograms are weakly referenced by their raw
+ * data file and feature, so they are released together with them. For that reason, neither the
+ * stores nor the chromatograms reference the raw data file or the feature.
+ */
+public class FeatureXICStore {
+
+  private static final Map<RawDataFile, FeatureXICStore> stores =
+      new WeakHashMap<RawDataFile, FeatureXICStore>();
+
+  // All scans of the file, sorted by scan number
+  private final int scanNumbers[];
+  private final double retentionTimes[];
+
+  private final Map<Feature, FeatureXIC> xics =
+      Collections.synchronizedMap(new WeakHashMap<Feature, FeatureXIC>());
+
+  /**
+   * Extracted ion chromatogram of one feature. Scans in which the feature has no data point have m/z
+   * value NaN and intensity 0. The chromatogram is shared, so the array getters return copies.
+   */
+  public static class FeatureXIC {
+
+    private final int scanNumbers[];
+    private final double retentionTimes[], mzValues[], intensityValues[];
+
+    FeatureXIC(int scanNumbers[], double retentionTimes[], double mzValues[],
+        double intensityValues[]) {
+      this.scanNumbers = scanNumbers;
+      this.retentionTimes = retentionTimes;
+      this.mzValues = mzValues;
+      this.intensityValues = intensityValues;
+    }
+
+    public int size() {
+      return scanNumbers.length;
+    }
+
+    public int getScanNumber(int index) {
+      return scanNumbers[index];
+    }
+
+    public double getRetentionTime(int index) {
+      return retentionTimes[index];
+    }
+
+    public double getMZ(int index) {
+      return mzValues[index];
+    }
+
+    public double getIntensity(int index) {
+      return intensityValues[index];
+    }
+
+    public @Nonnull int[] getScanNumbers() {
+      return scanNumbers.clone();
+    }
+
+    public @Nonnull double[] getRetentionTimes() {
+      return retentionTimes.clone();
+    }
+
+    public @Nonnull double[] getMZValues() {
+      return mzValues.clone();
+    }
+
+    public @Nonnull double[] getIntensityValues() {
+      return intensityValues.clone();
+    }
+
+    /**
+     * Returns true if the feature has a data point in the scan of given index
+     */
+    public boolean hasDataPoint(int index) {
+      return !Double.isNaN(mzValues[index]);
+    }
+
+  }
+
+  private FeatureXICStore(RawDataFile dataFile) {
+    scanNumbers = dataFile.getScanNumbers();
+    retentionTimes = new double[scanNumbers.length];
+    for (int i = 0; i < scanNumbers.length; i++) {
+      Scan scan = dataFile.getScan(scanNumbers[i]);
+      retentionTimes[i] = (scan == null) ? Double.NaN : scan.getRetentionTime();
+    }
+  }
+
+  /**
+   * Returns the store of given raw data file, creating it if necessary
+   */
+  public static synchronized @Nonnull FeatureXICStore getStore(@Nonnull RawDataFile dataFile) {
+    FeatureXICStore store = stores.get(dataFile);
+    if ((store == null) || (store.scanNumbers.length != dataFile.getNumOfScans())) {
+      store = new FeatureXICStore(dataFile);
+      stores.put(dataFile, store);
+    }
+    return store;
+  }
+
+  /**
+   * Convenience method returning the chromatogram of given feature from the store of its raw data
+   * file
+   */
+  public static @Nonnull FeatureXIC getXIC(@Nonnull Feature feature) {
+    return getStore(feature.getDataFile()).getFeatureXIC(feature);
+  }
+
+  /**
+   * Returns the retention time of given scan, or NaN if there is no such scan
+   */
+  public double getRetentionTime(int scanNumber) {
+    int index = Arrays.binarySearch(scanNumbers, scanNumber);
+    if (index < 0)
+      return Double.NaN;
+    return retentionTimes[index];
+  }
+
+  /**
+   * Returns the retention times of given scans
+   */
+  public @Nonnull double[] getRetentionTimes(@Nonnull int requestedScanNumbers[]) {
+    double result[] = new double[requestedScanNumbers.length];
+    for (int i = 0; i < requestedScanNumbers.length; i++)
+      result[i] = getRetentionTime(requestedScanNumbers[i]);
+    return result;
+  }
+
+  /**
+   * Returns the chromatogram of given feature, which must belong to the raw data file of this
+   * store. The chromatogram is rebuilt if the scans of the feature changed since it was stored.
+   */
+  public @Nonnull FeatureXIC getFeatureXIC(@Nonnull Feature feature) {
+
+    final int featureScanNumbers[] = feature.getScanNumbers();
+    FeatureXIC xic = xics.get(feature);
+    if ((xic != null) && Arrays.equals(xic.scanNumbers, featureScanNumbers))
+      return xic;
+
+    final int size = featureScanNumbers.length;
+    final int scans[] = featureScanNumbers.clone();
+    final double rts[] = new double[size];
+    final double mzValues[] = new double[size];
+    final double intensityValues[] = new double[size];
+    for (int i = 0; i < size; i++) {
+      rts[i] = getRetentionTime(scans[i]);
+      DataPoint dataPoint = feature.getDataPoint(scans[i]);
+      if (dataPoint == null) {
+        mzValues[i] = Double.NaN;
+      } else {
+        mzValues[i] = dataPoint.getMZ();
+        intensityValues[i] = dataPoint.getIntensity();
+      }
+    }
+
+    xic = new FeatureXIC(scans, rts, mzValues, intensityValues);
+    xics.put(feature, xic);
+    return xic;
+
+  }
+
+}
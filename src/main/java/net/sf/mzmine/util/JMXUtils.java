@@ -0,0 +1,56 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * JMX utilities. MZmine registers its MBeans in the platform MBean server under the
+ * "net.sf.mzmine" domain, so they can be monitored with standard tools such as JConsole or
+ * VisualVM.
+ */
+public class JMXUtils {
+
+  public static final String DOMAIN = "net.sf.mzmine";
+
+  private static final Logger logger = Logger.getLogger(JMXUtils.class.getName());
+
+  /**
+   * Registers the MBean under the name "net.sf.mzmine:type=[type]", replacing a previously
+   * registered MBean of the same type. Errors are only logged, because monitoring is not essential
+   * for MZmine.
+   */
+  public static void registerMBean(Object mbean, String type) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+      if (server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(mbean, name);
+    } catch (Exception e) {
+      logger.log(Level.WARNING, "Could not register MBean " + type, e);
+    }
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.MassList;
+import net.sf.mzmine.datamodel.Scan;
+
+/**
+ * Session-wide cache of decoded MS/MS spectra. Peak list methods which look at the fragment scans of
+ * many rows (e.g. fragment search or MS/MS scoring during formula prediction) would otherwise read
+ * and decode the same scan once for every compared row or formula. A spectrum is identified by its
+ * scan or mass list and the minimum intensity: only data points with intensity above this value are
+ * kept, sorted by m/z. The least recently used spectra are evicted when the total number of cached
+ * data points exceeds MAX_CACHED_DATA_POINTS.
+ *
+ * The returned spectra are shared and must not be modified.
+ */
+public class MS2SpectrumCache {
+
+  // Maximum total number of data points in all cached spectra
+  private static final int MAX_CACHED_DATA_POINTS = 5000000;
+
+  private static int cachedDataPoints = 0;
+
+  private static final LinkedHashMap<SpectrumKey, MS2Spectrum> cache =
+      new LinkedHashMap<SpectrumKey, MS2Spectrum>(16, 0.75f, true);
+
+  /**
+   * Data points of one spectrum, sorted by m/z
+   */
+  public static class MS2Spectrum {
+
+    public final DataPoint dataPoints[];
+    public final double mzValues[], intensityValues[];
+
+    MS2Spectrum(DataPoint dataPoints[]) {
+      this.dataPoints = dataPoints;
+      mzValues = new double[dataPoints.length];
+      intensityValues = new double[dataPoints.length];
+      for (int i = 0; i < dataPoints.length; i++) {
+        mzValues[i] = dataPoints[i].getMZ();
+        intensityValues[i] = dataPoints[i].getIntensity();
+      }
+    }
+
+    public int size() {
+      return dataPoints.length;
+    }
+
+    /**
+     * Returns the index of the first data point with m/z not lower than given value
+     */
+    public int findFirstIndex(double mz) {
+      int low = 0, high = mzValues.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (mzValues[mid] < mz)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      return low;
+    }
+
+    /**
+     * Returns true if the spectrum has a data point with minMZ <= m/z <= maxMZ
+     */
+    public boolean containsDataPoint(double minMZ, double maxMZ) {
+      int index = findFirstIndex(minMZ);
+      return (index < mzValues.length) && (mzValues[index] <= maxMZ);
+    }
+
+  }
+
+  /**
+   * The scan or mass list is weakly referenced, so the cache does not keep closed files in memory
+   */
+  private static class SpectrumKey {
+
+    private final WeakReference<Object> source;
+    private final double minIntensity;
+    private final int hashCode;
+
+    SpectrumKey(Object source, double minIntensity) {
+      this.source = new WeakReference<Object>(source);
+      this.minIntensity = minIntensity;
+      hashCode = 31 * System.identityHashCode(source) + Double.hashCode(minIntensity);
+    }
+
+    boolean isStale() {
+      return source.get() == null;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof SpectrumKey))
+        return false;
+      SpectrumKey other = (SpectrumKey) o;
+      Object s = source.get();
+      return (s != null) && (s == other.source.get()) && (minIntensity == other.minIntensity);
+    }
+
+  }
+
+  /**
+   * Returns all data points of given scan with intensity above minIntensity, or null if the scan
+   * has no data
+   */
+  public static @Nullable MS2Spectrum getSpectrum(@Nonnull Scan scan, double minIntensity) {
+    return getSpectrum(scan, null, minIntensity);
+  }
+
+  /**
+   * Returns all data points of given mass list with intensity above minIntensity, or null if the
+   * mass list has no data
+   */
+  public static @Nullable MS2Spectrum getSpectrum(@Nonnull MassList massList,
+      double minIntensity) {
+    return getSpectrum(null, massList, minIntensity);
+  }
+
+  private static MS2Spectrum getSpectrum(@Nullable Scan scan, @Nullable MassList massList,
+      double minIntensity) {
+
+    final Object source = (massList != null) ? massList : scan;
+    final SpectrumKey key = new SpectrumKey(source, minIntensity);
+
+    synchronized (MS2SpectrumCache.class) {
+      MS2Spectrum spectrum = cache.get(key);
+      if (spectrum != null)
+        return spectrum;
+    }
+
+    // Decoded outside of the lock, so that other threads are not blocked while reading the scan
+    DataPoint dataPoints[] = (massList != null) ? massList.getDataPoints() : scan.getDataPoints();
+    if (dataPoints == null)
+      return null;
+    DataPoint filtered[] = new DataPoint[dataPoints.length];
+    int size = 0;
+    boolean sorted = true;
+    for (DataPoint dp : dataPoints) {
+      if (!(dp.getIntensity() > minIntensity))
+        continue;
+      if ((size > 0) && (filtered[size - 1].getMZ() > dp.getMZ()))
+        sorted = false;
+      filtered[size++] = dp;
+    }
+    filtered = Arrays.copyOf(filtered, size);
+    if (!sorted)
+      Arrays.sort(filtered, new DataPointSorter(SortingProperty.MZ, SortingDirection.Ascending));
+
+    MS2Spectrum spectrum = new MS2Spectrum(filtered);
+    putSpectrum(key, spectrum);
+    return spectrum;
+
+  }
+
+  private static synchronized void putSpectrum(SpectrumKey key, MS2Spectrum spectrum) {
+
+    // Spectra larger than the whole cache are not stored
+    if (spectrum.size() > MAX_CACHED_DATA_POINTS)
+      return;
+
+    MS2Spectrum previous = cache.put(key, spectrum);
+    if (previous != null)
+      cachedDataPoints -= previous.size();
+    cachedDataPoints += spectrum.size();
+
+    if (cachedDataPoints <= MAX_CACHED_DATA_POINTS)
+      return;
+
+    // Remove spectra of closed files first, then the least recently used ones
+    Iterator<Map.Entry<SpectrumKey, MS2Spectrum>> iterator = cache.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<SpectrumKey, MS2Spectrum> entry = iterator.next();
+      if (entry.getKey().isStale()) {
+        cachedDataPoints -= entry.getValue().size();
+        iterator.remove();
+      }
+    }
+    iterator = cache.entrySet().iterator();
+    while ((cachedDataPoints > MAX_CACHED_DATA_POINTS) && iterator.hasNext()) {
+      cachedDataPoints -= iterator.next().getValue().size();
+      iterator.remove();
+    }
+
+  }
+
+}
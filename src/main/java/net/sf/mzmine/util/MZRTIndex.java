@@ -0,0 +1,162 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.util.Arrays;
+
+/**
+ * Index of points (typically peaks or peak list rows) by m/z and retention time. The points are
+ * divided into retention time buckets of fixed width, and sorted by m/z inside each bucket. A query
+ * visits only the buckets overlapping the RT window and binary searches the m/z window in each of
+ * them.
+ *
+ * The index is immutable. Points are identified by their index in the arrays passed to the
+ * constructor, and queries return these indexes in ascending order, so callers can process the
+ * results in the same order as a loop over all points would.
+ */
+public class MZRTIndex {
+
+  private final double minRT, bucketWidth;
+
+  // For each bucket, the point indexes sorted by m/z and their m/z and RT values
+  private final int bucketPoints[][];
+  private final double bucketMZs[][], bucketRTs[][];
+
+  /**
+   * @param mzValues m/z value of each point
+   * @param rtValues retention time of each point. Points with NaN m/z or RT are not indexed.
+   * @param bucketWidth width of the RT buckets, usually the width of the RT tolerance window
+   */
+  public MZRTIndex(double mzValues[], double rtValues[], double bucketWidth) {
+
+    assert mzValues.length == rtValues.length;
+
+    double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < rtValues.length; i++) {
+      if (Double.isNaN(mzValues[i]) || Double.isNaN(rtValues[i]))
+        continue;
+      min = Math.min(min, rtValues[i]);
+      max = Math.max(max, rtValues[i]);
+    }
+
+    // Limit the number of buckets to the number of points for very small tolerances
+    int numOfBuckets = 1;
+    double width = 0;
+    if ((min < max) && (bucketWidth > 0) && !Double.isInfinite(bucketWidth)) {
+      width = Math.max(bucketWidth, (max - min) / Math.max(1, rtValues.length));
+      numOfBuckets = (int) Math.floor((max - min) / width) + 1;
+    }
+    this.minRT = (min <= max) ? min : 0;
+    this.bucketWidth = width;
+
+    // Count the points of each bucket
+    final int bucketSizes[] = new int[numOfBuckets];
+    final int pointBuckets[] = new int[rtValues.length];
+    for (int i = 0; i < rtValues.length; i++) {
+      if (Double.isNaN(mzValues[i]) || Double.isNaN(rtValues[i])) {
+        pointBuckets[i] = -1;
+        continue;
+      }
+      pointBuckets[i] = getBucket(rtValues[i], numOfBuckets);
+      bucketSizes[pointBuckets[i]]++;
+    }
+
+    bucketPoints = new int[numOfBuckets][];
+    bucketMZs = new double[numOfBuckets][];
+    bucketRTs = new double[numOfBuckets][];
+    for (int b = 0; b < numOfBuckets; b++)
+      bucketPoints[b] = new int[bucketSizes[b]];
+    Arrays.fill(bucketSizes, 0);
+    for (int i = 0; i < rtValues.length; i++) {
+      if (pointBuckets[i] >= 0)
+        bucketPoints[pointBuckets[i]][bucketSizes[pointBuckets[i]]++] = i;
+    }
+
+    // Sort each bucket by m/z
+    for (int b = 0; b < numOfBuckets; b++) {
+      Integer sorted[] = new Integer[bucketPoints[b].length];
+      for (int i = 0; i < sorted.length; i++)
+        sorted[i] = bucketPoints[b][i];
+      Arrays.sort(sorted, (i1, i2) -> Double.compare(mzValues[i1], mzValues[i2]));
+      bucketMZs[b] = new double[sorted.length];
+      bucketRTs[b] = new double[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        bucketPoints[b][i] = sorted[i];
+        bucketMZs[b][i] = mzValues[sorted[i]];
+        bucketRTs[b][i] = rtValues[sorted[i]];
+      }
+    }
+
+  }
+
+  private int getBucket(double rt, int numOfBuckets) {
+    if (bucketWidth == 0)
+      return 0;
+    int bucket = (int) Math.floor((rt - minRT) / bucketWidth);
+    return Math.max(0, Math.min(numOfBuckets - 1, bucket));
+  }
+
+  /**
+   * Returns the indexes of all points with minMZ <= m/z <= maxMZ and minRT <= RT <= maxRT, in
+   * ascending order
+   */
+  public int[] query(double minMZ, double maxMZ, double minRT, double maxRT) {
+
+    if (!(minMZ <= maxMZ) || !(minRT <= maxRT))
+      return new int[0];
+
+    final int numOfBuckets = bucketPoints.length;
+    final int firstBucket = getBucket(minRT, numOfBuckets);
+    final int lastBucket = getBucket(maxRT, numOfBuckets);
+
+    int result[] = new int[16];
+    int size = 0;
+    for (int b = firstBucket; b <= lastBucket; b++) {
+      final double mzs[] = bucketMZs[b];
+      for (int i = findFirstIndex(mzs, minMZ); (i < mzs.length) && (mzs[i] <= maxMZ); i++) {
+        final double rt = bucketRTs[b][i];
+        if ((rt < minRT) || (rt > maxRT))
+          continue;
+        if (size == result.length)
+          result = Arrays.copyOf(result, size * 2);
+        result[size++] = bucketPoints[b][i];
+      }
+    }
+
+    result = Arrays.copyOf(result, size);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Returns the index of the first value which is not lower than given m/z
+   */
+  private static int findFirstIndex(double mzs[], double mz) {
+    int low = 0, high = mzs.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mzs[mid] < mz)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sf.mzmine.desktop.preferences.MZminePreferences;
+import net.sf.mzmine.desktop.preferences.NumOfThreadsParameter;
+import net.sf.mzmine.main.MZmineCore;
+import net.sf.mzmine.taskcontrol.AbstractTask;
+import net.sf.mzmine.taskcontrol.TaskMetrics;
+
+/**
+ * Processes the scans of one raw data file in parallel, while handing the results to a writer
+ * strictly in scan order. The scans are processed in chunks: all scans of a chunk are computed in
+ * parallel, then the results of the chunk are written one by one on the calling thread. This keeps
+ * the memory of pending results bounded and makes the output (e.g. the order of mass lists or scans
+ * in a new raw data file) identical to sequential processing.
+ * Independent items other than scans, such as peak list rows, can be processed the same way.
+ *
+ * The scans are computed by a thread pool shared by all tasks, sized by the number of threads set
+ * in the preferences. Tasks running concurrently therefore do not use more threads than allowed in
+ * total.
+ *
+ * The processor must be thread-safe, the writer is always called from the calling thread. The work
+ * of the pool threads is added to the TaskMetrics of the calling thread. If the processor throws an
+ * exception or an error for any index, no further results are written and it is rethrown.
+ */
+public class ParallelScanProcessor {
+
+  // Number of scans per chunk and thread
+  private static final int SCANS_PER_THREAD = 8;
+
+  // Idle threads of the pool are stopped after this time, in seconds
+  private static final long THREAD_KEEP_ALIVE = 30;
+
+  private static ThreadPoolExecutor threadPool;
+
+  @FunctionalInterface
+  public interface ScanProcessor<T> {
+    /**
+     * Processes the scan of given index, may be called concurrently. May return null.
+     */
+    T process(int index) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface ResultWriter<T> {
+    /**
+     * Commits the result of given index, called in ascending order of indexes
+     */
+    void write(int index, T result) throws Exception;
+  }
+
+  /**
+   * Processes the indexes 0 .. count-1.
+   *
+   * @param task task which is checked for cancellation between the chunks, may be null
+   * @return false if the task was canceled before all results were written
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> boolean processScans(int count, AbstractTask task,
+      ScanProcessor<T> processor, ResultWriter<T> writer) throws Exception {
+
+    final ThreadPoolExecutor pool = getThreadPool();
+    final int numOfThreads = pool.getMaximumPoolSize();
+    final int chunkSize = numOfThreads * SCANS_PER_THREAD;
+    final Object results[] = new Object[Math.min(chunkSize, Math.max(count, 1))];
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final TaskMetrics metrics = TaskMetrics.getCurrentMetrics();
+
+    for (int chunkStart = 0; chunkStart < count; chunkStart += chunkSize) {
+
+      if ((task != null) && task.isCanceled())
+        return false;
+
+      final int start = chunkStart;
+      final int end = Math.min(count, chunkStart + chunkSize);
+
+      // Each worker takes the next unprocessed index, so slow scans do not delay the others
+      final AtomicInteger nextIndex = new AtomicInteger(start);
+      final Callable<Void> worker = () -> TaskMetrics.callWith(metrics, () -> {
+        int index;
+        while ((index = nextIndex.getAndIncrement()) < end) {
+          if ((error.get() != null) || ((task != null) && task.isCanceled()))
+            return null;
+          try {
+            results[index - start] = processor.process(index);
+          } catch (Throwable e) {
+            error.compareAndSet(null, e);
+          }
+        }
+        return null;
+      });
+      final List<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+      for (int i = 0; i < Math.min(numOfThreads, end - start); i++)
+        workers.add(worker);
+      for (Future<Void> future : pool.invokeAll(workers)) {
+        try {
+          future.get();
+        } catch (ExecutionException e) {
+          error.compareAndSet(null, e.getCause());
+        }
+      }
+
+      final Throwable chunkError = error.get();
+      if (chunkError instanceof Exception)
+        throw (Exception) chunkError;
+      if (chunkError instanceof Error)
+        throw (Error) chunkError;
+      if (chunkError != null)
+        throw new ExecutionException(chunkError);
+
+      if ((task != null) && task.isCanceled())
+        return false;
+
+      for (int index = start; index < end; index++) {
+        writer.write(index, (T) results[index - start]);
+        results[index - start] = null;
+      }
+
+    }
+
+    return true;
+
+  }
+
+  /**
+   * Returns the shared thread pool, resized if the number of threads in the preferences changed.
+   * The threads of the pool are daemon threads which stop when idle.
+   */
+  private static synchronized ThreadPoolExecutor getThreadPool() {
+    final int numOfThreads = getNumOfThreads();
+    if (threadPool == null) {
+      threadPool = new ThreadPoolExecutor(numOfThreads, numOfThreads, THREAD_KEEP_ALIVE,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "Parallel scan processor");
+            thread.setDaemon(true);
+            return thread;
+          });
+      threadPool.allowCoreThreadTimeOut(true);
+    } else if (threadPool.getMaximumPoolSize() != numOfThreads) {
+      if (numOfThreads > threadPool.getMaximumPoolSize()) {
+        threadPool.setMaximumPoolSize(numOfThreads);
+        threadPool.setCorePoolSize(numOfThreads);
+      } else {
+        threadPool.setCorePoolSize(numOfThreads);
+        threadPool.setMaximumPoolSize(numOfThreads);
+      }
+    }
+    return threadPool;
+  }
+
+  private static int getNumOfThreads() {
+    if (MZmineCore.getConfiguration() == null)
+      return Runtime.getRuntime().availableProcessors();
+    NumOfThreadsParameter parameter =
+        MZmineCore.getConfiguration().getPreferences().getParameter(MZminePreferences.numOfThreads);
+    if (parameter.isAutomatic() || (parameter.getValue() == null))
+      return Runtime.getRuntime().availableProcessors();
+    return Math.max(1, parameter.getValue());
+  }
+
+}
@@ -30,8 +30,9 @@ import javax.swing.border.Border;
 
 import com.google.common.collect.Range;
 
-import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 
 /**
  * Simple lightweight component for plotting peak shape
@@ -108,8 +109,9 @@ public class CombinedXICComponent extends JComponent {
       if ((peak == null) || (peak.getScanNumbers().length == 0))
         continue;
 
-      // get scan numbers, one data point per each scan
-      int scanNumbers[] = peak.getScanNumbers();
+      // get the chromatogram, one data point per each scan
+      FeatureXIC xic = FeatureXICStore.getXIC(peak);
+      int scanNumbers[] = xic.getScanNumbers();
 
       // for each datapoint, find [X:Y] coordinates of its point in
       // painted image
@@ -119,14 +121,10 @@ public class CombinedXICComponent extends JComponent {
       // find one datapoint with maximum intensity in each scan
       for (int i = 0; i < scanNumbers.length; i++) {
 
-        double dataPointIntensity = 0;
-        DataPoint dataPoint = peak.getDataPoint(scanNumbers[i]);
-
-        if (dataPoint != null)
-          dataPointIntensity = dataPoint.getIntensity();
+        double dataPointIntensity = xic.getIntensity(i);
 
         // get retention time (X value)
-        double retentionTime = peak.getDataFile().getScan(scanNumbers[i]).getRetentionTime();
+        double retentionTime = xic.getRetentionTime(i);
 
         // calculate [X:Y] coordinates
         xValues[i + 1] = (int) Math.floor((retentionTime - rtRange.lowerEndpoint())
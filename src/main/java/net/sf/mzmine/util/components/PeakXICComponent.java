@@ -30,9 +30,10 @@ import javax.swing.BorderFactory;
 import javax.swing.JComponent;
 import javax.swing.border.Border;
 
-import net.sf.mzmine.datamodel.DataPoint;
 import net.sf.mzmine.datamodel.Feature;
 import net.sf.mzmine.datamodel.RawDataFile;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
 
 import com.google.common.collect.Range;
 
@@ -89,9 +90,9 @@ public class PeakXICComponent extends JComponent {
     // get canvas size
     Dimension size = getSize();
 
-    // get scan numbers, one data point per each scan
-    RawDataFile dataFile = peak.getDataFile();
-    int scanNumbers[] = peak.getScanNumbers();
+    // get the chromatogram, one data point per each scan
+    FeatureXIC xic = FeatureXICStore.getXIC(peak);
+    int scanNumbers[] = xic.getScanNumbers();
 
     // If we have no data, just return
     if (scanNumbers.length == 0)
@@ -105,14 +106,10 @@ public class PeakXICComponent extends JComponent {
     // find one datapoint with maximum intensity in each scan
     for (int i = 0; i < scanNumbers.length; i++) {
 
-      double dataPointIntensity = 0;
-      DataPoint dataPoint = peak.getDataPoint(scanNumbers[i]);
-
-      if (dataPoint != null)
-        dataPointIntensity = dataPoint.getIntensity();
+      double dataPointIntensity = xic.getIntensity(i);
 
       // get retention time (X value)
-      double retentionTime = dataFile.getScan(scanNumbers[i]).getRetentionTime();
+      double retentionTime = xic.getRetentionTime(i);
 
       // calculate [X:Y] coordinates
       final double rtLen = rtRange.upperEndpoint() - rtRange.lowerEndpoint();
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util.components;
+
+import java.awt.Component;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import net.sf.mzmine.datamodel.Feature;
+import net.sf.mzmine.util.FeatureXICStore;
+import net.sf.mzmine.util.FeatureXICStore.FeatureXIC;
+
+/**
+ * Cache of downsampled peak shapes (thumbnails) for components which paint many features, such as
+ * the peak list table. Building a thumbnail reads the chromatogram of the feature from its raw data
+ * file, so it is done by background threads and never by the event dispatch thread. When a
+ * thumbnail is ready, the owner component is repainted. The least recently used thumbnails are
+ * evicted when the cache is full.
+ */
+public class XICThumbnailCache {
+
+  private static final Logger logger = Logger.getLogger(XICThumbnailCache.class.getName());
+
+  /**
+   * Maximum number of points of a thumbnail. Table cells are narrower than this, so the downsampled
+   * shape looks the same as the full chromatogram.
+   */
+  public static final int MAX_POINTS = 256;
+
+  private static final ExecutorService builders = createBuilderPool();
+
+  /**
+   * Downsampled chromatogram of one feature
+   */
+  public static class XICThumbnail {
+
+    public final double retentionTimes[], intensities[];
+
+    XICThumbnail(double retentionTimes[], double intensities[]) {
+      this.retentionTimes = retentionTimes;
+      this.intensities = intensities;
+    }
+
+    public int size() {
+      return retentionTimes.length;
+    }
+
+  }
+
+  private final Component owner;
+  private final Map<Feature, XICThumbnail> thumbnails;
+  private final Set<Feature> pending = new HashSet<Feature>();
+
+  /**
+   * @param capacity Maximum number of cached thumbnails
+   * @param owner Component to repaint when new thumbnails are ready
+   */
+  public XICThumbnailCache(final int capacity, @Nonnull Component owner) {
+    this.owner = owner;
+    this.thumbnails = new LinkedHashMap<Feature, XICThumbnail>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Feature, XICThumbnail> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns the thumbnail of given feature, or null if it is not built yet. In that case, the
+   * thumbnail is built in the background and the owner component is repainted afterwards.
+   */
+  public @Nullable XICThumbnail getThumbnail(@Nonnull Feature feature) {
+    synchronized (this) {
+      XICThumbnail thumbnail = thumbnails.get(feature);
+      if (thumbnail != null)
+        return thumbnail;
+      if (!pending.add(feature))
+        return null;
+    }
+
+    builders.execute(() -> {
+      XICThumbnail thumbnail = null;
+      try {
+        thumbnail = createThumbnail(feature);
+      } catch (Exception e) {
+        logger.log(Level.WARNING, "Could not create the peak shape of " + feature, e);
+        thumbnail = new XICThumbnail(new double[0], new double[0]);
+      } finally {
+        synchronized (this) {
+          pending.remove(feature);
+          if (thumbnail != null)
+            thumbnails.put(feature, thumbnail);
+        }
+      }
+      // repaint() is thread safe and coalesced by the repaint manager
+      owner.repaint();
+    });
+
+    return null;
+  }
+
+  public synchronized void clear() {
+    thumbnails.clear();
+  }
+
+  /**
+   * Creates the thumbnail of given feature. If the chromatogram has more than MAX_POINTS points, it
+   * is divided into MAX_POINTS consecutive blocks and the most intense point of each block is kept,
+   * so the apex and the shape of the peak are preserved.
+   */
+  public static @Nonnull XICThumbnail createThumbnail(@Nonnull Feature feature) {
+    FeatureXIC xic = FeatureXICStore.getXIC(feature);
+    final int size = xic.size();
+    if (size <= MAX_POINTS)
+      return new XICThumbnail(xic.getRetentionTimes(), xic.getIntensityValues());
+
+    final double retentionTimes[] = new double[MAX_POINTS];
+    final double intensities[] = new double[MAX_POINTS];
+    for (int block = 0; block < MAX_POINTS; block++) {
+      final int start = (int) ((long) block * size / MAX_POINTS);
+      final int end = (int) ((long) (block + 1) * size / MAX_POINTS);
+      int best = start;
+      for (int i = start + 1; i < end; i++) {
+        if (xic.getIntensity(i) > xic.getIntensity(best))
+          best = i;
+      }
+      retentionTimes[block] = xic.getRetentionTime(best);
+      intensities[block] = xic.getIntensity(best);
+    }
+    return new XICThumbnail(retentionTimes, intensities);
+  }
+
+  private static ExecutorService createBuilderPool() {
+    final int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    final AtomicInteger threadNumber = new AtomicInteger();
+    ThreadFactory factory = runnable -> {
+      Thread thread = new Thread(runnable, "Peak shape builder " + threadNumber.incrementAndGet());
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    };
+    return Executors.newFixedThreadPool(threads, factory);
+  }
+
+}
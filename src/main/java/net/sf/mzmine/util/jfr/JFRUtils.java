@@ -0,0 +1,45 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util.jfr;
+
+/**
+ * JDK Flight Recorder support. The custom MZmine events are only created if the JVM provides the
+ * jdk.jfr API (Java 8u262 and newer), otherwise the event classes must not be loaded.
+ */
+public class JFRUtils {
+
+  private static final boolean available = isJFRAvailable();
+
+  /**
+   * @return True if the custom MZmine events can be created
+   */
+  public static boolean isAvailable() {
+    return available;
+  }
+
+  private static boolean isJFRAvailable() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (Throwable e) {
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event covering a read of scan or mass list data points from the temporary file of
+ * a raw data file. Reads are very frequent, so by default only reads longer than 1 ms are recorded.
+ * Use JFRUtils.isAvailable() before creating an instance.
+ */
+@Name("net.sf.mzmine.ScanRead")
+@Label("Scan Read")
+@Category({"MZmine", "Raw Data"})
+@Description("Read of data points from the temporary file of a raw data file")
+@Threshold("1 ms")
+public class ScanReadEvent extends jdk.jfr.Event {
+
+  @Label("Raw Data File")
+  public String dataFile;
+
+  @Label("Storage ID")
+  public int storageID;
+
+  @Label("Data Points")
+  public int dataPoints;
+
+  @Label("Bytes Read")
+  @DataAmount(DataAmount.BYTES)
+  public long bytes;
+
+}
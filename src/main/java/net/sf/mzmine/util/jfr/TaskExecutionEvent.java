@@ -0,0 +1,65 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.util.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering the execution of one task by the task controller. Use
+ * JFRUtils.isAvailable() before creating an instance.
+ */
+@Name("net.sf.mzmine.TaskExecution")
+@Label("Task Execution")
+@Category({"MZmine", "Tasks"})
+@Description("Execution of an MZmine task by a worker thread")
+public class TaskExecutionEvent extends jdk.jfr.Event {
+
+  @Label("Task Class")
+  public String taskClass;
+
+  @Label("Task Description")
+  public String taskDescription;
+
+  @Label("Priority")
+  public String priority;
+
+  @Label("Status")
+  @Description("Status of the task when the execution finished")
+  public String status;
+
+  @Label("CPU Time")
+  @Timespan(Timespan.NANOSECONDS)
+  public long cpuTime;
+
+  @Label("Allocated Memory")
+  @DataAmount(DataAmount.BYTES)
+  public long allocatedBytes;
+
+  @Label("Scans Read")
+  public long scansRead;
+
+  @Label("Rows Produced")
+  public long rowsProduced;
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.kmeans;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests that KMeans finds well separated clusters
+ */
+public class KMeansTest {
+
+  private static final int POINTS_PER_CLUSTER = 50;
+
+  // Centers of the generated clusters
+  private static final double CENTERS[][] = {{0.1, 0.1}, {0.9, 0.2}, {0.5, 0.9}};
+
+  /**
+   * Points scattered closely around the centers, cluster by cluster
+   */
+  private static double[][] createPoints() {
+    final Random random = new Random(1);
+    final double points[][] = new double[CENTERS.length * POINTS_PER_CLUSTER][];
+    for (int i = 0; i < points.length; i++) {
+      final double center[] = CENTERS[i / POINTS_PER_CLUSTER];
+      points[i] = new double[] {center[0] + 0.03 * random.nextGaussian(),
+          center[1] + 0.03 * random.nextGaussian()};
+    }
+    return points;
+  }
+
+  /**
+   * Checks that all points generated around one center are in the same cluster, and that the
+   * points of different centers are in different clusters
+   */
+  private static void assertGeneratedClusters(int assignment[]) {
+    Assert.assertEquals(CENTERS.length * POINTS_PER_CLUSTER, assignment.length);
+    final int clusters[] = new int[CENTERS.length];
+    for (int c = 0; c < CENTERS.length; c++) {
+      clusters[c] = assignment[c * POINTS_PER_CLUSTER];
+      for (int i = 0; i < POINTS_PER_CLUSTER; i++)
+        Assert.assertEquals(clusters[c], assignment[c * POINTS_PER_CLUSTER + i]);
+      for (int previous = 0; previous < c; previous++)
+        Assert.assertNotEquals(clusters[previous], clusters[c]);
+    }
+  }
+
+  @Test
+  public void testLloyd() {
+    KMeans kMeans = new KMeans(createPoints(), 10);
+    assertGeneratedClusters(kMeans.cluster(CENTERS.length, 100));
+
+    // The centers are the means of the generated points
+    for (double center[] : kMeans.getCenters()) {
+      double minDistance = Double.POSITIVE_INFINITY;
+      for (double generatedCenter[] : CENTERS) {
+        minDistance = Math.min(minDistance, Math.hypot(center[0] - generatedCenter[0],
+            center[1] - generatedCenter[1]));
+      }
+      Assert.assertTrue("Center is " + minDistance + " off", minDistance < 0.02);
+    }
+  }
+
+  @Test
+  public void testMiniBatch() {
+    KMeans kMeans = new KMeans(createPoints(), 10);
+    assertGeneratedClusters(kMeans.clusterMiniBatch(CENTERS.length, 20, 100));
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.nnchain;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.ClusteringData;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.DistanceType;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.HierarClusterer;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.HierarClustererParameters;
+import net.sf.mzmine.modules.peaklistmethods.dataanalysis.clustering.hierarchical.LinkType;
+import net.sf.mzmine.parameters.ParameterSet;
+
+/**
+ * Compares the dendrograms of NNChain with those of the Weka-based HierarClusterer
+ */
+public class NNChainTest {
+
+  private static final int ITEMS = 12, ATTRIBUTES = 3;
+
+  // HierarClusterer cuts the tree into the default number of clusters of Weka
+  private static final int WEKA_CLUSTERS = 2;
+
+  private static ClusteringData createData() {
+    final Random random = new Random(1);
+    final double values[][] = new double[ITEMS][ATTRIBUTES];
+    final String names[] = new String[ITEMS];
+    for (int i = 0; i < ITEMS; i++) {
+      for (int a = 0; a < ATTRIBUTES; a++)
+        values[i][a] = random.nextDouble();
+      names[i] = "Item" + i;
+    }
+    return new ClusteringData(values, names);
+  }
+
+  /**
+   * Returns the sorted heights of the merges in the trees of a Newick string, as printed by the
+   * clusterers: "Cluster i" lines followed by one tree each
+   */
+  private static List<Double> getMergeHeights(String newick) {
+
+    final List<Double> heights = new ArrayList<Double>();
+    for (String line : newick.split("\n")) {
+      line = line.trim();
+      if (!line.startsWith("("))
+        continue;
+
+      // Height of each open node, and the height of the last closed node or leaf
+      final Deque<Double> openNodes = new ArrayDeque<Double>();
+      double lastHeight = 0.0;
+      int pos = 0;
+      while (pos < line.length()) {
+        final char c = line.charAt(pos);
+        if (c == '(') {
+          openNodes.push(0.0);
+          lastHeight = 0.0;
+          pos++;
+        } else if ((c == ')') || (c == ',')) {
+          if (c == ')') {
+            lastHeight = openNodes.pop();
+            heights.add(lastHeight);
+          }
+          pos++;
+        } else if (c == ':') {
+          int end = pos + 1;
+          while ((end < line.length()) && ("(),".indexOf(line.charAt(end)) < 0))
+            end++;
+          final double length = Double.parseDouble(line.substring(pos + 1, end).trim());
+          openNodes.push(Math.max(openNodes.pop(), lastHeight + length));
+          pos = end;
+        } else {
+          // Name of a leaf
+          lastHeight = 0.0;
+          pos++;
+        }
+      }
+    }
+    Collections.sort(heights);
+    return heights;
+  }
+
+  private static void assertSameMergeHeights(LinkType linkType, DistanceType distanceType) {
+
+    final ClusteringData data = createData();
+
+    ParameterSet parameters = new HierarClustererParameters();
+    parameters.getParameter(HierarClustererParameters.linkType).setValue(linkType);
+    parameters.getParameter(HierarClustererParameters.distanceType).setValue(distanceType);
+    final String wekaNewick =
+        new HierarClusterer().performClustering(data, parameters).getHiearchicalCluster();
+
+    NNChain nnChain = new NNChain(data.getNormalizedValues(), linkType, distanceType);
+    nnChain.cluster();
+    final String nnChainNewick = nnChain.toNewick(WEKA_CLUSTERS, data.getNames());
+
+    final List<Double> expected = getMergeHeights(wekaNewick);
+    final List<Double> heights = getMergeHeights(nnChainNewick);
+    Assert.assertEquals(linkType + " merges", expected.size(), heights.size());
+    for (int i = 0; i < expected.size(); i++)
+      Assert.assertEquals(linkType + " merge " + i, expected.get(i), heights.get(i), 1e-4);
+  }
+
+  @Test
+  public void testSingleLink() {
+    assertSameMergeHeights(LinkType.SINGLE, DistanceType.EUCLIDIAN);
+  }
+
+  @Test
+  public void testCompleteLink() {
+    assertSameMergeHeights(LinkType.COMPLETE, DistanceType.MANHATTAN);
+  }
+
+  @Test
+  public void testAverageLink() {
+    assertSameMergeHeights(LinkType.AVERAGE, DistanceType.EUCLIDIAN);
+  }
+
+  /**
+   * The items are numbered in the order of their first item, all items are in one of the clusters
+   */
+  @Test
+  public void testClusters() {
+    final ClusteringData data = createData();
+    NNChain nnChain = new NNChain(data.getNormalizedValues(), LinkType.AVERAGE,
+        DistanceType.EUCLIDIAN);
+    nnChain.cluster();
+
+    final int clusters[] = nnChain.getClusters(3);
+    int numberOfClusters = 0;
+    for (int cluster : clusters) {
+      Assert.assertTrue(cluster <= numberOfClusters);
+      numberOfClusters = Math.max(numberOfClusters, cluster + 1);
+    }
+    Assert.assertEquals(3, numberOfClusters);
+  }
+
+}
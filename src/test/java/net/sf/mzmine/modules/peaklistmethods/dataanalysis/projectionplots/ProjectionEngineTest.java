@@ -0,0 +1,126 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.dataanalysis.projectionplots;
+
+import java.util.Random;
+
+import org.apache.commons.math.linear.Array2DRowRealMatrix;
+import org.apache.commons.math.linear.RealMatrix;
+import org.apache.commons.math.linear.SingularValueDecomposition;
+import org.apache.commons.math.linear.SingularValueDecompositionImpl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the projections of ProjectionEngine with exact computations on a small matrix
+ */
+public class ProjectionEngineTest {
+
+  private static final int SAMPLES = 30, FEATURES = 40;
+
+  /**
+   * Samples x features matrix whose features have decreasing variance, so that the singular values
+   * are well separated
+   */
+  private static double[][] createMatrix() {
+    final Random random = new Random(1);
+    final double rows[][] = new double[SAMPLES][FEATURES];
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int f = 0; f < FEATURES; f++)
+        rows[i][f] = random.nextGaussian() * Math.pow(0.7, f);
+    }
+    return rows;
+  }
+
+  /**
+   * The randomized SVD gives the same coordinates as the exact SVD, up to the sign of each
+   * component
+   */
+  @Test
+  public void testPCAMatchesExactSVD() {
+
+    final int components = 3;
+    final double rows[][] = createMatrix();
+
+    final double pca[][] = ProjectionEngine.createEngine(rows).computePCA(components);
+
+    // The coordinates of the samples are U * S
+    SingularValueDecomposition svd =
+        new SingularValueDecompositionImpl(new Array2DRowRealMatrix(rows));
+    final RealMatrix u = svd.getU();
+    final double singularValues[] = svd.getSingularValues();
+
+    for (int c = 0; c < components; c++) {
+      double dot = 0.0;
+      for (int i = 0; i < SAMPLES; i++)
+        dot += u.getEntry(i, c) * pca[c][i];
+      final double sign = Math.signum(dot);
+      for (int i = 0; i < SAMPLES; i++) {
+        final double expected = sign * u.getEntry(i, c) * singularValues[c];
+        Assert.assertEquals("Component " + c + ", sample " + i, expected, pca[c][i],
+            1e-8 * singularValues[c]);
+      }
+    }
+
+  }
+
+  /**
+   * The stress of Sammon's mapping goes down from the random start and converges
+   */
+  @Test
+  public void testSammonStressDecreases() {
+
+    final double rows[][] = createMatrix();
+
+    final double initialStress =
+        getStress(rows, ProjectionEngine.createEngine(rows).computeSammon(2, 0));
+    final double stress =
+        getStress(rows, ProjectionEngine.createEngine(rows).computeSammon(2, 100));
+    final double convergedStress =
+        getStress(rows, ProjectionEngine.createEngine(rows).computeSammon(2, 200));
+
+    Assert.assertTrue("Stress " + stress + " from " + initialStress, stress < initialStress / 10);
+    Assert.assertTrue("Stress " + convergedStress + " after " + stress,
+        convergedStress <= stress + 1e-9);
+
+  }
+
+  /**
+   * Sammon's stress of the coordinates, indexed as [dimension][sample]
+   */
+  private static double getStress(double rows[][], double coords[][]) {
+    double distanceSum = 0.0, error = 0.0;
+    for (int i = 0; i < SAMPLES; i++) {
+      for (int j = i + 1; j < SAMPLES; j++) {
+        double distance = 0.0;
+        for (int f = 0; f < FEATURES; f++)
+          distance += (rows[i][f] - rows[j][f]) * (rows[i][f] - rows[j][f]);
+        distance = Math.sqrt(distance);
+        double mapDistance = 0.0;
+        for (int q = 0; q < coords.length; q++)
+          mapDistance += (coords[q][i] - coords[q][j]) * (coords[q][i] - coords[q][j]);
+        mapDistance = Math.sqrt(mapDistance);
+        distanceSum += distance;
+        error += (distance - mapDistance) * (distance - mapDistance) / distance;
+      }
+    }
+    return error / distanceSum;
+  }
+
+}
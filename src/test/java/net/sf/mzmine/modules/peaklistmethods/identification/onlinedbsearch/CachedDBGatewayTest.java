@@ -0,0 +1,227 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.identification.onlinedbsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+import net.sf.mzmine.parameters.ParameterSet;
+import net.sf.mzmine.parameters.parametertypes.tolerances.MZTolerance;
+import net.sf.mzmine.util.InetUtils;
+
+/**
+ * Tests the caching and the request limits of CachedDBGateway against a local HTTP stub server,
+ * which stands in for an online database
+ */
+public class CachedDBGatewayTest {
+
+  private static final String COMPOUND_IDS = "C00031\nC00267";
+
+  // Time the stub server needs to answer a request, in milliseconds
+  private static final long RESPONSE_TIME = 300;
+
+  @Rule
+  public TemporaryFolder cacheFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger runningRequests = new AtomicInteger();
+  private final AtomicInteger maxRunningRequests = new AtomicInteger();
+
+  /**
+   * Gateway which searches the stub server
+   */
+  private class StubGateway implements DBGateway {
+
+    @Override
+    public String[] findCompounds(double mass, MZTolerance mzTolerance, int numOfResults,
+        ParameterSet parameters) throws IOException {
+      URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(),
+          server.getAddress().getPort(), "/find?mass=" + mass);
+      return InetUtils.retrieveData(url).split("\n");
+    }
+
+    @Override
+    public DBCompound getCompound(String ID, ParameterSet parameters) throws IOException {
+      throw new IOException("Not supported by the stub database");
+    }
+
+  }
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/find", exchange -> {
+      requests.incrementAndGet();
+      int running = runningRequests.incrementAndGet();
+      maxRunningRequests.accumulateAndGet(running, Math::max);
+      try {
+        Thread.sleep(RESPONSE_TIME);
+        byte response[] = COMPOUND_IDS.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+          out.write(response);
+        }
+      } catch (InterruptedException e) {
+        exchange.sendResponseHeaders(500, -1);
+      } finally {
+        runningRequests.decrementAndGet();
+        exchange.close();
+      }
+    });
+
+    // Handle the requests concurrently, so only the limiter restricts the parallel requests
+    serverExecutor = Executors.newCachedThreadPool();
+    server.setExecutor(serverExecutor);
+    server.start();
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+  }
+
+  /**
+   * A repeated search is answered from the cache
+   */
+  @Test
+  public void testCacheHit() throws Exception {
+
+    OnlineDBCache cache = new OnlineDBCache(cacheFolder.getRoot(), 60L * 60L * 1000L);
+    DBGateway gateway = new CachedDBGateway(OnlineDatabase.KEGG, new StubGateway(), cache);
+    MZTolerance tolerance = new MZTolerance(0.001, 5);
+
+    String firstResults[] = gateway.findCompounds(180.0634, tolerance, 10, null);
+    String cachedResults[] = gateway.findCompounds(180.0634, tolerance, 10, null);
+
+    Assert.assertArrayEquals(COMPOUND_IDS.split("\n"), firstResults);
+    Assert.assertArrayEquals(firstResults, cachedResults);
+    Assert.assertEquals(1, requests.get());
+
+    // A different search is not answered from the cache
+    gateway.findCompounds(342.1162, tolerance, 10, null);
+    Assert.assertEquals(2, requests.get());
+
+  }
+
+  /**
+   * An expired entry is ignored and the database is searched again
+   */
+  @Test
+  public void testExpiredEntry() throws Exception {
+
+    final long expiration = 50;
+    OnlineDBCache cache = new OnlineDBCache(cacheFolder.getRoot(), expiration);
+    DBGateway gateway = new CachedDBGateway(OnlineDatabase.KEGG, new StubGateway(), cache);
+    MZTolerance tolerance = new MZTolerance(0.001, 5);
+
+    gateway.findCompounds(180.0634, tolerance, 10, null);
+    Assert.assertEquals(1, requests.get());
+
+    Thread.sleep(expiration * 3);
+
+    String results[] = gateway.findCompounds(180.0634, tolerance, 10, null);
+    Assert.assertArrayEquals(COMPOUND_IDS.split("\n"), results);
+    Assert.assertEquals(2, requests.get());
+
+  }
+
+  /**
+   * The sweep removes the expired entries and keeps the valid ones
+   */
+  @Test
+  public void testRemoveExpiredEntries() throws Exception {
+
+    final long expiration = 60L * 60L * 1000L;
+    OnlineDBCache cache = new OnlineDBCache(cacheFolder.getRoot(), expiration);
+    Properties values = new Properties();
+    values.setProperty("ids", COMPOUND_IDS);
+
+    // Make the first entry look as if it was stored before the expiration time
+    cache.put("expired", values);
+    File expiredFiles[] = cacheFolder.getRoot().listFiles();
+    Assert.assertEquals(1, expiredFiles.length);
+    Assert.assertTrue(
+        expiredFiles[0].setLastModified(System.currentTimeMillis() - 2 * expiration));
+    cache.put("valid", values);
+
+    cache.removeExpiredEntries();
+
+    Assert.assertFalse(expiredFiles[0].exists());
+    Assert.assertEquals(1, cacheFolder.getRoot().listFiles().length);
+    Assert.assertEquals(COMPOUND_IDS, cache.get("valid").getProperty("ids"));
+
+  }
+
+  /**
+   * Parallel searches of one database do not exceed the limit of concurrent requests per host
+   */
+  @Test
+  public void testRequestsPerHostLimit() throws Exception {
+
+    final int numOfSearches = OnlineDBRequestLimiter.MAX_REQUESTS_PER_HOST * 3;
+    DBGateway gateway = new CachedDBGateway(OnlineDatabase.HMDB, new StubGateway(), null);
+    MZTolerance tolerance = new MZTolerance(0.001, 5);
+
+    ExecutorService searchExecutor = Executors.newFixedThreadPool(numOfSearches);
+    try {
+      List<Future<String[]>> results = new ArrayList<>();
+      for (int i = 0; i < numOfSearches; i++) {
+        final double mass = 100 + i;
+        results.add(searchExecutor.submit(() -> gateway.findCompounds(mass, tolerance, 10, null)));
+      }
+      for (Future<String[]> result : results)
+        Assert.assertArrayEquals(COMPOUND_IDS.split("\n"), result.get());
+    } finally {
+      searchExecutor.shutdownNow();
+    }
+
+    Assert.assertEquals(numOfSearches, requests.get());
+    Assert.assertTrue("Requests were not sent in parallel", maxRunningRequests.get() > 1);
+    Assert.assertTrue(
+        "More than " + OnlineDBRequestLimiter.MAX_REQUESTS_PER_HOST + " concurrent requests: "
+            + maxRunningRequests.get(),
+        maxRunningRequests.get() <= OnlineDBRequestLimiter.MAX_REQUESTS_PER_HOST);
+
+  }
+
+}
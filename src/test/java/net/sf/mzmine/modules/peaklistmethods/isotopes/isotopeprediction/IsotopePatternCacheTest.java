@@ -0,0 +1,124 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.peaklistmethods.isotopes.isotopeprediction;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.IonizationType;
+import net.sf.mzmine.datamodel.IsotopePattern;
+import net.sf.mzmine.util.FormulaUtils;
+
+/**
+ * Tests that the predicted isotope patterns are shared between peak list rows with different
+ * minimum abundances
+ */
+public class IsotopePatternCacheTest {
+
+  private static final String FORMULA = "C27H46O";
+
+  // Isotope noise level of the formula prediction and heights of the detected patterns of three
+  // rows
+  private static final double NOISE_LEVEL = 10000;
+  private static final double ROW_HEIGHTS[] = {1.2E6, 9.0E5, 7.5E5};
+
+  @Before
+  public void clearCache() {
+    IsotopePatternCache.clear();
+  }
+
+  @Test
+  public void testAbundanceFloor() {
+    Assert.assertEquals(0.0078125, IsotopePatternCache.getAbundanceFloor(0.0078125), 0);
+    Assert.assertEquals(0.0078125, IsotopePatternCache.getAbundanceFloor(0.011), 0);
+    Assert.assertEquals(0.0078125, IsotopePatternCache.getAbundanceFloor(0.0156), 0);
+    Assert.assertEquals(0.015625, IsotopePatternCache.getAbundanceFloor(0.016), 0);
+    Assert.assertEquals(0.0, IsotopePatternCache.getAbundanceFloor(0.0), 0);
+  }
+
+  /**
+   * Rows with different heights, whose minimum abundances share a floor, use one calculated pattern
+   */
+  @Test
+  public void testHitsAcrossRows() {
+
+    final long calculatedBefore = IsotopePatternCache.getNumOfCalculatedPatterns();
+
+    IsotopePattern patterns[] = new IsotopePattern[ROW_HEIGHTS.length];
+    for (int row = 0; row < ROW_HEIGHTS.length; row++) {
+      final double minAbundance = NOISE_LEVEL / ROW_HEIGHTS[row];
+      patterns[row] = IsotopePatternCache.getIsotopePattern(FORMULA, 1,
+          IonizationType.POSITIVE_HYDROGEN, minAbundance);
+    }
+
+    Assert.assertEquals(1, IsotopePatternCache.getNumOfCalculatedPatterns() - calculatedBefore);
+
+    // Each row only gets the isotopes above its own threshold
+    for (int row = 0; row < ROW_HEIGHTS.length; row++) {
+      final double minAbundance = NOISE_LEVEL / ROW_HEIGHTS[row];
+      final double highest = patterns[row].getHighestDataPoint().getIntensity();
+      for (DataPoint dataPoint : patterns[row].getDataPoints())
+        Assert.assertTrue(dataPoint.getIntensity() >= minAbundance * highest);
+    }
+
+    // Higher rows have a lower threshold, so they keep at least as many isotopes
+    for (int row = 1; row < ROW_HEIGHTS.length; row++) {
+      Assert.assertTrue(patterns[row - 1].getNumberOfDataPoints() >= patterns[row]
+          .getNumberOfDataPoints());
+    }
+
+  }
+
+  /**
+   * The isotopes of a pattern taken from the cache are the same as those of the pattern calculated
+   * at the floor, without the isotopes below the requested abundance
+   */
+  @Test
+  public void testSameIsotopesAsCalculation() {
+
+    final double minAbundance = NOISE_LEVEL / ROW_HEIGHTS[0];
+    final double floor = IsotopePatternCache.getAbundanceFloor(minAbundance);
+
+    IsotopePattern cached = IsotopePatternCache.getIsotopePattern(FORMULA, 1,
+        IonizationType.POSITIVE_HYDROGEN, minAbundance);
+    String ionFormula = FormulaUtils.ionizeFormula(FORMULA, IonizationType.POSITIVE_HYDROGEN, 1);
+    IsotopePattern calculated = IsotopePatternCalculator.calculateIsotopePattern(ionFormula, floor,
+        1, IonizationType.POSITIVE_HYDROGEN.getPolarity());
+
+    final double minIntensity = minAbundance * calculated.getHighestDataPoint().getIntensity();
+    int expectedIsotopes = 0;
+    for (DataPoint dataPoint : calculated.getDataPoints()) {
+      if (dataPoint.getIntensity() < minIntensity)
+        continue;
+      boolean found = false;
+      for (DataPoint cachedDataPoint : cached.getDataPoints()) {
+        if ((cachedDataPoint.getMZ() == dataPoint.getMZ())
+            && (cachedDataPoint.getIntensity() == dataPoint.getIntensity()))
+          found = true;
+      }
+      Assert.assertTrue("Isotope " + dataPoint + " is missing", found);
+      expectedIsotopes++;
+    }
+    Assert.assertEquals(expectedIsotopes, cached.getNumberOfDataPoints());
+
+  }
+
+}
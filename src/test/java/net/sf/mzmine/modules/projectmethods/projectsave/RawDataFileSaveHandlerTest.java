@@ -0,0 +1,158 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.modules.projectmethods.projectsave;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.google.common.io.ByteStreams;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+import net.sf.mzmine.project.impl.RawDataFileImpl;
+
+/**
+ * Tests that a project saved after the data points file was compacted contains the data points of
+ * every storage ID
+ */
+public class RawDataFileSaveHandlerTest {
+
+  private RawDataFileImpl dataFile;
+
+  @Before
+  public void createDataFile() throws Exception {
+    dataFile = new RawDataFileImpl("test.mzML");
+  }
+
+  @After
+  public void closeDataFile() {
+    dataFile.close();
+  }
+
+  @Test
+  public void testSaveAfterCompaction() throws Exception {
+
+    // Store data points, remove some of them, reuse the last storage ID and compact
+    final Random random = new Random(1);
+    final TreeMap<Integer, DataPoint[]> expected = new TreeMap<>();
+    for (int i = 0; i < 100; i++) {
+      final DataPoint dataPoints[] = createDataPoints(random);
+      expected.put(dataFile.storeDataPoints(dataPoints), dataPoints);
+    }
+    for (int storageID = 2; storageID <= 100; storageID += 2) {
+      dataFile.removeStoredDataPoints(storageID);
+      expected.remove(storageID);
+    }
+    final DataPoint reused[] = createDataPoints(random);
+    Assert.assertEquals(100, dataFile.storeDataPoints(reused));
+    expected.put(100, reused);
+
+    Assert.assertTrue(dataFile.compactDataPointsFile() > 0);
+    Assert.assertEquals(0, dataFile.getDeadBytes());
+
+    // Save the raw data file into a project
+    final ByteArrayOutputStream project = new ByteArrayOutputStream();
+    try (ZipOutputStream zipStream = new ZipOutputStream(project)) {
+      new RawDataFileSaveHandler(zipStream).writeRawDataFile(dataFile, 1);
+    }
+
+    final Map<String, byte[]> entries = new HashMap<>();
+    try (ZipInputStream zipStream =
+        new ZipInputStream(new ByteArrayInputStream(project.toByteArray()))) {
+      ZipEntry entry;
+      while ((entry = zipStream.getNextEntry()) != null)
+        entries.put(entry.getName(), ByteStreams.toByteArray(zipStream));
+    }
+    final byte scans[] = entries.get("Raw data file #1 test.mzML.scans");
+    final byte description[] = entries.get("Raw data file #1 test.mzML.xml");
+    Assert.assertEquals(dataFile.getLiveBytes(), scans.length);
+
+    // Read the data points of every storage ID at its saved offset
+    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+        .parse(new ByteArrayInputStream(description));
+    final NodeList storedData =
+        document.getElementsByTagName(RawDataElementName.STORED_DATA.getElementName());
+    Assert.assertEquals(expected.size(), storedData.getLength());
+
+    for (int i = 0; i < storedData.getLength(); i++) {
+      final Element element = (Element) storedData.item(i);
+      final int storageID = Integer
+          .parseInt(element.getAttribute(RawDataElementName.STORAGE_ID.getElementName()));
+      final int numOfDataPoints = Integer.parseInt(
+          element.getAttribute(RawDataElementName.QUANTITY_DATAPOINTS.getElementName()));
+      final int offset = Integer.parseInt(element.getTextContent().trim());
+
+      final DataPoint expectedDataPoints[] = expected.get(storageID);
+      Assert.assertNotNull("Storage ID " + storageID, expectedDataPoints);
+      Assert.assertEquals(expectedDataPoints.length, numOfDataPoints);
+
+      final FloatBuffer floatBuffer =
+          ByteBuffer.wrap(scans, offset, numOfDataPoints * 2 * 4).asFloatBuffer();
+      for (DataPoint dataPoint : expectedDataPoints) {
+        Assert.assertEquals("Storage ID " + storageID,
+            Float.floatToIntBits((float) dataPoint.getMZ()),
+            Float.floatToIntBits(floatBuffer.get()));
+        Assert.assertEquals("Storage ID " + storageID,
+            Float.floatToIntBits((float) dataPoint.getIntensity()),
+            Float.floatToIntBits(floatBuffer.get()));
+      }
+    }
+
+    // Saving leaves the data points file unchanged
+    for (Map.Entry<Integer, DataPoint[]> entry : expected.entrySet()) {
+      final DataPoint dataPoints[] = dataFile.readDataPoints(entry.getKey());
+      Assert.assertEquals(entry.getValue().length, dataPoints.length);
+      for (int i = 0; i < dataPoints.length; i++) {
+        Assert.assertEquals(Double.doubleToLongBits(entry.getValue()[i].getMZ()),
+            Double.doubleToLongBits(dataPoints[i].getMZ()));
+        Assert.assertEquals(Double.doubleToLongBits(entry.getValue()[i].getIntensity()),
+            Double.doubleToLongBits(dataPoints[i].getIntensity()));
+      }
+    }
+
+  }
+
+  private static DataPoint[] createDataPoints(Random random) {
+    final DataPoint dataPoints[] = new DataPoint[1 + random.nextInt(1000)];
+    for (int i = 0; i < dataPoints.length; i++) {
+      dataPoints[i] = new SimpleDataPoint(random.nextFloat() * 2000f, random.nextFloat() * 1E6f);
+    }
+    return dataPoints;
+  }
+
+}
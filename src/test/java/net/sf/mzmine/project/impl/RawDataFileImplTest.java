@@ -0,0 +1,234 @@
+/*
+ * Copyright 2006-2018 The MZmine 2 Development Team
+ *
+ * This file is part of MZmine 2.
+ *
+ * MZmine 2 is free software; you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * MZmine 2 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without
+ * even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with MZmine 2; if not,
+ * write to the Free Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301
+ * USA
+ */
+
+package net.sf.mzmine.project.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sf.mzmine.datamodel.DataPoint;
+import net.sf.mzmine.datamodel.impl.SimpleDataPoint;
+
+/**
+ * Tests that compacting the data points file keeps every stored data point, also while other
+ * threads store, remove and read data points
+ */
+public class RawDataFileImplTest {
+
+  private static final int STORED_ARRAYS = 300, MAX_DATA_POINTS = 2000;
+  private static final int WRITER_OPERATIONS = 3000;
+
+  private RawDataFileImpl dataFile;
+
+  // Data points of each live storage ID, as stored
+  private final TreeMap<Integer, DataPoint[]> expected = new TreeMap<>();
+
+  @Before
+  public void createDataFile() throws IOException {
+    dataFile = new RawDataFileImpl("test.mzML");
+  }
+
+  @After
+  public void closeDataFile() {
+    dataFile.close();
+  }
+
+  /**
+   * Compaction removes exactly the bytes of the removed data points
+   */
+  @Test
+  public void testCompaction() throws IOException {
+
+    final Random random = new Random(1);
+    storeAndRemove(random);
+
+    final long liveBytes = dataFile.getLiveBytes();
+    final long deadBytes = dataFile.getDeadBytes();
+    Assert.assertTrue(deadBytes > 0);
+    Assert.assertEquals(liveBytes + deadBytes, dataFile.getDataPointsFileSize());
+
+    Assert.assertEquals(deadBytes, dataFile.compactDataPointsFile());
+    Assert.assertEquals(0, dataFile.getDeadBytes());
+    Assert.assertEquals(liveBytes, dataFile.getDataPointsFileSize());
+    checkStoredDataPoints();
+
+    // Nothing left to reclaim
+    Assert.assertEquals(0, dataFile.compactDataPointsFile());
+
+    // The file still works as usual after the compaction
+    final int storageID = dataFile.storeDataPoints(createDataPoints(random));
+    Assert.assertEquals(expected.lastKey() + 1, storageID);
+    expected.put(storageID, dataFile.readDataPoints(storageID));
+    checkStoredDataPoints();
+
+  }
+
+  /**
+   * Compacts the file repeatedly while another thread stores, removes and reads data points, and
+   * reuses the storage IDs of removed data points
+   */
+  @Test
+  public void testCompactionWithConcurrentAccess() throws Exception {
+
+    storeAndRemove(new Random(2));
+
+    final AtomicReference<Throwable> writerError = new AtomicReference<>();
+    final Thread writer = new Thread(() -> {
+      try {
+        modifyDataPoints(new Random(3));
+      } catch (Throwable e) {
+        writerError.set(e);
+      }
+    });
+    writer.start();
+
+    int compactions = 0;
+    long reclaimedBytes = 0;
+    while (writer.isAlive()) {
+      final long reclaimed = dataFile.compactDataPointsFile();
+      if (reclaimed > 0)
+        compactions++;
+      reclaimedBytes += reclaimed;
+    }
+    writer.join();
+
+    if (writerError.get() != null)
+      throw new AssertionError("Writer thread failed", writerError.get());
+    Assert.assertTrue("No compaction overlapped the writer", compactions > 0);
+    Assert.assertTrue(reclaimedBytes > 0);
+    checkStoredDataPoints();
+
+    // The data points removed during the last compaction are reclaimed by the next one
+    final long deadBytes = dataFile.getDeadBytes();
+    Assert.assertEquals(deadBytes, dataFile.compactDataPointsFile());
+    Assert.assertEquals(0, dataFile.getDeadBytes());
+    Assert.assertEquals(getExpectedBytes(), dataFile.getDataPointsFileSize());
+    checkStoredDataPoints();
+
+  }
+
+  /**
+   * Stores random data points and removes every third of them, and the last one
+   */
+  private void storeAndRemove(Random random) throws IOException {
+    for (int i = 0; i < STORED_ARRAYS; i++) {
+      final DataPoint dataPoints[] = createDataPoints(random);
+      expected.put(dataFile.storeDataPoints(dataPoints), dataPoints);
+    }
+    final List<Integer> removedIDs = new ArrayList<>();
+    for (Integer storageID : expected.keySet()) {
+      if (storageID % 3 == 0)
+        removedIDs.add(storageID);
+    }
+    removedIDs.add(expected.lastKey());
+    for (Integer storageID : removedIDs) {
+      dataFile.removeStoredDataPoints(storageID);
+      expected.remove(storageID);
+    }
+    Assert.assertEquals(expected.size(), dataFile.getNumOfLiveStorageIDs());
+    Assert.assertEquals(getExpectedBytes(), dataFile.getLiveBytes());
+  }
+
+  /**
+   * Stores, removes and reads data points. Only this thread modifies the file, so removing the
+   * highest storage ID makes the next store reuse it.
+   */
+  private void modifyDataPoints(Random random) throws IOException {
+    for (int i = 0; i < WRITER_OPERATIONS; i++) {
+      switch (random.nextInt(4)) {
+        case 0:
+          final DataPoint dataPoints[] = createDataPoints(random);
+          expected.put(dataFile.storeDataPoints(dataPoints), dataPoints);
+          break;
+        case 1:
+          final Integer removedID = getRandomID(random);
+          dataFile.removeStoredDataPoints(removedID);
+          expected.remove(removedID);
+          break;
+        case 2:
+          final Integer lastID = expected.lastKey();
+          dataFile.removeStoredDataPoints(lastID);
+          expected.remove(lastID);
+          final DataPoint newDataPoints[] = createDataPoints(random);
+          Assert.assertEquals("Storage ID was not reused", lastID.intValue(),
+              dataFile.storeDataPoints(newDataPoints));
+          expected.put(lastID, newDataPoints);
+          break;
+        default:
+          final Integer readID = getRandomID(random);
+          assertSameDataPoints(readID, expected.get(readID), dataFile.readDataPoints(readID));
+      }
+    }
+  }
+
+  private Integer getRandomID(Random random) {
+    return expected.ceilingKey(1 + random.nextInt(expected.lastKey()));
+  }
+
+  /**
+   * Creates data points whose values can be stored as floats without rounding
+   */
+  private static DataPoint[] createDataPoints(Random random) {
+    final DataPoint dataPoints[] = new DataPoint[1 + random.nextInt(MAX_DATA_POINTS)];
+    for (int i = 0; i < dataPoints.length; i++) {
+      dataPoints[i] = new SimpleDataPoint(random.nextFloat() * 2000f, random.nextFloat() * 1E6f);
+    }
+    return dataPoints;
+  }
+
+  private long getExpectedBytes() {
+    long bytes = 0;
+    for (DataPoint dataPoints[] : expected.values())
+      bytes += dataPoints.length * 2 * 4;
+    return bytes;
+  }
+
+  private void checkStoredDataPoints() throws IOException {
+    Assert.assertEquals(expected.size(), dataFile.getNumOfLiveStorageIDs());
+    Assert.assertEquals(getExpectedBytes(), dataFile.getLiveBytes());
+    for (Map.Entry<Integer, DataPoint[]> entry : expected.entrySet()) {
+      assertSameDataPoints(entry.getKey(), entry.getValue(),
+          dataFile.readDataPoints(entry.getKey()));
+    }
+  }
+
+  /**
+   * Compares the bits of the values, so that any change of the stored bytes is detected
+   */
+  static void assertSameDataPoints(int storageID, DataPoint expected[], DataPoint actual[]) {
+    Assert.assertEquals("Storage ID " + storageID, expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertEquals("Storage ID " + storageID + ", m/z " + i,
+          Double.doubleToLongBits(expected[i].getMZ()), Double.doubleToLongBits(actual[i].getMZ()));
+      Assert.assertEquals("Storage ID " + storageID + ", intensity " + i,
+          Double.doubleToLongBits(expected[i].getIntensity()),
+          Double.doubleToLongBits(actual[i].getIntensity()));
+    }
+  }
+
+}